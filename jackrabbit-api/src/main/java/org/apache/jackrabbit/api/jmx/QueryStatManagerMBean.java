@@ -76,4 +76,31 @@ public interface QueryStatManagerMBean {
      */
     void clearPopularQueriesQueue();
 
+    /**
+     * @return number of queries whose result was served from a query result
+     *         cache
+     * @since Jackrabbit 2.14
+     */
+    long getResultCacheHitCount();
+
+    /**
+     * @return number of cacheable queries that had to be evaluated on the
+     *         index
+     * @since Jackrabbit 2.14
+     */
+    long getResultCacheMissCount();
+
+    /**
+     * @return number of query statements whose parse tree was served from a
+     *         query parse cache
+     * @since Jackrabbit 2.14
+     */
+    long getParseCacheHitCount();
+
+    /**
+     * @return number of query statements that had to be parsed
+     * @since Jackrabbit 2.14
+     */
+    long getParseCacheMissCount();
+
 }
@@ -18,5 +18,5 @@
 /**
  * JMX management interfaces for JCR.
  */
-@aQute.bnd.annotation.Version("2.3.0")
+@aQute.bnd.annotation.Version("2.4.0")
 package org.apache.jackrabbit.api.jmx;
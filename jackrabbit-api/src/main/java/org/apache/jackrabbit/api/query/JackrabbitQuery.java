@@ -0,0 +1,72 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.api.query;
+
+import java.util.Map;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.query.Query;
+
+/**
+ * The Jackrabbit query interface. This interface contains the
+ * Jackrabbit-specific extensions to the JCR {@link Query} interface.
+ *
+ * @since Jackrabbit 2.14
+ */
+public interface JackrabbitQuery extends Query {
+
+    /**
+     * Returns the exact number of results of this query that the current
+     * session is allowed to read. Unlike {@link Query#execute()} the nodes
+     * of the results are not loaded. Any limit or offset set on this query
+     * is ignored.
+     *
+     * @return the number of readable results.
+     * @throws RepositoryException if an error occurs while counting.
+     */
+    long count() throws RepositoryException;
+
+    /**
+     * Returns the number of readable results of this query per value of the
+     * given property. The keys of the returned map are the string
+     * representations of the property values. Results without the property
+     * are not counted, and a result with a multi-valued property is counted
+     * once for each of its distinct values. Any limit or offset set on this
+     * query is ignored.
+     *
+     * @param propertyName the JCR name of the property.
+     * @return the number of readable results per property value.
+     * @throws RepositoryException if <code>propertyName</code> is not a valid
+     *                             name or an error occurs while counting.
+     */
+    Map<String, Long> facet(String propertyName) throws RepositoryException;
+
+    /**
+     * Enables or disables the parallel evaluation of this query. If the
+     * repository is configured to evaluate queries in parallel, the index
+     * segments are searched concurrently by several threads. Disabling
+     * parallel evaluation makes the query run in the calling thread only,
+     * which may be preferable for cheap queries or to leave the threads to
+     * other queries. Parallel evaluation is enabled by default and has no
+     * effect if the repository does not support it.
+     *
+     * @param parallelExecution <code>false</code> to evaluate this query in
+     *                          the calling thread only.
+     */
+    void setParallelExecution(boolean parallelExecution);
+
+}
@@ -41,6 +41,120 @@ public interface RepositoryStatistics {
         BUNDLE_COUNTER(true),
         BUNDLE_WS_SIZE_COUNTER(true),
 
+        /**
+         * Number of change logs committed by the persistence managers.
+         */
+        BUNDLE_WS_COMMIT_COUNTER(true),
+
+        /**
+         * Number of write statements sent to the database while committing
+         * change logs. A batch of statements sent to the database at once
+         * is counted as one statement.
+         */
+        BUNDLE_WS_STATEMENT_COUNTER(true),
+
+        /**
+         * Average number of write statements sent to the database per
+         * committed change log.
+         */
+        BUNDLE_WS_STATEMENT_AVERAGE(false),
+
+        /**
+         * Number of bundles that were found in the off-heap bundle cache
+         * after a miss in the bundle cache.
+         */
+        BUNDLE_OFFHEAP_CACHE_HIT_COUNTER(true),
+
+        /**
+         * Number of bundles that were neither in the bundle cache nor in
+         * the off-heap bundle cache.
+         */
+        BUNDLE_OFFHEAP_CACHE_MISS_COUNTER(true),
+
+        /**
+         * Number of bytes currently held by the off-heap bundle cache.
+         */
+        BUNDLE_OFFHEAP_CACHE_SIZE_COUNTER(false),
+
+        /**
+         * Number of binaries whose text was found in the text extraction
+         * cache of a search index.
+         */
+        TEXT_EXTRACTION_CACHE_HIT_COUNTER(true),
+
+        /**
+         * Number of binaries whose text was not in the text extraction cache
+         * of a search index and had to be extracted.
+         */
+        TEXT_EXTRACTION_CACHE_MISS_COUNTER(true),
+
+        /**
+         * Number of bytes currently held by the text extraction caches.
+         */
+        TEXT_EXTRACTION_CACHE_SIZE_COUNTER(false),
+
+        /**
+         * Number of index segments merged by the search indexes.
+         */
+        INDEX_MERGE_COUNTER(true),
+
+        /**
+         * Total time spent merging index segments in milli seconds.
+         */
+        INDEX_MERGE_DURATION(true),
+
+        /**
+         * Average time spent merging index segments in milli seconds.
+         * This is the sum of all merge durations divided by the number
+         * of merges in the respective time period.
+         */
+        INDEX_MERGE_AVERAGE(false),
+
+        /**
+         * Number of bytes of the index segments created by merges.
+         */
+        INDEX_MERGE_BYTES_COUNTER(true),
+
+        /**
+         * Number of groups of concurrent updates that were stored together
+         * in group commit mode.
+         */
+        GROUP_COMMIT_COUNTER(true),
+
+        /**
+         * Number of updates stored in group commit mode.
+         */
+        GROUP_COMMIT_UPDATE_COUNTER(true),
+
+        /**
+         * Average number of updates per group in group commit mode.
+         */
+        GROUP_COMMIT_SIZE_AVERAGE(false),
+
+        /**
+         * Total time updates spent waiting for and storing their group in
+         * group commit mode, in nano seconds.
+         */
+        GROUP_COMMIT_DURATION(true),
+
+        /**
+         * Average time an update spent waiting for and storing its group in
+         * group commit mode, in nano seconds.
+         */
+        GROUP_COMMIT_AVERAGE(false),
+
+        /**
+         * Number of lookups in the path caches of the hierarchy managers,
+         * both from path to item id and from item id to path.
+         */
+        HIERARCHY_CACHE_ACCESS_COUNTER(true),
+
+        /**
+         * Number of lookups in the path caches of the hierarchy managers
+         * that had to resolve the path or item id through the item states.
+         */
+        HIERARCHY_CACHE_MISS_COUNTER(true),
+
         /**
          * Number of read accesses through any session.
          */
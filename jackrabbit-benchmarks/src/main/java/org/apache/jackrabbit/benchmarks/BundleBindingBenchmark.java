@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.PropertyType;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.id.PropertyId;
+import org.apache.jackrabbit.core.persistence.util.BundleBinding;
+import org.apache.jackrabbit.core.persistence.util.ErrorHandling;
+import org.apache.jackrabbit.core.persistence.util.HashMapIndex;
+import org.apache.jackrabbit.core.persistence.util.NodePropBundle;
+import org.apache.jackrabbit.core.persistence.util.NodePropBundle.PropertyEntry;
+import org.apache.jackrabbit.core.value.InternalValue;
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.NameFactory;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the serialization of node bundles with the {@link BundleBinding},
+ * i.e. the <code>BundleWriter</code> and <code>BundleReader</code> code
+ * that every bundle persistence manager runs for each load and store.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BundleBindingBenchmark {
+
+    private static final NameFactory FACTORY = NameFactoryImpl.getInstance();
+
+    /** Number of child node entries of the benchmarked bundle. */
+    @Param({ "0", "10", "1000" })
+    public int children;
+
+    private BundleBinding binding;
+
+    private NodePropBundle bundle;
+
+    private byte[] serialized;
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        binding = new BundleBinding(
+                new ErrorHandling(), null,
+                new HashMapIndex(), new HashMapIndex(), null);
+
+        NodeId id = NodeId.randomId();
+        bundle = new NodePropBundle(id);
+        bundle.setParentId(NodeId.randomId());
+        bundle.setNodeTypeName(NameConstants.NT_UNSTRUCTURED);
+        bundle.setMixinTypeNames(Collections.singleton(
+                NameConstants.MIX_REFERENCEABLE));
+        bundle.setReferenceable(true);
+        bundle.setSharedSet(Collections.<NodeId>emptySet());
+
+        addProperty(id, NameConstants.JCR_PRIMARYTYPE, PropertyType.NAME,
+                InternalValue.create(NameConstants.NT_UNSTRUCTURED));
+        addProperty(id, NameConstants.JCR_UUID, PropertyType.STRING,
+                InternalValue.create(id.toString()));
+        addProperty(id, FACTORY.create("", "title"), PropertyType.STRING,
+                InternalValue.create("A short title of the node"));
+        addProperty(id, FACTORY.create("", "count"), PropertyType.LONG,
+                InternalValue.create(42L));
+        addProperty(id, FACTORY.create("", "modified"), PropertyType.DATE,
+                InternalValue.create(Calendar.getInstance()));
+
+        for (int i = 0; i < children; i++) {
+            bundle.addChildNodeEntry(
+                    FACTORY.create("", "child" + i), NodeId.randomId());
+        }
+
+        serialized = write();
+    }
+
+    private void addProperty(
+            NodeId id, Name name, int type, InternalValue value) {
+        PropertyEntry entry = new PropertyEntry(new PropertyId(id, name));
+        entry.setType(type);
+        entry.setMultiValued(false);
+        entry.setValues(new InternalValue[] { value });
+        bundle.addProperty(entry);
+    }
+
+    @Benchmark
+    public byte[] write() throws Exception {
+        buffer.reset();
+        binding.writeBundle(buffer, bundle);
+        return buffer.toByteArray();
+    }
+
+    @Benchmark
+    public NodePropBundle read() throws Exception {
+        return binding.readBundle(
+                new ByteArrayInputStream(serialized), bundle.getId());
+    }
+
+    @Benchmark
+    public NodePropBundle roundTrip() throws Exception {
+        return binding.readBundle(
+                new ByteArrayInputStream(write()), bundle.getId());
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.PropertyType;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.core.NamespaceRegistryImpl;
+import org.apache.jackrabbit.core.RepositoryImpl;
+import org.apache.jackrabbit.core.fs.mem.MemoryFileSystem;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.id.PropertyId;
+import org.apache.jackrabbit.core.persistence.PMContext;
+import org.apache.jackrabbit.core.persistence.mem.InMemBundlePersistenceManager;
+import org.apache.jackrabbit.core.state.ChangeLog;
+import org.apache.jackrabbit.core.state.ItemState;
+import org.apache.jackrabbit.core.state.NodeState;
+import org.apache.jackrabbit.core.state.PropertyState;
+import org.apache.jackrabbit.core.value.InternalValue;
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+import org.apache.jackrabbit.stats.RepositoryStatisticsImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures full save cycles of the {@link InMemBundlePersistenceManager}.
+ * Every invocation stores three change logs like a session would: one that
+ * adds a batch of nodes with a property each, one that modifies all the
+ * properties and one that removes the nodes again. The bundle persistence
+ * manager code paths (bundle cache, serialization, change log handling)
+ * are the same for all bundle persistence managers, only the final
+ * storage differs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BundlePersistenceManagerBenchmark {
+
+    private static final Name TITLE =
+        NameFactoryImpl.getInstance().create("", "title");
+
+    /** Number of nodes added, modified and removed per cycle. */
+    @Param({ "1", "100" })
+    public int nodes;
+
+    private File directory;
+
+    private InMemBundlePersistenceManager manager;
+
+    private NodeState parent;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = File.createTempFile("jackrabbit-benchmark-", "");
+        directory.delete();
+        directory.mkdirs();
+
+        manager = new InMemBundlePersistenceManager();
+        manager.setPersistent(false);
+        manager.init(new PMContext(
+                directory,
+                new MemoryFileSystem(),
+                RepositoryImpl.ROOT_NODE_ID,
+                new NamespaceRegistryImpl(new MemoryFileSystem()),
+                null,
+                null,
+                new RepositoryStatisticsImpl()));
+
+        parent = new NodeState(
+                NodeId.randomId(), NameConstants.NT_UNSTRUCTURED,
+                RepositoryImpl.ROOT_NODE_ID, ItemState.STATUS_NEW, false);
+        parent.addPropertyName(NameConstants.JCR_PRIMARYTYPE);
+        ChangeLog create = new ChangeLog();
+        create.added(parent);
+        manager.store(create);
+        parent.setStatus(ItemState.STATUS_EXISTING);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        manager.close();
+        FileUtils.deleteQuietly(directory);
+    }
+
+    @Benchmark
+    public void saveCycle() throws Exception {
+        NodeState[] children = new NodeState[nodes];
+        PropertyState[] properties = new PropertyState[nodes];
+
+        ChangeLog add = new ChangeLog();
+        for (int i = 0; i < nodes; i++) {
+            NodeId id = NodeId.randomId();
+            children[i] = new NodeState(
+                    id, NameConstants.NT_UNSTRUCTURED, parent.getNodeId(),
+                    ItemState.STATUS_NEW, false);
+            children[i].addPropertyName(NameConstants.JCR_PRIMARYTYPE);
+            children[i].addPropertyName(TITLE);
+            parent.addChildNodeEntry(TITLE, id);
+
+            properties[i] = new PropertyState(
+                    new PropertyId(id, TITLE), ItemState.STATUS_NEW, false);
+            properties[i].setType(PropertyType.STRING);
+            properties[i].setMultiValued(false);
+            properties[i].setValues(new InternalValue[] {
+                    InternalValue.create("title " + i) });
+
+            add.added(children[i]);
+            add.added(properties[i]);
+        }
+        add.modified(parent);
+        manager.store(add);
+
+        ChangeLog modify = new ChangeLog();
+        for (int i = 0; i < nodes; i++) {
+            children[i].setStatus(ItemState.STATUS_EXISTING);
+            properties[i].setStatus(ItemState.STATUS_EXISTING);
+            properties[i].setValues(new InternalValue[] {
+                    InternalValue.create("modified title " + i) });
+            modify.modified(properties[i]);
+        }
+        manager.store(modify);
+
+        ChangeLog remove = new ChangeLog();
+        for (int i = 0; i < nodes; i++) {
+            parent.removeChildNodeEntry(children[i].getNodeId());
+            remove.deleted(properties[i]);
+            remove.deleted(children[i]);
+        }
+        remove.modified(parent);
+        manager.store(remove);
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jackrabbit.core.cache.ConcurrentCache;
+import org.apache.jackrabbit.core.cache.TinyLFUCache;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the {@link ConcurrentCache} with the {@link TinyLFUCache} under
+ * contention. All threads share a single cache that holds about a tenth of
+ * the key space, and the keys are drawn from a skewed distribution so that
+ * the hit ratio depends on the eviction policy like it does for the bundle
+ * and item state caches.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class CacheBenchmark {
+
+    /** Number of distinct keys. */
+    private static final int KEYS = 100000;
+
+    /** Size that is accounted for every cached entry. */
+    private static final long ENTRY_SIZE = 100;
+
+    /** Number of precomputed key draws per thread. */
+    private static final int DRAWS = 1 << 16;
+
+    @Param({ "concurrent", "tinylfu" })
+    public String cache;
+
+    private NodeId[] keys;
+
+    private CacheAdapter adapter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        keys = new NodeId[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = new NodeId(0, i);
+        }
+        if ("concurrent".equals(cache)) {
+            final ConcurrentCache<NodeId, NodeId> c =
+                new ConcurrentCache<NodeId, NodeId>("benchmark");
+            c.setMaxMemorySize(KEYS * ENTRY_SIZE / 10);
+            adapter = new CacheAdapter() {
+                public NodeId get(NodeId key) {
+                    return c.get(key);
+                }
+                public void put(NodeId key) {
+                    c.put(key, key, ENTRY_SIZE);
+                }
+            };
+        } else if ("tinylfu".equals(cache)) {
+            final TinyLFUCache<NodeId, NodeId> c =
+                new TinyLFUCache<NodeId, NodeId>("benchmark");
+            c.setMaxMemorySize(KEYS * ENTRY_SIZE / 10);
+            adapter = new CacheAdapter() {
+                public NodeId get(NodeId key) {
+                    return c.get(key);
+                }
+                public void put(NodeId key) {
+                    c.put(key, key, ENTRY_SIZE);
+                }
+            };
+        } else {
+            throw new IllegalArgumentException("Unknown cache: " + cache);
+        }
+        for (int i = 0; i < KEYS / 10; i++) {
+            adapter.put(keys[i]);
+        }
+    }
+
+    /**
+     * Looks up a key and loads it into the cache on a miss, like the
+     * bundle persistence managers do.
+     */
+    @Benchmark
+    public NodeId getOrLoad(Draws draws) {
+        NodeId key = keys[draws.next()];
+        NodeId value = adapter.get(key);
+        if (value == null) {
+            adapter.put(key);
+            value = key;
+        }
+        return value;
+    }
+
+    /**
+     * Only looks up keys, which measures the read path of the caches.
+     */
+    @Benchmark
+    public NodeId get(Draws draws) {
+        return adapter.get(keys[draws.next()]);
+    }
+
+    /**
+     * Per thread sequence of key indexes that follows a power law, so that
+     * a small set of keys (the "root" and the top level nodes) is accessed
+     * much more often than the rest.
+     */
+    @State(Scope.Thread)
+    public static class Draws {
+
+        private final int[] draws = new int[DRAWS];
+
+        private int position;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            Random random = new Random(Thread.currentThread().getId());
+            for (int i = 0; i < DRAWS; i++) {
+                double x = Math.pow(random.nextDouble(), 3);
+                draws[i] = (int) (x * KEYS);
+            }
+        }
+
+        int next() {
+            position = (position + 1) & (DRAWS - 1);
+            return draws[position];
+        }
+
+    }
+
+    private interface CacheAdapter {
+
+        NodeId get(NodeId key);
+
+        void put(NodeId key);
+
+    }
+
+}
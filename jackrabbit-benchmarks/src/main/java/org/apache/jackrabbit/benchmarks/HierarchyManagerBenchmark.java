@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.core.CachingHierarchyManager;
+import org.apache.jackrabbit.core.id.ItemId;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.state.ItemState;
+import org.apache.jackrabbit.core.state.ItemStateManager;
+import org.apache.jackrabbit.core.state.NoSuchItemStateException;
+import org.apache.jackrabbit.core.state.NodeReferences;
+import org.apache.jackrabbit.core.state.NodeState;
+import org.apache.jackrabbit.spi.NameFactory;
+import org.apache.jackrabbit.spi.Path;
+import org.apache.jackrabbit.spi.PathFactory;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+import org.apache.jackrabbit.spi.commons.name.PathFactoryImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures path resolution and path lookups of the
+ * {@link CachingHierarchyManager} on a static content tree that is
+ * shared by all benchmark threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class HierarchyManagerBenchmark {
+
+    private static final NameFactory NAMES = NameFactoryImpl.getInstance();
+
+    private static final PathFactory PATHS = PathFactoryImpl.getInstance();
+
+    /** Number of child nodes of every non-leaf node. */
+    private static final int FANOUT = 10;
+
+    /** Depth of the generated tree. */
+    @Param({ "2", "4" })
+    public int depth;
+
+    private CachingHierarchyManager hierarchyManager;
+
+    private Path[] paths;
+
+    private NodeId[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        StaticItemStateManager provider = new StaticItemStateManager();
+        hierarchyManager = new CachingHierarchyManager(
+                provider.root.getNodeId(), provider);
+
+        List<Path> leafPaths = new ArrayList<Path>();
+        List<NodeId> leafIds = new ArrayList<NodeId>();
+        addNodes(provider, provider.root, PATHS.getRootPath(), depth,
+                leafPaths, leafIds);
+        paths = leafPaths.toArray(new Path[leafPaths.size()]);
+        ids = leafIds.toArray(new NodeId[leafIds.size()]);
+
+        // warm up the cache
+        for (Path path : paths) {
+            hierarchyManager.resolvePath(path);
+        }
+    }
+
+    private void addNodes(
+            StaticItemStateManager provider, NodeState parent,
+            Path parentPath, int levels,
+            List<Path> leafPaths, List<NodeId> leafIds)
+            throws RepositoryException {
+        for (int i = 0; i < FANOUT; i++) {
+            NodeState child = provider.addNode(parent, "node" + i);
+            Path path = PATHS.create(
+                    parentPath, NAMES.create("", "node" + i), true);
+            if (levels > 1) {
+                addNodes(provider, child, path, levels - 1,
+                        leafPaths, leafIds);
+            } else {
+                leafPaths.add(path);
+                leafIds.add(child.getNodeId());
+            }
+        }
+    }
+
+    @Benchmark
+    public ItemId resolvePath(Cursor cursor) throws Exception {
+        return hierarchyManager.resolvePath(paths[cursor.next(paths.length)]);
+    }
+
+    @Benchmark
+    public Path getPath(Cursor cursor) throws Exception {
+        return hierarchyManager.getPath(ids[cursor.next(ids.length)]);
+    }
+
+    /**
+     * Per thread random sequence of leaf nodes.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private Random random;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            random = new Random(Thread.currentThread().getId());
+        }
+
+        int next(int bound) {
+            return random.nextInt(bound);
+        }
+
+    }
+
+    /**
+     * Item state manager that holds a static tree of node states.
+     */
+    private static class StaticItemStateManager implements ItemStateManager {
+
+        private final Map<ItemId, ItemState> states =
+            new HashMap<ItemId, ItemState>();
+
+        private final NodeState root;
+
+        public StaticItemStateManager() {
+            root = new NodeState(
+                    NodeId.randomId(), NameConstants.REP_ROOT, null,
+                    ItemState.STATUS_EXISTING, false);
+            states.put(root.getId(), root);
+        }
+
+        NodeState addNode(NodeState parent, String name) {
+            NodeState child = new NodeState(
+                    NodeId.randomId(), NameConstants.NT_UNSTRUCTURED,
+                    parent.getNodeId(), ItemState.STATUS_EXISTING, false);
+            states.put(child.getId(), child);
+            parent.addChildNodeEntry(
+                    NAMES.create("", name), child.getNodeId());
+            return child;
+        }
+
+        public ItemState getItemState(ItemId id)
+                throws NoSuchItemStateException {
+            ItemState state = states.get(id);
+            if (state == null) {
+                throw new NoSuchItemStateException(id.toString());
+            }
+            return state;
+        }
+
+        public boolean hasItemState(ItemId id) {
+            return states.containsKey(id);
+        }
+
+        public NodeReferences getNodeReferences(NodeId id)
+                throws NoSuchItemStateException {
+            throw new NoSuchItemStateException(id.toString());
+        }
+
+        public boolean hasNodeReferences(NodeId id) {
+            return false;
+        }
+
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.state.ChangeLog;
+import org.apache.jackrabbit.core.state.DefaultISMLocking;
+import org.apache.jackrabbit.core.state.FineGrainedISMLocking;
+import org.apache.jackrabbit.core.state.ISMLocking;
+import org.apache.jackrabbit.core.state.ItemState;
+import org.apache.jackrabbit.core.state.NodeState;
+import org.apache.jackrabbit.core.state.StripedISMLocking;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures acquiring and releasing the read and write locks of the
+ * {@link ISMLocking} strategies, both uncontended and with concurrent
+ * readers and writers on disjoint parts of the content tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ISMLockingBenchmark {
+
+    /** Number of distinct nodes that are locked. */
+    private static final int NODES = 1024;
+
+    @Param({ "default", "finegrained", "striped" })
+    public String locking;
+
+    private ISMLocking ismLocking;
+
+    private NodeId[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("default".equals(locking)) {
+            ismLocking = new DefaultISMLocking();
+        } else if ("finegrained".equals(locking)) {
+            ismLocking = new FineGrainedISMLocking();
+        } else if ("striped".equals(locking)) {
+            ismLocking = new StripedISMLocking();
+        } else {
+            throw new IllegalArgumentException("Unknown locking: " + locking);
+        }
+        ids = new NodeId[NODES];
+        for (int i = 0; i < NODES; i++) {
+            ids[i] = NodeId.randomId();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void readUncontended(Worker worker) throws Exception {
+        ismLocking.acquireReadLock(worker.nextId()).release();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void writeUncontended(Worker worker) throws Exception {
+        ismLocking.acquireWriteLock(worker.changeLog).release();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void writeDowngrade(Worker worker) throws Exception {
+        ismLocking.acquireWriteLock(worker.changeLog).downgrade().release();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(6)
+    public void read(Worker worker) throws Exception {
+        ismLocking.acquireReadLock(worker.nextId()).release();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public void write(Worker worker) throws Exception {
+        ismLocking.acquireWriteLock(worker.changeLog).release();
+    }
+
+    /**
+     * Per thread state. Every thread reads the shared nodes round robin and
+     * writes a node of its own, so that writers only conflict with readers.
+     */
+    @State(Scope.Thread)
+    public static class Worker {
+
+        private static final AtomicInteger COUNTER = new AtomicInteger();
+
+        private ChangeLog changeLog;
+
+        private NodeId[] ids;
+
+        private int position;
+
+        @Setup(Level.Trial)
+        public void setUp(ISMLockingBenchmark benchmark) {
+            ids = benchmark.ids;
+            position = COUNTER.getAndIncrement() * 31;
+            NodeState state = new NodeState(
+                    NodeId.randomId(), NameConstants.NT_UNSTRUCTURED,
+                    ids[position % NODES], ItemState.STATUS_EXISTING, false);
+            changeLog = new ChangeLog();
+            changeLog.modified(state);
+        }
+
+        NodeId nextId() {
+            position = (position + 1) & (NODES - 1);
+            return ids[position];
+        }
+
+    }
+
+}
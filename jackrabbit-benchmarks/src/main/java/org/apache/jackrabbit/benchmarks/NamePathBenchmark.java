@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.NameFactory;
+import org.apache.jackrabbit.spi.Path;
+import org.apache.jackrabbit.spi.PathFactory;
+import org.apache.jackrabbit.spi.commons.conversion.DefaultNamePathResolver;
+import org.apache.jackrabbit.spi.commons.conversion.NamePathResolver;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+import org.apache.jackrabbit.spi.commons.name.PathFactoryImpl;
+import org.apache.jackrabbit.spi.commons.namespace.NamespaceMapping;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the parsing of names and paths, both from the internal string
+ * formats understood by the {@link NameFactoryImpl} and the
+ * {@link PathFactoryImpl}, and from the prefixed JCR formats resolved for
+ * every path based method call of the JCR API.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NamePathBenchmark {
+
+    private static final String URI = "http://www.example.org/benchmark/1.0";
+
+    private static final String JCR_PATH =
+        "/content/bench:site/en/products/bench:catalog[2]/jcr:content";
+
+    private final NameFactory nameFactory = NameFactoryImpl.getInstance();
+
+    private final PathFactory pathFactory = PathFactoryImpl.getInstance();
+
+    private NamePathResolver parsing;
+
+    private NamePathResolver caching;
+
+    private String nameString;
+
+    private String pathString;
+
+    private Path path;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        NamespaceMapping mapping = new NamespaceMapping();
+        mapping.setMapping("", "");
+        mapping.setMapping("jcr", Name.NS_JCR_URI);
+        mapping.setMapping("bench", URI);
+        parsing = new DefaultNamePathResolver(mapping, false);
+        caching = new DefaultNamePathResolver(mapping, true);
+
+        nameString = nameFactory.create(URI, "catalog").toString();
+        path = parsing.getQPath(JCR_PATH);
+        pathString = path.getString();
+    }
+
+    @Benchmark
+    public Name createName() {
+        return nameFactory.create(nameString);
+    }
+
+    @Benchmark
+    public Path createPath() {
+        return pathFactory.create(pathString);
+    }
+
+    @Benchmark
+    public Name parseJcrName() throws Exception {
+        return parsing.getQName("bench:catalog");
+    }
+
+    @Benchmark
+    public Path parseJcrPath() throws Exception {
+        return parsing.getQPath(JCR_PATH);
+    }
+
+    @Benchmark
+    public Path resolveCachedJcrPath() throws Exception {
+        return caching.getQPath(JCR_PATH);
+    }
+
+    @Benchmark
+    public String formatJcrPath() throws Exception {
+        return parsing.getJCRPath(path);
+    }
+
+}
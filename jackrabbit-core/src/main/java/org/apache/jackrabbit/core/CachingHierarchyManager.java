@@ -19,14 +19,16 @@ package org.apache.jackrabbit.core;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
 
 import javax.jcr.ItemNotFoundException;
 import javax.jcr.PathNotFoundException;
 import javax.jcr.RepositoryException;
 
-import org.apache.commons.collections.map.ReferenceMap;
+import org.apache.jackrabbit.api.stats.RepositoryStatistics;
 import org.apache.jackrabbit.core.id.ItemId;
 import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.state.ChildNodeEntry;
@@ -35,29 +37,66 @@ import org.apache.jackrabbit.core.state.ItemStateException;
 import org.apache.jackrabbit.core.state.ItemStateManager;
 import org.apache.jackrabbit.core.state.NodeState;
 import org.apache.jackrabbit.core.state.NodeStateListener;
+import org.apache.jackrabbit.core.util.StripedReadWriteLock;
 import org.apache.jackrabbit.spi.Name;
 import org.apache.jackrabbit.spi.Path;
 import org.apache.jackrabbit.spi.commons.conversion.MalformedPathException;
 import org.apache.jackrabbit.spi.commons.name.PathBuilder;
 import org.apache.jackrabbit.spi.commons.name.PathFactoryImpl;
 import org.apache.jackrabbit.spi.commons.name.PathMap;
+import org.apache.jackrabbit.stats.RepositoryStatisticsImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Implementation of a <code>HierarchyManager</code> that caches paths of
  * items.
+ * <p>
+ * Lookups in the cache, from path to item id and from item id to path, only
+ * share a striped read lock and may run concurrently. Changes to the cache take the
+ * write lock, but never while item states are being resolved, and only
+ * affect the cached subtree of the changed node.
+ * <p>
+ * The size of the cache is bounded by an estimate of the memory held by its
+ * entries, see {@link #DEFAULT_MEMORY_LIMIT}. When the limit is reached, the
+ * cache evicts entries without cached children, giving entries that were
+ * looked up since they were last considered for eviction a second chance.
  */
 public class CachingHierarchyManager extends HierarchyManagerImpl
         implements NodeStateListener {
 
     /**
      * Default upper limit of cached states
+     *
+     * @deprecated the cache is bounded by memory, see
+     *             {@link #DEFAULT_MEMORY_LIMIT}. The number of cached states
+     *             is only limited if the
+     *             <code>org.apache.jackrabbit.core.CachingHierarchyManager.cacheSize</code>
+     *             system property is set.
      */
     public static final int DEFAULT_UPPER_LIMIT = 10000;
 
+    /**
+     * Default upper limit of the estimated memory held by the cache, in bytes
+     */
+    public static final long DEFAULT_MEMORY_LIMIT = 8 * 1024 * 1024;
+
     private static final int MAX_UPPER_LIMIT =
-            Integer.getInteger("org.apache.jackrabbit.core.CachingHierarchyManager.cacheSize", DEFAULT_UPPER_LIMIT);
+            Integer.getInteger("org.apache.jackrabbit.core.CachingHierarchyManager.cacheSize", Integer.MAX_VALUE);
+
+    private static final long MAX_MEMORY_LIMIT =
+            Long.getLong("org.apache.jackrabbit.core.CachingHierarchyManager.cacheMemory", DEFAULT_MEMORY_LIMIT);
+
+    /**
+     * Estimated memory held by a cache entry and its node id, in bytes.
+     */
+    private static final int ENTRY_MEMORY = 128;
+
+    /**
+     * Estimated memory held by a path map element, excluding the characters
+     * of its name, in bytes.
+     */
+    private static final int ELEMENT_MEMORY = 160;
 
     private static final int CACHE_STATISTICS_LOG_INTERVAL_MILLIS =
             Integer.getInteger("org.apache.jackrabbit.core.CachingHierarchyManager.logInterval", 60000);
@@ -75,30 +114,54 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
     /**
      * Mapping of item ids to <code>LRUEntry</code> in the path map
      */
-    private final ReferenceMap idCache = new ReferenceMap(ReferenceMap.HARD, ReferenceMap.HARD);
+    private final Map<ItemId, LRUEntry> idCache = new HashMap<ItemId, LRUEntry>();
 
     /**
-     * Cache monitor object
+     * Cache lock. Lookups hold the read lock, changes to the path map, the
+     * id map or the eviction queue hold the write lock. The write lock must
+     * not be requested while holding the read lock. The lock is striped, so
+     * that concurrent lookups do not contend on a single lock.
      */
-    private final Object cacheMonitor = new Object();
+    private final ReadWriteLock cacheLock = new StripedReadWriteLock();
 
     /**
      * Upper limit
      */
     private final int upperLimit;
 
+    /**
+     * Upper limit of the estimated memory held by the cache, in bytes
+     */
+    private final long memoryLimit;
+
+    /**
+     * Estimated memory held by the cache, in bytes
+     */
+    private long memoryUsed;
+
     /**
      * Object collecting and logging statistics about the idCache
      */
     private final CacheStatistics idCacheStatistics;
 
     /**
-     * Head of LRU
+     * Number of lookups, or <code>null</code> if not recorded
+     */
+    private final AtomicLong accessCounter;
+
+    /**
+     * Number of lookups that missed the cache, or <code>null</code> if not
+     * recorded
+     */
+    private final AtomicLong missCounter;
+
+    /**
+     * Head of the eviction queue
      */
     private LRUEntry head;
 
     /**
-     * Tail of LRU
+     * Tail of the eviction queue
      */
     private LRUEntry tail;
 
@@ -125,13 +188,37 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      */
     public CachingHierarchyManager(NodeId rootNodeId,
                                    ItemStateManager provider) {
+        this(rootNodeId, provider, null);
+    }
+
+    /**
+     * Create a new instance of this class that records its cache hit rate
+     * in the given repository statistics.
+     *
+     * @param rootNodeId   root node id
+     * @param provider     item state manager
+     * @param stats        repository statistics, or <code>null</code>
+     */
+    public CachingHierarchyManager(NodeId rootNodeId,
+                                   ItemStateManager provider,
+                                   RepositoryStatisticsImpl stats) {
         super(rootNodeId, provider);
         upperLimit = MAX_UPPER_LIMIT;
+        memoryLimit = MAX_MEMORY_LIMIT;
+        if (stats != null) {
+            accessCounter = stats.getCounter(
+                    RepositoryStatistics.Type.HIERARCHY_CACHE_ACCESS_COUNTER);
+            missCounter = stats.getCounter(
+                    RepositoryStatistics.Type.HIERARCHY_CACHE_MISS_COUNTER);
+        } else {
+            accessCounter = null;
+            missCounter = null;
+        }
         idCacheStatistics = new CacheStatistics();
         if (log.isTraceEnabled()) {
-            log.trace("CachingHierarchyManager initialized. Max cache size = {}", upperLimit, new Exception());
+            log.trace("CachingHierarchyManager initialized. Max cache memory = {}", memoryLimit, new Exception());
         } else {
-            log.debug("CachingHierarchyManager initialized. Max cache size = {}", upperLimit);
+            log.debug("CachingHierarchyManager initialized. Max cache memory = {}", memoryLimit);
         }
     }
 
@@ -160,30 +247,40 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
             pathToNode = path.getAncestor(1);
         }
 
-        PathMap.Element<LRUEntry> element = map(pathToNode);
-        if (element == null) {
+        NodeId id = null;
+        boolean exact = false;
+        int depth = 0;
+        cacheLock.readLock().lock();
+        try {
+            PathMap.Element<LRUEntry> element = map(pathToNode);
+            if (element != null) {
+                id = element.get().getId();
+                exact = element.hasPath(path);
+                depth = element.getDepth();
+            }
+        } finally {
+            cacheLock.readLock().unlock();
+        }
+        recordAccess(exact);
+
+        if (id == null) {
             // not even intermediate match: call base class
             return super.resolvePath(path, typesAllowed);
         }
-
-        LRUEntry entry = element.get();
-        if (element.hasPath(path)) {
+        if (exact) {
             // exact match: return answer
-            synchronized (cacheMonitor) {
-                entry.touch();
-            }
-            return entry.getId();
+            return id;
         }
         Path.Element[] elements = path.getElements();
         try {
-            return resolvePath(elements, element.getDepth() + 1, entry.getId(), typesAllowed);
+            return resolvePath(elements, depth + 1, id, typesAllowed);
         } catch (ItemStateException e) {
             String msg = "failed to retrieve state of intermediary node for entry: " 
-                    + entry.getId() + ", path: " + path.getString();
+                    + id + ", path: " + path.getString();
             logItemStateException(msg, e);
             log.debug(msg);
             // probably stale cache entry -> evict
-            evictAll(entry.getId(), true);
+            evictAll(id, true);
         }
         // JCR-3617: fall back to super class in case of ItemStateException
         return super.resolvePath(path, typesAllowed);
@@ -213,19 +310,13 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
             throws ItemStateException, RepositoryException {
 
         if (state.isNode()) {
-            PathMap.Element<LRUEntry> element = get(state.getId());
-            if (element != null) {
-                try {
-                    Path.Element[] elements = element.getPath().getElements();
-                    for (int i = elements.length - 1; i >= 0; i--) {
-                        builder.addFirst(elements[i]);
-                    }
-                    return;
-                } catch (MalformedPathException mpe) {
-                    String msg = "Failed to build path of " + state.getId();
-                    log.debug(msg);
-                    throw new RepositoryException(msg, mpe);
+            Path path = getCachedPath(state.getId());
+            if (path != null) {
+                Path.Element[] elements = path.getElements();
+                for (int i = elements.length - 1; i >= 0; i--) {
+                    builder.addFirst(elements[i]);
                 }
+                return;
             }
         }
 
@@ -252,15 +343,9 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
             throws ItemNotFoundException, RepositoryException {
 
         if (id.denotesNode()) {
-            PathMap.Element<LRUEntry> element = get(id);
-            if (element != null) {
-                try {
-                    return element.getPath();
-                } catch (MalformedPathException mpe) {
-                    String msg = "Failed to build path of " + id;
-                    log.debug(msg);
-                    throw new RepositoryException(msg, mpe);
-                }
+            Path path = getCachedPath(id);
+            if (path != null) {
+                return path;
             }
         }
         return super.getPath(id);
@@ -273,9 +358,19 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
             throws ItemNotFoundException, RepositoryException {
 
         if (id.denotesNode()) {
-            PathMap.Element<LRUEntry> element = get(id);
-            if (element != null) {
-                return element.getName();
+            Name name = null;
+            cacheLock.readLock().lock();
+            try {
+                PathMap.Element<LRUEntry> element = get(id);
+                if (element != null) {
+                    name = element.getName();
+                }
+            } finally {
+                cacheLock.readLock().unlock();
+            }
+            recordAccess(name != null);
+            if (name != null) {
+                return name;
             }
         }
         return super.getName(id);
@@ -288,9 +383,19 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
             throws ItemNotFoundException, RepositoryException {
 
         if (id.denotesNode()) {
-            PathMap.Element<LRUEntry> element = get(id);
-            if (element != null) {
-                return element.getDepth();
+            int depth = -1;
+            cacheLock.readLock().lock();
+            try {
+                PathMap.Element<LRUEntry> element = get(id);
+                if (element != null) {
+                    depth = element.getDepth();
+                }
+            } finally {
+                cacheLock.readLock().unlock();
+            }
+            recordAccess(depth != -1);
+            if (depth != -1) {
+                return depth;
             }
         }
         return super.getDepth(id);
@@ -303,12 +408,22 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
             throws ItemNotFoundException, RepositoryException {
 
         if (itemId.denotesNode()) {
-            PathMap.Element<LRUEntry> element = get(nodeId);
-            if (element != null) {
-                PathMap.Element<LRUEntry> child = get(itemId);
-                if (child != null) {
-                    return element.isAncestorOf(child);
+            Boolean ancestor = null;
+            cacheLock.readLock().lock();
+            try {
+                PathMap.Element<LRUEntry> element = get(nodeId);
+                if (element != null) {
+                    PathMap.Element<LRUEntry> child = get(itemId);
+                    if (child != null) {
+                        ancestor = element.isAncestorOf(child);
+                    }
                 }
+            } finally {
+                cacheLock.readLock().unlock();
+            }
+            recordAccess(ancestor != null);
+            if (ancestor != null) {
+                return ancestor;
             }
         }
         return super.isAncestor(nodeId, itemId);
@@ -339,7 +454,8 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      * (longer) exist in the underlying <code>NodeState</code>.
      */
     public void nodeModified(NodeState modified) {
-        synchronized (cacheMonitor) {
+        cacheLock.writeLock().lock();
+        try {
             for (PathMap.Element<LRUEntry> element
                     : getCachedPaths(modified.getNodeId())) {
                 for (PathMap.Element<LRUEntry> child : element.getChildren()) {
@@ -359,17 +475,20 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
                 }
             }
             checkConsistency();
+        } finally {
+            cacheLock.writeLock().unlock();
         }
     }
 
     private List<PathMap.Element<LRUEntry>> getCachedPaths(NodeId id) {
+        // assert: cacheLock held
         // JCR-2720: Handle the root path as a special case
         if (rootNodeId.equals(id)) {
             return Collections.singletonList(pathCache.map(
                     PathFactoryImpl.getInstance().getRootPath(), true));
         }
 
-        LRUEntry entry = (LRUEntry) idCache.get(id);
+        LRUEntry entry = idCache.get(id);
         if (entry != null) {
             return Arrays.asList(entry.getElements());
         } else {
@@ -403,29 +522,33 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      * {@inheritDoc}
      */
     public void nodeAdded(NodeState state, Name name, int index, NodeId id) {
-        synchronized (cacheMonitor) {
-            if (idCache.containsKey(state.getNodeId())) {
-                // Optimization: ignore notifications for nodes that are not in the cache
+        if (isCached(state.getNodeId(), null)) {
+            // Optimization: ignore notifications for nodes that are not in the cache
+            try {
+                Path path = PathFactoryImpl.getInstance().create(getPath(state.getNodeId()), name, index, true);
+                boolean shareable = isCached(id, null) && isShareable(id);
+                cacheLock.writeLock().lock();
                 try {
-                    Path path = PathFactoryImpl.getInstance().create(getPath(state.getNodeId()), name, index, true);
-                    nodeAdded(state, path, id);
+                    nodeAdded(path, id, shareable);
                     checkConsistency();
-                } catch (PathNotFoundException e) {
-                    log.warn("Unable to get path of node " + state.getNodeId()
-                            + ", event ignored.");
-                } catch (MalformedPathException e) {
-                    log.warn("Unable to create path of " + id, e);
-                } catch (ItemNotFoundException e) {
-                    log.warn("Unable to find item " + state.getNodeId(), e);
-                } catch (ItemStateException e) {
-                    log.warn("Unable to find item " + id, e);
-                } catch (RepositoryException e) {
-                    log.warn("Unable to get path of " + state.getNodeId(), e);
+                } finally {
+                    cacheLock.writeLock().unlock();
                 }
-            } else if (state.getParentId() == null && idCache.containsKey(id)) {
-                // A top level node was added
-                evictAll(id, true);
+            } catch (PathNotFoundException e) {
+                log.warn("Unable to get path of node " + state.getNodeId()
+                        + ", event ignored.");
+            } catch (MalformedPathException e) {
+                log.warn("Unable to create path of " + id, e);
+            } catch (ItemNotFoundException e) {
+                log.warn("Unable to find item " + state.getNodeId(), e);
+            } catch (ItemStateException e) {
+                log.warn("Unable to find item " + id, e);
+            } catch (RepositoryException e) {
+                log.warn("Unable to get path of " + state.getNodeId(), e);
             }
+        } else if (state.getParentId() == null && isCached(id, null)) {
+            // A top level node was added
+            evictAll(id, true);
         }
     }
 
@@ -436,8 +559,9 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      * child's position.
      */
     public void nodesReplaced(NodeState state) {
-        synchronized (cacheMonitor) {
-            LRUEntry entry = (LRUEntry) idCache.get(state.getNodeId());
+        cacheLock.writeLock().lock();
+        try {
+            LRUEntry entry = idCache.get(state.getNodeId());
             if (entry == null) {
                 return;
             }
@@ -447,7 +571,7 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
                 boolean orderChanged = false;
 
                 for (PathMap.Element<LRUEntry> child : parent.getChildren()) {
-                    LRUEntry childEntry = (LRUEntry) child.get();
+                    LRUEntry childEntry = child.get();
                     if (childEntry == null) {
                         // Child has no associated UUID information: we're
                         // therefore unable to determine if this child's
@@ -482,6 +606,8 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
                 }
             }
             checkConsistency();
+        } finally {
+            cacheLock.writeLock().unlock();
         }
     }
 
@@ -489,29 +615,33 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      * {@inheritDoc}
      */
     public void nodeRemoved(NodeState state, Name name, int index, NodeId id) {
-        synchronized (cacheMonitor) {
-            if (idCache.containsKey(state.getNodeId())) {
-                // Optimization: ignore notifications for nodes that are not in the cache
+        if (isCached(state.getNodeId(), null)) {
+            // Optimization: ignore notifications for nodes that are not in the cache
+            try {
+                Path path = PathFactoryImpl.getInstance().create(getPath(state.getNodeId()), name, index, true);
+                boolean shareable = isCached(id, null) && isShareable(id);
+                cacheLock.writeLock().lock();
                 try {
-                    Path path = PathFactoryImpl.getInstance().create(getPath(state.getNodeId()), name, index, true);
-                    nodeRemoved(state, path, id);
+                    nodeRemoved(path, id, shareable);
                     checkConsistency();
-                } catch (PathNotFoundException e) {
-                    log.warn("Unable to get path of node " + state.getNodeId()
-                            + ", event ignored.");
-                } catch (MalformedPathException e) {
-                    log.warn("Unable to create path of " + id, e);
-                } catch (ItemStateException e) {
-                    log.warn("Unable to find item " + id, e);
-                } catch (ItemNotFoundException e) {
-                    log.warn("Unable to get path of " + state.getNodeId(), e);
-                } catch (RepositoryException e) {
-                    log.warn("Unable to get path of " + state.getNodeId(), e);
+                } finally {
+                    cacheLock.writeLock().unlock();
                 }
-            } else if (state.getParentId() == null && idCache.containsKey(id)) {
-                // A top level node was removed
-                evictAll(id, true);
+            } catch (PathNotFoundException e) {
+                log.warn("Unable to get path of node " + state.getNodeId()
+                        + ", event ignored.");
+            } catch (MalformedPathException e) {
+                log.warn("Unable to create path of " + id, e);
+            } catch (ItemStateException e) {
+                log.warn("Unable to find item " + id, e);
+            } catch (ItemNotFoundException e) {
+                log.warn("Unable to get path of " + state.getNodeId(), e);
+            } catch (RepositoryException e) {
+                log.warn("Unable to get path of " + state.getNodeId(), e);
             }
+        } else if (state.getParentId() == null && isCached(id, null)) {
+            // A top level node was removed
+            evictAll(id, true);
         }
     }
 
@@ -524,14 +654,65 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      * @return cached element, <code>null</code> if not found
      */
     private PathMap.Element<LRUEntry> get(ItemId id) {
-        synchronized (cacheMonitor) {
-            LRUEntry entry = (LRUEntry) idCache.get(id);
-            if (entry != null) {
-                entry.touch();
-                return entry.getElements()[0];
+        // assert: cacheLock held
+        LRUEntry entry = idCache.get(id);
+        if (entry != null) {
+            entry.touch();
+            return entry.getElements()[0];
+        }
+        return null;
+    }
+
+    /**
+     * Return the first cached path of the given id.
+     *
+     * @param id node id
+     * @return cached path, <code>null</code> if not found
+     * @throws RepositoryException if the path can not be built
+     */
+    private Path getCachedPath(ItemId id) throws RepositoryException {
+        Path path = null;
+        cacheLock.readLock().lock();
+        try {
+            PathMap.Element<LRUEntry> element = get(id);
+            if (element != null) {
+                path = element.getPath();
             }
-            return null;
+        } catch (MalformedPathException mpe) {
+            String msg = "Failed to build path of " + id;
+            log.debug(msg);
+            throw new RepositoryException(msg, mpe);
+        } finally {
+            cacheLock.readLock().unlock();
         }
+        recordAccess(path != null);
+        return path;
+    }
+
+    /**
+     * Record a lookup in the cache.
+     *
+     * @param hit whether the lookup was answered by the cache
+     */
+    private void recordAccess(boolean hit) {
+        if (accessCounter != null) {
+            accessCounter.incrementAndGet();
+            if (!hit) {
+                missCounter.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Return a flag indicating whether the node with the given id is
+     * shareable.
+     *
+     * @param id node id
+     * @return <code>true</code> if the node exists and is shareable
+     * @throws ItemStateException if the node state can not be retrieved
+     */
+    private boolean isShareable(NodeId id) throws ItemStateException {
+        return hasItemState(id) && ((NodeState) getItemState(id)).isShareable();
     }
 
     /**
@@ -543,18 +724,17 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      * @return cached element, <code>null</code> if not found
      */
     private PathMap.Element<LRUEntry> map(Path path) {
-        synchronized (cacheMonitor) {
-            PathMap.Element<LRUEntry> element = pathCache.map(path, false);
-            while (element != null) {
-                LRUEntry entry = element.get();
-                if (entry != null) {
-                    entry.touch();
-                    return element;
-                }
-                element = element.getParent();
+        // assert: cacheLock held
+        PathMap.Element<LRUEntry> element = pathCache.map(path, false);
+        while (element != null) {
+            LRUEntry entry = element.get();
+            if (entry != null) {
+                entry.touch();
+                return element;
             }
-            return null;
+            element = element.getParent();
         }
+        return null;
     }
 
     /**
@@ -564,39 +744,22 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      * @param path path to item
      */
     private void cache(NodeId id, Path path) {
-        synchronized (cacheMonitor) {
+        cacheLock.writeLock().lock();
+        try {
             if (isCached(id, path)) {
                 return;
             }
-            if (idCache.size() >= upperLimit) {
-
+            if (memoryUsed >= memoryLimit || idCache.size() >= upperLimit) {
                 idCacheStatistics.log();
-
-                /**
-                 * Remove least recently used item. Scans the LRU list from
-                 * head to tail and removes the first item that has no children.
-                 */
-                LRUEntry entry = head;
-                while (entry != null) {
-                    PathMap.Element<LRUEntry>[] elements = entry.getElements();
-                    int childrenCount = 0;
-                    for (int i = 0; i < elements.length; i++) {
-                        childrenCount += elements[i].getChildrenCount();
-                    }
-                    if (childrenCount == 0) {
-                        evictAll(entry.getId(), false);
-                        return;
-                    }
-                    entry = entry.getNext();
-                }
+                shrink();
             }
             PathMap.Element<LRUEntry> element = pathCache.put(path);
             if (element.get() != null) {
-                if (!id.equals(((LRUEntry) element.get()).getId())) {
+                if (!id.equals(element.get().getId())) {
                     log.debug("overwriting PathMap.Element");
                 }
             }
-            LRUEntry entry = (LRUEntry) idCache.get(id);
+            LRUEntry entry = idCache.get(id);
             if (entry == null) {
                 entry = new LRUEntry(id, element);
                 idCache.put(id, entry);
@@ -604,11 +767,58 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
                 entry.addElement(element);
             }
             element.set(entry);
+            updateMemory(entry);
 
             checkConsistency();
+        } finally {
+            cacheLock.writeLock().unlock();
         }
     }
 
+    /**
+     * Evict entries until the cache is below its limits. Scans the eviction
+     * queue from head to tail and removes the entries that have no children.
+     * Entries that were looked up since they were last scanned are moved to
+     * the tail of the queue instead.
+     */
+    private void shrink() {
+        // assert: cacheLock write locked
+        LRUEntry entry = head;
+        int remaining = 2 * idCache.size();
+        while (entry != null && remaining-- > 0
+                && (memoryUsed >= memoryLimit || idCache.size() >= upperLimit)) {
+            LRUEntry next = entry.getNext();
+            if (entry.accessed) {
+                entry.accessed = false;
+                entry.remove();
+                entry.append();
+            } else if (!entry.hasChildren()) {
+                evictAll(entry.getId(), false);
+            }
+            entry = next != null ? next : head;
+        }
+    }
+
+    /**
+     * Update the estimated memory held by the given entry after its path
+     * map elements changed.
+     *
+     * @param entry cache entry
+     */
+    private void updateMemory(LRUEntry entry) {
+        // assert: cacheLock write locked
+        long memory = ENTRY_MEMORY;
+        for (PathMap.Element<LRUEntry> element : entry.getElements()) {
+            memory += ELEMENT_MEMORY;
+            Name name = element.getName();
+            if (name != null) {
+                memory += 2 * name.getLocalName().length();
+            }
+        }
+        memoryUsed += memory - entry.memory;
+        entry.memory = memory;
+    }
+
     /**
      * Return a flag indicating whether a certain node and/or path is cached.
      * If <code>path</code> is <code>null</code>, check whether the item is
@@ -621,8 +831,9 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      *         <code>false</code> otherwise
      */
     boolean isCached(NodeId id, Path path) {
-        synchronized (cacheMonitor) {
-            LRUEntry entry = (LRUEntry) idCache.get(id);
+        cacheLock.readLock().lock();
+        try {
+            LRUEntry entry = idCache.get(id);
             if (entry == null) {
                 return false;
             }
@@ -636,6 +847,8 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
                 }
             }
             return false;
+        } finally {
+            cacheLock.readLock().unlock();
         }
     }
 
@@ -647,12 +860,15 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      *         <code>false</code> otherwise
      */
     boolean isCached(Path path) {
-        synchronized (cacheMonitor) {
+        cacheLock.readLock().lock();
+        try {
             PathMap.Element<LRUEntry> element = pathCache.map(path, true);
             if (element != null) {
                 return element.get() != null;
             }
             return false;
+        } finally {
+            cacheLock.readLock().unlock();
         }
     }
 
@@ -664,8 +880,9 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      * @param id item id
      */
     private void evictAll(ItemId id, boolean shift) {
-        synchronized (cacheMonitor) {
-            LRUEntry entry = (LRUEntry) idCache.get(id);
+        cacheLock.writeLock().lock();
+        try {
+            LRUEntry entry = idCache.get(id);
             if (entry != null) {
                 PathMap.Element<LRUEntry>[] elements = entry.getElements();
                 for (int i = 0; i < elements.length; i++) {
@@ -673,6 +890,8 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
                 }
             }
             checkConsistency();
+        } finally {
+            cacheLock.writeLock().unlock();
         }
     }
 
@@ -684,13 +903,16 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      * @param element path map element
      */
     private void evict(PathMap.Element<LRUEntry> element, boolean shift) {
-        // assert: synchronized (cacheMonitor)
+        // assert: cacheLock write locked
         element.traverse(new PathMap.ElementVisitor<LRUEntry>() {
             public void elementVisited(PathMap.Element<LRUEntry> element) {
-                LRUEntry entry = (LRUEntry) element.get();
+                LRUEntry entry = element.get();
                 if (entry.removeElement(element) == 0) {
                     idCache.remove(entry.getId());
                     entry.remove();
+                    memoryUsed -= entry.memory;
+                } else {
+                    updateMemory(entry);
                 }
             }
         }, false);
@@ -700,31 +922,26 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
     /**
      * Invoked when a notification about a child node addition has been received.
      *
-     * @param state node state where child was added
-     * @param path  path to child node
-     * @param id    child node id
+     * @param path      path to child node
+     * @param id        child node id
+     * @param shareable whether the child node is shareable
      *
      * @throws PathNotFoundException if the path was not found
      * @throws RepositoryException If the path's direct ancestor cannot be determined.
-     * @throws ItemStateException If the id cannot be resolved to a NodeState.
      */
-    private void nodeAdded(NodeState state, Path path, NodeId id)
-            throws RepositoryException, ItemStateException {
+    private void nodeAdded(Path path, NodeId id, boolean shareable)
+            throws RepositoryException {
 
-        // assert: synchronized (cacheMonitor)
+        // assert: cacheLock write locked
         PathMap.Element<LRUEntry> element = null;
 
-        LRUEntry entry = (LRUEntry) idCache.get(id);
+        LRUEntry entry = idCache.get(id);
         if (entry != null) {
             // child node already cached: this can have the following
             // reasons:
             //    1) node was moved, cached path is outdated
             //    2) node was cloned, cached path is still valid
-            NodeState child = null;
-            if (hasItemState(id)) {
-                child = (NodeState) getItemState(id);
-            }
-            if (child == null || !child.isShareable()) {
+            if (!shareable) {
                 PathMap.Element<LRUEntry>[] elements = entry.getElements();
                 element = elements[0];
                 for (int i = 0; i < elements.length; i++) {
@@ -739,24 +956,24 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
         if (element != null) {
             // store remembered element at new position
             pathCache.put(path, element);
+            updateMemory(entry);
         }
     }
 
     /**
      * Invoked when a notification about a child node removal has been received.
      *
-     * @param state node state
-     * @param path  node path
-     * @param id    node id
+     * @param path      node path
+     * @param id        node id
+     * @param shareable whether the node is shareable
      *
      * @throws PathNotFoundException if the path was not found.
      * @throws RepositoryException If the path's direct ancestor cannot be determined.
-     * @throws ItemStateException If the id cannot be resolved to a NodeState.
      */
-    private void nodeRemoved(NodeState state, Path path, NodeId id)
-            throws RepositoryException, ItemStateException {
+    private void nodeRemoved(Path path, NodeId id, boolean shareable)
+            throws RepositoryException {
 
-        // assert: synchronized (cacheMonitor)
+        // assert: cacheLock write locked
         PathMap.Element<LRUEntry> parent =
             pathCache.map(path.getAncestor(1), true);
         if (parent == null) {
@@ -768,17 +985,13 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
             // with SNS, this might evict a child that is NOT the one
             // having <code>id</code>, check first whether item has
             // the id passed as argument
-            LRUEntry entry = (LRUEntry) element.get();
+            LRUEntry entry = element.get();
             if (entry != null && !entry.getId().equals(id)) {
                 return;
             }
             // if item is shareable, remove this path only, otherwise
             // every path this item has been mapped to
-            NodeState child = null;
-            if (hasItemState(id)) {
-                child = (NodeState) getItemState(id);
-            }
-            if (child == null || !child.isShareable()) {
+            if (!shareable) {
                 evictAll(id, true);
             } else {
                 evict(element, true);
@@ -795,7 +1008,8 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      */
     public String toString() {
         final StringBuilder builder = new StringBuilder();
-        synchronized (cacheMonitor) {
+        cacheLock.readLock().lock();
+        try {
             pathCache.traverse(new PathMap.ElementVisitor<LRUEntry>() {
                 public void elementVisited(PathMap.Element<LRUEntry> element) {
                     for (int i = 0; i < element.getDepth(); i++) {
@@ -813,6 +1027,8 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
                     builder.append("\n");
                 }
             }, true);
+        } finally {
+            cacheLock.readLock().unlock();
         }
         return builder.toString();
     }
@@ -821,24 +1037,24 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
      * Check consistency.
      */
     private void checkConsistency() throws IllegalStateException {
-        // assert: synchronized (cacheMonitor)
+        // assert: cacheLock write locked
         if (!consistencyCheckEnabled) {
             return;
         }
 
         int elementsInCache = 0;
+        long memoryInCache = 0;
 
-        Iterator iter = idCache.values().iterator();
-        while (iter.hasNext()) {
-            LRUEntry entry = (LRUEntry) iter.next();
+        for (LRUEntry entry : idCache.values()) {
             elementsInCache += entry.getElements().length;
+            memoryInCache += entry.memory;
         }
 
         class PathMapElementCounter implements PathMap.ElementVisitor<LRUEntry> {
             int count;
             public void elementVisited(PathMap.Element<LRUEntry> element) {
-                LRUEntry mappedEntry = (LRUEntry) element.get();
-                LRUEntry cachedEntry = (LRUEntry) idCache.get(mappedEntry.getId());
+                LRUEntry mappedEntry = element.get();
+                LRUEntry cachedEntry = idCache.get(mappedEntry.getId());
                 if (cachedEntry == null) {
                     String msg = "Path element (" + element +
                         " ) cached in path map, associated id (" +
@@ -872,6 +1088,11 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
                 counter.count + " != " + elementsInCache + ")";
             throw new IllegalStateException(msg);
         }
+        if (memoryInCache != memoryUsed) {
+            String msg = "Estimated memory of cached entries doesn't match (" +
+                memoryInCache + " != " + memoryUsed + ")";
+            throw new IllegalStateException(msg);
+        }
     }
 
     /**
@@ -891,10 +1112,21 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
     }
 
     /**
-     * Entry in the LRU list
+     * Entry in the eviction queue
      */
     private class LRUEntry {
 
+        /**
+         * Flag indicating whether this entry was looked up since it was last
+         * considered for eviction. Set while holding the read lock only.
+         */
+        private volatile boolean accessed;
+
+        /**
+         * Estimated memory held by this entry, in bytes
+         */
+        private long memory;
+
         /**
          * Previous entry
          */
@@ -963,12 +1195,30 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
         }
 
         /**
-         * Touch entry. Removes it from its current position in the LRU list
-         * and moves it to the end.
+         * Touch entry. Marks it as recently used, so that it is moved to the
+         * end of the eviction queue instead of being evicted. The flag is
+         * only written if not yet set, so that concurrent lookups of the
+         * same entry do not contend on it.
          */
         public void touch() {
-            remove();
-            append();
+            if (!accessed) {
+                accessed = true;
+            }
+        }
+
+        /**
+         * Return a flag indicating whether any path of this entry has
+         * cached children.
+         *
+         * @return <code>true</code> if this entry has cached children
+         */
+        public boolean hasChildren() {
+            for (int i = 0; i < elements.length; i++) {
+                if (elements[i].getChildrenCount() > 0) {
+                    return true;
+                }
+            }
+            return false;
         }
 
         /**
@@ -1046,24 +1296,24 @@ public class CachingHierarchyManager extends HierarchyManagerImpl
 
         private final String id;
 
-        private final ReferenceMap cache;
+        private final Map<ItemId, LRUEntry> cache;
 
         private long timeStamp = 0;
 
         public CacheStatistics() {
-            this.id = cacheMonitor.toString();
+            this.id = cacheLock.toString();
             this.cache = idCache;
         }
 
         public void log() {
             if (log.isDebugEnabled()) {
                 long now = System.currentTimeMillis();
-                final String msg = "Cache id = {};size = {};max = {}";
+                final String msg = "Cache id = {};size = {};memory = {};max = {}";
                 if (log.isTraceEnabled()) {
-                    log.trace(msg, new Object[]{id, this.cache.size(), upperLimit}, new Exception());
+                    log.trace(msg, new Object[]{id, this.cache.size(), memoryUsed, memoryLimit}, new Exception());
                 } else if (now > timeStamp + CACHE_STATISTICS_LOG_INTERVAL_MILLIS) {
                     timeStamp = now;
-                    log.debug(msg, new Object[]{id, this.cache.size(), upperLimit}, new Exception());
+                    log.debug(msg, new Object[]{id, this.cache.size(), memoryUsed, memoryLimit}, new Exception());
                 }
             }
         }
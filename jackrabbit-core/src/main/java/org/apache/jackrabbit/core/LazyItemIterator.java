@@ -55,6 +55,12 @@ public class LazyItemIterator implements NodeIterator, PropertyIterator {
     /** Logger instance for this class */
     private static Logger log = LoggerFactory.getLogger(LazyItemIterator.class);
 
+    /**
+     * Number of child node states that are prefetched at once when
+     * iterating over the child nodes of a node.
+     */
+    private static final int PREFETCH_SIZE = 100;
+
     /**
      * The session context used to access the repository.
      */
@@ -75,6 +81,9 @@ public class LazyItemIterator implements NodeIterator, PropertyIterator {
     /** prefetched item to be returned on <code>{@link #next()}</code> */
     private Item next;
 
+    /** position up to which the child node states have been prefetched */
+    private int prefetchedUpTo;
+
     /**
      * Creates a new <code>LazyItemIterator</code> instance.
      *
@@ -114,6 +123,9 @@ public class LazyItemIterator implements NodeIterator, PropertyIterator {
         // reset
         next = null;
         while (next == null && pos < idList.size()) {
+            if (parentId != null && pos >= prefetchedUpTo) {
+                prefetchChildStates();
+            }
             ItemId id = idList.get(pos);
             try {
                 if (parentId != null) {
@@ -158,6 +170,20 @@ public class LazyItemIterator implements NodeIterator, PropertyIterator {
         }
     }
 
+    /**
+     * Prefetches the states of the next {@link #PREFETCH_SIZE} child nodes,
+     * so that the persistence manager can load them with fewer round trips
+     * than when each child node is loaded individually.
+     */
+    private void prefetchChildStates() {
+        prefetchedUpTo = Math.min(pos + PREFETCH_SIZE, idList.size());
+        List<NodeId> ids = new ArrayList<NodeId>(prefetchedUpTo - pos);
+        for (ItemId id : idList.subList(pos, prefetchedUpTo)) {
+            ids.add((NodeId) id);
+        }
+        sessionContext.getItemStateManager().prefetch(ids);
+    }
+
     //---------------------------------------------------------< NodeIterator >
     /**
      * {@inheritDoc}
@@ -99,9 +99,12 @@ import org.apache.jackrabbit.core.security.authorization.PrivilegeRegistry;
 import org.apache.jackrabbit.core.security.simple.SimpleSecurityManager;
 import org.apache.jackrabbit.core.state.ChangeLog;
 import org.apache.jackrabbit.core.state.ISMLocking;
+import org.apache.jackrabbit.core.state.ISMLockingFactory;
 import org.apache.jackrabbit.core.state.ItemStateException;
 import org.apache.jackrabbit.core.state.ManagedMLRUItemStateCacheFactory;
+import org.apache.jackrabbit.core.state.ManagedTinyLFUItemStateCacheFactory;
 import org.apache.jackrabbit.core.state.SharedItemStateManager;
+import org.apache.jackrabbit.core.state.TimedISMLocking;
 import org.apache.jackrabbit.core.util.RepositoryLockMechanism;
 import org.apache.jackrabbit.core.version.InternalVersionManager;
 import org.apache.jackrabbit.core.version.InternalVersionManagerImpl;
@@ -275,8 +278,13 @@ public class RepositoryImpl extends AbstractRepository
             context.setPrivilegeRegistry(new PrivilegeRegistry(context.getNamespaceRegistry(), context.getFileSystem()));
 
             // Create item state cache manager
-            context.setItemStateCacheFactory(
-                    new ManagedMLRUItemStateCacheFactory(cacheMgr));
+            if (Boolean.getBoolean("org.apache.jackrabbit.tinyLFUItemStateCache")) {
+                context.setItemStateCacheFactory(
+                        new ManagedTinyLFUItemStateCacheFactory(cacheMgr));
+            } else {
+                context.setItemStateCacheFactory(
+                        new ManagedMLRUItemStateCacheFactory(cacheMgr));
+            }
 
             DataStore dataStore = repConfig.getDataStore();
             if (dataStore != null) {
@@ -513,7 +521,7 @@ public class RepositoryImpl extends AbstractRepository
                 vConfig.getHomeDir(), fs,
                 vConfig.getPersistenceManagerConfig());
 
-        ISMLocking ismLocking = vConfig.getISMLocking();
+        ISMLocking ismLocking = createISMLocking(vConfig);
 
         return new InternalVersionManagerImpl(
                 pm, fs, context.getNodeTypeRegistry(), delegatingDispatcher,
@@ -1380,6 +1388,21 @@ public class RepositoryImpl extends AbstractRepository
         }
     }
 
+    /**
+     * Creates the item state locking strategy configured by the given
+     * factory. The time spent waiting for and holding its locks is recorded
+     * in the repository statistics.
+     *
+     * @param factory item state locking factory
+     * @return item state locking strategy
+     * @throws RepositoryException if the locking strategy can not be created
+     */
+    private ISMLocking createISMLocking(ISMLockingFactory factory)
+            throws RepositoryException {
+        return new TimedISMLocking(
+                factory.getISMLocking(), context.getRepositoryStatistics());
+    }
+
     /**
      * Creates a <code>SharedItemStateManager</code> or derivative.
      *
@@ -2055,12 +2078,16 @@ public class RepositoryImpl extends AbstractRepository
 
             doVersionRecovery();
 
-            ISMLocking ismLocking = config.getISMLocking();
+            ISMLocking ismLocking = createISMLocking(config);
 
             // create item state manager
             try {
                 itemStateMgr =
                     createItemStateManager(persistMgr, true, ismLocking);
+                if (Boolean.getBoolean("org.apache.jackrabbit.groupCommit")) {
+                    itemStateMgr.enableGroupCommit(
+                            context.getRepositoryStatistics());
+                }
                 try {
                     itemStateMgr.addVirtualItemStateProvider(
                             context.getInternalVersionManager().getVirtualItemStateProvider());
@@ -188,6 +188,11 @@ public class SessionImpl extends AbstractSession
      */
     protected NamePathResolver namePathResolver;
 
+    /**
+     * Set when a namespace prefix has been remapped in this session
+     */
+    private volatile boolean namespacePrefixRemapped = false;
+
     /**
      * The version manager for this session
      */
@@ -295,7 +300,8 @@ public class SessionImpl extends AbstractSession
     protected SessionItemStateManager createSessionItemStateManager() {
         SessionItemStateManager mgr = new SessionItemStateManager(
                 context.getRootNodeId(),
-                context.getWorkspace().getItemStateManager());
+                context.getWorkspace().getItemStateManager(),
+                repositoryContext.getRepositoryStatistics());
         context.getWorkspace().getItemStateManager().addListener(mgr);
         return mgr;
     }
@@ -1063,10 +1069,22 @@ public class SessionImpl extends AbstractSession
     public void setNamespacePrefix(String prefix, String uri)
             throws NamespaceException, RepositoryException {
         super.setNamespacePrefix(prefix, uri);
+        namespacePrefixRemapped = true;
         // Clear name and path caches
         namePathResolver = new DefaultNamePathResolver(this, true);
     }
 
+    /**
+     * Returns <code>true</code> if a namespace prefix has been remapped with
+     * {@link #setNamespacePrefix(String, String)} in this session. Until then
+     * names are resolved with the prefixes of the namespace registry.
+     *
+     * @return <code>true</code> if this session has local namespace mappings.
+     */
+    public boolean hasLocalNamespaceMappings() {
+        return namespacePrefixRemapped;
+    }
+
 
     //------------------------------------------------------< locking support >
     /**
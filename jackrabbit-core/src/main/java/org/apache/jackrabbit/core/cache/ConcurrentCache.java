@@ -29,7 +29,7 @@ import java.util.Map;
  * eviction algorithm similar but not exactly the same as LRU. None of the
  * methods of this class are synchronized, but they are all thread-safe.
  */
-public class ConcurrentCache<K, V> extends AbstractCache {
+public class ConcurrentCache<K, V> extends KeyValueCache<K, V> {
 
     /**
      * Default number of cache segments to use. Use the number of available
@@ -70,6 +70,7 @@ public class ConcurrentCache<K, V> extends AbstractCache {
                 protected boolean removeEldestEntry(Map.Entry<K, E<V>> eldest) {
                     if (isTooBig()) {
                         recordSizeChange(-eldest.getValue().size);
+                        entryEvicted(eldest.getKey(), eldest.getValue().value);
                         return true;
                     } else {
                         return false;
@@ -83,6 +84,18 @@ public class ConcurrentCache<K, V> extends AbstractCache {
         this(name, DEFAULT_NUMBER_OF_SEGMENTS);
     }
 
+    /**
+     * Called when the given entry is evicted from the cache because the
+     * cache has grown too big. Note that this method is called while the
+     * lock of the affected cache segment is being held, so implementations
+     * should return quickly. The default implementation does nothing.
+     *
+     * @param key key of the evicted entry
+     * @param value value of the evicted entry
+     */
+    protected void entryEvicted(K key, V value) {
+    }
+
     /**
      * Returns the cache segment for the given entry key. The segment is
      * selected based on the hash code of the key, after a transformation
@@ -179,6 +192,31 @@ public class ConcurrentCache<K, V> extends AbstractCache {
         }
     }
 
+    /**
+     * Adds the given entry to the cache, unless the cache already contains
+     * an entry with the given key.
+     *
+     * @param key entry key
+     * @param value entry value
+     * @param size entry size
+     * @return the existing value, or <code>null</code> if the given entry
+     *         was added
+     * @since Jackrabbit 2.14
+     */
+    public V putIfAbsent(K key, V value, long size) {
+        Map<K, E<V>> segment = getSegment(key);
+        synchronized (segment) {
+            E<V> entry = segment.get(key);
+            if (entry != null) {
+                return entry.value;
+            }
+            recordSizeChange(size);
+            segment.put(key, new E<V>(value, size));
+        }
+        shrinkIfNeeded();
+        return null;
+    }
+
     /**
      * Removes the identified entry from the cache.
      *
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.cache;
+
+import java.util.List;
+
+/**
+ * Base class for managed caches that map keys to values, like the
+ * {@link ConcurrentCache} and the {@link TinyLFUCache}. Code that only
+ * uses these operations can be written against this class and work with
+ * either eviction policy.
+ *
+ * @since Jackrabbit 2.14
+ */
+public abstract class KeyValueCache<K, V> extends AbstractCache {
+
+    /**
+     * Checks if the identified entry is cached.
+     *
+     * @param key entry key
+     * @return <code>true</code> if the entry is cached,
+     *         <code>false</code> otherwise
+     */
+    public abstract boolean containsKey(K key);
+
+    /**
+     * Returns the identified cache entry.
+     *
+     * @param key entry key
+     * @return entry value, or <code>null</code> if not found
+     */
+    public abstract V get(K key);
+
+    /**
+     * Returns all values in the cache.
+     *
+     * @return cached values
+     */
+    public abstract List<V> values();
+
+    /**
+     * Adds the given entry to the cache.
+     *
+     * @param key entry key
+     * @param value entry value
+     * @param size entry size
+     * @return the previous value, or <code>null</code>
+     */
+    public abstract V put(K key, V value, long size);
+
+    /**
+     * Removes the identified entry from the cache.
+     *
+     * @param key entry key
+     * @return removed entry, or <code>null</code> if not found
+     */
+    public abstract V remove(K key);
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public abstract void clear();
+
+    /**
+     * Checks if the cache size is zero.
+     *
+     * @return <code>true</code> if the cache is empty
+     */
+    public abstract boolean isEmpty();
+
+}
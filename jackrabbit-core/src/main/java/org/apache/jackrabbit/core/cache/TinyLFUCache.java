@@ -0,0 +1,587 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrent cache implementation with lock-free reads and a frequency
+ * aware eviction policy. It is an alternative to the {@link ConcurrentCache}
+ * with the same set of operations.
+ * <p>
+ * Entries are kept in a {@link ConcurrentHashMap}, so a cache hit does not
+ * acquire any lock. Instead of reordering an LRU list on every hit, reads
+ * are recorded in small lossy per-thread-stripe buffers that are drained
+ * in batches by whichever thread next acquires the eviction lock. All
+ * structural modifications ({@link #put(Object, Object, long)},
+ * {@link #remove(Object)}, {@link #clear()} and evictions) are done while
+ * holding that lock.
+ * <p>
+ * The eviction policy is a variant of W-TinyLFU: new entries enter a small
+ * LRU admission window (one percent of the cache size). An entry leaving the
+ * window is only admitted to the main LRU area if it has been used more
+ * frequently than the entry it would displace, as estimated by a compact
+ * count-min sketch that is periodically aged. This prevents one-off
+ * traversals, like a full tree walk or a garbage collection scan, from
+ * flushing the frequently used entries out of the cache.
+ */
+public class TinyLFUCache<K, V> extends KeyValueCache<K, V> {
+
+    /**
+     * Number of read buffer stripes. A power of two based on the number of
+     * available processors, see {@link ConcurrentCache} for the rationale
+     * of making this a constant.
+     */
+    private static final int NUMBER_OF_READ_BUFFERS =
+        ceilingPowerOfTwo(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Number of reads recorded per read buffer stripe before the buffers
+     * get drained.
+     */
+    private static final int READ_BUFFER_SIZE = 32;
+
+    /**
+     * Share of the maximum cache size that is used for the admission window.
+     */
+    private static final double WINDOW_RATIO = 0.01;
+
+    private static final class Node<K, V> {
+
+        private final K key;
+
+        private final V value;
+
+        private final long size;
+
+        /** Neighbours in the access ordered list, guarded by the lock. */
+        private Node<K, V> prev, next;
+
+        /** Whether the node is in the admission window, guarded by the lock. */
+        private boolean inWindow;
+
+        /**
+         * Whether the node is still part of the cache. Read buffers may
+         * contain nodes that have been removed in the meantime.
+         */
+        private volatile boolean alive;
+
+        public Node(K key, V value, long size) {
+            this.key = key;
+            this.value = value;
+            this.size = size;
+        }
+
+    }
+
+    private final String name;
+
+    private final ConcurrentHashMap<K, Node<K, V>> map;
+
+    /**
+     * Lock guarding the access ordered lists, the frequency sketch and all
+     * structural modifications of the cache.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Sentinel of the access ordered admission window list. */
+    private final Node<K, V> window = createSentinel();
+
+    /** Sentinel of the access ordered main list. */
+    private final Node<K, V> main = createSentinel();
+
+    /** Total size of the entries in the admission window. */
+    private long windowSize;
+
+    /** Access frequency estimates, guarded by the lock. */
+    private FrequencySketch sketch = new FrequencySketch(16);
+
+    private final AtomicReferenceArray<Node<K, V>>[] readBuffers;
+
+    private final AtomicInteger[] readBufferCounts;
+
+    @SuppressWarnings("unchecked")
+    public TinyLFUCache(String name) {
+        this.name = name;
+        this.map = new ConcurrentHashMap<K, Node<K, V>>(
+                16, 0.75f, NUMBER_OF_READ_BUFFERS);
+        this.readBuffers = new AtomicReferenceArray[NUMBER_OF_READ_BUFFERS];
+        this.readBufferCounts = new AtomicInteger[NUMBER_OF_READ_BUFFERS];
+        for (int i = 0; i < NUMBER_OF_READ_BUFFERS; i++) {
+            readBuffers[i] =
+                new AtomicReferenceArray<Node<K, V>>(READ_BUFFER_SIZE);
+            readBufferCounts[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Called when the given entry is evicted from the cache because the
+     * cache has grown too big. Note that this method is called while the
+     * eviction lock is being held, so implementations should return quickly.
+     * The default implementation does nothing.
+     *
+     * @param key key of the evicted entry
+     * @param value value of the evicted entry
+     */
+    protected void entryEvicted(K key, V value) {
+    }
+
+    /**
+     * Checks if the identified entry is cached.
+     *
+     * @param key entry key
+     * @return <code>true</code> if the entry is cached,
+     *         <code>false</code> otherwise
+     */
+    public boolean containsKey(K key) {
+        return map.containsKey(key);
+    }
+
+    /**
+     * Returns the identified cache entry. This method does not acquire
+     * any locks unless the read buffers are full and the eviction lock
+     * happens to be available for draining them.
+     *
+     * @param key entry key
+     * @return entry value, or <code>null</code> if not found
+     */
+    public V get(K key) {
+        recordCacheAccess();
+
+        Node<K, V> node = map.get(key);
+        if (node != null) {
+            recordRead(node);
+            return node.value;
+        }
+        recordCacheMiss();
+        return null;
+    }
+
+    /**
+     * Returns all values in the cache. The result is only guaranteed to be
+     * accurate when there are no concurrent threads modifying the cache.
+     *
+     * @return cached values
+     */
+    public List<V> values() {
+        List<V> values = new ArrayList<V>();
+        for (Node<K, V> node : map.values()) {
+            values.add(node.value);
+        }
+        return values;
+    }
+
+    /**
+     * Adds the given entry to the cache.
+     *
+     * @param key entry key
+     * @param value entry value
+     * @param size entry size
+     * @return the previous value, or <code>null</code>
+     */
+    public V put(K key, V value, long size) {
+        Node<K, V> node = new Node<K, V>(key, value, size);
+        lock.lock();
+        try {
+            drainReadBuffers();
+
+            Node<K, V> previous = map.put(key, node);
+            if (previous != null) {
+                unlink(previous);
+                recordSizeChange(-previous.size);
+            }
+            if (map.size() > sketch.getCapacity()) {
+                growSketch(map.size());
+            }
+            sketch.increment(key.hashCode());
+
+            node.alive = true;
+            node.inWindow = true;
+            linkLast(window, node);
+            windowSize += size;
+            recordSizeChange(size);
+
+            evictIfNeeded();
+
+            if (previous != null) {
+                return previous.value;
+            } else {
+                return null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the identified entry from the cache.
+     *
+     * @param key entry key
+     * @return removed entry, or <code>null</code> if not found
+     */
+    public V remove(K key) {
+        lock.lock();
+        try {
+            Node<K, V> node = map.remove(key);
+            if (node != null) {
+                unlink(node);
+                recordSizeChange(-node.size);
+                return node.value;
+            } else {
+                return null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            clear(window);
+            clear(main);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks if the cache size is zero.
+     */
+    public boolean isEmpty() {
+        return getMemoryUsed() == 0;
+    }
+
+    /**
+     * Sets the maximum size of the cache and evicts any excess items until
+     * the current size falls within the given limit.
+     */
+    @Override
+    public void setMaxMemorySize(long size) {
+        super.setMaxMemorySize(size);
+        lock.lock();
+        try {
+            evictIfNeeded();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getElementCount() {
+        return map.size();
+    }
+
+    @Override
+    public String toString() {
+        return name + "[" + getClass().getSimpleName() + "@"
+                + Integer.toHexString(hashCode()) + "]";
+    }
+
+    //-------------------------------------------------------------< private >
+
+    /**
+     * Records a cache hit in the read buffer of the current thread. When
+     * the buffer is full the read is dropped, and the buffers are drained
+     * if the eviction lock is available. The buffer count never exceeds
+     * the buffer size, so it can not overflow while the buffers are not
+     * drained.
+     */
+    private void recordRead(Node<K, V> node) {
+        int stripe = (int) Thread.currentThread().getId()
+                & (NUMBER_OF_READ_BUFFERS - 1);
+        AtomicInteger count = readBufferCounts[stripe];
+        int index;
+        do {
+            index = count.get();
+            if (index >= READ_BUFFER_SIZE) {
+                if (lock.tryLock()) {
+                    try {
+                        drainReadBuffers();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                return;
+            }
+        } while (!count.compareAndSet(index, index + 1));
+        readBuffers[stripe].lazySet(index, node);
+    }
+
+    /**
+     * Replays the recorded reads: each read increments the estimated
+     * frequency of the entry and moves it to the most recently used end
+     * of its list. Must be called while holding the lock.
+     */
+    private void drainReadBuffers() {
+        for (int i = 0; i < NUMBER_OF_READ_BUFFERS; i++) {
+            AtomicReferenceArray<Node<K, V>> buffer = readBuffers[i];
+            int count = Math.min(
+                    readBufferCounts[i].get(), READ_BUFFER_SIZE);
+            for (int j = 0; j < count; j++) {
+                Node<K, V> node = buffer.getAndSet(j, null);
+                if (node != null && node.alive) {
+                    sketch.increment(node.key.hashCode());
+                    unlinkFromList(node);
+                    linkLast(node.inWindow ? window : main, node);
+                }
+            }
+            readBufferCounts[i].set(0);
+        }
+    }
+
+    /**
+     * Moves entries that overflow the admission window to the main area
+     * and evicts entries until the cache is small enough. An entry leaving
+     * the window replaces the least recently used entry of the main area
+     * only if its estimated access frequency is higher. Must be called
+     * while holding the lock.
+     */
+    private void evictIfNeeded() {
+        long windowMax = Math.max(
+                1, (long) (getMaxMemorySize() * WINDOW_RATIO));
+        while (windowSize > windowMax && window.next != window) {
+            Node<K, V> candidate = window.next;
+            unlinkFromList(candidate);
+            candidate.inWindow = false;
+            windowSize -= candidate.size;
+
+            Node<K, V> victim = main.next;
+            if (isTooBig() && victim != main) {
+                int candidateFrequency = sketch.frequency(candidate.key.hashCode());
+                int victimFrequency = sketch.frequency(victim.key.hashCode());
+                if (candidateFrequency > victimFrequency) {
+                    evict(victim);
+                    linkLast(main, candidate);
+                } else {
+                    // link the candidate only to evict it consistently
+                    linkLast(main, candidate);
+                    evict(candidate);
+                }
+            } else {
+                linkLast(main, candidate);
+            }
+        }
+        while (isTooBig()) {
+            if (main.next != main) {
+                evict(main.next);
+            } else if (window.next != window) {
+                evict(window.next);
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Replaces the frequency sketch with a larger one. The estimated
+     * frequencies of the cached entries are carried over, so that the
+     * frequently used entries keep their advantage over new entries.
+     * Must be called while holding the lock.
+     */
+    private void growSketch(int capacity) {
+        FrequencySketch grown = new FrequencySketch(capacity);
+        for (Node<K, V> head : Arrays.asList(window, main)) {
+            for (Node<K, V> node = head.next; node != head; node = node.next) {
+                int hash = node.key.hashCode();
+                for (int i = sketch.frequency(hash); i > 0; i--) {
+                    grown.increment(hash);
+                }
+            }
+        }
+        sketch = grown;
+    }
+
+    private void clear(Node<K, V> head) {
+        while (head.next != head) {
+            Node<K, V> node = head.next;
+            map.remove(node.key, node);
+            unlink(node);
+            recordSizeChange(-node.size);
+        }
+    }
+
+    private void evict(Node<K, V> node) {
+        map.remove(node.key, node);
+        unlink(node);
+        recordSizeChange(-node.size);
+        entryEvicted(node.key, node.value);
+    }
+
+    /**
+     * Removes the given node from its list and marks it as no longer
+     * being part of the cache.
+     */
+    private void unlink(Node<K, V> node) {
+        node.alive = false;
+        if (node.prev != null) {
+            if (node.inWindow) {
+                windowSize -= node.size;
+            }
+            unlinkFromList(node);
+        }
+    }
+
+    private static <K, V> void unlinkFromList(Node<K, V> node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+    }
+
+    private static <K, V> void linkLast(Node<K, V> head, Node<K, V> node) {
+        node.prev = head.prev;
+        node.next = head;
+        head.prev.next = node;
+        head.prev = node;
+    }
+
+    private static <K, V> Node<K, V> createSentinel() {
+        Node<K, V> sentinel = new Node<K, V>(null, null, 0);
+        sentinel.prev = sentinel;
+        sentinel.next = sentinel;
+        return sentinel;
+    }
+
+    private static int ceilingPowerOfTwo(int x) {
+        int n = 1;
+        while (n < x && n < (1 << 30)) {
+            n <<= 1;
+        }
+        return n;
+    }
+
+    /**
+     * A count-min sketch with four bit counters that estimates how often
+     * a key has been used recently. Each key maps to four counters in
+     * different table slots and the minimum of them is the estimate. Once
+     * the number of increments reaches ten times the table capacity, all
+     * counters are halved so that the history fades over time. This class
+     * is not thread-safe, it is only used while holding the cache lock.
+     */
+    static final class FrequencySketch {
+
+        private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+            0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+        private static final long RESET_MASK = 0x7777777777777777L;
+
+        private static final long ONE_MASK = 0x1111111111111111L;
+
+        private final long[] table;
+
+        private final int tableMask;
+
+        private final int sampleSize;
+
+        private int size;
+
+        /**
+         * Creates a sketch that can track at least the given number of keys.
+         * The table is sized with some headroom so that a growing cache
+         * does not need to replace its sketch too often.
+         */
+        FrequencySketch(int capacity) {
+            table = new long[ceilingPowerOfTwo(
+                    Math.max(Math.min(capacity, 1 << 28) * 2, 16))];
+            tableMask = table.length - 1;
+            sampleSize = 10 * table.length;
+        }
+
+        /**
+         * Returns the number of keys this sketch was sized for.
+         */
+        int getCapacity() {
+            return table.length;
+        }
+
+        /**
+         * Returns the estimated number of occurrences of the given key
+         * hash, up to a maximum of 15.
+         */
+        int frequency(int hashCode) {
+            int hash = spread(hashCode);
+            int start = (hash & 3) << 2;
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        /**
+         * Increments the counters of the given key hash, unless they
+         * have already reached the maximum.
+         */
+        void increment(int hashCode) {
+            int hash = spread(hashCode);
+            int start = (hash & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                added |= incrementAt(indexOf(hash, i), start + i);
+            }
+            if (added && ++size >= sampleSize) {
+                reset();
+            }
+        }
+
+        private boolean incrementAt(int index, int counter) {
+            int offset = counter << 2;
+            long mask = 0xfL << offset;
+            if ((table[index] & mask) != mask) {
+                table[index] += 1L << offset;
+                return true;
+            }
+            return false;
+        }
+
+        /** Halves all counters. */
+        private void reset() {
+            int odd = 0;
+            for (int i = 0; i < table.length; i++) {
+                odd += Long.bitCount(table[i] & ONE_MASK);
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            size = (size >>> 1) - (odd >>> 2);
+        }
+
+        private int indexOf(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return ((int) h) & tableMask;
+        }
+
+        private static int spread(int x) {
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return (x >>> 16) ^ x;
+        }
+
+    }
+
+}
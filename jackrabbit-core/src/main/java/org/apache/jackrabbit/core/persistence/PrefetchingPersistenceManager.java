@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.persistence;
+
+import java.util.Collection;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.state.ItemStateException;
+
+/**
+ * A caching persistence manager that can load a number of node states into
+ * its cache at once. The shared item state manager uses this to fetch the
+ * child nodes of a node with fewer round trips to the underlying storage,
+ * for example when iterating over the child nodes of a large folder.
+ */
+public interface PrefetchingPersistenceManager extends CachingPersistenceManager {
+
+    /**
+     * Loads the identified node states into the cache of this persistence
+     * manager, so that subsequent {@link PersistenceManager#load(NodeId)}
+     * calls for them are served from memory. Node states that are already
+     * cached are not loaded again, and identifiers of non-existent nodes
+     * are ignored.
+     *
+     * @param ids identifiers of the node states to load
+     * @throws ItemStateException if an error occurs while loading
+     */
+    void prefetch(Collection<NodeId> ids) throws ItemStateException;
+
+}
@@ -20,11 +20,20 @@ import static org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_MIXINTYPE
 import static org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_PRIMARYTYPE;
 import static org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_UUID;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jcr.PropertyType;
@@ -40,19 +49,23 @@ import org.apache.jackrabbit.core.fs.FileSystemResource;
 import org.apache.jackrabbit.core.id.ItemId;
 import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.id.PropertyId;
-import org.apache.jackrabbit.core.persistence.CachingPersistenceManager;
 import org.apache.jackrabbit.core.persistence.IterablePersistenceManager;
 import org.apache.jackrabbit.core.persistence.PMContext;
 import org.apache.jackrabbit.core.persistence.PersistenceManager;
+import org.apache.jackrabbit.core.persistence.PrefetchingPersistenceManager;
 import org.apache.jackrabbit.core.persistence.check.ConsistencyCheckListener;
 import org.apache.jackrabbit.core.persistence.check.ConsistencyChecker;
 import org.apache.jackrabbit.core.persistence.check.ConsistencyReport;
 import org.apache.jackrabbit.core.persistence.util.BLOBStore;
+import org.apache.jackrabbit.core.persistence.util.BundleBinding;
 import org.apache.jackrabbit.core.persistence.util.FileBasedIndex;
 import org.apache.jackrabbit.core.persistence.util.NodeInfo;
 import org.apache.jackrabbit.core.persistence.util.NodePropBundle;
+import org.apache.jackrabbit.core.persistence.util.NodePropBundle.ChildNodeEntry;
+import org.apache.jackrabbit.core.persistence.util.NodePropBundle.ChildNodePage;
 import org.apache.jackrabbit.core.persistence.util.NodePropBundle.PropertyEntry;
 import org.apache.jackrabbit.core.state.ChangeLog;
+import org.apache.jackrabbit.core.state.ChildNodeEntryPages;
 import org.apache.jackrabbit.core.state.ItemState;
 import org.apache.jackrabbit.core.state.ItemStateException;
 import org.apache.jackrabbit.core.state.NoSuchItemStateException;
@@ -89,13 +102,38 @@ import org.slf4j.LoggerFactory;
  * because a lot of {@link #exists(NodeId)} calls are issued that would result
  * in a useless persistence lookup if the desired bundle does not exist.
  * <p>
+ * Optionally, bundles evicted from the bundle cache can be kept in serialized
+ * form in an off-heap bundle cache, see {@link OffHeapBundleCache}. Its
+ * memory is allocated in a few large direct byte buffers when the cache is
+ * initialized. A miss in the bundle cache is then served by deserializing
+ * the bundle from off-heap memory instead of loading it from the underlying
+ * system. The off-heap cache is only used by persistence managers that
+ * provide a {@link #getBundleBinding() bundle binding}. Note that the JVM
+ * limits the amount of direct memory with the
+ * <code>-XX:MaxDirectMemorySize</code> option. If it is too small for the
+ * configured cache size, the cache uses the memory that could be allocated.
+ * <p>
+ * Persistence managers that provide a {@link #getChildNodePageStore() child
+ * node page store} can store the child node entries of large nodes in
+ * separate pages of at most
+ * {@link #setChildNodePageSize(String) childNodePageSize} entries. Adding or
+ * removing a child node then only rewrites the bundle, which contains a
+ * small table of the pages, and the affected page instead of the complete
+ * list of child node entries. The pages are not loaded with their bundle,
+ * and node states loaded from such bundles do not hold their child node
+ * entries either. The pages are loaded when the entries are accessed, and
+ * are kept in a separate page cache as long as their bundle is cached.
+ * <p>
  * Configuration:<br>
  * <ul>
  * <li>&lt;param name="{@link #setBundleCacheSize(String) bundleCacheSize}" value="8"/>
+ * <li>&lt;param name="{@link #setOffHeapBundleCacheSize(String) offHeapBundleCacheSize}" value="0"/>
+ * <li>&lt;param name="{@link #setChildNodePageSize(String) childNodePageSize}" value="0"/>
+ * <li>&lt;param name="{@link #setChildNodePageCacheSize(String) childNodePageCacheSize}" value="8"/>
  * </ul>
  */
 public abstract class AbstractBundlePersistenceManager implements
-    PersistenceManager, CachingPersistenceManager, IterablePersistenceManager, CacheAccessListener, ConsistencyChecker {
+    PersistenceManager, PrefetchingPersistenceManager, IterablePersistenceManager, CacheAccessListener, ConsistencyChecker {
 
     /** the audit logger */
     private static Logger auditLogger = LoggerFactory.getLogger("org.apache.jackrabbit.core.audit");
@@ -127,6 +165,25 @@ public abstract class AbstractBundlePersistenceManager implements
      */
     private static final long MISSING_SIZE_ESTIMATE = 128;
 
+    /**
+     * The size estimate for a cached child node page, not including its
+     * entries. The sum of:
+     * - ConcurrentCache.E: 32 bytes
+     * - LinkedHashMap.Entry: 64 bytes
+     * - ChildNodePageKey: 24 bytes
+     * - ArrayList: 40 bytes
+     */
+    private static final long PAGE_SIZE_ESTIMATE = 160;
+
+    /**
+     * The size estimate for an entry of a cached child node page. The sum of:
+     * - NodePropBundle.ChildNodeEntry: 24 bytes
+     * - NodeId: 32 bytes
+     * - Name: 48 bytes, often shared with other entries
+     * - ArrayList element: 8 bytes
+     */
+    private static final long PAGE_ENTRY_SIZE_ESTIMATE = 112;
+
     /** the index for namespaces */
     private StringIndex nsIndex;
 
@@ -136,6 +193,34 @@ public abstract class AbstractBundlePersistenceManager implements
     /** the cache of loaded bundles */
     private ConcurrentCache<NodeId, NodePropBundle> bundles;
 
+    /**
+     * the off-heap cache of serialized bundles evicted from the bundle cache,
+     * or <code>null</code> if disabled
+     */
+    private OffHeapBundleCache offHeapBundles;
+
+    /**
+     * the bundles evicted from the bundle cache that are yet to be written
+     * to the off-heap bundle cache. They are serialized by the thread that
+     * caused the eviction, once it no longer holds the lock of the cache
+     * segment.
+     */
+    private final Queue<EvictedBundle> evictedBundles =
+        new ConcurrentLinkedQueue<EvictedBundle>();
+
+    /**
+     * the cache of loaded child node pages. A page is only cached while
+     * its bundle is in the bundle cache.
+     */
+    private ConcurrentCache<ChildNodePageKey, List<ChildNodeEntry>> childNodePageCache;
+
+    /**
+     * Number of started and completed updates of persisted bundles, and of
+     * bundle cache evictions caused by them. Used by {@link #prefetch(Collection)}
+     * to detect updates that may have made the prefetched bundles outdated.
+     */
+    private final AtomicLong bundleUpdates = new AtomicLong();
+
     /** The default minimum stats logging interval (in ms). */
     private static final int DEFAULT_LOG_STATS_INTERVAL = 60 * 1000;
 
@@ -154,6 +239,15 @@ public abstract class AbstractBundlePersistenceManager implements
     /** default size of the bundle cache */
     private long bundleCacheSize = 8 * 1024 * 1024;
 
+    /** size of the off-heap bundle cache, disabled by default */
+    private long offHeapBundleCacheSize = 0;
+
+    /** maximum number of child node entries per page, disabled by default */
+    private int childNodePageSize = 0;
+
+    /** default size of the child node page cache */
+    private long childNodePageCacheSize = 8 * 1024 * 1024;
+
     /** Counter of read operations. */
     private AtomicLong readCounter;
 
@@ -175,6 +269,15 @@ public abstract class AbstractBundlePersistenceManager implements
     /** Counter of bundle cache size. */
     private AtomicLong cacheSizeCounter;
 
+    /** Counter of off-heap bundle cache hits. */
+    private AtomicLong offHeapCacheHitCounter;
+
+    /** Counter of off-heap bundle cache misses. */
+    private AtomicLong offHeapCacheMissCounter;
+
+    /** Counter of off-heap bundle cache size. */
+    private AtomicLong offHeapCacheSizeCounter;
+
     /** The update event channel to use by the consistency checker when fixing inconsistencies */
     private UpdateEventChannel eventChannel;
 
@@ -196,6 +299,75 @@ public abstract class AbstractBundlePersistenceManager implements
         this.bundleCacheSize = Long.parseLong(bundleCacheSize) * 1024 * 1024;
     }
 
+    /**
+     * Returns the size of the off-heap bundle cache in megabytes.
+     * @return the size of the off-heap bundle cache in megabytes.
+     */
+    public String getOffHeapBundleCacheSize() {
+        return String.valueOf(offHeapBundleCacheSize / (1024 * 1024));
+    }
+
+    /**
+     * Sets the size of the off-heap bundle cache in megabytes.
+     * the default is 0, which disables the off-heap bundle cache.
+     *
+     * @param offHeapBundleCacheSize the off-heap bundle cache size in megabytes.
+     */
+    public void setOffHeapBundleCacheSize(String offHeapBundleCacheSize) {
+        this.offHeapBundleCacheSize =
+            Long.parseLong(offHeapBundleCacheSize) * 1024 * 1024;
+    }
+
+    /**
+     * Returns the maximum number of child node entries per page.
+     * @return the maximum number of child node entries per page.
+     */
+    public String getChildNodePageSize() {
+        return String.valueOf(childNodePageSize);
+    }
+
+    /**
+     * Sets the maximum number of child node entries per page. The child
+     * node entries of a bundle with more entries are stored in separate
+     * pages, if supported by the persistence manager. They are stored
+     * within the bundle again once the number of entries drops to half the
+     * page size. The default is 0, which disables child node pages.
+     *
+     * @param childNodePageSize the maximum number of entries per page.
+     */
+    public void setChildNodePageSize(String childNodePageSize) {
+        this.childNodePageSize = Integer.parseInt(childNodePageSize);
+    }
+
+    /**
+     * Returns the size of the child node page cache in megabytes.
+     * @return the size of the child node page cache in megabytes.
+     */
+    public String getChildNodePageCacheSize() {
+        return String.valueOf(childNodePageCacheSize / (1024 * 1024));
+    }
+
+    /**
+     * Sets the size of the child node page cache in megabytes.
+     * the default is 8.
+     *
+     * @param childNodePageCacheSize the child node page cache size in megabytes.
+     */
+    public void setChildNodePageCacheSize(String childNodePageCacheSize) {
+        this.childNodePageCacheSize =
+            Long.parseLong(childNodePageCacheSize) * 1024 * 1024;
+    }
+
+    /**
+     * Returns <code>true</code> if the child node entries of large nodes
+     * are stored in separate pages.
+     *
+     * @return <code>true</code> if child node pages are enabled
+     */
+    protected boolean useChildNodePages() {
+        return childNodePageSize > 0;
+    }
+
     /**
      * Creates the folder path for the given node id that is suitable for
      * storing states in a filesystem.
@@ -351,14 +523,78 @@ public abstract class AbstractBundlePersistenceManager implements
      */
     public synchronized void onExternalUpdate(ChangeLog changes) {
         for (ItemState state : changes.modifiedStates()) {
-            bundles.remove(getBundleId(state));
+            evictBundle(getBundleId(state));
         }
         for (ItemState state : changes.deletedStates()) {
-            bundles.remove(getBundleId(state));
+            evictBundle(getBundleId(state));
         }
         for (ItemState state : changes.addedStates()) {
             // There may have been a cache miss entry
-            bundles.remove(getBundleId(state));
+            evictBundle(getBundleId(state));
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Loads all bundles that are not yet cached with a single
+     * {@link #loadBundles(Collection)} call. This method does not hold
+     * the monitor of this persistence manager while the bundles are
+     * loaded. A loaded bundle is only added to the cache if the cache
+     * does not contain it yet, so it can not replace a bundle cached by
+     * a concurrent {@link #store(ChangeLog) update}. If an update starts
+     * or ends, or a bundle is evicted, while bundles are prefetched, the
+     * prefetched bundles are removed from the cache again, as they may
+     * be outdated.
+     */
+    public void prefetch(Collection<NodeId> ids) throws ItemStateException {
+        long updates = bundleUpdates.get();
+        List<NodeId> cached = new ArrayList<NodeId>();
+        List<NodeId> missing = new ArrayList<NodeId>();
+        for (NodeId id : ids) {
+            if (!bundles.containsKey(id)) {
+                NodePropBundle bundle = getOffHeapBundle(id);
+                if (bundle != null) {
+                    bundle.markOld();
+                    if (bundles.putIfAbsent(id, bundle, bundle.getSize()) == null) {
+                        cached.add(id);
+                    }
+                } else {
+                    missing.add(id);
+                }
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            long time = System.nanoTime();
+            log.debug("Loading {} bundles", missing.size());
+            Map<NodeId, NodePropBundle> loaded = loadBundles(missing);
+            cacheMissDuration.addAndGet(System.nanoTime() - time);
+            cacheMissCounter.addAndGet(missing.size());
+            for (NodeId id : missing) {
+                NodePropBundle bundle = loaded.get(id);
+                NodePropBundle previous;
+                if (bundle != null) {
+                    bundle.markOld();
+                    previous = bundles.putIfAbsent(id, bundle, bundle.getSize());
+                } else {
+                    previous = bundles.putIfAbsent(id, MISSING, MISSING_SIZE_ESTIMATE);
+                }
+                if (previous == null) {
+                    cached.add(id);
+                }
+            }
+        }
+
+        spillEvictedBundles();
+
+        if (bundleUpdates.get() != updates) {
+            for (NodeId id : cached) {
+                NodePropBundle bundle = bundles.remove(id);
+                if (bundle != null) {
+                    evictChildNodePages(bundle);
+                }
+            }
         }
     }
 
@@ -375,9 +611,19 @@ public abstract class AbstractBundlePersistenceManager implements
     @Override
     public Map<NodeId, NodeInfo> getAllNodeInfos(NodeId after, int maxCount)
             throws ItemStateException, RepositoryException {
+        List<NodeId> ids = getAllNodeIds(after, maxCount);
+        Map<NodeId, NodePropBundle> loaded = loadBundles(ids);
+        List<NodePropBundle> bundles = new ArrayList<NodePropBundle>(ids.size());
+        for (NodeId id : ids) {
+            NodePropBundle bundle = loaded.get(id);
+            if (bundle != null) {
+                bundles.add(bundle);
+            }
+        }
+        bundles = readChildNodeEntries(bundles);
         Map<NodeId, NodeInfo> infos = new LinkedHashMap<NodeId, NodeInfo>();
-        for (NodeId nodeId : getAllNodeIds(after, maxCount)) {
-            infos.put(nodeId, new NodeInfo(loadBundle(nodeId)));
+        for (NodePropBundle bundle : bundles) {
+            infos.put(bundle.getId(), new NodeInfo(bundle));
         }
         return infos;
     }
@@ -395,6 +641,30 @@ public abstract class AbstractBundlePersistenceManager implements
     protected abstract NodePropBundle loadBundle(NodeId id)
             throws ItemStateException;
 
+    /**
+     * Loads a number of bundles from the underlying system. The default
+     * implementation calls {@link #loadBundle(NodeId)} for each of the
+     * given ids. Subclasses should override this method if the underlying
+     * system can load many bundles more efficiently at once.
+     *
+     * @param ids the node ids of the bundles
+     * @return the loaded bundles, keyed by node id. Bundles that do not
+     *         exist are not included.
+     * @throws ItemStateException if an error while loading occurs.
+     */
+    protected Map<NodeId, NodePropBundle> loadBundles(Collection<NodeId> ids)
+            throws ItemStateException {
+        Map<NodeId, NodePropBundle> result =
+            new HashMap<NodeId, NodePropBundle>();
+        for (NodeId id : ids) {
+            NodePropBundle bundle = loadBundle(id);
+            if (bundle != null) {
+                result.put(id, bundle);
+            }
+        }
+        return result;
+    }
+
     /**
      * Stores a bundle to the underlying system.
      *
@@ -432,6 +702,33 @@ public abstract class AbstractBundlePersistenceManager implements
     protected abstract void store(NodeReferences refs)
             throws ItemStateException;
 
+    /**
+     * Called after all bundles and node references of a change log have
+     * been passed to the store and destroy methods above. Implementations
+     * that defer these writes, for example to send them to the underlying
+     * system in batches, must complete them here. The default
+     * implementation does nothing.
+     *
+     * @throws ItemStateException if an error while storing occurs.
+     */
+    protected void flushChanges() throws ItemStateException {
+    }
+
+    /**
+     * Returns the store of the child node pages of this persistence
+     * manager. Subclasses that return a store must provide a
+     * {@link #getBundleBinding() bundle binding} and call
+     * {@link #writeChildNodePages(NodePropBundle)} and
+     * {@link #destroyChildNodePages(NodePropBundle)} when storing and
+     * destroying bundles. The default implementation returns
+     * <code>null</code>, which disables child node pages.
+     *
+     * @return child node page store, or <code>null</code>
+     */
+    protected ChildNodePageStore getChildNodePageStore() {
+        return null;
+    }
+
     /**
      * Returns the BLOB store used by this persistence manager.
      *
@@ -439,6 +736,17 @@ public abstract class AbstractBundlePersistenceManager implements
      */
     protected abstract BLOBStore getBlobStore();
 
+    /**
+     * Returns the bundle binding used to serialize bundles into the off-heap
+     * bundle cache and child node pages. The default implementation returns
+     * <code>null</code>, which disables the off-heap bundle cache.
+     *
+     * @return bundle binding, or <code>null</code>
+     */
+    protected BundleBinding getBundleBinding() {
+        return null;
+    }
+
     //-------------------------------------------------< PersistenceManager >---
 
     /**
@@ -449,9 +757,21 @@ public abstract class AbstractBundlePersistenceManager implements
     public void init(PMContext context) throws Exception {
         this.context = context;
         // init bundle cache
-        bundles = new ConcurrentCache<NodeId, NodePropBundle>(context.getHomeDir().getName() + "BundleCache");
+        bundles = new ConcurrentCache<NodeId, NodePropBundle>(context.getHomeDir().getName() + "BundleCache") {
+            @Override
+            protected void entryEvicted(NodeId id, NodePropBundle bundle) {
+                evictChildNodePages(bundle);
+                if (offHeapBundles != null && bundle != MISSING) {
+                    evictedBundles.add(new EvictedBundle(
+                            bundle, offHeapBundles.getStamp(id)));
+                }
+            }
+        };
         bundles.setMaxMemorySize(bundleCacheSize);
         bundles.setAccessListener(this);
+        childNodePageCache = new ConcurrentCache<ChildNodePageKey, List<ChildNodeEntry>>(
+                context.getHomeDir().getName() + "ChildNodePageCache");
+        childNodePageCache.setMaxMemorySize(childNodePageCacheSize);
 
         // statistics
         RepositoryStatisticsImpl stats = context.getRepositoryStatistics();
@@ -469,6 +789,33 @@ public abstract class AbstractBundlePersistenceManager implements
                 RepositoryStatistics.Type.BUNDLE_CACHE_MISS_COUNTER);
         cacheMissDuration = stats.getCounter(
                 RepositoryStatistics.Type.BUNDLE_CACHE_MISS_DURATION);
+        offHeapCacheHitCounter = stats.getCounter(
+                RepositoryStatistics.Type.BUNDLE_OFFHEAP_CACHE_HIT_COUNTER);
+        offHeapCacheMissCounter = stats.getCounter(
+                RepositoryStatistics.Type.BUNDLE_OFFHEAP_CACHE_MISS_COUNTER);
+        offHeapCacheSizeCounter = stats.getCounter(
+                RepositoryStatistics.Type.BUNDLE_OFFHEAP_CACHE_SIZE_COUNTER);
+
+        if (childNodePageSize > 0 && getChildNodePageStore() == null) {
+            log.warn("{} does not support child node pages, ignoring"
+                    + " childNodePageSize={}",
+                    getClass().getName(), childNodePageSize);
+            childNodePageSize = 0;
+        }
+    }
+
+    /**
+     * Initializes the off-heap bundle cache if it is enabled and supported
+     * by this persistence manager. Subclasses that provide a
+     * {@link #getBundleBinding() bundle binding} should call this method
+     * once the binding has been created.
+     */
+    protected void initOffHeapBundleCache() {
+        if (offHeapBundleCacheSize > 0 && getBundleBinding() != null) {
+            offHeapBundles = new OffHeapBundleCache(
+                    context.getHomeDir().getName() + "OffHeapBundleCache",
+                    offHeapBundleCacheSize);
+        }
     }
 
     /**
@@ -479,6 +826,10 @@ public abstract class AbstractBundlePersistenceManager implements
     public void close() throws Exception {
         // clear caches
         bundles.clear();
+        childNodePageCache.clear();
+        if (offHeapBundles != null) {
+            offHeapBundles.clear();
+        }
     }
 
     /**
@@ -491,7 +842,12 @@ public abstract class AbstractBundlePersistenceManager implements
         if (bundle == null) {
             throw new NoSuchItemStateException(id.toString());
         }
-        return bundle.createNodeState(this);
+        NodeState state = bundle.createNodeState(this);
+        if (!bundle.isChildNodeEntriesLoaded()) {
+            state.setChildNodeEntryPages(
+                    new BundleChildNodePages(id, bundle.getChildNodePages()));
+        }
+        return state;
     }
 
     /**
@@ -589,12 +945,25 @@ public abstract class AbstractBundlePersistenceManager implements
     public synchronized void store(ChangeLog changeLog)
             throws ItemStateException {
         boolean success = false;
+        bundleUpdates.incrementAndGet();
         try {
-            storeInternal(changeLog);
+            Map<NodeState, NodePropBundle> paged = storeInternal(changeLog);
+            // the stored node states no longer need to hold the entries
+            // that were written to child node pages
+            for (Map.Entry<NodeState, NodePropBundle> entry : paged.entrySet()) {
+                NodePropBundle bundle = entry.getValue();
+                entry.getKey().setChildNodeEntryPages(new BundleChildNodePages(
+                        bundle.getId(), bundle.getChildNodePages()));
+            }
             success = true;
         } finally {
+            bundleUpdates.incrementAndGet();
             if (!success) {
                 bundles.clear();
+                childNodePageCache.clear();
+                if (offHeapBundles != null) {
+                    offHeapBundles.clear();
+                }
             }
         }
     }
@@ -603,9 +972,11 @@ public abstract class AbstractBundlePersistenceManager implements
      * Stores the given changelog and updates the bundle cache.
      *
      * @param changeLog the changelog to store
+     * @return the stored node states whose child node entries were written
+     *         to child node pages, with their bundles
      * @throws ItemStateException on failure
      */
-    private void storeInternal(ChangeLog changeLog)
+    private Map<NodeState, NodePropBundle> storeInternal(ChangeLog changeLog)
             throws ItemStateException {
         // delete bundles
         HashSet<ItemId> deleted = new HashSet<ItemId>();
@@ -717,6 +1088,15 @@ public abstract class AbstractBundlePersistenceManager implements
         }
         changeLog.setUpdateSize(updateSize);
 
+        Map<NodeState, NodePropBundle> paged =
+            new HashMap<NodeState, NodePropBundle>();
+        for (ItemState state : changeLog.addedStates()) {
+            addPagedState(state, modified, paged);
+        }
+        for (ItemState state : changeLog.modifiedStates()) {
+            addPagedState(state, modified, paged);
+        }
+
         // store the refs
         for (NodeReferences refs : changeLog.modifiedRefs()) {
             if (refs.hasReferences()) {
@@ -725,6 +1105,28 @@ public abstract class AbstractBundlePersistenceManager implements
                 destroy(refs);
             }
         }
+
+        flushChanges();
+        return paged;
+    }
+
+    /**
+     * Adds the given node state and its stored bundle to the given map, if
+     * the child node entries of the bundle were written to child node pages.
+     *
+     * @param state a stored item state
+     * @param modified the stored bundles, keyed by node id
+     * @param paged the map to add to
+     */
+    private static void addPagedState(
+            ItemState state, Map<ItemId, NodePropBundle> modified,
+            Map<NodeState, NodePropBundle> paged) {
+        if (state.isNode()) {
+            NodePropBundle bundle = modified.get(state.getId());
+            if (bundle != null && !bundle.isChildNodeEntriesLoaded()) {
+                paged.put((NodeState) state, bundle);
+            }
+        }
     }
 
     /**
@@ -762,9 +1164,17 @@ public abstract class AbstractBundlePersistenceManager implements
      */
     private NodePropBundle getBundleCacheMiss(NodeId id)
             throws ItemStateException {
+        NodePropBundle bundle = getOffHeapBundle(id);
+        if (bundle != null) {
+            bundle.markOld();
+            bundles.put(id, bundle, bundle.getSize());
+            spillEvictedBundles();
+            return bundle;
+        }
+
         long time = System.nanoTime();
         log.debug("Loading bundle {}", id);
-        NodePropBundle bundle = loadBundle(id);
+        bundle = loadBundle(id);
         cacheMissDuration.addAndGet(System.nanoTime() - time);
         cacheMissCounter.incrementAndGet();
         if (bundle != null) {
@@ -773,9 +1183,571 @@ public abstract class AbstractBundlePersistenceManager implements
         } else {
             bundles.put(id, MISSING, MISSING_SIZE_ESTIMATE);
         }
+        spillEvictedBundles();
         return bundle;
     }
 
+    /**
+     * Removes the identified bundle from the off-heap bundle cache and
+     * deserializes it. The bundle is put back into the off-heap cache
+     * once it gets evicted from the bundle cache again.
+     *
+     * @param id the id of the bundle
+     * @return the bundle, or <code>null</code> if the off-heap bundle cache
+     *         is disabled or does not contain the bundle
+     */
+    private NodePropBundle getOffHeapBundle(NodeId id) {
+        if (offHeapBundles == null) {
+            return null;
+        }
+        byte[] data = offHeapBundles.take(id);
+        if (data == null) {
+            offHeapCacheMissCounter.incrementAndGet();
+            return null;
+        }
+        try {
+            NodePropBundle bundle = getBundleBinding().readBundle(
+                    new ByteArrayInputStream(data), id);
+            offHeapCacheHitCounter.incrementAndGet();
+            return bundle;
+        } catch (IOException e) {
+            log.warn("Unable to read bundle " + id
+                    + " from the off-heap bundle cache", e);
+            offHeapCacheMissCounter.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Serializes the bundles evicted from the bundle cache into the off-heap
+     * bundle cache. Called after each change of the bundle cache, outside of
+     * its locks.
+     */
+    private void spillEvictedBundles() {
+        EvictedBundle evicted = evictedBundles.poll();
+        while (evicted != null) {
+            spillBundle(evicted.bundle, evicted.stamp);
+            evicted = evictedBundles.poll();
+        }
+    }
+
+    /**
+     * Serializes the given bundle evicted from the bundle cache into the
+     * off-heap bundle cache, unless it was removed from the off-heap cache
+     * since its eviction.
+     *
+     * @param bundle the evicted bundle
+     * @param stamp the off-heap stamp of the bundle taken on eviction
+     */
+    private void spillBundle(NodePropBundle bundle, long stamp) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+        try {
+            getBundleBinding().writeBundle(out, bundle);
+        } catch (IOException e) {
+            log.warn("Unable to write bundle " + bundle.getId()
+                    + " to the off-heap bundle cache", e);
+            return;
+        }
+        offHeapBundles.put(
+                bundle.getId(), out.toByteArray(), out.size(), stamp);
+    }
+
+    /**
+     * Reads the child node entries of the given bundles from their child
+     * node pages, unless they are already loaded. The pages that are not
+     * cached are loaded with a single call to the
+     * {@link #getChildNodePageStore() child node page store}. The bundles
+     * must not be in the bundle cache, which only holds bundles whose
+     * entries were not loaded from their pages.
+     * <p>
+     * A bundle and its pages are loaded with separate calls, so the pages
+     * may have been stored by a concurrent update in between. A bundle
+     * whose pages do not match its page table is therefore loaded again
+     * together with its pages once no update is being stored.
+     *
+     * @param bundles the bundles
+     * @return the bundles, in the same order, with the bundles that had
+     *         to be loaded again replaced. Bundles that no longer exist
+     *         are left out.
+     * @throws ItemStateException if a page can not be loaded or parsed, or
+     *                            does not match its bundle
+     */
+    protected List<NodePropBundle> readChildNodeEntries(
+            List<NodePropBundle> bundles) throws ItemStateException {
+        Set<NodeId> stale = new HashSet<NodeId>();
+        Map<NodeId, List<ChildNodeEntry>> entries =
+            getChildNodeEntries(bundles, stale);
+        List<NodePropBundle> result =
+            new ArrayList<NodePropBundle>(bundles.size());
+        for (NodePropBundle bundle : bundles) {
+            if (stale.contains(bundle.getId())) {
+                synchronized (this) {
+                    bundle = loadBundle(bundle.getId());
+                    if (bundle != null) {
+                        entries.putAll(getChildNodeEntries(
+                                Collections.singletonList(bundle), null));
+                    }
+                }
+                if (bundle == null) {
+                    continue;
+                }
+            }
+            List<ChildNodeEntry> list = entries.get(bundle.getId());
+            if (list != null && !bundle.isChildNodeEntriesLoaded()) {
+                bundle.getChildNodeEntries().addAll(list);
+                bundle.setChildNodeEntriesLoaded(true);
+            }
+            result.add(bundle);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the child node entries of those of the given bundles whose
+     * entries are stored in child node pages that were not loaded with the
+     * bundle. The pages are taken from the page cache, and all other pages
+     * are loaded at once.
+     *
+     * @param bundles the bundles
+     * @param stale the set to add the ids of the bundles to whose pages do
+     *              not match their page table, or <code>null</code> to fail
+     *              on such pages
+     * @return the child node entries, keyed by node id
+     * @throws ItemStateException if a page can not be loaded or parsed
+     */
+    private Map<NodeId, List<ChildNodeEntry>> getChildNodeEntries(
+            Collection<NodePropBundle> bundles, Set<NodeId> stale)
+            throws ItemStateException {
+        Map<ChildNodePageKey, List<ChildNodeEntry>> cached =
+            new HashMap<ChildNodePageKey, List<ChildNodeEntry>>();
+        Map<NodeId, Collection<Integer>> missing =
+            new HashMap<NodeId, Collection<Integer>>();
+        for (NodePropBundle bundle : bundles) {
+            if (bundle.isChildNodeEntriesLoaded()) {
+                continue;
+            }
+            NodeId id = bundle.getId();
+            for (ChildNodePage page : bundle.getChildNodePages()) {
+                List<ChildNodeEntry> entries = getCachedChildNodePage(id, page);
+                if (entries != null) {
+                    cached.put(
+                            new ChildNodePageKey(id, page.getNumber()), entries);
+                } else {
+                    Collection<Integer> numbers = missing.get(id);
+                    if (numbers == null) {
+                        numbers = new ArrayList<Integer>();
+                        missing.put(id, numbers);
+                    }
+                    numbers.add(page.getNumber());
+                }
+            }
+        }
+        Map<NodeId, Map<Integer, List<ChildNodeEntry>>> loaded =
+            loadChildNodePages(missing);
+
+        Map<NodeId, List<ChildNodeEntry>> result =
+            new HashMap<NodeId, List<ChildNodeEntry>>();
+        bundles:
+        for (NodePropBundle bundle : bundles) {
+            if (bundle.isChildNodeEntriesLoaded()) {
+                continue;
+            }
+            NodeId id = bundle.getId();
+            Map<Integer, List<ChildNodeEntry>> pages = loaded.get(id);
+            List<ChildNodeEntry> entries = new ArrayList<ChildNodeEntry>();
+            for (ChildNodePage page : bundle.getChildNodePages()) {
+                ChildNodePageKey key =
+                    new ChildNodePageKey(id, page.getNumber());
+                List<ChildNodeEntry> list = cached.get(key);
+                if (list == null) {
+                    if (pages != null) {
+                        list = pages.get(page.getNumber());
+                    }
+                    if (stale != null && !isChildNodePage(page, list)) {
+                        stale.add(id);
+                        continue bundles;
+                    }
+                    checkChildNodePage(id, page, list);
+                    cacheChildNodePage(key, list);
+                }
+                entries.addAll(list);
+            }
+            result.put(id, entries);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the entries of a child node page, from the page cache or
+     * loaded from the {@link #getChildNodePageStore() child node page store}.
+     * If the loaded page does not match its description, it may have been
+     * read while it was being stored, and it is loaded again once no update
+     * is being stored.
+     *
+     * @param id the node id of the bundle
+     * @param page the page description
+     * @return the entries of the page
+     * @throws ItemStateException if the page can not be loaded or parsed,
+     *                            or does not match its description
+     */
+    private List<ChildNodeEntry> getChildNodePage(NodeId id, ChildNodePage page)
+            throws ItemStateException {
+        List<ChildNodeEntry> entries = getCachedChildNodePage(id, page);
+        if (entries != null) {
+            return entries;
+        }
+        Map<NodeId, Collection<Integer>> numbers =
+            Collections.<NodeId, Collection<Integer>>singletonMap(
+                    id, Collections.singletonList(page.getNumber()));
+        entries = getLoadedChildNodePage(id, page, loadChildNodePages(numbers));
+        if (!isChildNodePage(page, entries)) {
+            synchronized (this) {
+                entries = getLoadedChildNodePage(
+                        id, page, loadChildNodePages(numbers));
+            }
+            checkChildNodePage(id, page, entries);
+        }
+        cacheChildNodePage(new ChildNodePageKey(id, page.getNumber()), entries);
+        return entries;
+    }
+
+    /**
+     * Returns the entries of the given page from loaded pages.
+     *
+     * @return the entries, or <code>null</code> if the page was not loaded
+     */
+    private static List<ChildNodeEntry> getLoadedChildNodePage(
+            NodeId id, ChildNodePage page,
+            Map<NodeId, Map<Integer, List<ChildNodeEntry>>> loaded) {
+        Map<Integer, List<ChildNodeEntry>> pages = loaded.get(id);
+        return pages != null ? pages.get(page.getNumber()) : null;
+    }
+
+    /**
+     * Loads and parses the given child node pages.
+     *
+     * @param numbers the numbers of the pages, keyed by node id
+     * @return the child node entries of the pages, keyed by node id and
+     *         page number. Pages that do not exist are not included.
+     * @throws ItemStateException if a page can not be loaded or parsed
+     */
+    private Map<NodeId, Map<Integer, List<ChildNodeEntry>>> loadChildNodePages(
+            Map<NodeId, Collection<Integer>> numbers)
+            throws ItemStateException {
+        Map<NodeId, Map<Integer, List<ChildNodeEntry>>> result =
+            new HashMap<NodeId, Map<Integer, List<ChildNodeEntry>>>();
+        if (numbers.isEmpty()) {
+            return result;
+        }
+        ChildNodePageStore store = getChildNodePageStore();
+        if (store == null) {
+            throw new ItemStateException(getClass().getName()
+                    + " does not support child node pages");
+        }
+        for (Map.Entry<NodeId, Map<Integer, byte[]>> entry
+                : store.loadChildNodePages(numbers).entrySet()) {
+            NodeId id = entry.getKey();
+            Map<Integer, List<ChildNodeEntry>> pages =
+                new HashMap<Integer, List<ChildNodeEntry>>();
+            for (Map.Entry<Integer, byte[]> page : entry.getValue().entrySet()) {
+                try {
+                    pages.put(page.getKey(), getBundleBinding().readChildNodePage(
+                            new ByteArrayInputStream(page.getValue())));
+                } catch (IOException e) {
+                    throw new ItemStateException("Failed to read child node page "
+                            + page.getKey() + " of bundle " + id, e);
+                }
+            }
+            result.put(id, pages);
+        }
+        return result;
+    }
+
+    /**
+     * Returns <code>true</code> if the entries loaded from a child node page
+     * match the description of the page in the page table of its bundle.
+     *
+     * @param page the page description
+     * @param entries the loaded entries, or <code>null</code> if the page
+     *                does not exist
+     * @return whether the entries match
+     */
+    private static boolean isChildNodePage(
+            ChildNodePage page, List<ChildNodeEntry> entries) {
+        return entries != null && entries.size() == page.getCount()
+            && entries.get(0).getId().equals(page.getFirstId());
+    }
+
+    /**
+     * Checks that the entries loaded from a child node page match the
+     * description of the page in the page table of its bundle.
+     *
+     * @param id the node id of the bundle
+     * @param page the page description
+     * @param entries the loaded entries, or <code>null</code> if the page
+     *                does not exist
+     * @throws ItemStateException if the page is missing or does not match
+     */
+    private static void checkChildNodePage(
+            NodeId id, ChildNodePage page, List<ChildNodeEntry> entries)
+            throws ItemStateException {
+        if (entries == null) {
+            throw new ItemStateException("Child node page "
+                    + page.getNumber() + " of bundle " + id + " is missing");
+        }
+        if (!isChildNodePage(page, entries)) {
+            throw new ItemStateException("Child node page "
+                    + page.getNumber() + " of bundle " + id + " contains "
+                    + entries.size() + " entries starting with "
+                    + entries.get(0).getId() + " instead of "
+                    + page.getCount() + " entries starting with "
+                    + page.getFirstId());
+        }
+    }
+
+    /**
+     * Returns the entries of the given child node page from the page cache.
+     *
+     * @param id the node id of the bundle
+     * @param page the page description
+     * @return the entries, or <code>null</code> if the page is not cached
+     */
+    private List<ChildNodeEntry> getCachedChildNodePage(
+            NodeId id, ChildNodePage page) {
+        List<ChildNodeEntry> entries = childNodePageCache.get(
+                new ChildNodePageKey(id, page.getNumber()));
+        if (isChildNodePage(page, entries)) {
+            return entries;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Puts a loaded or written child node page into the page cache. A page
+     * is only cached while its bundle is in the bundle cache, so that the
+     * page is evicted together with the bundle, for example after the node
+     * was modified by another cluster node. Otherwise an outdated copy of
+     * the page is removed from the page cache.
+     *
+     * @param key the key of the page
+     * @param entries the entries of the page
+     */
+    private void cacheChildNodePage(
+            ChildNodePageKey key, List<ChildNodeEntry> entries) {
+        if (bundles.containsKey(key.id)) {
+            childNodePageCache.put(key, entries,
+                    PAGE_SIZE_ESTIMATE + PAGE_ENTRY_SIZE_ESTIMATE * entries.size());
+            // the bundle may have been evicted concurrently, in which case
+            // the page may have been put after the bundle's pages were evicted
+            if (bundles.containsKey(key.id)) {
+                return;
+            }
+        }
+        childNodePageCache.remove(key);
+    }
+
+    /**
+     * Removes the child node pages of a bundle that leaves the bundle cache
+     * from the page cache.
+     *
+     * @param bundle the bundle
+     */
+    private void evictChildNodePages(NodePropBundle bundle) {
+        List<ChildNodePage> pages = bundle.getChildNodePages();
+        if (pages != null) {
+            for (ChildNodePage page : pages) {
+                childNodePageCache.remove(
+                        new ChildNodePageKey(bundle.getId(), page.getNumber()));
+            }
+        }
+    }
+
+    /**
+     * Writes the child node entries of a bundle that is about to be stored
+     * to child node pages, if the bundle has enough entries. Only the pages
+     * whose entries changed since the bundle was last stored are written,
+     * and the page table of the bundle is updated accordingly. The entries
+     * of the written bundle are then kept in the page cache instead of the
+     * bundle. Nothing is written if the entries were not loaded from the
+     * pages, as they can not have changed.
+     * <p>
+     * A page keeps its number as long as its first entry is not removed.
+     * Entries inserted between the first entries of two pages are added to
+     * the preceding page, which is split into new pages once it gets too
+     * large. Adjacent pages that fit into a single page are merged. A page
+     * with the same number, size and first entry as before is compared with
+     * its previous entries, which are loaded if they are not cached.
+     *
+     * @param bundle the bundle to store
+     * @throws ItemStateException if a page can not be stored
+     */
+    protected void writeChildNodePages(NodePropBundle bundle)
+            throws ItemStateException {
+        ChildNodePageStore store = getChildNodePageStore();
+        if (store == null || !bundle.isChildNodeEntriesLoaded()) {
+            return;
+        }
+        NodeId id = bundle.getId();
+        List<ChildNodePage> oldPages = bundle.getChildNodePages();
+        List<ChildNodeEntry> entries = bundle.getChildNodeEntries();
+        boolean paged;
+        if (childNodePageSize == 0) {
+            paged = false;
+        } else if (oldPages == null) {
+            paged = entries.size() > childNodePageSize;
+        } else {
+            paged = entries.size() > childNodePageSize / 2;
+        }
+        if (!paged) {
+            if (oldPages != null) {
+                destroyChildNodePages(bundle);
+                bundle.setChildNodePages(null);
+            }
+            return;
+        }
+
+        Map<NodeId, ChildNodePage> owners =
+            new HashMap<NodeId, ChildNodePage>();
+        Map<Integer, ChildNodePage> previous =
+            new HashMap<Integer, ChildNodePage>();
+        int next = 0;
+        if (oldPages != null) {
+            for (ChildNodePage page : oldPages) {
+                owners.put(page.getFirstId(), page);
+                previous.put(page.getNumber(), page);
+                next = Math.max(next, page.getNumber() + 1);
+            }
+        }
+
+        // split the entries into segments that start at the first entry
+        // of an existing page
+        List<Integer> bounds = new ArrayList<Integer>();
+        List<ChildNodePage> boundOwners = new ArrayList<ChildNodePage>();
+        for (int i = 0; i < entries.size(); i++) {
+            ChildNodePage owner = owners.remove(entries.get(i).getId());
+            if (i == 0 || owner != null) {
+                bounds.add(i);
+                boundOwners.add(owner);
+            }
+        }
+        bounds.add(entries.size());
+
+        // merge adjacent segments that fit into a single page
+        List<Integer> starts = new ArrayList<Integer>();
+        List<ChildNodePage> segmentOwners = new ArrayList<ChildNodePage>();
+        starts.add(bounds.get(0));
+        segmentOwners.add(boundOwners.get(0));
+        for (int k = 1; k + 1 < bounds.size(); k++) {
+            int start = starts.get(starts.size() - 1);
+            if (bounds.get(k + 1) - start > childNodePageSize) {
+                starts.add(bounds.get(k));
+                segmentOwners.add(boundOwners.get(k));
+            }
+        }
+        starts.add(entries.size());
+
+        List<ChildNodePage> pages = new ArrayList<ChildNodePage>();
+        List<List<ChildNodeEntry>> pageEntries =
+            new ArrayList<List<ChildNodeEntry>>();
+        Map<Integer, ChildNodePage> reused = new HashMap<Integer, ChildNodePage>();
+        for (int s = 0; s + 1 < starts.size(); s++) {
+            int from = starts.get(s);
+            int length = starts.get(s + 1) - from;
+            int chunks = (length + childNodePageSize - 1) / childNodePageSize;
+            for (int c = 0; c < chunks; c++) {
+                List<ChildNodeEntry> chunk = new ArrayList<ChildNodeEntry>(
+                        entries.subList(
+                                from + length * c / chunks,
+                                from + length * (c + 1) / chunks));
+                ChildNodePage owner = segmentOwners.get(s);
+                int number;
+                if (c == 0 && owner != null) {
+                    number = owner.getNumber();
+                } else {
+                    number = next++;
+                }
+                ChildNodePage old = previous.remove(number);
+                if (old != null) {
+                    reused.put(number, old);
+                }
+                pages.add(new ChildNodePage(
+                        number, chunk.size(), chunk.get(0).getId()));
+                pageEntries.add(chunk);
+            }
+        }
+
+        // find the previous entries of the pages that may be unchanged
+        Map<Integer, List<ChildNodeEntry>> unchanged =
+            new HashMap<Integer, List<ChildNodeEntry>>();
+        List<Integer> missing = new ArrayList<Integer>();
+        for (ChildNodePage page : pages) {
+            ChildNodePage old = reused.get(page.getNumber());
+            if (page.equals(old)) {
+                List<ChildNodeEntry> cached = getCachedChildNodePage(id, old);
+                if (cached != null) {
+                    unchanged.put(page.getNumber(), cached);
+                } else {
+                    missing.add(page.getNumber());
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<Integer, List<ChildNodeEntry>> loaded = loadChildNodePages(
+                    Collections.<NodeId, Collection<Integer>>singletonMap(
+                            id, missing)).get(id);
+            if (loaded != null) {
+                unchanged.putAll(loaded);
+            }
+        }
+
+        for (int i = 0; i < pages.size(); i++) {
+            int number = pages.get(i).getNumber();
+            List<ChildNodeEntry> chunk = pageEntries.get(i);
+            if (!chunk.equals(unchanged.get(number))) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(
+                        chunk.size() * 24);
+                try {
+                    getBundleBinding().writeChildNodePage(out, chunk);
+                } catch (IOException e) {
+                    throw new ItemStateException(
+                            "Failed to write child node page " + number
+                            + " of bundle " + id, e);
+                }
+                store.storeChildNodePage(
+                        id, number, out.toByteArray(),
+                        !reused.containsKey(number));
+            }
+            cacheChildNodePage(new ChildNodePageKey(id, number), chunk);
+        }
+        for (ChildNodePage old : previous.values()) {
+            store.destroyChildNodePage(id, old.getNumber());
+            childNodePageCache.remove(new ChildNodePageKey(id, old.getNumber()));
+        }
+        bundle.setChildNodePages(pages);
+        entries.clear();
+        bundle.setChildNodeEntriesLoaded(false);
+    }
+
+    /**
+     * Deletes the child node pages of a bundle that is about to be deleted.
+     *
+     * @param bundle the bundle to delete
+     * @throws ItemStateException if a page can not be deleted
+     */
+    protected void destroyChildNodePages(NodePropBundle bundle)
+            throws ItemStateException {
+        ChildNodePageStore store = getChildNodePageStore();
+        List<ChildNodePage> pages = bundle.getChildNodePages();
+        if (store != null && pages != null) {
+            for (ChildNodePage page : pages) {
+                store.destroyChildNodePage(bundle.getId(), page.getNumber());
+                childNodePageCache.remove(
+                        new ChildNodePageKey(bundle.getId(), page.getNumber()));
+            }
+        }
+    }
+
     /**
      * Deletes the bundle
      *
@@ -786,6 +1758,10 @@ public abstract class AbstractBundlePersistenceManager implements
         destroyBundle(bundle);
         bundle.removeAllProperties(getBlobStore());
         bundles.put(bundle.getId(), MISSING, MISSING_SIZE_ESTIMATE);
+        if (offHeapBundles != null) {
+            offHeapBundles.remove(bundle.getId());
+        }
+        spillEvictedBundles();
     }
 
     /**
@@ -811,6 +1787,13 @@ public abstract class AbstractBundlePersistenceManager implements
         if (bundles.containsKey(bundle.getId())) {
             bundles.put(bundle.getId(), bundle, bundle.getSize());
         }
+
+        // drop a serialized copy that may have been written while the
+        // bundle was being modified, it will be spilled again on eviction
+        if (offHeapBundles != null) {
+            offHeapBundles.remove(bundle.getId());
+        }
+        spillEvictedBundles();
     }
 
     /**
@@ -854,13 +1837,23 @@ public abstract class AbstractBundlePersistenceManager implements
      * @param id the id of the bundle.
      */
     protected void evictBundle(NodeId id) {
-        bundles.remove(id);
+        bundleUpdates.incrementAndGet();
+        NodePropBundle bundle = bundles.remove(id);
+        if (bundle != null) {
+            evictChildNodePages(bundle);
+        }
+        if (offHeapBundles != null) {
+            offHeapBundles.remove(id);
+        }
     }
 
     public void cacheAccessed(long accessCount) {
         logCacheStats();
         cacheAccessCounter.addAndGet(accessCount);
         cacheSizeCounter.set(bundles.getMemoryUsed());
+        if (offHeapBundles != null) {
+            offHeapCacheSizeCounter.set(offHeapBundles.getMemoryUsed());
+        }
     }
 
     private void logCacheStats() {
@@ -870,6 +1863,10 @@ public abstract class AbstractBundlePersistenceManager implements
                 return;
             }
             log.info(bundles.getCacheInfoAsString());
+            log.info(childNodePageCache.getCacheInfoAsString());
+            if (offHeapBundles != null) {
+                log.info(offHeapBundles.getCacheInfoAsString());
+            }
             nextLogStats = now + minLogStatsInterval;
         }
     }
@@ -877,4 +1874,88 @@ public abstract class AbstractBundlePersistenceManager implements
     public void disposeCache(Cache cache) {
         // NOOP
     }
+
+    /**
+     * A bundle evicted from the bundle cache, with the stamp of the off-heap
+     * bundle cache taken on eviction.
+     */
+    private static final class EvictedBundle {
+
+        private final NodePropBundle bundle;
+
+        private final long stamp;
+
+        private EvictedBundle(NodePropBundle bundle, long stamp) {
+            this.bundle = bundle;
+            this.stamp = stamp;
+        }
+
+    }
+
+    /**
+     * The child node pages of a node state, as described by the page table
+     * of the bundle the node state was loaded from or stored with.
+     */
+    private final class BundleChildNodePages implements ChildNodeEntryPages {
+
+        /** the node id of the bundle */
+        private final NodeId id;
+
+        /** the page descriptions */
+        private final List<ChildNodePage> pages;
+
+        private BundleChildNodePages(NodeId id, List<ChildNodePage> pages) {
+            this.id = id;
+            this.pages = new ArrayList<ChildNodePage>(pages);
+        }
+
+        public int getPageCount() {
+            return pages.size();
+        }
+
+        public int getEntryCount(int page) {
+            return pages.get(page).getCount();
+        }
+
+        public void loadPage(int page, List<Name> names, List<NodeId> ids)
+                throws ItemStateException {
+            for (ChildNodeEntry entry : getChildNodePage(id, pages.get(page))) {
+                names.add(entry.getName());
+                ids.add(entry.getId());
+            }
+        }
+
+    }
+
+    /**
+     * Key of a page in the child node page cache.
+     */
+    private static final class ChildNodePageKey {
+
+        /** the node id of the bundle */
+        private final NodeId id;
+
+        /** the page number */
+        private final int number;
+
+        private ChildNodePageKey(NodeId id, int number) {
+            this.id = id;
+            this.number = number;
+        }
+
+        public boolean equals(Object object) {
+            if (object instanceof ChildNodePageKey) {
+                ChildNodePageKey that = (ChildNodePageKey) object;
+                return number == that.number && id.equals(that.id);
+            } else {
+                return false;
+            }
+        }
+
+        public int hashCode() {
+            return id.hashCode() * 31 + number;
+        }
+
+    }
+
 }
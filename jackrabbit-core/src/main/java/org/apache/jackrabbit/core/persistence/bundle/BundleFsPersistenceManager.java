@@ -42,7 +42,10 @@ import java.io.OutputStream;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This is a generic persistence manager that stores the {@link NodePropBundle}s
@@ -53,6 +56,8 @@ import java.util.List;
  * <li>&lt;param name="{@link #setBlobFSBlockSize(String) blobFSBlockSize}" value="0"/>
  * <li>&lt;param name="{@link #setMinBlobSize(String) minBlobSize}" value="4096"/>
  * <li>&lt;param name="{@link #setErrorHandling(String) errorHandling}" value=""/>
+ * <li>&lt;param name="{@link #setChildNodePageSize(String) childNodePageSize}" value="0"/>
+ * <li>&lt;param name="{@link #setChildNodePageCacheSize(String) childNodePageCacheSize}" value="8"/>
  * </ul>
  */
 public class BundleFsPersistenceManager extends AbstractBundlePersistenceManager {
@@ -66,6 +71,10 @@ public class BundleFsPersistenceManager extends AbstractBundlePersistenceManager
     /** file system where BLOB data is stored */
     protected BundleFsPersistenceManager.CloseableBLOBStore blobStore;
 
+    /** the store of the child node pages */
+    private final ChildNodePageStore childNodePageStore =
+        new FSChildNodePageStore();
+
     /**
      * Default blocksize for BLOB filesystem:
      * @see #setBlobFSBlockSize(String)
@@ -196,6 +205,7 @@ public class BundleFsPersistenceManager extends AbstractBundlePersistenceManager
         // load namespaces
         binding = new BundleBinding(errorHandling, blobStore, getNsIndex(), getNameIndex(), context.getDataStore());
         binding.setMinBlobSize(minBlobSize);
+        initOffHeapBundleCache();
 
         initialized = true;
     }
@@ -208,6 +218,14 @@ public class BundleFsPersistenceManager extends AbstractBundlePersistenceManager
         return blobStore;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected BundleBinding getBundleBinding() {
+        return binding;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -238,11 +256,13 @@ public class BundleFsPersistenceManager extends AbstractBundlePersistenceManager
                 return null;
             }
             InputStream in = itemFs.getInputStream(path);
+            NodePropBundle bundle;
             try {
-                return binding.readBundle(in, id);
+                bundle = binding.readBundle(in, id);
             } finally {
                 IOUtils.closeQuietly(in);
             }
+            return bundle;
         } catch (Exception e) {
             String msg = "failed to read bundle: " + id + ": " + e;
             log.error(msg);
@@ -291,6 +311,7 @@ public class BundleFsPersistenceManager extends AbstractBundlePersistenceManager
      * {@inheritDoc}
      */
     protected synchronized void storeBundle(NodePropBundle bundle) throws ItemStateException {
+        writeChildNodePages(bundle);
         try {
             StringBuffer buf = buildNodeFolderPath(null, bundle.getId());
             buf.append('.');
@@ -317,6 +338,7 @@ public class BundleFsPersistenceManager extends AbstractBundlePersistenceManager
      * {@inheritDoc}
      */
     protected synchronized void destroyBundle(NodePropBundle bundle) throws ItemStateException {
+        destroyChildNodePages(bundle);
         try {
             StringBuffer buf = buildNodeFilePath(null, bundle.getId());
             itemFs.deleteFile(buf.toString());
@@ -330,6 +352,28 @@ public class BundleFsPersistenceManager extends AbstractBundlePersistenceManager
         }
     }
 
+    /**
+     * Creates the file path of the given child node page.
+     *
+     * @param id the id of the node
+     * @param number the page number
+     * @return the file path
+     */
+    private String buildChildNodePageFilePath(NodeId id, int number) {
+        StringBuffer buf = buildNodeFolderPath(null, id);
+        buf.append(".c");
+        buf.append(number);
+        return buf.toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected ChildNodePageStore getChildNodePageStore() {
+        return childNodePageStore;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -457,6 +501,87 @@ public class BundleFsPersistenceManager extends AbstractBundlePersistenceManager
      * own implementation of the filesystem blob store that uses a different
      * blob-id scheme.
      */
+    /**
+     * Stores the child node page n of a bundle in a file next to the
+     * bundle file, named with a ".c&lt;n&gt;" suffix.
+     */
+    private class FSChildNodePageStore implements ChildNodePageStore {
+
+        /**
+         * {@inheritDoc}
+         */
+        public Map<NodeId, Map<Integer, byte[]>> loadChildNodePages(
+                Map<NodeId, Collection<Integer>> numbers)
+                throws ItemStateException {
+            Map<NodeId, Map<Integer, byte[]>> result =
+                new HashMap<NodeId, Map<Integer, byte[]>>();
+            for (Map.Entry<NodeId, Collection<Integer>> entry
+                    : numbers.entrySet()) {
+                NodeId id = entry.getKey();
+                Map<Integer, byte[]> pages = new HashMap<Integer, byte[]>();
+                for (Integer number : entry.getValue()) {
+                    try {
+                        String path = buildChildNodePageFilePath(id, number);
+                        if (itemFs.exists(path)) {
+                            InputStream in = itemFs.getInputStream(path);
+                            try {
+                                pages.put(number, IOUtils.toByteArray(in));
+                            } finally {
+                                IOUtils.closeQuietly(in);
+                            }
+                        }
+                    } catch (Exception e) {
+                        String msg = "failed to read child node page " + number + ": " + id;
+                        log.error(msg, e);
+                        throw new ItemStateException(msg, e);
+                    }
+                }
+                result.put(id, pages);
+            }
+            return result;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void storeChildNodePage(
+                NodeId id, int number, byte[] data, boolean isNew)
+                throws ItemStateException {
+            try {
+                String fileName = buildChildNodePageFilePath(id, number);
+                String dir = fileName.substring(0, fileName.lastIndexOf(FileSystem.SEPARATOR_CHAR));
+                if (!itemFs.exists(dir)) {
+                    itemFs.createFolder(dir);
+                }
+                OutputStream out = itemFs.getOutputStream(fileName);
+                try {
+                    out.write(data);
+                } finally {
+                    out.close();
+                }
+            } catch (Exception e) {
+                String msg = "failed to write child node page " + number + ": " + id;
+                BundleFsPersistenceManager.log.error(msg, e);
+                throw new ItemStateException(msg, e);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void destroyChildNodePage(NodeId id, int number)
+                throws ItemStateException {
+            try {
+                itemFs.deleteFile(buildChildNodePageFilePath(id, number));
+            } catch (Exception e) {
+                String msg = "failed to delete child node page " + number + ": " + id;
+                BundleFsPersistenceManager.log.error(msg, e);
+                throw new ItemStateException(msg, e);
+            }
+        }
+
+    }
+
     private class FSBlobStore extends FileSystemBLOBStore implements BundleFsPersistenceManager.CloseableBLOBStore {
 
         private FileSystem fs;
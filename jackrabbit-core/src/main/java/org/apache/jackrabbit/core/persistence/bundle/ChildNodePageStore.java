@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.persistence.bundle;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.state.ItemStateException;
+
+/**
+ * Stores the serialized child node pages of bundles. A bundle persistence
+ * manager that can store the child node entries of large nodes in separate
+ * pages returns its store from
+ * {@link AbstractBundlePersistenceManager#getChildNodePageStore()}.
+ *
+ * @since Jackrabbit 2.14
+ */
+public interface ChildNodePageStore {
+
+    /**
+     * Loads the given child node pages of one or more bundles.
+     *
+     * @param numbers the numbers of the pages to load, keyed by the node id
+     *                of their bundle
+     * @return the serialized pages, keyed by node id and page number. Pages
+     *         that do not exist are not included.
+     * @throws ItemStateException if an error while loading occurs.
+     */
+    Map<NodeId, Map<Integer, byte[]>> loadChildNodePages(
+            Map<NodeId, Collection<Integer>> numbers)
+            throws ItemStateException;
+
+    /**
+     * Stores a child node page of a bundle.
+     *
+     * @param id the node id of the bundle
+     * @param number the page number
+     * @param data the serialized page
+     * @param isNew <code>true</code> if the page does not exist yet
+     * @throws ItemStateException if an error while storing occurs.
+     */
+    void storeChildNodePage(NodeId id, int number, byte[] data, boolean isNew)
+            throws ItemStateException;
+
+    /**
+     * Deletes a child node page of a bundle.
+     *
+     * @param id the node id of the bundle
+     * @param number the page number
+     * @throws ItemStateException if an error while deleting occurs.
+     */
+    void destroyChildNodePage(NodeId id, int number)
+            throws ItemStateException;
+
+}
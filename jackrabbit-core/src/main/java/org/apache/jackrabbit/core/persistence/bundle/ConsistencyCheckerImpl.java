@@ -199,7 +199,7 @@ public class ConsistencyCheckerImpl {
         if (lostNFoundId != null) {
             // do we have a "lost+found" node?
             try {
-                NodePropBundle lfBundle = pm.loadBundle(lostNFoundId);
+                NodePropBundle lfBundle = loadBundle(lostNFoundId);
                 if (lfBundle == null) {
                     error(lostNFoundId.toString(), "Specified 'lost+found' node does not exist");
                     lostNFoundId = null;
@@ -272,7 +272,7 @@ public class ConsistencyCheckerImpl {
             for (int i = 0; i < idList.size(); i++) {
                 NodeId id = idList.get(i);
                 try {
-                    final NodePropBundle bundle = pm.loadBundle(id);
+                    final NodePropBundle bundle = loadBundle(id);
                     if (bundle == null) {
                         if (!isVirtualNode(id)) {
                             error(id.toString(), "No bundle found for id '" + id + "'");
@@ -422,7 +422,21 @@ public class ConsistencyCheckerImpl {
         if (bundles.containsKey(nodeId)) {
             return bundles.get(nodeId);
         }
-        return pm.loadBundle(nodeId);
+        return loadBundle(nodeId);
+    }
+
+    /**
+     * Loads a bundle together with its child node entries, which may be
+     * stored in separate child node pages.
+     */
+    private NodePropBundle loadBundle(NodeId nodeId) throws ItemStateException {
+        NodePropBundle bundle = pm.loadBundle(nodeId);
+        if (bundle != null) {
+            List<NodePropBundle> read =
+                pm.readChildNodeEntries(Collections.singletonList(bundle));
+            bundle = read.isEmpty() ? null : read.get(0);
+        }
+        return bundle;
     }
 
     private void saveBundle(NodePropBundle bundle) {
@@ -470,9 +484,9 @@ public class ConsistencyCheckerImpl {
 
         @Override
         boolean doubleCheck() throws ItemStateException {
-            final NodePropBundle childBundle = pm.loadBundle(childNodeId);
+            final NodePropBundle childBundle = loadBundle(childNodeId);
             if (childBundle == null) {
-                final NodePropBundle bundle = pm.loadBundle(nodeId);
+                final NodePropBundle bundle = loadBundle(nodeId);
                 if (bundle != null) {
                     for (NodePropBundle.ChildNodeEntry entry : bundle.getChildNodeEntries()) {
                         if (entry.getId().equals(childNodeId)) {
@@ -527,9 +541,9 @@ public class ConsistencyCheckerImpl {
 
         @Override
         boolean doubleCheck() throws ItemStateException {
-            final NodePropBundle childBundle = pm.loadBundle(childNodeId);
+            final NodePropBundle childBundle = loadBundle(childNodeId);
             if (childBundle != null && !childBundle.getParentId().equals(nodeId)) {
-                final NodePropBundle bundle = pm.loadBundle(nodeId);
+                final NodePropBundle bundle = loadBundle(nodeId);
                 if (bundle != null) {
                     // double check if the child node entry is still there
                     for (NodePropBundle.ChildNodeEntry entry : bundle.getChildNodeEntries()) {
@@ -589,9 +603,9 @@ public class ConsistencyCheckerImpl {
 
         @Override
         boolean doubleCheck() throws ItemStateException {
-            final NodePropBundle parentBundle = pm.loadBundle(parentNodeId);
+            final NodePropBundle parentBundle = loadBundle(parentNodeId);
             if (parentBundle == null) {
-                final NodePropBundle bundle = pm.loadBundle(nodeId);
+                final NodePropBundle bundle = loadBundle(nodeId);
                 if (bundle != null) {
                     if (parentNodeId.equals(bundle.getParentId())) {
                         return true;
@@ -650,7 +664,7 @@ public class ConsistencyCheckerImpl {
 
         @Override
         boolean doubleCheck() throws ItemStateException {
-            final NodePropBundle parentBundle = pm.loadBundle(parentNodeId);
+            final NodePropBundle parentBundle = loadBundle(parentNodeId);
             if (parentBundle != null) {
                 for (NodePropBundle.ChildNodeEntry entry : parentBundle.getChildNodeEntries()) {
                     if (entry.getId().equals(nodeId)) {
@@ -658,7 +672,7 @@ public class ConsistencyCheckerImpl {
                     }
                 }
             }
-            final NodePropBundle bundle = pm.loadBundle(nodeId);
+            final NodePropBundle bundle = loadBundle(nodeId);
             if (bundle != null) {
                 if (parentNodeId.equals(bundle.getParentId())) {
                     return true;
@@ -0,0 +1,531 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.persistence.bundle;
+
+import java.nio.ByteBuffer;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <code>OffHeapBundleCache</code> keeps serialized bundles in a few large
+ * direct byte buffers, the segments, that are allocated once when the cache
+ * is created. The cache is divided into stripes, each with its own segments
+ * and lock, and a bundle belongs to the stripe selected by its node id.
+ * Bundles are appended to the current segment of their stripe. When it is
+ * full the next segment of the stripe is recycled: all bundles in it are
+ * dropped and it is written again from its start. Bundles are therefore
+ * evicted roughly in the order they were added.
+ * <p>
+ * The location and length of each bundle are kept in an open addressing
+ * table of primitive arrays per stripe, keyed by the two halves of the node
+ * id. No objects are allocated per cached bundle.
+ * <p>
+ * Bundles are usually serialized some time after they were evicted from
+ * the bundle cache. The {@link #getStamp(NodeId) stamp} of a bundle taken
+ * on eviction makes sure that a bundle removed in the meantime, because it
+ * was modified, is not put into the cache afterwards.
+ */
+class OffHeapBundleCache {
+
+    /**
+     * Logger instance
+     */
+    private static final Logger log =
+        LoggerFactory.getLogger(OffHeapBundleCache.class);
+
+    /**
+     * The maximum size of a segment.
+     */
+    static final int MAX_SEGMENT_SIZE = 256 * 1024 * 1024;
+
+    /**
+     * The minimum number of segments. Recycling a segment drops its share
+     * of the cached bundles, so the cache should consist of several
+     * segments.
+     */
+    static final int MIN_SEGMENTS = 8;
+
+    /**
+     * The number of stripes. Each stripe gets at least two segments if
+     * the cache has the minimum number of segments.
+     */
+    static final int STRIPES = 4;
+
+    /**
+     * The initial capacity of the table of a stripe.
+     */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /**
+     * Name of the cache.
+     */
+    private final String name;
+
+    /**
+     * The stripes.
+     */
+    private final Stripe[] stripes;
+
+    /**
+     * The number of bytes allocated for the segments.
+     */
+    private final long maxMemorySize;
+
+    /**
+     * Creates a new cache and allocates its segments. If not all segments
+     * can be allocated, for example because of the
+     * <code>-XX:MaxDirectMemorySize</code> limit, the cache uses the
+     * segments allocated so far.
+     *
+     * @param name name of the cache
+     * @param size the size of the cache in bytes
+     */
+    OffHeapBundleCache(String name, long size) {
+        this(name, size, STRIPES);
+    }
+
+    /**
+     * Creates a new cache with the given number of stripes.
+     *
+     * @param name    name of the cache
+     * @param size    the size of the cache in bytes
+     * @param stripes the number of stripes
+     */
+    OffHeapBundleCache(String name, long size, int stripes) {
+        this.name = name;
+        int n = (int) Math.max(
+                MIN_SEGMENTS, (size + MAX_SEGMENT_SIZE - 1) / MAX_SEGMENT_SIZE);
+        int segmentSize = (int) Math.min(size / n, MAX_SEGMENT_SIZE);
+        ByteBuffer[] buffers = new ByteBuffer[n];
+        int allocated = 0;
+        try {
+            while (allocated < n) {
+                buffers[allocated] = ByteBuffer.allocateDirect(segmentSize);
+                allocated++;
+            }
+        } catch (OutOfMemoryError e) {
+            log.warn("Unable to allocate more than {} of {} bytes for {}: {}",
+                    new Object[] {(long) allocated * segmentSize, size,
+                            name, e.getMessage()});
+        }
+        this.maxMemorySize = (long) allocated * segmentSize;
+
+        // distribute the segments over the stripes
+        int count = Math.max(1, Math.min(stripes, allocated));
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            ByteBuffer[] segments =
+                new ByteBuffer[(allocated - i + count - 1) / count];
+            for (int j = 0; j < segments.length; j++) {
+                segments[j] = buffers[i + j * count];
+            }
+            this.stripes[i] = new Stripe(segments);
+        }
+    }
+
+    /**
+     * Returns the stamp of the given bundle. The stamp changes whenever the
+     * bundle, or another bundle of the same stripe, is removed.
+     *
+     * @param id the id of the bundle
+     * @return the stamp
+     */
+    long getStamp(NodeId id) {
+        return getStripe(id).stamp;
+    }
+
+    /**
+     * Adds a serialized bundle to the cache, replacing a previous copy of
+     * the same bundle. Bundles that are larger than a segment are not
+     * cached.
+     *
+     * @param id     the id of the bundle
+     * @param data   the serialized bundle
+     * @param length the number of bytes in <code>data</code>
+     */
+    void put(NodeId id, byte[] data, int length) {
+        Stripe stripe = getStripe(id);
+        synchronized (stripe) {
+            stripe.put(id, data, length);
+        }
+    }
+
+    /**
+     * Adds a serialized bundle to the cache, unless the bundle was removed
+     * since the given stamp was {@link #getStamp(NodeId) taken}.
+     *
+     * @param id     the id of the bundle
+     * @param data   the serialized bundle
+     * @param length the number of bytes in <code>data</code>
+     * @param stamp  the stamp of the bundle when it was evicted
+     * @return <code>true</code> if the bundle was added
+     */
+    boolean put(NodeId id, byte[] data, int length, long stamp) {
+        Stripe stripe = getStripe(id);
+        synchronized (stripe) {
+            if (stripe.stamp != stamp) {
+                return false;
+            }
+            stripe.put(id, data, length);
+            return true;
+        }
+    }
+
+    /**
+     * Removes a bundle from the cache and returns its serialized form.
+     *
+     * @param id the id of the bundle
+     * @return the serialized bundle, or <code>null</code> if the bundle is
+     *         not cached
+     */
+    byte[] take(NodeId id) {
+        Stripe stripe = getStripe(id);
+        synchronized (stripe) {
+            return stripe.take(id);
+        }
+    }
+
+    /**
+     * Removes a bundle from the cache. Bundles of the same stripe that were
+     * evicted before are no longer added.
+     *
+     * @param id the id of the bundle
+     */
+    void remove(NodeId id) {
+        Stripe stripe = getStripe(id);
+        synchronized (stripe) {
+            stripe.stamp++;
+            stripe.remove(id);
+        }
+    }
+
+    /**
+     * Removes all bundles from the cache. The segments are kept.
+     */
+    void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.stamp++;
+                stripe.clear();
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes of all cached bundles
+     */
+    long getMemoryUsed() {
+        long memoryUsed = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                memoryUsed += stripe.memoryUsed;
+            }
+        }
+        return memoryUsed;
+    }
+
+    /**
+     * @return the number of cached bundles
+     */
+    int size() {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                count += stripe.count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of bytes allocated for the segments
+     */
+    long getMaxMemorySize() {
+        return maxMemorySize;
+    }
+
+    /**
+     * @return a short summary of the cache state
+     */
+    String getCacheInfoAsString() {
+        int segments = 0;
+        for (Stripe stripe : stripes) {
+            segments += stripe.segments.length;
+        }
+        return "name=" + name
+                + " bundles=" + size()
+                + " memoryUsed=" + getMemoryUsed()
+                + " maxMemorySize=" + getMaxMemorySize()
+                + " segments=" + segments
+                + " stripes=" + stripes.length;
+    }
+
+    //---------------------------------------------------------< internal >--
+
+    private Stripe getStripe(NodeId id) {
+        long h = mix(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        // the upper half selects the stripe, the lower half the table slot
+        return stripes[((int) (h >>> 32) & Integer.MAX_VALUE) % stripes.length];
+    }
+
+    private static long mix(long msb, long lsb) {
+        long h = msb ^ lsb;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * A stripe of the cache with its own segments and table. All methods
+     * must be called while holding the lock of the stripe.
+     */
+    private static final class Stripe {
+
+        /**
+         * The segments.
+         */
+        private final ByteBuffer[] segments;
+
+        /**
+         * The number of bytes of live bundles per segment.
+         */
+        private final long[] liveBytes;
+
+        /**
+         * Incremented whenever a bundle is removed, see
+         * {@link OffHeapBundleCache#getStamp(NodeId)}.
+         */
+        private volatile long stamp = 0;
+
+        /**
+         * The segment that bundles are currently written to.
+         */
+        private int writeSegment = 0;
+
+        /**
+         * The offset at which the next bundle is written in the write
+         * segment.
+         */
+        private int writeOffset = 0;
+
+        /**
+         * The most significant bits of the node ids in the table.
+         */
+        private long[] msbs = new long[INITIAL_CAPACITY];
+
+        /**
+         * The least significant bits of the node ids in the table.
+         */
+        private long[] lsbs = new long[INITIAL_CAPACITY];
+
+        /**
+         * The segment (upper 32 bits) and offset (lower 32 bits) of the
+         * bundles in the table.
+         */
+        private long[] locations = new long[INITIAL_CAPACITY];
+
+        /**
+         * The lengths of the bundles in the table. A length of zero marks
+         * an empty slot.
+         */
+        private int[] lengths = new int[INITIAL_CAPACITY];
+
+        /**
+         * The number of bundles in the table.
+         */
+        private int count = 0;
+
+        /**
+         * The number of bytes of all live bundles.
+         */
+        private long memoryUsed = 0;
+
+        private Stripe(ByteBuffer[] segments) {
+            this.segments = segments;
+            this.liveBytes = new long[segments.length];
+        }
+
+        private void put(NodeId id, byte[] data, int length) {
+            remove(id);
+            if (segments.length == 0 || length == 0
+                    || length > segments[0].capacity()) {
+                return;
+            }
+            if (writeOffset + length > segments[writeSegment].capacity()) {
+                writeSegment = (writeSegment + 1) % segments.length;
+                writeOffset = 0;
+                recycle(writeSegment);
+            }
+            ByteBuffer segment = segments[writeSegment];
+            segment.clear();
+            segment.position(writeOffset);
+            segment.put(data, 0, length);
+            insert(id.getMostSignificantBits(), id.getLeastSignificantBits(),
+                    ((long) writeSegment << 32) | writeOffset, length);
+            liveBytes[writeSegment] += length;
+            memoryUsed += length;
+            writeOffset += length;
+        }
+
+        private byte[] take(NodeId id) {
+            int slot = find(
+                    id.getMostSignificantBits(), id.getLeastSignificantBits());
+            if (slot < 0) {
+                return null;
+            }
+            int segment = (int) (locations[slot] >>> 32);
+            ByteBuffer buffer = segments[segment];
+            byte[] data = new byte[lengths[slot]];
+            buffer.clear();
+            buffer.position((int) locations[slot]);
+            buffer.get(data);
+            delete(slot);
+            return data;
+        }
+
+        private void remove(NodeId id) {
+            int slot = find(
+                    id.getMostSignificantBits(), id.getLeastSignificantBits());
+            if (slot >= 0) {
+                delete(slot);
+            }
+        }
+
+        private void clear() {
+            msbs = new long[INITIAL_CAPACITY];
+            lsbs = new long[INITIAL_CAPACITY];
+            locations = new long[INITIAL_CAPACITY];
+            lengths = new int[INITIAL_CAPACITY];
+            count = 0;
+            memoryUsed = 0;
+            for (int i = 0; i < liveBytes.length; i++) {
+                liveBytes[i] = 0;
+            }
+            writeSegment = 0;
+            writeOffset = 0;
+        }
+
+        /**
+         * Drops all bundles stored in the given segment.
+         *
+         * @param segment the segment to recycle
+         */
+        private void recycle(int segment) {
+            if (liveBytes[segment] == 0) {
+                return;
+            }
+            int slot = 0;
+            while (slot < lengths.length) {
+                if (lengths[slot] != 0
+                        && (int) (locations[slot] >>> 32) == segment) {
+                    // the next entry may move into this slot, check it again
+                    delete(slot);
+                } else {
+                    slot++;
+                }
+            }
+        }
+
+        private static int hash(long msb, long lsb) {
+            return (int) mix(msb, lsb);
+        }
+
+        /**
+         * Returns the slot of the given node id, or <code>-1</code> if it is
+         * not in the table.
+         */
+        private int find(long msb, long lsb) {
+            int mask = lengths.length - 1;
+            int slot = hash(msb, lsb) & mask;
+            while (lengths[slot] != 0) {
+                if (msbs[slot] == msb && lsbs[slot] == lsb) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * Inserts a node id that is not in the table.
+         */
+        private void insert(long msb, long lsb, long location, int length) {
+            if ((count + 1) * 2 > lengths.length) {
+                resize(lengths.length * 2);
+            }
+            int mask = lengths.length - 1;
+            int slot = hash(msb, lsb) & mask;
+            while (lengths[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            msbs[slot] = msb;
+            lsbs[slot] = lsb;
+            locations[slot] = location;
+            lengths[slot] = length;
+            count++;
+        }
+
+        /**
+         * Empties a slot and moves the following entries of the probe sequence
+         * back, so that no deleted markers are needed.
+         */
+        private void delete(int slot) {
+            int segment = (int) (locations[slot] >>> 32);
+            liveBytes[segment] -= lengths[slot];
+            memoryUsed -= lengths[slot];
+            count--;
+
+            int mask = lengths.length - 1;
+            int hole = slot;
+            int next = (slot + 1) & mask;
+            while (lengths[next] != 0) {
+                int home = hash(msbs[next], lsbs[next]) & mask;
+                // move the entry if its home slot is not between hole and next
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    msbs[hole] = msbs[next];
+                    lsbs[hole] = lsbs[next];
+                    locations[hole] = locations[next];
+                    lengths[hole] = lengths[next];
+                    hole = next;
+                }
+                next = (next + 1) & mask;
+            }
+            lengths[hole] = 0;
+        }
+
+        private void resize(int capacity) {
+            long[] oldMsbs = msbs;
+            long[] oldLsbs = lsbs;
+            long[] oldLocations = locations;
+            int[] oldLengths = lengths;
+            msbs = new long[capacity];
+            lsbs = new long[capacity];
+            locations = new long[capacity];
+            lengths = new int[capacity];
+            int n = count;
+            count = 0;
+            for (int i = 0; i < oldLengths.length && count < n; i++) {
+                if (oldLengths[i] != 0) {
+                    insert(oldMsbs[i], oldLsbs[i], oldLocations[i], oldLengths[i]);
+                }
+            }
+        }
+    }
+}
@@ -26,14 +26,18 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jcr.RepositoryException;
 import javax.sql.DataSource;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.jackrabbit.api.stats.RepositoryStatistics;
 import org.apache.jackrabbit.core.fs.FileSystem;
 import org.apache.jackrabbit.core.fs.FileSystemResource;
 import org.apache.jackrabbit.core.fs.local.LocalFileSystem;
@@ -41,6 +45,7 @@ import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.id.PropertyId;
 import org.apache.jackrabbit.core.persistence.PMContext;
 import org.apache.jackrabbit.core.persistence.bundle.AbstractBundlePersistenceManager;
+import org.apache.jackrabbit.core.persistence.bundle.ChildNodePageStore;
 import org.apache.jackrabbit.core.persistence.util.BLOBStore;
 import org.apache.jackrabbit.core.persistence.util.BundleBinding;
 import org.apache.jackrabbit.core.persistence.util.ErrorHandling;
@@ -59,6 +64,7 @@ import org.apache.jackrabbit.core.util.db.ConnectionHelper;
 import org.apache.jackrabbit.core.util.db.DatabaseAware;
 import org.apache.jackrabbit.core.util.db.DbUtility;
 import org.apache.jackrabbit.core.util.db.StreamWrapper;
+import org.apache.jackrabbit.stats.RepositoryStatisticsImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -69,6 +75,9 @@ import org.slf4j.LoggerFactory;
  * Configuration:<br>
  * <ul>
  * <li>&lt;param name="{@link #setBundleCacheSize(String) bundleCacheSize}" value="8"/>
+ * <li>&lt;param name="{@link #setOffHeapBundleCacheSize(String) offHeapBundleCacheSize}" value="0"/>
+ * <li>&lt;param name="{@link #setChildNodePageSize(String) childNodePageSize}" value="0"/>
+ * <li>&lt;param name="{@link #setChildNodePageCacheSize(String) childNodePageCacheSize}" value="8"/>
  * <li>&lt;param name="{@link #setConsistencyCheck(String) consistencyCheck}" value="false"/>
  * <li>&lt;param name="{@link #setConsistencyFix(String) consistencyFix}" value="false"/>
  * <li>&lt;param name="{@link #setMinBlobSize(String) minBlobSize}" value="4096"/>
@@ -81,6 +90,7 @@ import org.slf4j.LoggerFactory;
  * <li>&lt;param name="{@link #setErrorHandling(String) errorHandling}" value=""/>
  * <li>&lt;param name="{@link #setBlockOnConnectionLoss(String) blockOnConnectionLoss}" value="false"/>
  * <li>&lt;param name="{@link #setSchemaCheckEnabled(String) schemaCheckEnabled}" value="true"/>
+ * <li>&lt;param name="{@link #setBundleBatchSize(String) bundleBatchSize}" value=""/>
  * </ul>
  */
 public class BundleDbPersistenceManager
@@ -137,6 +147,12 @@ public class BundleDbPersistenceManager
     /** indicates whether to block if the database connection is lost */
     protected boolean blockOnConnectionLoss;
 
+    /**
+     * maximum number of write statements that are held back while a
+     * change log is stored before they are sent to the database
+     */
+    private static final int MAX_PENDING_STATEMENTS = 1000;
+
     // SQL statements for bundle management
     protected String bundleInsertSQL;
     protected String bundleUpdateSQL;
@@ -147,6 +163,11 @@ public class BundleDbPersistenceManager
     protected String bundleSelectAllBundlesFromSQL;
     protected String bundleSelectAllBundlesSQL;
 
+    // SQL statements for child node page management
+    protected String childPageInsertSQL;
+    protected String childPageUpdateSQL;
+    protected String childPageDeleteSQL;
+
     // SQL statements for NodeReference management
     protected String nodeReferenceInsertSQL;
     protected String nodeReferenceUpdateSQL;
@@ -156,6 +177,10 @@ public class BundleDbPersistenceManager
     /** file system where BLOB data is stored */
     protected CloseableBLOBStore blobStore;
 
+    /** the store of the child node pages */
+    private final ChildNodePageStore childNodePageStore =
+        new DbChildNodePageStore();
+
     /** the index for local names */
     private StringIndex nameIndex;
 
@@ -165,6 +190,31 @@ public class BundleDbPersistenceManager
      */
     private int minBlobSize = 0x1000;
 
+    /**
+     * the maximum number of bundles loaded with a single select statement,
+     * or 0 to use the {@link #getDefaultBundleBatchSize() default}
+     * @see #setBundleBatchSize(String)
+     */
+    private int bundleBatchSize = 0;
+
+    /**
+     * the write statements of the change log that is currently being
+     * stored, keyed by SQL in the order in which they need to be executed,
+     * or <code>null</code> if no change log is being stored
+     */
+    private Map<String, List<Object[]>> pendingStatements;
+
+    /**
+     * the number of statements in {@link #pendingStatements}
+     */
+    private int pendingStatementCount;
+
+    /** Counter of committed change logs */
+    private AtomicLong commitCounter;
+
+    /** Counter of write statements sent while committing change logs */
+    private AtomicLong statementCounter;
+
     /**
      * flag for error handling
      */
@@ -409,6 +459,48 @@ public class BundleDbPersistenceManager
         this.minBlobSize = Integer.decode(minBlobSize).intValue();
     }
 
+    /**
+     * Returns the maximum number of bundles that are loaded with a single
+     * select statement when prefetching bundles.
+     *
+     * @return the bundle batch size
+     */
+    public String getBundleBatchSize() {
+        return String.valueOf(getEffectiveBundleBatchSize());
+    }
+
+    /**
+     * Sets the maximum number of bundles that are loaded with a single
+     * select statement when prefetching bundles, for example the child
+     * nodes of a node. If not set, a database specific
+     * {@link #getDefaultBundleBatchSize() default} is used.
+     *
+     * @param bundleBatchSize the bundle batch size
+     */
+    public void setBundleBatchSize(String bundleBatchSize) {
+        this.bundleBatchSize = Integer.decode(bundleBatchSize).intValue();
+    }
+
+    /**
+     * Returns the default maximum number of bundles that are loaded with a
+     * single select statement. Subclasses can override this method to take
+     * the limits of the database on the number of statement parameters or
+     * the length of <code>IN</code> lists into account.
+     *
+     * @return the default bundle batch size
+     */
+    protected int getDefaultBundleBatchSize() {
+        return 50;
+    }
+
+    private int getEffectiveBundleBatchSize() {
+        if (bundleBatchSize > 0) {
+            return bundleBatchSize;
+        } else {
+            return getDefaultBundleBatchSize();
+        }
+    }
+
     /**
      * Sets the error handling behaviour of this manager. See {@link ErrorHandling}
      * for details about the flags.
@@ -468,7 +560,10 @@ public class BundleDbPersistenceManager
     /**
      * {@inheritDoc}
      *
-     * Basically wraps a JDBC transaction around super.store().
+     * Basically wraps a JDBC transaction around super.store(). The bundle and
+     * reference writes of the change log are collected and sent to the
+     * database in JDBC batches, one per SQL statement, before the
+     * transaction is committed.
      * 
      * FIXME: the retry logic is almost a duplicate of {@code ConnectionHelper.RetryManager}.
      */
@@ -479,8 +574,15 @@ public class BundleDbPersistenceManager
         while (!sleepInterrupted && (blockOnConnectionLoss || failures <= 1)) {
             try {
                 conHelper.startBatch();
-                super.store(changeLog);
+                pendingStatements = new LinkedHashMap<String, List<Object[]>>();
+                try {
+                    super.store(changeLog);
+                } finally {
+                    pendingStatements = null;
+                    pendingStatementCount = 0;
+                }
                 conHelper.endBatch(true);
+                commitCounter.incrementAndGet();
                 return;
             } catch (SQLException e) {
                 // Either startBatch or stopBatch threw it: either way the
@@ -534,6 +636,12 @@ public class BundleDbPersistenceManager
         }
         super.init(context);
 
+        RepositoryStatisticsImpl stats = context.getRepositoryStatistics();
+        commitCounter = stats.getCounter(
+                RepositoryStatistics.Type.BUNDLE_WS_COMMIT_COUNTER);
+        statementCounter = stats.getCounter(
+                RepositoryStatistics.Type.BUNDLE_WS_STATEMENT_COUNTER);
+
         conHelper = createConnectionHelper(getDataSource());
         
         this.name = context.getHomeDir().getName();        
@@ -554,6 +662,7 @@ public class BundleDbPersistenceManager
         // load namespaces
         binding = new BundleBinding(errorHandling, blobStore, getNsIndex(), getNameIndex(), context.getDataStore());
         binding.setMinBlobSize(minBlobSize);
+        initOffHeapBundleCache();
 
         initialized = true;
 
@@ -600,8 +709,14 @@ public class BundleDbPersistenceManager
         InputStream in =
             AbstractBundlePersistenceManager.class.getResourceAsStream(
                     databaseType + ".ddl");
-        return new CheckSchemaOperation(conHelper, in, schemaObjectPrefix + "BUNDLE").addVariableReplacement(
-            CheckSchemaOperation.SCHEMA_OBJECT_PREFIX_VARIABLE, schemaObjectPrefix);
+        CheckSchemaOperation operation =
+            new CheckSchemaOperation(conHelper, in, schemaObjectPrefix + "BUNDLE").addVariableReplacement(
+                CheckSchemaOperation.SCHEMA_OBJECT_PREFIX_VARIABLE, schemaObjectPrefix);
+        if (useChildNodePages()) {
+            // the table was added after the initial schema
+            operation.addUpgradeTable(schemaObjectPrefix + "CHILDPAGE");
+        }
+        return operation;
     }
 
     /**
@@ -612,6 +727,14 @@ public class BundleDbPersistenceManager
         return blobStore;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected BundleBinding getBundleBinding() {
+        return binding;
+    }
+
     /**
      * Creates a suitable blobstore
      * @return a blobstore
@@ -846,8 +969,8 @@ public class BundleDbPersistenceManager
                 maxCount += 10;
             }
             rs = conHelper.exec(sql, keys, false, maxCount);
-            Map<NodeId, NodeInfo> result = new LinkedHashMap<NodeId, NodeInfo>(maxCount);
-            while ((maxCount == 0 || result.size() < maxCount) && rs.next()) {
+            List<NodePropBundle> bundles = new ArrayList<NodePropBundle>();
+            while ((maxCount == 0 || bundles.size() < maxCount) && rs.next()) {
                 NodeId current;
                 if (getStorageModel() == SM_BINARY_KEYS) {
                     current = new NodeId(rs.getBytes(1));
@@ -862,7 +985,13 @@ public class BundleDbPersistenceManager
                         continue;
                     }
                 }
-                NodePropBundle bundle = readBundle(current, rs, getStorageModel() == SM_LONGLONG_KEYS ? 3 : 2);
+                bundles.add(readBundle(current, rs, getStorageModel() == SM_LONGLONG_KEYS ? 3 : 2));
+            }
+            DbUtility.close(rs);
+            rs = null;
+            bundles = readChildNodeEntries(bundles);
+            Map<NodeId, NodeInfo> result = new LinkedHashMap<NodeId, NodeInfo>(maxCount);
+            for (NodePropBundle bundle : bundles) {
                 NodeInfo nodeInfo = new NodeInfo(bundle);
                 result.put(nodeInfo.getId(), nodeInfo);
             }
@@ -881,14 +1010,13 @@ public class BundleDbPersistenceManager
      */
     @Override
     protected NodePropBundle loadBundle(NodeId id) throws ItemStateException {
+        NodePropBundle bundle = null;
         try {
             ResultSet rs =
                 conHelper.exec(bundleSelectSQL, getKey(id), false, 0);
             try {
                 if (rs != null && rs.next()) {
-                    return readBundle(id, rs, 1);
-                } else {
-                    return null;
+                    bundle = readBundle(id, rs, 1);
                 }
             } finally {
             	if (rs != null) {
@@ -901,6 +1029,83 @@ public class BundleDbPersistenceManager
             log.debug("failed to read bundle: " + id, e);
             throw new ItemStateException(msg, e);
         }
+        return bundle;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Loads the bundles in batches of at most
+     * {@link #setBundleBatchSize(String) bundleBatchSize} bundles, each
+     * batch with a single select statement.
+     */
+    @Override
+    protected Map<NodeId, NodePropBundle> loadBundles(Collection<NodeId> ids)
+            throws ItemStateException {
+        Map<NodeId, NodePropBundle> result =
+            new HashMap<NodeId, NodePropBundle>();
+        List<NodeId> list = new ArrayList<NodeId>(ids);
+        int batchSize = getEffectiveBundleBatchSize();
+        for (int i = 0; i < list.size(); i += batchSize) {
+            List<NodeId> batch =
+                list.subList(i, Math.min(i + batchSize, list.size()));
+            if (batch.size() == 1) {
+                NodeId id = batch.get(0);
+                NodePropBundle bundle = loadBundle(id);
+                if (bundle != null) {
+                    result.put(id, bundle);
+                }
+            } else {
+                loadBundles(batch, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Loads the given bundles with a single select statement.
+     *
+     * @param ids the node ids of the bundles
+     * @param result map to which the loaded bundles are added
+     * @throws ItemStateException if an error while loading occurs.
+     */
+    private void loadBundles(List<NodeId> ids, Map<NodeId, NodePropBundle> result)
+            throws ItemStateException {
+        List<Object> params = new ArrayList<Object>();
+        for (NodeId id : ids) {
+            for (Object key : getKey(id)) {
+                params.add(key);
+            }
+        }
+        try {
+            ResultSet rs = conHelper.exec(
+                    buildBundleSelectMultipleSQL(ids.size()),
+                    params.toArray(), false, 0);
+            try {
+                while (rs != null && rs.next()) {
+                    NodeId id;
+                    int column;
+                    if (getStorageModel() == SM_BINARY_KEYS) {
+                        id = new NodeId(rs.getBytes(1));
+                        column = 2;
+                    } else {
+                        id = new NodeId(rs.getLong(1), rs.getLong(2));
+                        column = 3;
+                    }
+                    result.put(id, readBundle(id, rs, column));
+                }
+            } finally {
+                if (rs != null) {
+                    rs.close();
+                }
+            }
+        } catch (SQLException e) {
+            String msg = "failed to read " + ids.size()
+                + " bundles (stacktrace on DEBUG log level): " + e;
+            log.error(msg);
+            log.debug("failed to read bundles: " + ids, e);
+            throw new ItemStateException(msg, e);
+        }
     }
 
     /**
@@ -936,10 +1141,36 @@ public class BundleDbPersistenceManager
         }
     }
 
+    /**
+     * Reads the BLOB in the given column of the current row of the given
+     * result set, see {@link #readBundle(NodeId, ResultSet, int)}.
+     *
+     * @param rs result set
+     * @param column BLOB column
+     * @return the BLOB data
+     * @throws SQLException if the data can not be read
+     * @throws IOException if the data can not be read
+     */
+    private byte[] readBytes(ResultSet rs, int column)
+            throws SQLException, IOException {
+        InputStream in;
+        if (rs.getMetaData().getColumnType(column) == Types.BLOB) {
+            in = rs.getBlob(column).getBinaryStream();
+        } else {
+            in = rs.getBinaryStream(column);
+        }
+        try {
+            return IOUtils.toByteArray(in);
+        } finally {
+            in.close();
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
     protected synchronized void storeBundle(NodePropBundle bundle) throws ItemStateException {
+        writeChildNodePages(bundle);
         try {
             ByteArrayOutputStream out =
                 new ByteArrayOutputStream(INITIAL_BUFFER_SIZE);
@@ -947,7 +1178,7 @@ public class BundleDbPersistenceManager
 
             String sql = bundle.isNew() ? bundleInsertSQL : bundleUpdateSQL;
             Object[] params = createParams(bundle.getId(), out.toByteArray(), true);
-            conHelper.update(sql, params);
+            update(sql, params);
         } catch (Exception e) {
             String msg;
 
@@ -969,8 +1200,9 @@ public class BundleDbPersistenceManager
      * {@inheritDoc}
      */
     protected synchronized void destroyBundle(NodePropBundle bundle) throws ItemStateException {
+        destroyChildNodePages(bundle);
         try {
-            conHelper.update(bundleDeleteSQL, getKey(bundle.getId()));
+            update(bundleDeleteSQL, getKey(bundle.getId()));
         } catch (Exception e) {
             if (e instanceof NoSuchItemStateException) {
                 throw (NoSuchItemStateException) e;
@@ -981,6 +1213,30 @@ public class BundleDbPersistenceManager
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected ChildNodePageStore getChildNodePageStore() {
+        return childNodePageStore;
+    }
+
+    /**
+     * Creates the parameters of a child node page statement: the page data
+     * unless <code>null</code>, the node identifier and the page number.
+     */
+    private Object[] createChildPageParams(NodeId id, int number, byte[] data) {
+        List<Object> params = new ArrayList<Object>();
+        if (data != null) {
+            params.add(data);
+        }
+        for (Object key : getKey(id)) {
+            params.add(key);
+        }
+        params.add(number);
+        return params.toArray();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -1041,7 +1297,7 @@ public class BundleDbPersistenceManager
             Serializer.serialize(refs, out);
 
             Object[] params = createParams(refs.getTargetId(), out.toByteArray(), true);
-            conHelper.exec(sql, params);
+            update(sql, params);
             
             // there's no need to close a ByteArrayOutputStream
             //out.close();
@@ -1061,7 +1317,7 @@ public class BundleDbPersistenceManager
         }
 
         try {
-            conHelper.exec(nodeReferenceDeleteSQL, getKey(refs.getTargetId()));
+            update(nodeReferenceDeleteSQL, getKey(refs.getTargetId()));
         } catch (Exception e) {
             if (e instanceof NoSuchItemStateException) {
                 throw (NoSuchItemStateException) e;
@@ -1072,6 +1328,82 @@ public class BundleDbPersistenceManager
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Sends the write statements that were collected while storing the
+     * current change log to the database.
+     */
+    protected void flushChanges() throws ItemStateException {
+        if (pendingStatements != null && !pendingStatements.isEmpty()) {
+            try {
+                executePendingStatements();
+            } catch (SQLException e) {
+                String msg;
+                if (isIntegrityConstraintViolation(e)) {
+                    // see storeBundle()
+                    msg = "FATAL error while writing the change log";
+                } else {
+                    msg = "failed to write the change log";
+                }
+                log.error(msg, e);
+                if (e.getNextException() != null) {
+                    // the batch exception of some drivers hides the cause
+                    DbUtility.logException(null, e.getNextException());
+                }
+                throw new ItemStateException(msg, e);
+            }
+        }
+    }
+
+    /**
+     * Executes the given insert, update or delete statement. While a change
+     * log is being stored, the statement is only added to the pending
+     * statements, which are sent to the database in batches.
+     *
+     * @param sql the SQL statement
+     * @param params the parameters of the statement
+     * @throws SQLException if the statement could not be executed
+     */
+    private void update(String sql, Object[] params) throws SQLException {
+        if (pendingStatements == null) {
+            conHelper.update(sql, params);
+            return;
+        }
+        List<Object[]> paramSets = pendingStatements.get(sql);
+        if (paramSets == null) {
+            paramSets = new ArrayList<Object[]>();
+            pendingStatements.put(sql, paramSets);
+        }
+        paramSets.add(params);
+        if (++pendingStatementCount >= MAX_PENDING_STATEMENTS) {
+            executePendingStatements();
+        }
+    }
+
+    /**
+     * Sends the pending statements to the database, one batch per SQL
+     * statement. The batches are executed in the order in which their
+     * first statement was added, so that for example the bundles of a
+     * change log are deleted before they are inserted again.
+     *
+     * @throws SQLException if a batch could not be executed
+     */
+    private void executePendingStatements() throws SQLException {
+        for (Map.Entry<String, List<Object[]>> entry
+                : pendingStatements.entrySet()) {
+            List<Object[]> paramSets = entry.getValue();
+            if (paramSets.size() == 1) {
+                conHelper.update(entry.getKey(), paramSets.get(0));
+            } else {
+                conHelper.updateBatch(entry.getKey(), paramSets);
+            }
+            statementCounter.incrementAndGet();
+        }
+        pendingStatements.clear();
+        pendingStatementCount = 0;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -1123,6 +1455,10 @@ public class BundleDbPersistenceManager
             bundleSelectAllIdsFromSQL = "select NODE_ID from " + schemaObjectPrefix + "BUNDLE WHERE NODE_ID > ? ORDER BY NODE_ID";
             bundleSelectAllBundlesSQL = "select NODE_ID, BUNDLE_DATA from " + schemaObjectPrefix + "BUNDLE ORDER BY NODE_ID";
             bundleSelectAllBundlesFromSQL = "select NODE_ID, BUNDLE_DATA from " + schemaObjectPrefix + "BUNDLE WHERE NODE_ID > ? ORDER BY NODE_ID";
+
+            childPageInsertSQL = "insert into " + schemaObjectPrefix + "CHILDPAGE (PAGE_DATA, NODE_ID, PAGE_NO) values (?, ?, ?)";
+            childPageUpdateSQL = "update " + schemaObjectPrefix + "CHILDPAGE set PAGE_DATA = ? where NODE_ID = ? and PAGE_NO = ?";
+            childPageDeleteSQL = "delete from " + schemaObjectPrefix + "CHILDPAGE where NODE_ID = ? and PAGE_NO = ?";
         } else {
             bundleInsertSQL = "insert into " + schemaObjectPrefix + "BUNDLE (BUNDLE_DATA, NODE_ID_HI, NODE_ID_LO) values (?, ?, ?)";
             bundleUpdateSQL = "update " + schemaObjectPrefix + "BUNDLE set BUNDLE_DATA = ? where NODE_ID_HI = ? and NODE_ID_LO = ?";
@@ -1156,6 +1492,197 @@ public class BundleDbPersistenceManager
                             + " WHERE (NODE_ID_HI >= ?) AND (? IS NOT NULL)"
                             + " ORDER BY NODE_ID_HI, NODE_ID_LO";
 
+            childPageInsertSQL =
+                "insert into " + schemaObjectPrefix + "CHILDPAGE"
+                + " (PAGE_DATA, NODE_ID_HI, NODE_ID_LO, PAGE_NO) values (?, ?, ?, ?)";
+            childPageUpdateSQL =
+                "update " + schemaObjectPrefix + "CHILDPAGE"
+                + " set PAGE_DATA = ? where NODE_ID_HI = ? and NODE_ID_LO = ? and PAGE_NO = ?";
+            childPageDeleteSQL = "delete from " + schemaObjectPrefix + "CHILDPAGE where NODE_ID_HI = ? and NODE_ID_LO = ? and PAGE_NO = ?";
+        }
+
+    }
+
+    /**
+     * Builds the SQL statement that selects the given number of bundles at
+     * once. The statement returns the node identifier columns followed by
+     * the bundle data, with one row per existing bundle.
+     *
+     * @param count the number of bundles to select
+     * @return the SQL statement
+     */
+    protected String buildBundleSelectMultipleSQL(int count) {
+        StringBuilder sql = new StringBuilder();
+        if (getStorageModel() == SM_BINARY_KEYS) {
+            sql.append("select NODE_ID, BUNDLE_DATA from ");
+            sql.append(schemaObjectPrefix);
+            sql.append("BUNDLE where NODE_ID in (");
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    sql.append(", ");
+                }
+                sql.append('?');
+            }
+            sql.append(')');
+        } else {
+            // not all databases support WHERE (NODE_ID_HI, NODE_ID_LO) IN ((?, ?), ...)
+            sql.append("select NODE_ID_HI, NODE_ID_LO, BUNDLE_DATA from ");
+            sql.append(schemaObjectPrefix);
+            sql.append("BUNDLE where ");
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    sql.append(" or ");
+                }
+                sql.append("(NODE_ID_HI = ? and NODE_ID_LO = ?)");
+            }
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Builds the SQL statement that selects the child node pages of the
+     * given number of bundles at once. The statement returns the node
+     * identifier columns followed by the page number and the page data,
+     * with one row per page.
+     *
+     * @param count the number of bundles
+     * @return the SQL statement
+     */
+    protected String buildChildPageSelectMultipleSQL(int count) {
+        StringBuilder sql = new StringBuilder();
+        if (getStorageModel() == SM_BINARY_KEYS) {
+            sql.append("select NODE_ID, PAGE_NO, PAGE_DATA from ");
+            sql.append(schemaObjectPrefix);
+            sql.append("CHILDPAGE where NODE_ID in (");
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    sql.append(", ");
+                }
+                sql.append('?');
+            }
+            sql.append(')');
+        } else {
+            sql.append("select NODE_ID_HI, NODE_ID_LO, PAGE_NO, PAGE_DATA from ");
+            sql.append(schemaObjectPrefix);
+            sql.append("CHILDPAGE where ");
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    sql.append(" or ");
+                }
+                sql.append("(NODE_ID_HI = ? and NODE_ID_LO = ?)");
+            }
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Stores the child node pages in the CHILDPAGE table. The pages of
+     * many bundles are loaded in batches of at most
+     * {@link #setBundleBatchSize(String) bundleBatchSize} bundles, and
+     * pages are written with the same JDBC batches as the bundles.
+     */
+    protected class DbChildNodePageStore implements ChildNodePageStore {
+
+        /**
+         * {@inheritDoc}
+         */
+        public Map<NodeId, Map<Integer, byte[]>> loadChildNodePages(
+                Map<NodeId, Collection<Integer>> numbers)
+                throws ItemStateException {
+            Map<NodeId, Map<Integer, byte[]>> result =
+                new HashMap<NodeId, Map<Integer, byte[]>>();
+            List<NodeId> ids = new ArrayList<NodeId>(numbers.keySet());
+            int batchSize = getEffectiveBundleBatchSize();
+            for (int i = 0; i < ids.size(); i += batchSize) {
+                List<NodeId> batch =
+                    ids.subList(i, Math.min(i + batchSize, ids.size()));
+                loadChildNodePages(batch, numbers, result);
+            }
+            return result;
+        }
+
+        /**
+         * Loads the child node pages of the given bundles with a single
+         * select statement.
+         *
+         * @param ids the node ids of the bundles
+         * @param numbers the numbers of the pages to load, keyed by node id
+         * @param result map to which the loaded pages are added
+         * @throws ItemStateException if an error while loading occurs.
+         */
+        private void loadChildNodePages(
+                List<NodeId> ids, Map<NodeId, Collection<Integer>> numbers,
+                Map<NodeId, Map<Integer, byte[]>> result)
+                throws ItemStateException {
+            List<Object> params = new ArrayList<Object>();
+            for (NodeId id : ids) {
+                for (Object key : getKey(id)) {
+                    params.add(key);
+                }
+            }
+            ResultSet rs = null;
+            try {
+                rs = conHelper.exec(
+                        buildChildPageSelectMultipleSQL(ids.size()),
+                        params.toArray(), false, 0);
+                while (rs.next()) {
+                    NodeId id;
+                    int column;
+                    if (getStorageModel() == SM_BINARY_KEYS) {
+                        id = new NodeId(rs.getBytes(1));
+                        column = 2;
+                    } else {
+                        id = new NodeId(rs.getLong(1), rs.getLong(2));
+                        column = 3;
+                    }
+                    int number = rs.getInt(column);
+                    if (numbers.get(id).contains(number)) {
+                        Map<Integer, byte[]> pages = result.get(id);
+                        if (pages == null) {
+                            pages = new HashMap<Integer, byte[]>();
+                            result.put(id, pages);
+                        }
+                        pages.put(number, readBytes(rs, column + 1));
+                    }
+                }
+            } catch (Exception e) {
+                String msg = "failed to read child node pages of "
+                    + ids.size() + " bundles: " + ids;
+                log.error(msg, e);
+                throw new ItemStateException(msg, e);
+            } finally {
+                DbUtility.close(rs);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void storeChildNodePage(
+                NodeId id, int number, byte[] data, boolean isNew)
+                throws ItemStateException {
+            try {
+                String sql = isNew ? childPageInsertSQL : childPageUpdateSQL;
+                update(sql, createChildPageParams(id, number, data));
+            } catch (Exception e) {
+                String msg = "failed to write child node page " + number + ": " + id;
+                log.error(msg, e);
+                throw new ItemStateException(msg, e);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        public void destroyChildNodePage(NodeId id, int number)
+                throws ItemStateException {
+            try {
+                update(childPageDeleteSQL, createChildPageParams(id, number, null));
+            } catch (Exception e) {
+                String msg = "failed to delete child node page " + number + ": " + id;
+                log.error(msg, e);
+                throw new ItemStateException(msg, e);
+            }
         }
 
     }
@@ -31,6 +31,7 @@ import javax.sql.DataSource;
  * Configuration:<br>
  * <ul>
  * <li>&lt;param name="{@link #setBundleCacheSize(String) bundleCacheSize}" value="8"/>
+ * <li>&lt;param name="{@link #setOffHeapBundleCacheSize(String) offHeapBundleCacheSize}" value="0"/>
  * <li>&lt;param name="{@link #setConsistencyCheck(String) consistencyCheck}" value="false"/>
  * <li>&lt;param name="{@link #setMinBlobSize(String) minBlobSize}" value="16384"/>
  * <li>&lt;param name="{@link #setDriver(String) driver}" value="org.apache.derby.jdbc.EmbeddedDriver"/>
@@ -294,4 +295,18 @@ public class DerbyPersistenceManager extends BundleDbPersistenceManager {
         ((DerbyConnectionHelper) conHelper).shutDown(getDriver());
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Derby compiles every distinct statement and evaluates long
+     * <code>IN</code> lists of node ids slowly, so only small batches
+     * are used.
+     *
+     * @return 25
+     */
+    @Override
+    protected int getDefaultBundleBatchSize() {
+        return 25;
+    }
+
 }
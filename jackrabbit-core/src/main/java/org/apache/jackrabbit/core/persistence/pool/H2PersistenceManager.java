@@ -25,6 +25,7 @@ import org.apache.jackrabbit.core.persistence.PMContext;
  * <pre>
  * &lt;PersistenceManager class="org.apache.jackrabbit.core.persistence.pool.H2PersistenceManager">
  *     &lt;param name="{@link #setBundleCacheSize(String) bundleCacheSize}" value="8"/>
+ *     &lt;param name="{@link #setOffHeapBundleCacheSize(String) offHeapBundleCacheSize}" value="0"/>
  *     &lt;param name="{@link #setConsistencyCheck(String) consistencyCheck}" value="false"/>
  *     &lt;param name="{@link #setMinBlobSize(String) minBlobSize}" value="16384"/>
  *     &lt;param name="{@link #setDriver(String) driver}" value="org.h2.Driver"/>
@@ -82,4 +83,17 @@ public class H2PersistenceManager extends BundleDbPersistenceManager {
         conHelper.exec("SET LOCK_TIMEOUT " + lockTimeout);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * H2 is typically embedded, so round trips are cheap and a
+     * moderate batch size is sufficient.
+     *
+     * @return 100
+     */
+    @Override
+    protected int getDefaultBundleBatchSize() {
+        return 100;
+    }
+
 }
@@ -22,6 +22,7 @@ import org.apache.jackrabbit.core.util.db.CheckSchemaOperation;
  * Extends the {@link BundleDbPersistenceManager} by MS-SQL specific code. <p/> Configuration:<br>
  * <ul>
  * <li>&lt;param name="{@link #setBundleCacheSize(String) bundleCacheSize}" value="8"/>
+ * <li>&lt;param name="{@link #setOffHeapBundleCacheSize(String) offHeapBundleCacheSize}" value="0"/>
  * <li>&lt;param name="{@link #setConsistencyCheck(String) consistencyCheck}" value="false"/>
  * <li>&lt;param name="{@link #setMinBlobSize(String) minBlobSize}" value="16384"/>
  * <li>&lt;param name="{@link #setDriver(String) driver}" value="com.microsoft.sqlserver.jdbc.SQLServerDriver"/>
@@ -75,4 +76,17 @@ public class MSSqlPersistenceManager extends BundleDbPersistenceManager {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Stays well below the SQL Server limit of 2100 parameters
+     * per statement.
+     *
+     * @return 500
+     */
+    @Override
+    protected int getDefaultBundleBatchSize() {
+        return 500;
+    }
+
 }
@@ -24,6 +24,7 @@ import org.apache.jackrabbit.core.persistence.PMContext;
  * Configuration:<br>
  * <ul>
  * <li>&lt;param name="{@link #setBundleCacheSize(String) bundleCacheSize}" value="8"/>
+ * <li>&lt;param name="{@link #setOffHeapBundleCacheSize(String) offHeapBundleCacheSize}" value="0"/>
  * <li>&lt;param name="{@link #setConsistencyCheck(String) consistencyCheck}" value="false"/>
  * <li>&lt;param name="{@link #setMinBlobSize(String) minBlobSize}" value="16384"/>
  * <li>&lt;param name="{@link #setDriver(String) driver}" value="org.gjt.mm.mysql.Driver"/>
@@ -51,4 +52,17 @@ public class MySqlPersistenceManager extends BundleDbPersistenceManager {
         super.init(context);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Uses a larger batch than the generic default, as MySQL handles
+     * long <code>IN</code> lists well.
+     *
+     * @return 200
+     */
+    @Override
+    protected int getDefaultBundleBatchSize() {
+        return 200;
+    }
+
 }
@@ -30,6 +30,7 @@ import org.apache.jackrabbit.core.util.db.OracleConnectionHelper;
  * <ul>
  * <li>&lt;param name="{@link #setExternalBLOBs(String)} externalBLOBs}" value="false"/>
  * <li>&lt;param name="{@link #setBundleCacheSize(String) bundleCacheSize}" value="8"/>
+ * <li>&lt;param name="{@link #setOffHeapBundleCacheSize(String) offHeapBundleCacheSize}" value="0"/>
  * <li>&lt;param name="{@link #setConsistencyCheck(String) consistencyCheck}" value="false"/>
  * <li>&lt;param name="{@link #setMinBlobSize(String) minBlobSize}" value="16384"/>
  * <li>&lt;param name="{@link #setDriver(String) driver}" value="oracle.jdbc.OracleDriverr"/>
@@ -175,4 +176,18 @@ public class OraclePersistenceManager extends BundleDbPersistenceManager {
             .addVariableReplacement(TABLESPACE_VARIABLE, tablespace)
             .addVariableReplacement(INDEX_TABLESPACE_VARIABLE, indexTablespace);
     }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Stays well below the limit of 1000 expressions in an Oracle
+     * <code>IN</code> list.
+     *
+     * @return 500
+     */
+    @Override
+    protected int getDefaultBundleBatchSize() {
+        return 500;
+    }
+
 }
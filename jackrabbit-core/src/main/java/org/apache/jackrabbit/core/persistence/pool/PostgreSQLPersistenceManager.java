@@ -30,6 +30,7 @@ import org.apache.jackrabbit.core.util.db.PostgreSQLConnectionHelper;
  * Configuration:<br>
  * <ul>
  * <li>&lt;param name="{@link #setBundleCacheSize(String) bundleCacheSize}" value="8"/>
+ * <li>&lt;param name="{@link #setOffHeapBundleCacheSize(String) offHeapBundleCacheSize}" value="0"/>
  * <li>&lt;param name="{@link #setConsistencyCheck(String) consistencyCheck}" value="false"/>
  * <li>&lt;param name="{@link #setMinBlobSize(String) minBlobSize}" value="16384"/>
  * <li>&lt;param name="{@link #setDriver(String) driver}" value="org.postgresql.Driver"/>
@@ -82,4 +83,17 @@ public class PostgreSQLPersistenceManager extends BundleDbPersistenceManager {
         return SM_LONGLONG_KEYS;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Uses a larger batch than the generic default, as PostgreSQL handles
+     * long lists of key conditions well.
+     *
+     * @return 200
+     */
+    @Override
+    protected int getDefaultBundleBatchSize() {
+        return 200;
+    }
+
 }
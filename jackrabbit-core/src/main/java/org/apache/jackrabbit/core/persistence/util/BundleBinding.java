@@ -19,6 +19,8 @@ package org.apache.jackrabbit.core.persistence.util;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Collection;
+import java.util.List;
 
 import org.apache.jackrabbit.core.data.DataStore;
 import org.apache.jackrabbit.core.id.NodeId;
@@ -57,6 +59,14 @@ public class BundleBinding {
      */
     static final int VERSION_3 = 3;
 
+    /**
+     * serialization version 4, which adds the table of child node pages to
+     * version 3. It is only used for bundles whose child node entries are
+     * stored in separate pages, so that other bundles stay readable by
+     * earlier releases.
+     */
+    static final int VERSION_4 = 4;
+
     /**
      * current version
      */
@@ -161,7 +171,36 @@ public class BundleBinding {
      */
     public void writeBundle(OutputStream out, NodePropBundle bundle)
             throws IOException {
-        new BundleWriter(this, out).writeBundle(bundle);
+        int version = VERSION_CURRENT;
+        if (bundle.getChildNodePages() != null) {
+            version = VERSION_4;
+        }
+        new BundleWriter(this, out, version).writeBundle(bundle);
+    }
+
+    /**
+     * Deserializes a page of child node entries.
+     *
+     * @param in the input stream
+     * @return the child node entries
+     * @throws IOException if an I/O error occurs.
+     */
+    public List<NodePropBundle.ChildNodeEntry> readChildNodePage(InputStream in)
+            throws IOException {
+        return new BundleReader(this, in).readChildNodeEntries();
+    }
+
+    /**
+     * Serializes a page of child node entries.
+     *
+     * @param out the output stream
+     * @param entries the child node entries
+     * @throws IOException if an I/O error occurs.
+     */
+    public void writeChildNodePage(
+            OutputStream out, Collection<NodePropBundle.ChildNodeEntry> entries)
+            throws IOException {
+        new BundleWriter(this, out, VERSION_4).writeChildNodeEntries(entries);
     }
 
 }
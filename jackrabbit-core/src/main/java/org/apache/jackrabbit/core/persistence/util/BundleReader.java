@@ -30,10 +30,12 @@ import org.apache.jackrabbit.spi.commons.name.NameConstants;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.TimeZone;
 import java.math.BigDecimal;
@@ -210,6 +212,41 @@ class BundleReader {
             }
             bundle.setSharedSet(shared);
         }
+
+        // table of child node pages
+        if (version >= BundleBinding.VERSION_4) {
+            int count = readVarInt();
+            List<NodePropBundle.ChildNodePage> pages =
+                new ArrayList<NodePropBundle.ChildNodePage>(count);
+            for (int i = 0; i < count; i++) {
+                int number = readVarInt();
+                int entries = readVarInt();
+                NodeId firstId = readNodeId();
+                pages.add(new NodePropBundle.ChildNodePage(
+                        number, entries, firstId));
+            }
+            bundle.setChildNodePages(pages);
+            bundle.setChildNodeEntriesLoaded(false);
+        }
+    }
+
+    /**
+     * Deserializes a page of child node entries.
+     *
+     * @return the child node entries
+     * @throws IOException if an I/O error occurs.
+     */
+    public List<NodePropBundle.ChildNodeEntry> readChildNodeEntries()
+            throws IOException {
+        int count = readVarInt();
+        List<NodePropBundle.ChildNodeEntry> entries =
+            new ArrayList<NodePropBundle.ChildNodeEntry>(count);
+        for (int i = 0; i < count; i++) {
+            Name name = readQName();
+            NodeId id = readNodeId();
+            entries.add(new NodePropBundle.ChildNodeEntry(name, id));
+        }
+        return entries;
     }
 
     private void readBundleOld(NodePropBundle bundle) throws IOException {
@@ -24,7 +24,9 @@ import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.GregorianCalendar;
+import java.util.List;
 
 import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
@@ -34,6 +36,7 @@ import org.apache.commons.io.IOUtils;
 import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.value.InternalValue;
 import org.apache.jackrabbit.core.persistence.util.NodePropBundle.ChildNodeEntry;
+import org.apache.jackrabbit.core.persistence.util.NodePropBundle.ChildNodePage;
 import org.apache.jackrabbit.core.persistence.util.NodePropBundle.PropertyEntry;
 import org.apache.jackrabbit.spi.Name;
 import org.slf4j.Logger;
@@ -71,10 +74,25 @@ class BundleWriter {
      */
     public BundleWriter(BundleBinding binding, OutputStream stream)
             throws IOException {
+        this(binding, stream, BundleBinding.VERSION_CURRENT);
+    }
+
+    /**
+     * Creates a new bundle serializer that uses the given serialization
+     * version, which must be {@link BundleBinding#VERSION_3} or later.
+     *
+     * @param binding bundle binding
+     * @param stream stream to which the bundle will be written
+     * @param version serialization version
+     * @throws IOException if an I/O error occurs.
+     */
+    public BundleWriter(BundleBinding binding, OutputStream stream, int version)
+            throws IOException {
         assert namespaces.length == 7;
+        assert version >= BundleBinding.VERSION_3;
         this.binding = binding;
         this.out = new DataOutputStream(stream);
-        this.out.writeByte(BundleBinding.VERSION_CURRENT);
+        this.out.writeByte(version);
     }
 
     /**
@@ -104,6 +122,11 @@ class BundleWriter {
         Collection<PropertyEntry> properties = bundle.getPropertyEntries();
         Collection<ChildNodeEntry> nodes = bundle.getChildNodeEntries();
         Collection<NodeId> shared = bundle.getSharedSet();
+        List<ChildNodePage> pages = bundle.getChildNodePages();
+        if (pages != null) {
+            // the child node entries are stored in the pages
+            nodes = Collections.emptyList();
+        }
 
         int mn = mixins.size();
         int pn = properties.size();
@@ -145,10 +168,35 @@ class BundleWriter {
             writeNodeId(nodeId);
         }
 
+        // table of child node pages (version 4)
+        if (pages != null) {
+            writeVarInt(pages.size());
+            for (ChildNodePage page : pages) {
+                writeVarInt(page.getNumber());
+                writeVarInt(page.getCount());
+                writeNodeId(page.getFirstId());
+            }
+        }
+
         // set size of bundle
         bundle.setSize(out.size() - size);
     }
 
+    /**
+     * Serializes a page of child node entries.
+     *
+     * @param entries the child node entries
+     * @throws IOException if an I/O error occurs.
+     */
+    public void writeChildNodeEntries(Collection<ChildNodeEntry> entries)
+            throws IOException {
+        writeVarInt(entries.size());
+        for (ChildNodeEntry child : entries) {
+            writeName(child.getName());   // name
+            writeNodeId(child.getId());   // uuid
+        }
+    }
+
     /**
      * Serializes a property entry. The serialization begins with the
      * property name followed by a single byte that encodes the type and
@@ -104,6 +104,20 @@ public class NodePropBundle {
      */
     private Set<NodeId> sharedSet;
 
+    /**
+     * The pages in which the child node entries were last persisted, or
+     * <code>null</code> if they are persisted within the bundle itself.
+     */
+    private List<ChildNodePage> childNodePages;
+
+    /**
+     * Whether the child node entries of this bundle are available from
+     * {@link #getChildNodeEntries()}. This is only <code>false</code> for
+     * a bundle that was read with a table of child node pages, until the
+     * entries are read from the pages or updated from a node state.
+     */
+    private boolean childNodeEntriesLoaded = true;
+
     /**
      * Creates a "new" bundle with the given id
      *
@@ -142,6 +156,7 @@ public class NodePropBundle {
         for (org.apache.jackrabbit.core.state.ChildNodeEntry cne : list) {
             addChildNodeEntry(cne.getName(), cne.getId());
         }
+        childNodeEntriesLoaded = true;
         sharedSet = state.getSharedSet();
     }
 
@@ -284,13 +299,35 @@ public class NodePropBundle {
     }
 
     /**
-     * Returns the list of the child node entries.
+     * Returns the list of the child node entries. The list is empty if the
+     * entries are stored in {@link #getChildNodePages() pages} that have
+     * not been {@link #isChildNodeEntriesLoaded() loaded}.
      * @return the list of the child node entries.
      */
     public List<NodePropBundle.ChildNodeEntry> getChildNodeEntries() {
         return childNodeEntries;
     }
 
+    /**
+     * Checks if the child node entries of this bundle are available from
+     * {@link #getChildNodeEntries()}. This is <code>false</code> if the
+     * bundle was read with a table of {@link #getChildNodePages() pages}
+     * and the entries have not been loaded from them.
+     * @return <code>true</code> if the child node entries are available
+     */
+    public boolean isChildNodeEntriesLoaded() {
+        return childNodeEntriesLoaded;
+    }
+
+    /**
+     * Sets whether the child node entries of this bundle are available from
+     * {@link #getChildNodeEntries()}.
+     * @param loaded <code>true</code> if the child node entries are available
+     */
+    public void setChildNodeEntriesLoaded(boolean loaded) {
+        childNodeEntriesLoaded = loaded;
+    }
+
     /**
      * Adds a child node entry.
      * @param name the name of the entry.
@@ -300,6 +337,29 @@ public class NodePropBundle {
         childNodeEntries.add(new ChildNodeEntry(name, id));
     }
 
+    /**
+     * Returns the pages in which the child node entries of this bundle were
+     * last persisted, in the order of the child node entries.
+     *
+     * @return the child node pages, or <code>null</code> if the child node
+     *         entries are persisted within the bundle
+     */
+    public List<ChildNodePage> getChildNodePages() {
+        return childNodePages;
+    }
+
+    /**
+     * Sets the pages in which the child node entries of this bundle are
+     * persisted.
+     *
+     * @param childNodePages the child node pages, or <code>null</code> if
+     *                       the child node entries are persisted within the
+     *                       bundle
+     */
+    public void setChildNodePages(List<ChildNodePage> childNodePages) {
+        this.childNodePages = childNodePages;
+    }
+
     /**
      * Adds a new property entry
      * @param entry the enrty to add
@@ -542,6 +602,89 @@ public class NodePropBundle {
 
     }
 
+    //------------------------------------------------------< ChildNodePage >---
+
+    /**
+     * Describes a page of child node entries that is persisted separately
+     * from its bundle. The entries themselves are not kept here; they are
+     * loaded from the page when needed.
+     */
+    public static class ChildNodePage {
+
+        /**
+         * the number of the page, unique within its bundle
+         */
+        private final int number;
+
+        /**
+         * the number of child node entries in the page
+         */
+        private final int count;
+
+        /**
+         * the id of the first child node entry in the page
+         */
+        private final NodeId firstId;
+
+        /**
+         * Creates a new page description.
+         *
+         * @param number the page number
+         * @param count the number of entries
+         * @param firstId the id of the first entry
+         */
+        public ChildNodePage(int number, int count, NodeId firstId) {
+            this.number = number;
+            this.count = count;
+            this.firstId = firstId;
+        }
+
+        /**
+         * Returns the number of the page.
+         * @return the number of the page.
+         */
+        public int getNumber() {
+            return number;
+        }
+
+        /**
+         * Returns the number of child node entries in the page.
+         * @return the number of child node entries in the page.
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the id of the first child node entry in the page.
+         * @return the id of the first child node entry in the page.
+         */
+        public NodeId getFirstId() {
+            return firstId;
+        }
+
+        //----------------------------------------------------------< Object >
+
+        public String toString() {
+            return "page " + number + " (" + count + " entries)";
+        }
+
+        public boolean equals(Object object) {
+            if (object instanceof ChildNodePage) {
+                ChildNodePage that = (ChildNodePage) object;
+                return number == that.number && count == that.count
+                    && firstId.equals(that.firstId);
+            } else {
+                return false;
+            }
+        }
+
+        public int hashCode() {
+            return number;
+        }
+
+    }
+
     //------------------------------------------------------< PropertyEntry >---
 
     /**
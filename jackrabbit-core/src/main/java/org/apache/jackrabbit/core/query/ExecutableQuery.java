@@ -16,9 +16,13 @@
  */
 package org.apache.jackrabbit.core.query;
 
+import java.util.Map;
+
 import javax.jcr.RepositoryException;
 import javax.jcr.query.QueryResult;
 
+import org.apache.jackrabbit.spi.Name;
+
 /**
  * Specifies an interface for a query object implementation that can just be
  * executed.
@@ -36,4 +40,32 @@ public interface ExecutableQuery {
      */
     QueryResult execute(long offset, long limit) throws RepositoryException;
 
+    /**
+     * Returns the number of results of this query that are readable by the
+     * session that executes the query.
+     *
+     * @return the number of readable results.
+     * @throws RepositoryException if an error occurs
+     */
+    long count() throws RepositoryException;
+
+    /**
+     * Returns the number of readable results of this query per value of the
+     * property with the given name.
+     *
+     * @param propertyName the name of the property.
+     * @return the number of readable results per JCR string value.
+     * @throws RepositoryException if an error occurs
+     */
+    Map<String, Long> facet(Name propertyName) throws RepositoryException;
+
+    /**
+     * Enables or disables parallel evaluation of this query on the sub
+     * indexes of the search index.
+     *
+     * @param parallelExecution <code>false</code> to evaluate the query with
+     *                          the calling thread only.
+     */
+    void setParallelExecution(boolean parallelExecution);
+
 }
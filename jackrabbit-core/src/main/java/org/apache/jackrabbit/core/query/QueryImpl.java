@@ -20,6 +20,8 @@ import static org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_LANGUAGE;
 import static org.apache.jackrabbit.spi.commons.name.NameConstants.JCR_STATEMENT;
 import static org.apache.jackrabbit.spi.commons.name.NameConstants.NT_QUERY;
 
+import java.util.Map;
+
 import javax.jcr.ItemExistsException;
 import javax.jcr.ItemNotFoundException;
 import javax.jcr.Node;
@@ -33,10 +35,12 @@ import javax.jcr.query.InvalidQueryException;
 import javax.jcr.query.QueryResult;
 import javax.jcr.version.VersionException;
 
+import org.apache.jackrabbit.api.query.JackrabbitQuery;
 import org.apache.jackrabbit.api.stats.RepositoryStatistics.Type;
 import org.apache.jackrabbit.core.session.SessionContext;
 import org.apache.jackrabbit.core.session.SessionOperation;
 import org.apache.jackrabbit.stats.RepositoryStatisticsImpl;
+import org.apache.jackrabbit.spi.Name;
 import org.apache.jackrabbit.spi.Path;
 import org.apache.jackrabbit.spi.commons.conversion.NameException;
 import org.slf4j.Logger;
@@ -45,7 +49,7 @@ import org.slf4j.LoggerFactory;
 /**
  * Provides the default implementation for a JCR query.
  */
-public class QueryImpl extends AbstractQueryImpl {
+public class QueryImpl extends AbstractQueryImpl implements JackrabbitQuery {
 
     /**
      * The logger instance for this class
@@ -148,6 +152,50 @@ public class QueryImpl extends AbstractQueryImpl {
         return result;
     }
 
+    /**
+     * This method simply forwards the <code>count</code> call to the
+     * {@link ExecutableQuery} object returned by
+     * {@link QueryHandler#createExecutableQuery}.
+     * {@inheritDoc}
+     */
+    public long count() throws RepositoryException {
+        checkInitialized();
+        return sessionContext.getSessionState().perform(
+                new SessionOperation<Long>() {
+                    public Long perform(SessionContext context)
+                            throws RepositoryException {
+                        return query.count();
+                    }
+
+                    public String toString() {
+                        return "query.count(" + statement + ")";
+                    }
+                });
+    }
+
+    /**
+     * This method simply forwards the <code>facet</code> call to the
+     * {@link ExecutableQuery} object returned by
+     * {@link QueryHandler#createExecutableQuery}.
+     * {@inheritDoc}
+     */
+    public Map<String, Long> facet(String propertyName)
+            throws RepositoryException {
+        checkInitialized();
+        final Name name = sessionContext.getQName(propertyName);
+        return sessionContext.getSessionState().perform(
+                new SessionOperation<Map<String, Long>>() {
+                    public Map<String, Long> perform(SessionContext context)
+                            throws RepositoryException {
+                        return query.facet(name);
+                    }
+
+                    public String toString() {
+                        return "query.facet(" + statement + ")";
+                    }
+                });
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -251,6 +299,17 @@ public class QueryImpl extends AbstractQueryImpl {
         this.offset = offset;
     }
 
+    /**
+     * This method simply forwards the <code>setParallelExecution</code> call
+     * to the {@link ExecutableQuery} object returned by
+     * {@link QueryHandler#createExecutableQuery}.
+     * {@inheritDoc}
+     */
+    public void setParallelExecution(boolean parallelExecution) {
+        checkInitialized();
+        query.setParallelExecution(parallelExecution);
+    }
+
     //-----------------------------< internal >---------------------------------
 
     /**
@@ -16,18 +16,26 @@
  */
 package org.apache.jackrabbit.core.query;
 
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import javax.jcr.Node;
+import javax.jcr.Property;
 import javax.jcr.RepositoryException;
 import javax.jcr.Value;
 import javax.jcr.query.InvalidQueryException;
 import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
 import javax.jcr.query.qom.Column;
 import javax.jcr.query.qom.Constraint;
+import javax.jcr.query.qom.Join;
 import javax.jcr.query.qom.Ordering;
 import javax.jcr.query.qom.QueryObjectModel;
+import javax.jcr.query.qom.Selector;
 import javax.jcr.query.qom.Source;
 
 import org.apache.jackrabbit.api.stats.RepositoryStatistics.Type;
@@ -35,8 +43,10 @@ import org.apache.jackrabbit.commons.query.QueryObjectModelBuilderRegistry;
 import org.apache.jackrabbit.core.query.lucene.LuceneQueryFactory;
 import org.apache.jackrabbit.core.query.lucene.SearchIndex;
 import org.apache.jackrabbit.core.query.lucene.join.QueryEngine;
+import org.apache.jackrabbit.core.query.lucene.join.QueryPlan;
 import org.apache.jackrabbit.core.session.SessionContext;
 import org.apache.jackrabbit.core.session.SessionOperation;
+import org.apache.jackrabbit.spi.Name;
 import org.apache.jackrabbit.stats.RepositoryStatisticsImpl;
 import org.apache.jackrabbit.spi.commons.query.qom.BindVariableValueImpl;
 import org.apache.jackrabbit.spi.commons.query.qom.DefaultTraversingQOMTreeVisitor;
@@ -146,6 +156,159 @@ public class QueryObjectModelImpl extends QueryImpl implements QueryObjectModel
         return result;
     }
 
+    /**
+     * Returns the plan that the query engine would use to execute this
+     * query, without executing it. The {@link QueryPlan#toString()} of the
+     * returned plan describes the chosen join strategies and the estimated
+     * number of rows of each selector.
+     *
+     * @return the query plan
+     * @throws RepositoryException if the plan can not be created
+     */
+    public QueryPlan explain() throws RepositoryException {
+        return sessionContext.getSessionState().perform(
+                new SessionOperation<QueryPlan>() {
+                    public QueryPlan perform(SessionContext context)
+                            throws RepositoryException {
+                        final QueryEngine engine = new QueryEngine(
+                                sessionContext.getSessionImpl(), lqf, variables);
+                        return engine.explain(getSource(), getConstraint());
+                    }
+
+                    public String toString() {
+                        return "query.explain(" + statement + ")";
+                    }
+                });
+    }
+
+    /**
+     * Counts the readable results of this query. If the source is a single
+     * selector and the constraint can be evaluated on the index alone, the
+     * hits are counted in the index without loading any node. Otherwise the
+     * query is executed and the rows are counted.
+     * {@inheritDoc}
+     */
+    @Override
+    public long count() throws RepositoryException {
+        return sessionContext.getSessionState().perform(
+                new SessionOperation<Long>() {
+                    public Long perform(SessionContext context)
+                            throws RepositoryException {
+                        if (getSource() instanceof Selector) {
+                            try {
+                                long count = lqf.count(
+                                        (Selector) getSource(), getConstraint());
+                                if (count != -1) {
+                                    return count;
+                                }
+                            } catch (IOException e) {
+                                throw new RepositoryException(
+                                        "Failed to access the query index", e);
+                            }
+                        }
+                        long count = 0;
+                        RowIterator rows = executeUnlimited().getRows();
+                        while (rows.hasNext()) {
+                            rows.nextRow();
+                            count++;
+                        }
+                        return count;
+                    }
+
+                    public String toString() {
+                        return "query.count(" + statement + ")";
+                    }
+                });
+    }
+
+    /**
+     * Counts the readable results of this query per value of a property.
+     * If the source is a single selector and the constraint can be evaluated
+     * on the index alone, the hits are counted in the index without loading
+     * any node. Otherwise the query is executed and the property is read
+     * from the nodes of the left-most selector of each row.
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, Long> facet(final String propertyName)
+            throws RepositoryException {
+        final Name name = sessionContext.getQName(propertyName);
+        return sessionContext.getSessionState().perform(
+                new SessionOperation<Map<String, Long>>() {
+                    public Map<String, Long> perform(SessionContext context)
+                            throws RepositoryException {
+                        Source source = getSource();
+                        if (source instanceof Selector) {
+                            try {
+                                Map<String, Long> counts = lqf.facet(
+                                        (Selector) source, getConstraint(), name);
+                                if (counts != null) {
+                                    return counts;
+                                }
+                            } catch (IOException e) {
+                                throw new RepositoryException(
+                                        "Failed to access the query index", e);
+                            }
+                        }
+                        while (source instanceof Join) {
+                            source = ((Join) source).getLeft();
+                        }
+                        String selectorName =
+                            ((Selector) source).getSelectorName();
+                        String jcrName = sessionContext.getJCRName(name);
+                        Map<String, Long> counts = new HashMap<String, Long>();
+                        RowIterator rows = executeUnlimited().getRows();
+                        while (rows.hasNext()) {
+                            Row row = rows.nextRow();
+                            Node n = row.getNode(selectorName);
+                            if (n == null || !n.hasProperty(jcrName)) {
+                                continue;
+                            }
+                            Property p = n.getProperty(jcrName);
+                            Set<String> values = new HashSet<String>();
+                            if (p.isMultiple()) {
+                                for (Value v : p.getValues()) {
+                                    values.add(v.getString());
+                                }
+                            } else {
+                                values.add(p.getString());
+                            }
+                            for (String value : values) {
+                                Long c = counts.get(value);
+                                counts.put(value, c == null ? 1 : c + 1);
+                            }
+                        }
+                        return counts;
+                    }
+
+                    public String toString() {
+                        return "query.facet(" + statement + ")";
+                    }
+                });
+    }
+
+    /**
+     * Enables or disables parallel evaluation of the selectors of this
+     * query.
+     * {@inheritDoc}
+     */
+    @Override
+    public void setParallelExecution(boolean parallelExecution) {
+        checkInitialized();
+        lqf.setParallelExecution(parallelExecution);
+    }
+
+    /**
+     * Executes this query without offset and limit and without sorting the
+     * results.
+     */
+    private QueryResult executeUnlimited() throws RepositoryException {
+        QueryEngine engine = new QueryEngine(
+                sessionContext.getSessionImpl(), lqf, variables);
+        return engine.execute(getColumns(), getSource(), getConstraint(),
+                new Ordering[0], 0, -1);
+    }
+
     @Override
     public String[] getBindVariableNames() {
         return variables.keySet().toArray(new String[variables.size()]);
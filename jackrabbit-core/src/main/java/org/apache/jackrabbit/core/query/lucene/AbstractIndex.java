@@ -21,8 +21,11 @@ import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 
 import org.apache.lucene.analysis.Analyzer;
@@ -32,6 +35,7 @@ import org.apache.lucene.analysis.tokenattributes.TermAttribute;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.index.FilterIndexReader;
 import org.apache.lucene.index.IndexDeletionPolicy;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
@@ -40,6 +44,7 @@ import org.apache.lucene.index.LogByteSizeMergePolicy;
 import org.apache.lucene.index.LogMergePolicy;
 import org.apache.lucene.index.Payload;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.search.Similarity;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.Version;
@@ -90,6 +95,32 @@ abstract class AbstractIndex {
     /** Compound file flag */
     private boolean useCompoundFile = true;
 
+    /**
+     * Near real-time flag. When set, the index writer is kept open and
+     * read-only readers are reopened from the writer.
+     */
+    private boolean nearRealTime = false;
+
+    /**
+     * The most recent near real-time reader or <code>null</code> if none
+     * was opened yet.
+     */
+    private IndexReader nearRealTimeReader;
+
+    /**
+     * The segments of the {@link #nearRealTimeReader}, keyed by the core
+     * cache key of the segment. A segment keeps its caching reader for as
+     * long as it is part of the index.
+     */
+    private Map<Object, NearRealTimeSegment> nearRealTimeSegments =
+        new LinkedHashMap<Object, NearRealTimeSegment>();
+
+    /**
+     * The id terms of the documents deleted through the index writer since
+     * the {@link #nearRealTimeReader} was last reopened.
+     */
+    private final List<Term> nearRealTimeDeletes = new ArrayList<Term>();
+
     /** termInfosIndexDivisor config parameter */
     private int termInfosIndexDivisor = SearchIndex.DEFAULT_TERM_INFOS_INDEX_DIVISOR;
 
@@ -282,6 +313,10 @@ abstract class AbstractIndex {
      */
     synchronized ReadOnlyIndexReader getReadOnlyIndexReader(boolean initCache)
             throws IOException {
+        if (nearRealTime) {
+            throw new IllegalStateException(
+                    "Index is in near real-time mode, use getReadOnlyIndexReaders()");
+        }
         // get current modifiable index reader
         CommittableIndexReader modifiableReader = getIndexReader();
         long modCount = modifiableReader.getModificationCount();
@@ -320,6 +355,97 @@ abstract class AbstractIndex {
         return readOnlyReader;
     }
 
+    /**
+     * Returns the read-only index readers on this index. In near real-time
+     * mode there is one reader per segment. The readers are reopened from
+     * the index writer and a segment keeps its {@link CachingIndexReader}
+     * across reopens; only its deleted documents are updated. Otherwise the
+     * single reader returned by {@link #getReadOnlyIndexReader(boolean)} is
+     * returned.
+     *
+     * @param initCache if the caches in the index readers should be
+     *          initialized before the index readers are returned.
+     * @return the read-only index readers.
+     * @throws IOException if an error occurs while obtaining the index
+     *          readers.
+     */
+    synchronized ReadOnlyIndexReader[] getReadOnlyIndexReaders(
+            boolean initCache) throws IOException {
+        if (!nearRealTime) {
+            return new ReadOnlyIndexReader[]{getReadOnlyIndexReader(initCache)};
+        }
+        IndexWriter writer = getIndexWriter();
+        IndexReader reader;
+        if (nearRealTimeReader == null) {
+            reader = IndexReader.open(writer, true);
+        } else {
+            reader = IndexReader.openIfChanged(nearRealTimeReader, writer, true);
+        }
+        if (reader != null) {
+            if (nearRealTimeReader != null) {
+                nearRealTimeReader.decRef();
+            }
+            nearRealTimeReader = reader;
+            updateNearRealTimeSegments(initCache);
+        }
+        ReadOnlyIndexReader[] readers =
+            new ReadOnlyIndexReader[nearRealTimeSegments.size()];
+        int i = 0;
+        for (NearRealTimeSegment segment : nearRealTimeSegments.values()) {
+            segment.readOnlyReader.acquire();
+            readers[i++] = segment.readOnlyReader;
+        }
+        return readers;
+    }
+
+    /**
+     * Matches the segments of a reopened {@link #nearRealTimeReader} with the
+     * known segments. New segments get a new caching reader, the deleted
+     * documents of known segments are updated and segments that no longer
+     * exist, because they were merged or all their documents were deleted,
+     * are released.
+     *
+     * @param initCache if the caches of new segments should be initialized.
+     * @throws IOException if an error occurs while reading from the index.
+     */
+    private void updateNearRealTimeSegments(boolean initCache)
+            throws IOException {
+        IndexReader[] subReaders = nearRealTimeReader.getSequentialSubReaders();
+        if (subReaders == null) {
+            subReaders = new IndexReader[]{nearRealTimeReader};
+        }
+        Map<Object, NearRealTimeSegment> segments =
+            new LinkedHashMap<Object, NearRealTimeSegment>();
+        for (IndexReader subReader : subReaders) {
+            Object key = subReader.getCoreCacheKey();
+            NearRealTimeSegment segment = nearRealTimeSegments.remove(key);
+            if (segment == null) {
+                segment = new NearRealTimeSegment(subReader, cache, initCache);
+            } else {
+                segment.updateDeletedDocs(subReader, nearRealTimeDeletes);
+            }
+            segments.put(key, segment);
+        }
+        for (NearRealTimeSegment segment : nearRealTimeSegments.values()) {
+            segment.release();
+        }
+        nearRealTimeSegments = segments;
+        nearRealTimeDeletes.clear();
+    }
+
+    /**
+     * Deletes the documents that match <code>idTerm</code> through the index
+     * writer. The deletion is visible to the next near real-time reader.
+     *
+     * @param idTerm the id term of the documents to delete.
+     * @throws IOException if an error occurs while deleting the documents.
+     */
+    protected synchronized void deleteDocuments(Term idTerm)
+            throws IOException {
+        getIndexWriter().deleteDocuments(idTerm);
+        nearRealTimeDeletes.add(idTerm);
+    }
+
     /**
      * Returns a read-only index reader, that can be used concurrently with
      * other threads writing to this index. The returned index reader is
@@ -443,6 +569,23 @@ abstract class AbstractIndex {
             }
             sharedReader = null;
         }
+        for (NearRealTimeSegment segment : nearRealTimeSegments.values()) {
+            try {
+                segment.release();
+            } catch (IOException e) {
+                log.warn("Exception closing index reader: " + e.toString());
+            }
+        }
+        nearRealTimeSegments.clear();
+        nearRealTimeDeletes.clear();
+        if (nearRealTimeReader != null) {
+            try {
+                nearRealTimeReader.decRef();
+            } catch (IOException e) {
+                log.warn("Exception closing index reader: " + e.toString());
+            }
+            nearRealTimeReader = null;
+        }
     }
 
     /**
@@ -539,6 +682,23 @@ abstract class AbstractIndex {
         useCompoundFile = b;
     }
 
+    /**
+     * Whether read-only readers are reopened from an open index writer
+     * instead of closing the writer and opening a new reader. In near
+     * real-time mode documents must be deleted with
+     * {@link #deleteDocuments(Term)}.
+     */
+    void setNearRealTime(boolean b) {
+        nearRealTime = b;
+    }
+
+    /**
+     * @return <code>true</code> if this index is in near real-time mode.
+     */
+    boolean isNearRealTime() {
+        return nearRealTime;
+    }
+
     /**
      * @return the current value for termInfosIndexDivisor.
      */
@@ -593,6 +753,132 @@ abstract class AbstractIndex {
         }
     }
 
+    /**
+     * Wraps a segment of a near real-time reader and releases the reference
+     * to it on close. The segment itself stays open while it is still
+     * referenced by the index.
+     */
+    private static final class NearRealTimeIndexReader extends FilterIndexReader {
+
+        NearRealTimeIndexReader(IndexReader in) {
+            super(in);
+        }
+
+        @Override
+        protected void doClose() throws IOException {
+            in.decRef();
+        }
+    }
+
+    /**
+     * A segment of the near real-time reader. The {@link CachingIndexReader}
+     * is created once per segment, read-only readers on it only differ in the
+     * deleted documents.
+     */
+    private static final class NearRealTimeSegment {
+
+        /**
+         * The segment as it was when it was first seen. Documents deleted
+         * later on are still visible in this reader.
+         */
+        private final IndexReader segment;
+
+        /**
+         * The shared reader on the segment.
+         */
+        private final SharedIndexReader sharedReader;
+
+        /**
+         * The most recent read-only reader on the segment.
+         */
+        private ReadOnlyIndexReader readOnlyReader;
+
+        /**
+         * The deleted documents of {@link #readOnlyReader}.
+         */
+        private BitSet deleted;
+
+        NearRealTimeSegment(IndexReader segment,
+                            DocNumberCache cache,
+                            boolean initCache) throws IOException {
+            this.segment = segment;
+            segment.incRef();
+            try {
+                this.sharedReader = new SharedIndexReader(new CachingIndexReader(
+                        new NearRealTimeIndexReader(segment), cache, initCache));
+            } catch (IOException e) {
+                segment.decRef();
+                throw e;
+            }
+            this.deleted = new BitSet();
+            if (segment.hasDeletions()) {
+                // a merged segment may carry deletions
+                scanDeletedDocs(segment, deleted);
+            }
+            this.readOnlyReader = new ReadOnlyIndexReader(sharedReader, deleted, 0);
+        }
+
+        /**
+         * Creates a new read-only reader if documents of this segment were
+         * deleted since the last reopen. The deleted documents are looked up
+         * by the id terms deleted since then. A full scan of the segment is
+         * only done if that does not account for all deletions.
+         *
+         * @param reopened the segment in the reopened near real-time reader.
+         * @param deletes  the id terms deleted since the last reopen.
+         * @throws IOException if an error occurs while reading from the
+         *                     segment.
+         */
+        void updateDeletedDocs(IndexReader reopened, List<Term> deletes)
+                throws IOException {
+            int numDeleted = reopened.maxDoc() - reopened.numDocs();
+            if (numDeleted == deleted.cardinality()) {
+                return;
+            }
+            BitSet docs = (BitSet) deleted.clone();
+            for (Term idTerm : deletes) {
+                TermDocs tDocs = segment.termDocs(idTerm);
+                try {
+                    while (tDocs.next()) {
+                        if (reopened.isDeleted(tDocs.doc())) {
+                            docs.set(tDocs.doc());
+                        }
+                    }
+                } finally {
+                    tDocs.close();
+                }
+            }
+            if (docs.cardinality() != numDeleted) {
+                docs = new BitSet();
+                scanDeletedDocs(reopened, docs);
+            }
+            readOnlyReader.release();
+            deleted = docs;
+            readOnlyReader = new ReadOnlyIndexReader(sharedReader, deleted, 0);
+        }
+
+        /**
+         * Releases the readers on this segment.
+         *
+         * @throws IOException if an error occurs while closing the readers.
+         */
+        void release() throws IOException {
+            try {
+                readOnlyReader.release();
+            } finally {
+                sharedReader.release();
+            }
+        }
+
+        private static void scanDeletedDocs(IndexReader reader, BitSet deleted) {
+            for (int i = 0; i < reader.maxDoc(); i++) {
+                if (reader.isDeleted(i)) {
+                    deleted.set(i);
+                }
+            }
+        }
+    }
+
     /**
      * Adapter to pipe info messages from lucene into log messages.
      */
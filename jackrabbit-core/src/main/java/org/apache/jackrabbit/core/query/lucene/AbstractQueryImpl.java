@@ -51,6 +51,11 @@ public abstract class AbstractQueryImpl implements ExecutableQuery {
      */
     private boolean documentOrder = true;
 
+    /**
+     * Whether the query may be evaluated in parallel on the sub indexes.
+     */
+    private boolean parallelExecution = true;
+
     protected final PerQueryCache cache = new PerQueryCache();
 
     /**
@@ -95,6 +100,33 @@ public abstract class AbstractQueryImpl implements ExecutableQuery {
         this.documentOrder = documentOrder;
     }
 
+    /**
+     * @return <code>true</code> if the query may be evaluated in parallel on
+     *         the sub indexes.
+     */
+    public boolean isParallelExecution() {
+        return parallelExecution;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setParallelExecution(boolean parallelExecution) {
+        this.parallelExecution = parallelExecution;
+    }
+
+    /**
+     * Returns the parts that identify the hits of this query in the query
+     * result cache of the search index. This default implementation returns
+     * <code>null</code>, which means the hits are not cached.
+     *
+     * @return the parts of the cache key or <code>null</code>.
+     * @see QueryResultCache#createKey(org.apache.jackrabbit.core.SessionImpl, Object...)
+     */
+    Object getResultCacheKey() {
+        return null;
+    }
+
     /**
      * @return the query object model factory.
      * @throws RepositoryException if an error occurs.
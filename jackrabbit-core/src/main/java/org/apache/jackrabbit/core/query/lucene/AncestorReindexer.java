@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.state.ItemStateException;
+import org.apache.jackrabbit.core.state.ItemStateManager;
+import org.apache.jackrabbit.core.state.NoSuchItemStateException;
+import org.apache.jackrabbit.core.state.NodeState;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Re-indexes nodes in the background when the {@link FieldNames#ANCESTORS}
+ * field of their documents is missing or out of date. This is the case for
+ * documents that were indexed before ancestor indexing was enabled and for
+ * the descendants of a moved node. As long as a job is pending the ancestors
+ * in the index must not be used to evaluate queries.
+ */
+class AncestorReindexer {
+
+    /**
+     * Logger instance for this class.
+     */
+    private static final Logger log = LoggerFactory.getLogger(AncestorReindexer.class);
+
+    /**
+     * The number of nodes that are re-indexed with a single index update.
+     */
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * The <code>MultiIndex</code> this re-indexer is working on.
+     */
+    private final MultiIndex multiIndex;
+
+    /**
+     * The query handler that creates the documents.
+     */
+    private final SearchIndex handler;
+
+    /**
+     * The executor of the repository.
+     */
+    private final Executor executor;
+
+    /**
+     * The number of jobs that are scheduled or running.
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * Flag that indicates that a job failed. The ancestors in the index are
+     * then not used anymore.
+     */
+    private final AtomicBoolean failed = new AtomicBoolean(false);
+
+    /**
+     * Flag that indicates that the <code>MultiIndex</code> is shutting down.
+     */
+    private final AtomicBoolean quit = new AtomicBoolean(false);
+
+    /**
+     * Ids of the nodes that were updated in the index while a batch of a
+     * running job was prepared. One set per running batch, guarded by the
+     * monitor of the <code>MultiIndex</code>.
+     */
+    private final Set<Set<NodeId>> updatedIds = Collections.newSetFromMap(
+            new IdentityHashMap<Set<NodeId>, Boolean>());
+
+    /**
+     * Creates a new <code>AncestorReindexer</code>.
+     *
+     * @param multiIndex the <code>MultiIndex</code>.
+     * @param handler    the query handler.
+     * @param executor   the executor of the repository.
+     */
+    AncestorReindexer(MultiIndex multiIndex,
+                      SearchIndex handler,
+                      Executor executor) {
+        this.multiIndex = multiIndex;
+        this.handler = handler;
+        this.executor = executor;
+    }
+
+    /**
+     * @return <code>true</code> if no job is pending and the ancestors in the
+     *         index can be used.
+     */
+    boolean isComplete() {
+        return pending.get() == 0 && !failed.get();
+    }
+
+    /**
+     * Schedules a job that re-indexes the nodes that were indexed without
+     * ancestors.
+     */
+    void migrate() {
+        schedule(null);
+    }
+
+    /**
+     * Schedules a job that re-indexes the descendants of the given moved
+     * nodes. The caller must hold the monitor of the <code>MultiIndex</code>
+     * and update the moved nodes themselves before it releases the monitor.
+     *
+     * @param movedIds the ids of the moved nodes.
+     */
+    void reindexDescendants(Collection<NodeId> movedIds) {
+        if (!movedIds.isEmpty()) {
+            schedule(new ArrayList<NodeId>(movedIds));
+        }
+    }
+
+    /**
+     * Informs this re-indexer that the given nodes were updated in the index.
+     * The caller must hold the monitor of the <code>MultiIndex</code>.
+     *
+     * @param ids the ids of the updated nodes.
+     */
+    void nodesUpdated(Collection<NodeId> ids) {
+        for (Set<NodeId> set : updatedIds) {
+            set.addAll(ids);
+        }
+    }
+
+    /**
+     * Stops the running jobs after their current batch.
+     */
+    void dispose() {
+        quit.set(true);
+    }
+
+    //-------------------------------< internal >-------------------------------
+
+    /**
+     * Schedules a re-index job.
+     *
+     * @param movedIds the ids of the moved nodes, or <code>null</code> if the
+     *                 nodes without ancestors are re-indexed.
+     */
+    private void schedule(final Collection<NodeId> movedIds) {
+        pending.incrementAndGet();
+        multiIndex.invalidateReader();
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    reindex(movedIds);
+                } catch (Throwable e) {
+                    failed.set(true);
+                    log.error("Unable to update the ancestors in the index,"
+                            + " descendant constraints are evaluated using"
+                            + " the hierarchy. Please re-index the workspace.",
+                            e);
+                } finally {
+                    if (pending.decrementAndGet() == 0) {
+                        multiIndex.invalidateReader();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Re-indexes the nodes without ancestors or the descendants of the given
+     * moved nodes.
+     *
+     * @param movedIds the ids of the moved nodes, or <code>null</code>.
+     * @throws IOException if an error occurs while updating the index.
+     */
+    private void reindex(Collection<NodeId> movedIds) throws IOException {
+        CachingMultiIndexReader reader = multiIndex.getIndexReader();
+        try {
+            BitSet docs;
+            if (movedIds == null) {
+                docs = IndexMigration.getDocumentsWithoutAncestors(reader);
+                if (!docs.isEmpty()) {
+                    log.info("Indexing ancestors of {} nodes", docs.cardinality());
+                }
+            } else {
+                docs = getDescendants(reader, movedIds);
+                log.debug("Re-indexing {} descendants of moved nodes",
+                        docs.cardinality());
+            }
+            List<NodeId> batch = new ArrayList<NodeId>();
+            for (int i = docs.nextSetBit(0); i >= 0 && !quit.get(); i = docs.nextSetBit(i + 1)) {
+                Document doc = reader.document(i, FieldSelectors.UUID);
+                batch.add(new NodeId(doc.get(FieldNames.UUID)));
+                if (batch.size() == BATCH_SIZE) {
+                    reindexBatch(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                reindexBatch(batch);
+            }
+        } finally {
+            reader.release();
+        }
+    }
+
+    /**
+     * Returns the numbers of the documents that have one of the given nodes
+     * as an ancestor.
+     *
+     * @param reader   the index reader.
+     * @param movedIds the ids of the moved nodes.
+     * @return the document numbers.
+     * @throws IOException if an error occurs while reading from the index.
+     */
+    private static BitSet getDescendants(IndexReader reader,
+                                         Collection<NodeId> movedIds)
+            throws IOException {
+        BitSet docs = new BitSet(reader.maxDoc());
+        TermDocs tDocs = reader.termDocs();
+        try {
+            for (NodeId id : movedIds) {
+                tDocs.seek(new Term(FieldNames.ANCESTORS, id.toString()));
+                while (tDocs.next()) {
+                    docs.set(tDocs.doc());
+                }
+            }
+        } finally {
+            tDocs.close();
+        }
+        return docs;
+    }
+
+    /**
+     * Re-indexes a batch of nodes with their current state. Nodes that were
+     * updated in the index while the documents were created are skipped,
+     * their documents are already up to date.
+     *
+     * @param batch the ids of the nodes.
+     * @throws IOException if an error occurs while updating the index.
+     */
+    private void reindexBatch(List<NodeId> batch) throws IOException {
+        Set<NodeId> updated = new HashSet<NodeId>();
+        synchronized (multiIndex) {
+            updatedIds.add(updated);
+        }
+        try {
+            ItemStateManager ism = handler.getContext().getItemStateManager();
+            Map<NodeId, Document> docs = new LinkedHashMap<NodeId, Document>();
+            for (NodeId id : batch) {
+                try {
+                    NodeState state = (NodeState) ism.getItemState(id);
+                    docs.put(id, handler.createDocument(state,
+                            handler.getNamespaceMappings(),
+                            multiIndex.getIndexFormatVersion()));
+                } catch (NoSuchItemStateException e) {
+                    // removed in the meantime
+                } catch (ItemStateException e) {
+                    log.warn("Unable to re-index node " + id, e);
+                } catch (RepositoryException e) {
+                    log.warn("Unable to re-index node " + id, e);
+                }
+            }
+            synchronized (multiIndex) {
+                if (quit.get()) {
+                    return;
+                }
+                docs.keySet().removeAll(updated);
+                multiIndex.update(docs.keySet(), docs.values());
+            }
+        } finally {
+            synchronized (multiIndex) {
+                updatedIds.remove(updated);
+            }
+        }
+    }
+}
@@ -18,15 +18,14 @@ package org.apache.jackrabbit.core.query.lucene;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.text.NumberFormat;
 import java.util.Arrays;
 import java.util.BitSet;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
-import org.apache.commons.collections.map.LRUMap;
 import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.FieldSelector;
@@ -34,9 +33,13 @@ import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.FieldInfos;
 import org.apache.lucene.index.FilterIndexReader;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SegmentReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.ChecksumIndexOutput;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.util.ReaderUtil;
@@ -63,6 +66,12 @@ class CachingIndexReader extends FilterIndexReader {
      */
     private static final int MAX_CACHE_INIT_BATCH_SIZE = 400 * 1000;
 
+    /**
+     * The size of the buffer used to read and write the persisted parent
+     * cache.
+     */
+    private static final int LOAD_BUFFER_SIZE = 64 * 1024;
+
     /**
      * The current value of the global creation tick counter.
      */
@@ -105,7 +114,7 @@ class CachingIndexReader extends FilterIndexReader {
     /**
      * Maps document number to node id.
      */
-    private final Map<Integer, NodeId> docNumber2id;
+    private final NodeIdCache docNumber2id;
 
     /**
      * A cache of TermDocs that are regularly read from the index.
@@ -123,7 +132,6 @@ class CachingIndexReader extends FilterIndexReader {
      *                  when this index reader is constructed.
      * @throws IOException if an error occurs while reading from the index.
      */
-    @SuppressWarnings("unchecked")
     CachingIndexReader(IndexReader delegatee,
                        DocNumberCache cache,
                        boolean initCache)
@@ -138,8 +146,8 @@ class CachingIndexReader extends FilterIndexReader {
             cacheInitializer.run();
         }
         // limit cache to 1% of maxDoc(), but at least 10.
-        this.docNumber2id = Collections.synchronizedMap(
-                new LRUMap(Math.max(10, delegatee.maxDoc() / 100)));
+        this.docNumber2id = new NodeIdCache(
+                Math.max(10, delegatee.maxDoc() / 100));
         this.termDocsCache = new TermDocsCache(delegatee, FieldNames.PROPERTIES);
     }
 
@@ -374,15 +382,33 @@ class CachingIndexReader extends FilterIndexReader {
     private class CacheInitializer implements Runnable {
 
         /**
-         * The {@link #inSegmentParents} is persisted using this filename.
+         * The parent caches are persisted using this filename.
+         */
+        private static final String FILE_CACHE_NAME = "cache.parents";
+
+        /**
+         * The name of the file that persisted only {@link #inSegmentParents}
+         * in previous versions, without any validation.
          */
         private static final String FILE_CACHE_NAME_ARRAY = "cache.inSegmentParents";
 
+        /**
+         * The format version of {@link #FILE_CACHE_NAME}.
+         */
+        private static final int FILE_CACHE_FORMAT = 1;
+
         /**
          * From where to read.
          */
         private final IndexReader reader;
 
+        /**
+         * The root nodes and the nodes with a parent in another segment,
+         * collected while the caches are initialized and persisted with
+         * them.
+         */
+        private final ForeignParentList foreign = new ForeignParentList();
+
         /**
          * Set to <code>true</code> while this initializer does its work.
          */
@@ -464,8 +490,7 @@ class CachingIndexReader extends FilterIndexReader {
             final Term[] startUUID = new Term[]{TermFactory.createUUIDTerm("")};
 
             for (;;) {
-                final Map<Object, NodeInfo> docs = new HashMap<Object, NodeInfo>();
-                final Map<NodeId, Integer> parents = new HashMap<NodeId, Integer>();
+                final ParentBatch batch = new ParentBatch();
 
                 if (startUUID[0].text().length() != 0) {
                     // force reading the next uuid after startUUID
@@ -476,43 +501,40 @@ class CachingIndexReader extends FilterIndexReader {
                     public boolean collect(Term term, TermDocs tDocs) throws IOException {
                         // remember start term for next batch
                         startUUID[0] = term;
-                        if (docs.size() >= MAX_CACHE_INIT_BATCH_SIZE) {
+                        if (batch.size >= MAX_CACHE_INIT_BATCH_SIZE) {
                             return false;
                         }
-                        NodeId id = new NodeId(term.text());
                         while (tDocs.next()) {
                             int doc = tDocs.doc();
                             // skip shareable nodes
                             if (!shareableNodes.get(doc)) {
-                                NodeInfo info = new NodeInfo(doc, id);
-                                docs.put(doc, info);
+                                batch.add(doc);
                             }
                         }
                         return true;
                     }
                 });
 
-                if (docs.isEmpty()) {
+                if (batch.size == 0) {
                     // no more nodes to initialize, persist cache to file
                     saveCacheToFile();
                     break;
                 }
+                batch.sort();
 
                 // read PARENTs (full scan)
+                final NodeIdIntMap parents = new NodeIdIntMap(batch.size);
                 collectTermDocs(reader, new Term(FieldNames.PARENT, "0"), new TermDocsCollector() {
                     public boolean collect(Term term, TermDocs tDocs) throws IOException {
                         NodeId id = new NodeId(term.text());
+                        long msb = id.getMostSignificantBits();
+                        long lsb = id.getLeastSignificantBits();
                         while (tDocs.next()) {
-                            Integer docId = tDocs.doc();
-                            NodeInfo info = docs.get(docId);
-                            if (info == null) {
-                                // shareable node, see above
-                                // or cache init is batched
-                            } else {
-                                info.parent = id;
-                                docs.remove(docId);
-                                docs.put(info.id, info);
-                                parents.put(id, null);
+                            // shareable nodes and nodes of other
+                            // batches are not found
+                            if (batch.setParent(tDocs.doc(), msb, lsb)
+                                    && !parents.containsKey(msb, lsb)) {
+                                parents.put(msb, lsb, -1);
                             }
                         }
                         return true;
@@ -523,10 +545,11 @@ class CachingIndexReader extends FilterIndexReader {
                 collectTermDocs(reader, TermFactory.createUUIDTerm(""), new TermDocsCollector() {
                     public boolean collect(Term term, TermDocs tDocs) throws IOException {
                         NodeId id = new NodeId(term.text());
-                        while (tDocs.next()) {
-                            int doc = tDocs.doc();
-                            if (parents.containsKey(id)) {
-                                parents.put(id, doc);
+                        long msb = id.getMostSignificantBits();
+                        long lsb = id.getLeastSignificantBits();
+                        if (parents.containsKey(msb, lsb)) {
+                            while (tDocs.next()) {
+                                parents.put(msb, lsb, tDocs.doc());
                             }
                         }
                         return true;
@@ -537,28 +560,24 @@ class CachingIndexReader extends FilterIndexReader {
                     return;
                 }
 
-                for (NodeInfo info : docs.values()) {
-                    int parentDocId = -1;
-                    NodeInfo parent = docs.get(info.parent);
-                    if (parent != null) {
-                        parentDocId = parent.docId;
-                    } else {
-                        Integer docId = parents.get(info.parent);
-                        if (docId != null) {
-                            parentDocId = docId;
-                        }
+                for (int i = 0; i < batch.size; i++) {
+                    int doc = batch.docs[i];
+                    if (!batch.hasParent.get(i)) {
+                        // no parent -> root node
+                        foreignParentDocIds.put(doc, DocId.NULL);
+                        foreign.addRoot(doc);
+                        continue;
                     }
+                    long msb = batch.parents[i * 2];
+                    long lsb = batch.parents[i * 2 + 1];
+                    int parentDocId = parents.get(msb, lsb);
                     if (parentDocId != -1) {
-                        inSegmentParents[info.docId] = parentDocId;
-                    } else if (info.parent != null) {
-                        foreignParents++;
-                        foreignParentDocIds.put(info.docId, DocId.create(info.parent));
-                    } else if (shareableNodes.get(info.docId)) {
-                        Document doc = reader.document(info.docId, FieldSelectors.UUID_AND_PARENT);
-                        foreignParentDocIds.put(info.docId, DocId.create(doc.getValues(FieldNames.PARENT)));
+                        inSegmentParents[doc] = parentDocId;
                     } else {
-                        // no parent -> root node
-                        foreignParentDocIds.put(info.docId, DocId.NULL);
+                        foreignParents++;
+                        foreignParentDocIds.put(doc,
+                                DocId.create(new NodeId(msb, lsb)));
+                        foreign.add(doc, msb, lsb);
                     }
                 }
             }
@@ -624,46 +643,96 @@ class CachingIndexReader extends FilterIndexReader {
         }
 
         /**
-         * Persists the cache info {@link #inSegmentParents} to a file:
-         * {@link #FILE_CACHE_NAME_ARRAY}, for faster init times on startup.
-         * 
+         * Persists the parent caches to the file {@link #FILE_CACHE_NAME}, for
+         * faster init times on startup. The file starts with the segment
+         * layout of the index, which determines the document numbers, and
+         * ends with a checksum of its content.
+         *
          * see https://issues.apache.org/jira/browse/JCR-3107
          */
         public void saveCacheToFile() throws IOException {
-            IndexOutput io = null;
+            String layout = getSegmentLayout();
+            if (layout == null) {
+                return;
+            }
+            Directory dir = reader.directory();
+            ChecksumIndexOutput io = null;
             try {
-                io = reader.directory().createOutput(FILE_CACHE_NAME_ARRAY);
-                for (int parent : inSegmentParents) {
-                    io.writeInt(parent);
+                io = new ChecksumIndexOutput(dir.createOutput(FILE_CACHE_NAME));
+                io.writeInt(FILE_CACHE_FORMAT);
+                io.writeString(layout);
+                io.writeInt(inSegmentParents.length);
+                byte[] buffer = new byte[LOAD_BUFFER_SIZE];
+                IntBuffer ints = ByteBuffer.wrap(buffer).asIntBuffer();
+                for (int i = 0; i < inSegmentParents.length; i += ints.capacity()) {
+                    int n = Math.min(ints.capacity(), inSegmentParents.length - i);
+                    ints.clear();
+                    ints.put(inSegmentParents, i, n);
+                    io.writeBytes(buffer, n * 4);
                 }
+                foreign.writeTo(io);
+                io.writeLong(io.getChecksum());
             } catch (Exception e) {
                 log.error(
-                        "Error saving " + FILE_CACHE_NAME_ARRAY + ": "
+                        "Error saving " + FILE_CACHE_NAME + ": "
                                 + e.getMessage(), e);
             } finally {
                 if (io != null) {
                     io.close();
                 }
             }
+            if (dir.fileExists(FILE_CACHE_NAME_ARRAY)) {
+                dir.deleteFile(FILE_CACHE_NAME_ARRAY);
+            }
         }
 
         /**
-         * Loads the cache info {@link #inSegmentParents} from the file
-         * {@link #FILE_CACHE_NAME_ARRAY}.
-         * 
+         * Loads the parent caches from the file {@link #FILE_CACHE_NAME}. The
+         * file is only used if it was written for the current segment layout
+         * of the index and its checksum is valid. Deleted documents do not
+         * change the document numbers and do not invalidate the file.
+         * <p>
+         * The parents are read in chunks of bytes, which is a copy from
+         * mapped memory when the index directory is memory mapped.
+         *
          * see https://issues.apache.org/jira/browse/JCR-3107
-         * 
+         *
          * @return true if the cache has been initialized of false if the cache
-         *         file does not exist yet, or an error happened
+         *         file does not exist yet, does not match the index, or an
+         *         error happened
          */
         private boolean loadCacheFromFile() throws IOException {
-            IndexInput ii = null;
+            String layout = getSegmentLayout();
+            if (layout == null) {
+                return false;
+            }
+            Directory dir = reader.directory();
+            ChecksumIndexInput ii = null;
             try {
                 long time = System.currentTimeMillis();
-                ii = reader.directory().openInput(FILE_CACHE_NAME_ARRAY);
-                for (int i = 0; i < inSegmentParents.length; i++) {
-                    inSegmentParents[i] = ii.readInt();
+                ii = new ChecksumIndexInput(dir.openInput(FILE_CACHE_NAME));
+                if (ii.readInt() != FILE_CACHE_FORMAT
+                        || !layout.equals(ii.readString())
+                        || ii.readInt() != inSegmentParents.length) {
+                    log.debug("persisted cache does not match the index");
+                    return false;
+                }
+                int[] parents = new int[inSegmentParents.length];
+                byte[] buffer = new byte[LOAD_BUFFER_SIZE];
+                IntBuffer ints = ByteBuffer.wrap(buffer).asIntBuffer();
+                for (int i = 0; i < parents.length; i += ints.capacity()) {
+                    int n = Math.min(ints.capacity(), parents.length - i);
+                    ii.readBytes(buffer, 0, n * 4);
+                    ints.clear();
+                    ints.get(parents, i, n);
                 }
+                ForeignParentList persisted = ForeignParentList.readFrom(ii);
+                long checksum = ii.getChecksum();
+                if (ii.readLong() != checksum) {
+                    throw new IOException("checksum mismatch");
+                }
+                System.arraycopy(parents, 0, inSegmentParents, 0, parents.length);
+                persisted.putAll(foreignParentDocIds);
                 log.debug(
                         "persisted cache initialized {} DocIds in {} ms",
                         new Object[] { inSegmentParents.length,
@@ -675,11 +744,15 @@ class CachingIndexReader extends FilterIndexReader {
             } catch (IOException ignore) {
                 log.warn(
                         "Saved state of CachingIndexReader is corrupt, will try to remove offending file "
-                                + FILE_CACHE_NAME_ARRAY, ignore);
+                                + FILE_CACHE_NAME, ignore);
                 // In the case where is a read error, the cache file is removed
                 // so it can be recreated after
                 // the cache loads the data from the repository directly
-                reader.directory().deleteFile(FILE_CACHE_NAME_ARRAY);
+                if (ii != null) {
+                    ii.close();
+                    ii = null;
+                }
+                dir.deleteFile(FILE_CACHE_NAME);
             } finally {
                 if (ii != null) {
                     ii.close();
@@ -687,6 +760,110 @@ class CachingIndexReader extends FilterIndexReader {
             }
             return false;
         }
+
+        /**
+         * Returns the names and sizes of the segments of the index, which
+         * determine the document numbers.
+         *
+         * @return the segment layout or <code>null</code> if the index reader
+         *         is not a reader on segments.
+         */
+        private String getSegmentLayout() {
+            IndexReader[] segments = reader.getSequentialSubReaders();
+            if (segments == null) {
+                segments = new IndexReader[]{reader};
+            }
+            StringBuilder layout = new StringBuilder();
+            for (IndexReader segment : segments) {
+                if (!(segment instanceof SegmentReader)) {
+                    return null;
+                }
+                layout.append(((SegmentReader) segment).getSegmentName());
+                layout.append(':').append(segment.maxDoc()).append(';');
+            }
+            return layout.toString();
+        }
+    }
+
+    /**
+     * The root nodes and the nodes with a parent in another index segment of
+     * an index reader, as persisted with the parent caches.
+     */
+    private static final class ForeignParentList {
+
+        /**
+         * The document numbers of the root nodes.
+         */
+        private int[] roots = new int[1];
+
+        private int numRoots;
+
+        /**
+         * The document numbers of the nodes with a parent in another segment.
+         */
+        private int[] docs = new int[64];
+
+        /**
+         * The most and least significant bits of the parent node ids.
+         */
+        private long[] parents = new long[128];
+
+        private int size;
+
+        void addRoot(int doc) {
+            if (numRoots == roots.length) {
+                roots = Arrays.copyOf(roots, numRoots * 2);
+            }
+            roots[numRoots++] = doc;
+        }
+
+        void add(int doc, long msb, long lsb) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                parents = Arrays.copyOf(parents, size * 4);
+            }
+            docs[size] = doc;
+            parents[size * 2] = msb;
+            parents[size * 2 + 1] = lsb;
+            size++;
+        }
+
+        /**
+         * Puts the parents into the given cache of foreign parents.
+         */
+        void putAll(Map<Integer, DocId> foreignParentDocIds) {
+            for (int i = 0; i < numRoots; i++) {
+                foreignParentDocIds.put(roots[i], DocId.NULL);
+            }
+            for (int i = 0; i < size; i++) {
+                foreignParentDocIds.put(docs[i], DocId.create(
+                        new NodeId(parents[i * 2], parents[i * 2 + 1])));
+            }
+        }
+
+        void writeTo(IndexOutput out) throws IOException {
+            out.writeInt(numRoots);
+            for (int i = 0; i < numRoots; i++) {
+                out.writeInt(roots[i]);
+            }
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeInt(docs[i]);
+                out.writeLong(parents[i * 2]);
+                out.writeLong(parents[i * 2 + 1]);
+            }
+        }
+
+        static ForeignParentList readFrom(IndexInput in) throws IOException {
+            ForeignParentList list = new ForeignParentList();
+            for (int i = in.readInt(); i > 0; i--) {
+                list.addRoot(in.readInt());
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                list.add(in.readInt(), in.readLong(), in.readLong());
+            }
+            return list;
+        }
     }
 
     /**
@@ -705,17 +882,63 @@ class CachingIndexReader extends FilterIndexReader {
         boolean collect(Term term, TermDocs tDocs) throws IOException;
     }
 
-    private final static class NodeInfo {
+    /**
+     * The nodes of a batch of the parent cache initialization, sorted by
+     * document number, with the node ids of their parents.
+     */
+    private static final class ParentBatch {
+
+        /**
+         * The document numbers of the nodes.
+         */
+        int[] docs = new int[1024];
+
+        /**
+         * The number of nodes.
+         */
+        int size;
+
+        /**
+         * The most and least significant bits of the parent node ids.
+         */
+        long[] parents;
 
-        final int docId;
+        /**
+         * The nodes that have a parent.
+         */
+        BitSet hasParent;
 
-        final NodeId id;
+        void add(int doc) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+            }
+            docs[size++] = doc;
+        }
 
-        NodeId parent;
+        /**
+         * Sorts the nodes by document number. Must be called after all nodes
+         * were added and before parents are set.
+         */
+        void sort() {
+            Arrays.sort(docs, 0, size);
+            parents = new long[size * 2];
+            hasParent = new BitSet(size);
+        }
 
-        public NodeInfo(int docId, NodeId id) {
-            this.docId = docId;
-            this.id = id;
+        /**
+         * Sets the parent of a node.
+         *
+         * @return <code>false</code> if the node is not in this batch.
+         */
+        boolean setParent(int doc, long msb, long lsb) {
+            int i = Arrays.binarySearch(docs, 0, size, doc);
+            if (i < 0) {
+                return false;
+            }
+            parents[i * 2] = msb;
+            parents[i * 2 + 1] = lsb;
+            hasParent.set(i);
+            return true;
         }
     }
 }
@@ -56,16 +56,25 @@ public final class CachingMultiIndexReader
      */
     private int refCount = 1;
 
+    /**
+     * Whether every document has its ancestors indexed.
+     */
+    private final boolean ancestorsIndexed;
+
     /**
      * Creates a new <code>CachingMultiIndexReader</code> based on sub readers.
      *
      * @param subReaders the sub readers.
      * @param cache the document number cache.
+     * @param ancestorsIndexed whether every document has its ancestors
+     *                         indexed.
      */
     public CachingMultiIndexReader(ReadOnlyIndexReader[] subReaders,
-                                   DocNumberCache cache) {
+                                   DocNumberCache cache,
+                                   boolean ancestorsIndexed) {
         super(subReaders);
         this.cache = cache;
+        this.ancestorsIndexed = ancestorsIndexed;
         this.subReaders = subReaders;
         for (int i = 0; i < subReaders.length; i++) {
             OffsetReader offsetReader = new OffsetReader(subReaders[i], starts[i]);
@@ -81,6 +90,13 @@ public final class CachingMultiIndexReader
         return id.getDocumentNumbers(this, docNumbers);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isAncestorsIndexed() {
+        return ancestorsIndexed;
+    }
+
     /**
      * Returns the DocId of the parent of <code>n</code> or {@link DocId#NULL}
      * if <code>n</code> does not have a parent (<code>n</code> is the root
@@ -21,6 +21,7 @@ import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.query.lucene.hits.AbstractHitCollector;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.search.Explanation;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Scorer;
@@ -230,7 +231,8 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
     public QueryHits execute(final JackrabbitIndexSearcher searcher,
                              final SessionImpl session,
                              final Sort sort) throws IOException {
-        if (sort.getSort().length == 0 && subQueryMatchesAll()) {
+        if (sort.getSort().length == 0 && subQueryMatchesAll()
+                && !useAncestors(searcher.getIndexReader())) {
             // maps path String to ScoreNode
             Map<String, ScoreNode> startingPoints = new TreeMap<String, ScoreNode>();
             QueryHits result = searcher.evaluate(getContextQuery());
@@ -329,6 +331,21 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
         }
     }
 
+    /**
+     * Returns <code>true</code> if descendants can be found with the
+     * {@link FieldNames#ANCESTORS} terms in the given index instead of
+     * walking up the hierarchy. This is only possible when a sub node
+     * matches regardless of how many levels are between it and the context
+     * node.
+     *
+     * @param reader the index reader.
+     * @return whether the ancestors in the index are used.
+     */
+    private boolean useAncestors(IndexReader reader) {
+        return minLevels <= 1 && reader instanceof HierarchyResolver
+                && ((HierarchyResolver) reader).isAncestorsIndexed();
+    }
+
     //--------------------< DescendantSelfAxisWeight >--------------------------
 
     /**
@@ -395,7 +412,8 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
             contextScorer = searcher.createNormalizedWeight(contextQuery).scorer(reader, scoreDocsInOrder, false);
             subScorer = searcher.createNormalizedWeight(subQuery).scorer(reader, scoreDocsInOrder, false);
             HierarchyResolver resolver = (HierarchyResolver) reader;
-            return new DescendantSelfAxisScorer(searcher.getSimilarity(), reader, resolver);
+            return new DescendantSelfAxisScorer(searcher.getSimilarity(),
+                    reader, resolver, useAncestors(reader));
         }
 
         /**
@@ -413,6 +431,11 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
      */
     private class DescendantSelfAxisScorer extends Scorer {
 
+        /**
+         * The index reader.
+         */
+        private final IndexReader reader;
+
         /**
          * The <code>HierarchyResolver</code> of the index.
          */
@@ -423,6 +446,13 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
          */
         private final BitSet contextHits;
 
+        /**
+         * The descendants of the context hits, looked up with their
+         * {@link FieldNames#ANCESTORS} terms, or <code>null</code> if the
+         * hierarchy is walked up instead.
+         */
+        private final BitSet descendants;
+
         /**
          * Set <code>true</code> once the context hits have been calculated.
          */
@@ -454,14 +484,19 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
          * @param similarity the <code>Similarity</code> instance to use.
          * @param reader     for index access.
          * @param hResolver  the hierarchy resolver of <code>reader</code>.
+         * @param ancestors  whether descendants are looked up with their
+         *                   ancestors in the index.
          */
         protected DescendantSelfAxisScorer(Similarity similarity,
                                            IndexReader reader,
-                                           HierarchyResolver hResolver) {
+                                           HierarchyResolver hResolver,
+                                           boolean ancestors) {
             super(similarity);
+            this.reader = reader;
             this.hResolver = hResolver;
             // todo reuse BitSets?
             this.contextHits = new BitSet(reader.maxDoc());
+            this.descendants = ancestors ? new BitSet(reader.maxDoc()) : null;
         }
 
         @Override
@@ -537,6 +572,9 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
                         }
                     }); // find all
                 }
+                if (descendants != null) {
+                    collectDescendants();
+                }
                 contextHitsCalculated = true;
                 time = System.currentTimeMillis() - time;
                 if (log.isDebugEnabled()) {
@@ -550,6 +588,28 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
             }
         }
 
+        /**
+         * Collects the descendants of the context hits, which are the
+         * documents with an {@link FieldNames#ANCESTORS} term for one of the
+         * context nodes.
+         *
+         * @throws IOException if an error occurs while reading from the index.
+         */
+        private void collectDescendants() throws IOException {
+            TermDocs tDocs = reader.termDocs();
+            try {
+                for (int i = contextHits.nextSetBit(0); i >= 0; i = contextHits.nextSetBit(i + 1)) {
+                    String uuid = reader.document(i, FieldSelectors.UUID).get(FieldNames.UUID);
+                    tDocs.seek(new Term(FieldNames.ANCESTORS, uuid));
+                    while (tDocs.next()) {
+                        descendants.set(tDocs.doc());
+                    }
+                }
+            } finally {
+                tDocs.close();
+            }
+        }
+
         /**
          * Returns <code>true</code> if <code>doc</code> is a valid match from
          * the sub scorer against the context hits. The caller must ensure
@@ -565,6 +625,10 @@ class DescendantSelfAxisQuery extends Query implements JackrabbitQuery {
                 return true;
             }
 
+            if (descendants != null) {
+                return descendants.get(doc);
+            }
+
             // check if doc is a descendant of one of the context nodes
             pDocs = hResolver.getParents(doc, pDocs);
 
@@ -16,12 +16,21 @@
  */
 package org.apache.jackrabbit.core.query.lucene;
 
-import org.apache.commons.collections.map.LRUMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.jackrabbit.core.id.NodeId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Implements a Document number cache with a fixed size and a LRU strategy.
+ * Implements a Document number cache with a fixed size.
+ * <p>
+ * The cache is an open addressing hash table keyed by the two longs of the
+ * node id. A key is stored in one of the slots of a bucket and when all
+ * slots of a bucket are used the oldest entry of the bucket is replaced.
+ * Each slot carries a version that is odd while the slot is written. Reads
+ * do not lock and treat a slot that changes while it is read as a cache
+ * miss. Writes are serialized per lock stripe.
  */
 final class DocNumberCache {
 
@@ -36,19 +45,46 @@ final class DocNumberCache {
     private static final long LOG_INTERVAL = 1000 * 10;
 
     /**
-     * The number of cache segments.
+     * The minimum number of entries in the cache.
+     */
+    private static final int MIN_SIZE = 1024;
+
+    /**
+     * The number of slots in a bucket.
      */
-    private static final int CACHE_SEGMENTS = 0x10;
+    private static final int BUCKET_SIZE = 8;
 
     /**
-     * Mask to calculate segment number.
+     * The number of lock stripes for writes.
      */
-    private static final int CACHE_SEGMENTS_MASK = CACHE_SEGMENTS - 1;
+    private static final int LOCK_STRIPES = 0x10;
 
     /**
-     * LRU Maps where key=uuid value=reader;docNumber
+     * The number of longs per slot: version, msb, lsb, creation tick and
+     * document number.
      */
-    private final LRUMap[] docNumbers = new LRUMap[CACHE_SEGMENTS];
+    private static final int SLOT_LENGTH = 5;
+
+    /**
+     * The slots of the cache.
+     */
+    private final AtomicLongArray slots;
+
+    /**
+     * The index of the next slot to replace per bucket. Only accessed while
+     * holding the lock of the bucket.
+     */
+    private final byte[] replace;
+
+    /**
+     * Mask to calculate the bucket number.
+     */
+    private final int bucketMask;
+
+    /**
+     * The locks for writes.
+     */
+    private final Object[] locks = new Object[LOCK_STRIPES];
 
     /**
      * Timestamp of the last cache statistics log.
@@ -72,13 +108,13 @@ final class DocNumberCache {
      * @param size the cache limit.
      */
     DocNumberCache(int size) {
-        size = size / CACHE_SEGMENTS;
-        if (size < 0x40) {
-            // minimum size is 0x40 * 0x10 = 1024
-            size = 0x40;
-        }
-        for (int i = 0; i < docNumbers.length; i++) {
-            docNumbers[i] = new LRUMap(size);
+        int buckets = Integer.highestOneBit(
+                Math.max(size, MIN_SIZE) - 1) * 2 / BUCKET_SIZE;
+        this.slots = new AtomicLongArray(buckets * BUCKET_SIZE * SLOT_LENGTH);
+        this.replace = new byte[buckets];
+        this.bucketMask = buckets - 1;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
         }
     }
 
@@ -92,28 +128,46 @@ final class DocNumberCache {
      * @param n the document number.
      */
     void put(String uuid, CachingIndexReader reader, int n) {
-        LRUMap cacheSegment = docNumbers[getSegmentIndex(uuid.charAt(0))];
-        synchronized (cacheSegment) {
-            Entry e = (Entry) cacheSegment.get(uuid);
-            if (e != null) {
-                // existing entry
-                // ignore if reader is older than the one in entry
-                if (reader.getCreationTick() <= e.creationTick) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("Ignoring put(). New entry is not from a newer reader. "
-                                + "existing: " + e.creationTick
-                                + ", new: " + reader.getCreationTick());
+        NodeId id = parse(uuid);
+        if (id == null) {
+            return;
+        }
+        long msb = id.getMostSignificantBits();
+        long lsb = id.getLeastSignificantBits();
+        long creationTick = reader.getCreationTick();
+        int bucket = getBucket(msb, lsb);
+        synchronized (locks[bucket & (LOCK_STRIPES - 1)]) {
+            int start = bucket * BUCKET_SIZE;
+            int free = -1;
+            for (int i = start; i < start + BUCKET_SIZE; i++) {
+                int base = i * SLOT_LENGTH;
+                if (slots.get(base) == 0) {
+                    if (free == -1) {
+                        free = i;
+                    }
+                } else if (slots.get(base + 1) == msb
+                        && slots.get(base + 2) == lsb) {
+                    // existing entry
+                    // ignore if reader is older than the one in entry
+                    long existing = slots.get(base + 3);
+                    if (creationTick <= existing) {
+                        if (log.isDebugEnabled()) {
+                            log.debug("Ignoring put(). New entry is not from a newer reader. "
+                                    + "existing: " + existing
+                                    + ", new: " + creationTick);
+                        }
+                    } else {
+                        write(base, msb, lsb, creationTick, n);
                     }
-                    e = null;
+                    return;
                 }
-            } else {
-                // entry did not exist
-                e = new Entry(reader.getCreationTick(), n);
             }
-
-            if (e != null) {
-                cacheSegment.put(uuid, e);
+            if (free == -1) {
+                // replace the oldest entry of the bucket
+                free = start + replace[bucket];
+                replace[bucket] = (byte) ((replace[bucket] + 1) % BUCKET_SIZE);
             }
+            write(free * SLOT_LENGTH, msb, lsb, creationTick, n);
         }
     }
 
@@ -125,10 +179,11 @@ final class DocNumberCache {
      * @return cache entry or <code>null</code>.
      */
     Entry get(String uuid) {
-        LRUMap cacheSegment = docNumbers[getSegmentIndex(uuid.charAt(0))];
-        Entry entry;
-        synchronized (cacheSegment) {
-            entry = (Entry) cacheSegment.get(uuid);
+        Entry entry = null;
+        NodeId id = parse(uuid);
+        if (id != null) {
+            entry = get(id.getMostSignificantBits(),
+                    id.getLeastSignificantBits());
         }
         if (log.isInfoEnabled()) {
             accesses++;
@@ -143,11 +198,13 @@ final class DocNumberCache {
                 }
                 StringBuffer statistics = new StringBuffer();
                 int inUse = 0;
-                for (LRUMap docNumber : docNumbers) {
-                    inUse += docNumber.size();
+                for (int i = 0; i < slots.length(); i += SLOT_LENGTH) {
+                    if (slots.get(i) != 0) {
+                        inUse++;
+                    }
                 }
                 statistics.append("size=").append(inUse);
-                statistics.append("/").append(docNumbers[0].maxSize() * CACHE_SEGMENTS);
+                statistics.append("/").append(slots.length() / SLOT_LENGTH);
                 statistics.append(", #accesses=").append(accesses);
                 statistics.append(", #hits=").append((accesses - misses));
                 statistics.append(", #misses=").append(misses);
@@ -161,14 +218,78 @@ final class DocNumberCache {
         return entry;
     }
 
+    //-------------------------------< internal >-------------------------------
+
+    /**
+     * Returns the cache entry for the node id with the given bits, or
+     * <code>null</code> if there is none.
+     */
+    private Entry get(long msb, long lsb) {
+        int start = getBucket(msb, lsb) * BUCKET_SIZE;
+        for (int i = start; i < start + BUCKET_SIZE; i++) {
+            int base = i * SLOT_LENGTH;
+            long version = slots.get(base);
+            if (version == 0 || (version & 1) != 0) {
+                // empty or currently written
+                continue;
+            }
+            if (slots.get(base + 1) == msb && slots.get(base + 2) == lsb) {
+                long creationTick = slots.get(base + 3);
+                int doc = (int) slots.get(base + 4);
+                if (slots.get(base) == version) {
+                    return new Entry(creationTick, doc);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes an entry to the slot starting at <code>base</code>. Must be
+     * called while holding the lock of the bucket.
+     */
+    private void write(int base, long msb, long lsb, long creationTick, int doc) {
+        long version = slots.get(base);
+        // an odd version marks the slot as being written
+        slots.set(base, version + 1);
+        slots.set(base + 1, msb);
+        slots.set(base + 2, lsb);
+        slots.set(base + 3, creationTick);
+        slots.set(base + 4, doc);
+        slots.set(base, version + 2);
+    }
+
+    /**
+     * Returns the bucket for the node id with the given bits.
+     */
+    private int getBucket(long msb, long lsb) {
+        long h = msb ^ lsb;
+        h ^= h >>> 32;
+        h *= 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & bucketMask;
+    }
+
     /**
-     * Returns the segment index for character c.
+     * Parses a uuid string, returns <code>null</code> if it is not a valid
+     * uuid in the lower case form used in the index. Other forms must not
+     * share an entry with the indexed form, because the index does not
+     * contain a term for them.
      */
-    private static int getSegmentIndex(char c) {
-        if (c > '9') {
-            c += 9;
+    private static NodeId parse(String uuid) {
+        if (uuid.length() != NodeId.UUID_FORMATTED_LENGTH) {
+            return null;
+        }
+        for (int i = 0; i < uuid.length(); i++) {
+            char c = uuid.charAt(i);
+            if (c >= 'A' && c <= 'F') {
+                return null;
+            }
+        }
+        try {
+            return new NodeId(uuid);
+        } catch (IllegalArgumentException e) {
+            return null;
         }
-        return c & CACHE_SEGMENTS_MASK;
     }
 
     public static final class Entry {
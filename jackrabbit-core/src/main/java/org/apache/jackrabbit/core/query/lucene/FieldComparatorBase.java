@@ -71,6 +71,15 @@ abstract public class FieldComparatorBase extends FieldComparator {
         bottom = getValue(slot);
     }
 
+    /**
+     * Returns the bottom value
+     *
+     * @return  the value of the slot last passed to {@link #setBottom(int)}
+     */
+    protected Comparable<?> getBottom() {
+        return bottom;
+    }
+
     /**
      * Compare two values
      *
@@ -93,6 +102,15 @@ abstract public class FieldComparatorBase extends FieldComparator {
         return Util.compare(val1, val2);
     }
 
+    /**
+     * Compares two values returned by {@link #value(int)}. Used when sorted
+     * hits of several sub indexes are merged.
+     */
+    @Override
+    public int compareValues(Object first, Object second) {
+        return compare((Comparable<?>) first, (Comparable<?>) second);
+    }
+
     @Override
     public void copy(int slot, int doc) throws IOException {
         setValue(slot, sortValue(doc));
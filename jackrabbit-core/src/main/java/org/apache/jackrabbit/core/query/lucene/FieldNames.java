@@ -116,6 +116,24 @@ public class FieldNames {
      */
     public static final String WEAK_REFS = "_:WEAK_REFS".intern();
 
+    /**
+     * Name of the field that contains the UUIDs of all ancestors of a node.
+     * The field is only present when ancestor indexing is enabled. Every
+     * such document also has an empty term, which allows to find documents
+     * that were indexed without ancestors. Terms are not tokenized and not
+     * stored, only indexed.
+     */
+    public static final String ANCESTORS = "_:ANCESTORS".intern();
+
+    /**
+     * Name of the field that contains the stored values of properties that
+     * are configured with <code>store="true"</code> in the indexing
+     * configuration. The values are encoded using
+     * {@link #createNamedValue(String, String)} with the property type name
+     * and the internal string value separated by a colon.
+     */
+    public static final String STORED_VALUES = "_:STORED_VALUES".intern();
+
     /**
      * Returns a named length for use as a term in the index. The named length
      * is of the form: <code>propertyName</code> + '[' +
@@ -65,4 +65,21 @@ public class FieldSelectors {
             }
         }
     };
+
+    @SuppressWarnings("serial")
+    public static final FieldSelector STORED_VALUES = new FieldSelector() {
+        /**
+         * Only accepts {@link FieldNames#STORED_VALUES}.
+         *
+         * @param fieldName the field name to check.
+         * @return result.
+         */
+        public FieldSelectorResult accept(String fieldName) {
+            if (FieldNames.STORED_VALUES == fieldName) {
+                return FieldSelectorResult.LOAD;
+            } else {
+                return FieldSelectorResult.NO_LOAD;
+            }
+        }
+    };
 }
@@ -41,4 +41,13 @@ public interface HierarchyResolver {
      *                             index.
      */
     int[] getParents(int n, int[] docNumbers) throws IOException;
+
+    /**
+     * Returns <code>true</code> if every document has the ids of its
+     * ancestors indexed in the {@link FieldNames#ANCESTORS} field and these
+     * are up to date.
+     *
+     * @return whether the ancestors in the index can be used.
+     */
+    boolean isAncestorsIndexed();
 }
@@ -0,0 +1,328 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.core.SessionImpl;
+import org.apache.jackrabbit.core.id.ItemId;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+import org.apache.jackrabbit.util.ISO8601;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.index.TermPositions;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+
+/**
+ * <code>HitCounter</code> counts the hits of a query that are readable by a
+ * session, and groups them by the values of a property. The hits are kept
+ * in a bit set of document numbers: neither <code>ScoreNode</code>s nor
+ * nodes are created for them.
+ */
+class HitCounter {
+
+    /**
+     * The number of hits whose read access is checked with a single call
+     * to the access manager.
+     */
+    private static final int ACCESS_CHECK_BATCH_SIZE = 1000;
+
+    /**
+     * The session that executes the query.
+     */
+    private final SessionImpl session;
+
+    /**
+     * The search index.
+     */
+    private final SearchIndex index;
+
+    /**
+     * The index reader to search.
+     */
+    private final IndexReader reader;
+
+    /**
+     * Creates a new hit counter.
+     *
+     * @param session the session that executes the query.
+     * @param index   the search index.
+     * @param reader  the index reader to search.
+     */
+    HitCounter(SessionImpl session, SearchIndex index, IndexReader reader) {
+        this.session = session;
+        this.index = index;
+        this.reader = reader;
+    }
+
+    /**
+     * Returns the number of hits of <code>query</code> that are readable by
+     * the session.
+     *
+     * @param query the query.
+     * @return the number of readable hits.
+     * @throws IOException         if an error occurs while reading from the
+     *                             index.
+     * @throws RepositoryException if an error occurs while checking access
+     *                             rights.
+     */
+    long count(Query query) throws IOException, RepositoryException {
+        return getReadableHits(query).cardinality();
+    }
+
+    /**
+     * Returns the number of hits of <code>query</code> that are readable by
+     * the session, per value of the property <code>propertyName</code>.
+     * The values are enumerated from the terms of the property in the
+     * {@link FieldNames#PROPERTIES} field, so only the documents that have
+     * the property are visited.
+     *
+     * @param query        the query.
+     * @param propertyName the name of the property.
+     * @return the number of readable hits per JCR string value.
+     * @throws IOException         if an error occurs while reading from the
+     *                             index.
+     * @throws RepositoryException if an error occurs while checking access
+     *                             rights or converting values.
+     */
+    Map<String, Long> facet(Query query, Name propertyName)
+            throws IOException, RepositoryException {
+        Map<String, Long> counts = new HashMap<String, Long>();
+        BitSet hits = getReadableHits(query);
+        if (hits.isEmpty()) {
+            return counts;
+        }
+
+        String field = FieldNames.PROPERTIES.intern();
+        String prefix = FieldNames.createNamedValue(
+                index.getNamespaceMappings().translateName(propertyName), "");
+        boolean hasPayloads = index.getIndexFormatVersion().isAtLeast(
+                IndexFormatVersion.V3);
+        byte[] payload = new byte[1];
+
+        TermDocs termDocs = hasPayloads
+                ? reader.termPositions() : reader.termDocs();
+        TermEnum termEnum = reader.terms(new Term(field, prefix));
+        try {
+            do {
+                Term term = termEnum.term();
+                if (term == null || term.field() != field
+                        || !term.text().startsWith(prefix)) {
+                    break;
+                }
+                String value = term.text().substring(prefix.length());
+                // the same term text may be shared by values of
+                // different types, count it once per type
+                Map<Integer, Long> perType = new HashMap<Integer, Long>();
+                termDocs.seek(term);
+                while (termDocs.next()) {
+                    if (!hits.get(termDocs.doc())) {
+                        continue;
+                    }
+                    int type = PropertyType.UNDEFINED;
+                    if (hasPayloads) {
+                        TermPositions termPos = (TermPositions) termDocs;
+                        termPos.nextPosition();
+                        if (termPos.isPayloadAvailable()) {
+                            payload = termPos.getPayload(payload, 0);
+                            type = PropertyMetaData.fromByteArray(
+                                    payload).getPropertyType();
+                        }
+                    }
+                    Long n = perType.get(type);
+                    perType.put(type, n == null ? 1 : n + 1);
+                }
+                for (Map.Entry<Integer, Long> entry : perType.entrySet()) {
+                    String key = toJCRString(value, entry.getKey());
+                    Long n = counts.get(key);
+                    counts.put(key, n == null
+                            ? entry.getValue() : n + entry.getValue());
+                }
+            } while (termEnum.next());
+        } finally {
+            termDocs.close();
+            termEnum.close();
+        }
+        return counts;
+    }
+
+    /**
+     * Collects the document numbers of the hits of <code>query</code> and
+     * clears the ones that are not readable by the session. Read access is
+     * checked in batches of {@link #ACCESS_CHECK_BATCH_SIZE} hits.
+     *
+     * @param query the query.
+     * @return the document numbers of the readable hits.
+     * @throws IOException         if an error occurs while reading from the
+     *                             index.
+     * @throws RepositoryException if an error occurs while checking access
+     *                             rights.
+     */
+    private BitSet getReadableHits(Query query)
+            throws IOException, RepositoryException {
+        final BitSet hits = new BitSet(reader.maxDoc());
+        JackrabbitIndexSearcher searcher = new JackrabbitIndexSearcher(
+                session, reader, index.getContext().getItemStateManager());
+        searcher.setSimilarity(index.getSimilarity());
+        try {
+            searcher.search(query, new Collector() {
+                private int base;
+
+                @Override
+                public void setScorer(Scorer scorer) {
+                }
+
+                @Override
+                public void collect(int doc) {
+                    hits.set(base + doc);
+                }
+
+                @Override
+                public void setNextReader(IndexReader reader, int docBase) {
+                    base = docBase;
+                }
+
+                @Override
+                public boolean acceptsDocsOutOfOrder() {
+                    return true;
+                }
+            });
+        } finally {
+            searcher.close();
+        }
+
+        int[] docs = new int[ACCESS_CHECK_BATCH_SIZE];
+        ItemId[] ids = new ItemId[ACCESS_CHECK_BATCH_SIZE];
+        int n = 0;
+        for (int doc = hits.nextSetBit(0); doc >= 0; doc = hits.nextSetBit(doc + 1)) {
+            docs[n] = doc;
+            ids[n] = new NodeId(reader.document(
+                    doc, FieldSelectors.UUID).get(FieldNames.UUID));
+            if (++n == ACCESS_CHECK_BATCH_SIZE) {
+                clearUnreadable(hits, docs, ids, n);
+                n = 0;
+            }
+        }
+        if (n > 0) {
+            clearUnreadable(hits, docs, ids, n);
+        }
+        return hits;
+    }
+
+    /**
+     * Clears the documents of the first <code>n</code> entries in
+     * <code>docs</code> whose node in <code>ids</code> is not readable by
+     * the session.
+     */
+    private void clearUnreadable(BitSet hits, int[] docs, ItemId[] ids, int n)
+            throws RepositoryException {
+        ItemId[] batch = ids;
+        if (n < ids.length) {
+            batch = new ItemId[n];
+            System.arraycopy(ids, 0, batch, 0, n);
+        }
+        boolean[] readable = Util.canRead(session.getAccessManager(), batch);
+        for (int i = 0; i < n; i++) {
+            if (!readable[i]) {
+                hits.clear(docs[i]);
+            }
+        }
+    }
+
+    /**
+     * Converts a value as stored in the index into its JCR string
+     * representation.
+     *
+     * @param value the value as read from the index.
+     * @param type  the property type of the value.
+     * @return the JCR string representation of <code>value</code>.
+     * @throws RepositoryException if a namespace can not be resolved.
+     */
+    private String toJCRString(String value, int type)
+            throws RepositoryException {
+        switch (type) {
+            case PropertyType.DATE:
+                Calendar date = Calendar.getInstance(
+                        TimeZone.getTimeZone("UTC"));
+                date.setTimeInMillis(DateField.stringToTime(value));
+                return ISO8601.format(date);
+            case PropertyType.LONG:
+                return String.valueOf(LongField.stringToLong(value));
+            case PropertyType.DOUBLE:
+                return String.valueOf(DoubleField.stringToDouble(value));
+            case PropertyType.DECIMAL:
+                return DecimalField.stringToDecimal(value).toString();
+            case PropertyType.NAME:
+                return toJCRName(value);
+            case PropertyType.PATH:
+                StringBuilder path = new StringBuilder();
+                String[] elements = value.split("/", -1);
+                for (int i = 0; i < elements.length; i++) {
+                    if (i > 0) {
+                        path.append('/');
+                    }
+                    String element = elements[i];
+                    if (element.length() == 0 || element.startsWith("[")
+                            || element.equals(".") || element.equals("..")) {
+                        path.append(element);
+                        continue;
+                    }
+                    int bracket = element.indexOf('[');
+                    if (bracket == -1) {
+                        path.append(toJCRName(element));
+                    } else {
+                        path.append(toJCRName(element.substring(0, bracket)));
+                        path.append(element.substring(bracket));
+                    }
+                }
+                return path.toString();
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * Converts a name with an index namespace prefix into a JCR name with
+     * the namespace prefix of the session. The index prefixes are not valid
+     * XML prefixes, therefore the name is not parsed with a name resolver.
+     *
+     * @param name a name as stored in the index.
+     * @return the JCR name.
+     * @throws RepositoryException if the namespace can not be resolved.
+     */
+    private String toJCRName(String name) throws RepositoryException {
+        int colon = name.indexOf(':');
+        String uri = index.getNamespaceMappings().getURI(
+                colon == -1 ? "" : name.substring(0, colon));
+        return session.getJCRName(NameFactoryImpl.getInstance().create(
+                uri, name.substring(colon + 1)));
+    }
+}
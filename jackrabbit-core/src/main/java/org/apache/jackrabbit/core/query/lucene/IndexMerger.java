@@ -19,22 +19,30 @@ package org.apache.jackrabbit.core.query.lucene;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.apache.jackrabbit.api.stats.RepositoryStatistics;
+import org.apache.jackrabbit.stats.RepositoryStatisticsImpl;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Merges indexes in a separate daemon thread.
+ * Merges indexes in separate daemon threads. At most
+ * {@link #setMaxConcurrentMerges(int) maxConcurrentMerges} merges run at the
+ * same time, further merges are queued and smaller merges are started first.
  */
 class IndexMerger implements IndexListener {
 
@@ -58,6 +66,17 @@ class IndexMerger implements IndexListener {
      */
     private int mergeFactor = SearchIndex.DEFAULT_MERGE_FACTOR;
 
+    /**
+     * maxConcurrentMerges config parameter
+     */
+    private int maxConcurrentMerges = SearchIndex.DEFAULT_MAX_CONCURRENT_MERGES;
+
+    /**
+     * The rate limiter for merges or <code>null</code> if merges are not
+     * limited.
+     */
+    private MergeRateLimiter rateLimiter;
+
     /**
      * List of <code>IndexBucket</code>s in ascending document limit.
      */
@@ -103,15 +122,74 @@ class IndexMerger implements IndexListener {
      */
     private final List<Worker> busyMergers = new ArrayList<Worker>();
 
+    /**
+     * Merger threads that wait for a free slot, smaller merges first.
+     * Guarded by {@link #busyMergers}.
+     */
+    private final Queue<Worker> pendingMergers = new PriorityQueue<Worker>(
+            11, new Comparator<Worker>() {
+                public int compare(Worker w1, Worker w2) {
+                    long d1 = w1.task.getNumDocs();
+                    long d2 = w2.task.getNumDocs();
+                    return d1 < d2 ? -1 : (d1 == d2 ? 0 : 1);
+                }
+            });
+
+    /**
+     * The number of merger threads handed to the executor that have not yet
+     * finished. Guarded by {@link #busyMergers}.
+     */
+    private int runningMergers;
+
+    /**
+     * The number of completed merges.
+     */
+    private final AtomicLong mergeCount = new AtomicLong();
+
+    /**
+     * The total time spent merging in milliseconds.
+     */
+    private final AtomicLong mergeTime = new AtomicLong();
+
+    /**
+     * The total size of the merged indexes in bytes.
+     */
+    private final AtomicLong bytesMerged = new AtomicLong();
+
+    /**
+     * The repository statistics counters or <code>null</code> if merges are
+     * not recorded in the repository statistics.
+     */
+    private final AtomicLong mergeCounter;
+
+    private final AtomicLong mergeDuration;
+
+    private final AtomicLong mergeBytesCounter;
+
     /**
      * Creates an <code>IndexMerger</code>.
      *
      * @param multiIndex the <code>MultiIndex</code>.
      * @param executor   the executor of the repository.
+     * @param statistics the repository statistics that record the merges,
+     *                   or <code>null</code>.
      */
-    IndexMerger(MultiIndex multiIndex, Executor executor) {
+    IndexMerger(MultiIndex multiIndex, Executor executor,
+                RepositoryStatisticsImpl statistics) {
         this.multiIndex = multiIndex;
         this.executor = executor;
+        if (statistics != null) {
+            mergeCounter = statistics.getCounter(
+                    RepositoryStatistics.Type.INDEX_MERGE_COUNTER);
+            mergeDuration = statistics.getCounter(
+                    RepositoryStatistics.Type.INDEX_MERGE_DURATION);
+            mergeBytesCounter = statistics.getCounter(
+                    RepositoryStatistics.Type.INDEX_MERGE_BYTES_COUNTER);
+        } else {
+            mergeCounter = null;
+            mergeDuration = null;
+            mergeBytesCounter = null;
+        }
     }
 
     /**
@@ -197,10 +275,13 @@ class IndexMerger implements IndexListener {
                     addMergeTask(new Merge(idxs));
                     if (log.isDebugEnabled()) {
                         int numBusy;
+                        int numPending;
                         synchronized (busyMergers) {
                             numBusy = busyMergers.size();
+                            numPending = pendingMergers.size();
                         }
-                        log.debug("# of busy merge workers: " + numBusy);
+                        log.debug("# of busy merge workers: " + numBusy
+                                + ", waiting for a slot: " + numPending);
                     }
                 }
             }
@@ -253,6 +334,13 @@ class IndexMerger implements IndexListener {
         quit.set(true);
         log.debug("quit flag set");
 
+        // merges that did not start yet are dropped
+        synchronized (busyMergers) {
+            busyMergers.removeAll(pendingMergers);
+            pendingMergers.clear();
+            busyMergers.notifyAll();
+        }
+
         try {
             // give the merger threads some time to quit,
             // it is possible that the mergers are busy working on a large index.
@@ -307,6 +395,48 @@ class IndexMerger implements IndexListener {
         this.maxMergeDocs = maxMergeDocs;
     }
 
+    /**
+     * The maximum number of merges that run at the same time.
+     *
+     * @param maxConcurrentMerges the max concurrent merges number.
+     */
+    public void setMaxConcurrentMerges(int maxConcurrentMerges) {
+        this.maxConcurrentMerges = Math.max(1, maxConcurrentMerges);
+    }
+
+    /**
+     * The rate limiter for the merged indexes.
+     *
+     * @param rateLimiter the rate limiter or <code>null</code> to merge
+     *                    without a limit.
+     */
+    public void setRateLimiter(MergeRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    //-----------------------< merge metrics >----------------------------------
+
+    /**
+     * @return the number of completed merges.
+     */
+    long getMergeCount() {
+        return mergeCount.get();
+    }
+
+    /**
+     * @return the total time spent merging in milliseconds.
+     */
+    long getMergeTime() {
+        return mergeTime.get();
+    }
+
+    /**
+     * @return the total size of the merged indexes in bytes.
+     */
+    long getBytesMerged() {
+        return bytesMerged.get();
+    }
+
     //------------------------------< internal >--------------------------------
 
     private void addMergeTask(Merge task) {
@@ -319,8 +449,33 @@ class IndexMerger implements IndexListener {
             }
             synchronized (busyMergers) {
                 busyMergers.add(worker);
+                pendingMergers.add(worker);
+                scheduleMerges();
             }
-            executor.execute(worker);
+        }
+    }
+
+    /**
+     * Hands pending merges to the executor while less than
+     * {@link #maxConcurrentMerges} are running. The caller must hold the
+     * monitor of {@link #busyMergers}.
+     */
+    private void scheduleMerges() {
+        while (runningMergers < maxConcurrentMerges
+                && !pendingMergers.isEmpty() && !quit.get()) {
+            runningMergers++;
+            executor.execute(pendingMergers.remove());
+        }
+    }
+
+    /**
+     * Adds <code>delta</code> to a local metric and a repository statistics
+     * counter.
+     */
+    private static void count(AtomicLong local, AtomicLong counter, long delta) {
+        local.addAndGet(delta);
+        if (counter != null) {
+            counter.addAndGet(delta);
         }
     }
 
@@ -395,6 +550,17 @@ class IndexMerger implements IndexListener {
             this.indexes = new Index[indexes.length];
             System.arraycopy(indexes, 0, this.indexes, 0, indexes.length);
         }
+
+        /**
+         * @return the number of documents in the indexes to merge.
+         */
+        long getNumDocs() {
+            long numDocs = 0;
+            for (Index index : indexes) {
+                numDocs += index.numDocs;
+            }
+            return numDocs;
+        }
     }
 
     /**
@@ -520,16 +686,21 @@ class IndexMerger implements IndexListener {
 
                         log.debug("get index readers from MultiIndex");
                         IndexReader[] readers = multiIndex.getIndexReaders(names, IndexMerger.this);
+                        long time;
+                        long bytes;
                         try {
                             // do the merge
-                            long time = System.currentTimeMillis();
-                            index.addIndexes(readers);
+                            time = System.currentTimeMillis();
+                            index.addIndexes(readers, rateLimiter);
                             time = System.currentTimeMillis() - time;
+                            bytes = index.getSizeInBytes();
                             int docCount = 0;
                             for (IndexReader reader : readers) {
                                 docCount += reader.numDocs();
                             }
-                            log.info("merged " + docCount + " documents in " + time + " ms into " + index.getName() + ".");
+                            log.info("merged " + docCount + " documents ("
+                                    + bytes + " bytes) in " + time
+                                    + " ms into " + index.getName() + ".");
                         } finally {
                             for (IndexReader reader : readers) {
                                 try {
@@ -553,6 +724,9 @@ class IndexMerger implements IndexListener {
                         } finally {
                             shared.unlock();
                         }
+                        count(mergeCount, mergeCounter, 1);
+                        count(mergeTime, mergeDuration, time);
+                        count(bytesMerged, mergeBytesCounter, bytes);
 
                         success = true;
 
@@ -575,6 +749,8 @@ class IndexMerger implements IndexListener {
                 }
                 synchronized (busyMergers) {
                     busyMergers.remove(this);
+                    runningMergers--;
+                    scheduleMerges();
                     busyMergers.notifyAll();
                 }
                 log.debug("Worker finished");
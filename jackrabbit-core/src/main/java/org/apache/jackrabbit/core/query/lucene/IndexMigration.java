@@ -18,6 +18,7 @@ package org.apache.jackrabbit.core.query.lucene;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -41,6 +42,7 @@ import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.KeepOnlyLastCommitDeletionPolicy;
 import org.apache.lucene.index.LogByteSizeMergePolicy;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.index.TermEnum;
 import org.apache.lucene.index.TermPositions;
 import org.apache.lucene.index.UpgradeIndexMergePolicy;
@@ -58,6 +60,11 @@ import org.slf4j.LoggerFactory;
  * the character '[' as a separator. Whenever an index is opened from disk, a
  * quick check is run to find out whether a migration is required. See also
  * JCR-1363 for more details.
+ * <p>
+ * When ancestor indexing is enabled on an existing index, the documents that
+ * were indexed without the {@link FieldNames#ANCESTORS} field are found with
+ * {@link #getDocumentsWithoutAncestors(IndexReader)} and re-indexed in the
+ * background by the {@link AncestorReindexer}.
  */
 public class IndexMigration {
 
@@ -143,6 +150,36 @@ public class IndexMigration {
         log.info("Migrated " + index.getName());
     }
 
+    /**
+     * Returns the numbers of the documents in <code>reader</code> that were
+     * indexed without the {@link FieldNames#ANCESTORS} field. Deleted
+     * documents are not included.
+     *
+     * @param reader the index reader.
+     * @return the document numbers, possibly empty.
+     * @throws IOException if an error occurs while reading from the index.
+     */
+    static BitSet getDocumentsWithoutAncestors(IndexReader reader)
+            throws IOException {
+        BitSet missing = new BitSet(reader.maxDoc());
+        missing.set(0, reader.maxDoc());
+        // every document with ancestors has the empty marker term
+        TermDocs tDocs = reader.termDocs(new Term(FieldNames.ANCESTORS, ""));
+        try {
+            while (tDocs.next()) {
+                missing.clear(tDocs.doc());
+            }
+        } finally {
+            tDocs.close();
+        }
+        for (int i = missing.nextSetBit(0); i >= 0; i = missing.nextSetBit(i + 1)) {
+            if (reader.isDeleted(i)) {
+                missing.clear(i);
+            }
+        }
+        return missing;
+    }
+
     //---------------------------< internal helper >----------------------------
 
     /**
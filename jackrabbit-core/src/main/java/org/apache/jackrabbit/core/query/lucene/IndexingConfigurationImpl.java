@@ -290,6 +290,46 @@ public class IndexingConfigurationImpl
         return true;
     }
 
+    /**
+     * Returns <code>true</code> if the values of the property with the given
+     * name should be stored in the index, so that queries can read them
+     * without loading the node. If there is no configuration entry for that
+     * property <code>false</code> is returned.
+     *
+     * @param state the node state.
+     * @param propertyName the name of a property.
+     * @return <code>true</code> if the values of the property should be
+     *         stored in the index; <code>false</code> otherwise.
+     */
+    public boolean isStored(NodeState state, Name propertyName) {
+        IndexingRule rule = getApplicableIndexingRule(state);
+        if (rule != null) {
+            return rule.isStored(propertyName);
+        }
+        // none of the config elements matched -> default is not to store
+        return false;
+    }
+
+    /**
+     * Returns <code>true</code> if some indexing rule stores the values of
+     * the property with the given name in the index.
+     *
+     * @param propertyName the name of a property.
+     * @return <code>true</code> if the values of the property are stored for
+     *         the nodes of at least one indexing rule; <code>false</code>
+     *         otherwise.
+     */
+    public boolean isStored(Name propertyName) {
+        for (List<IndexingRule> rules : configElements.values()) {
+            for (IndexingRule rule : rules) {
+                if (rule.isStored(propertyName)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Returns the analyzer configured for the property with this fieldName
      * (the string representation ,JCR-style name, of the given <code>Name</code>
@@ -471,8 +511,15 @@ public class IndexingConfigurationImpl
                     useInExcerpt = Boolean.valueOf(excerpt.getNodeValue());
                 }
 
+                // get store flag
+                boolean store = false;
+                Node storeAttr = attributes.getNamedItem("store");
+                if (storeAttr != null) {
+                    store = Boolean.valueOf(storeAttr.getNodeValue());
+                }
+
                 PropertyConfig pc = new PropertyConfig(
-                        boost, nodeScopeIndex, useInExcerpt);
+                        boost, nodeScopeIndex, useInExcerpt, store);
 
                 if (isRegexp) {
                     namePatterns.add(new NamePattern(
@@ -783,6 +830,21 @@ public class IndexingConfigurationImpl
             return config == null || config.useInExcerpt;
         }
 
+        /**
+         * Returns <code>true</code> if the values of the property with the
+         * given name should be stored in the index. If there is no
+         * configuration entry for that property <code>false</code> is
+         * returned.
+         *
+         * @param propertyName the name of a property.
+         * @return <code>true</code> if the values of the property should be
+         *         stored in the index; <code>false</code> otherwise.
+         */
+        public boolean isStored(Name propertyName) {
+            PropertyConfig config = getConfig(propertyName);
+            return config != null && config.store;
+        }
+
         /**
          * Returns <code>true</code> if this rule applies to the given node
          * <code>state</code>.
@@ -880,12 +942,20 @@ public class IndexingConfigurationImpl
          */
         final boolean useInExcerpt;
 
+        /**
+         * Flag that indicates whether the values of a property are stored in
+         * the index.
+         */
+        final boolean store;
+
         PropertyConfig(float boost,
                        boolean nodeScopeIndex,
-                       boolean useInExcerpt) {
+                       boolean useInExcerpt,
+                       boolean store) {
             this.boost = boost;
             this.nodeScopeIndex = nodeScopeIndex;
             this.useInExcerpt = useInExcerpt;
+            this.store = store;
         }
     }
 
@@ -0,0 +1,456 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.query.lucene.InitialIndexCheckpoint.Unit;
+import org.apache.jackrabbit.core.state.ChildNodeEntry;
+import org.apache.jackrabbit.core.state.ItemStateException;
+import org.apache.jackrabbit.core.state.ItemStateManager;
+import org.apache.jackrabbit.core.state.NoSuchItemStateException;
+import org.apache.jackrabbit.core.state.NodeState;
+import org.apache.jackrabbit.spi.Path;
+import org.apache.jackrabbit.spi.PathFactory;
+import org.apache.jackrabbit.spi.commons.conversion.DefaultNamePathResolver;
+import org.apache.jackrabbit.spi.commons.conversion.PathResolver;
+import org.apache.jackrabbit.spi.commons.name.PathFactoryImpl;
+import org.apache.lucene.document.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds the initial index of a workspace with multiple threads. The content
+ * tree is split into units of work: the nodes close to the root are indexed
+ * on their own and the subtrees below them are distributed over the other
+ * units. Every unit is indexed into a separate {@link PersistentIndex} by a
+ * pool of worker threads. The {@link MultiIndex} registers the segments when
+ * all units are done and the {@link IndexMerger} merges them afterwards.
+ * <p>
+ * Finished units are recorded in an {@link InitialIndexCheckpoint}, so that
+ * an interrupted build continues with the unfinished units when the
+ * repository is restarted.
+ */
+class InitialIndexBuilder {
+
+    /**
+     * The logger instance for this class
+     */
+    private static final Logger log =
+        LoggerFactory.getLogger(InitialIndexBuilder.class);
+
+    /**
+     * A path factory.
+     */
+    private static final PathFactory PATH_FACTORY = PathFactoryImpl.getInstance();
+
+    /**
+     * Number of units per worker thread. Using more units than threads
+     * balances the load when the subtrees differ in size.
+     */
+    private static final int UNITS_PER_THREAD = 4;
+
+    /**
+     * Maximum number of nodes that are loaded to split the tree into units.
+     */
+    private static final int MAX_SPLIT_NODES = 10000;
+
+    /**
+     * Number of documents that are added to a segment at once.
+     */
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * Number of indexed nodes between two progress messages.
+     */
+    private static final int PROGRESS_INTERVAL = 10000;
+
+    /**
+     * Thread counter for generating unique names for the worker threads.
+     */
+    private static final AtomicInteger counter = new AtomicInteger(1);
+
+    /**
+     * The multi index to build.
+     */
+    private final MultiIndex index;
+
+    /**
+     * The query handler.
+     */
+    private final SearchIndex handler;
+
+    /**
+     * The item state manager to read the workspace content from.
+     */
+    private final ItemStateManager stateMgr;
+
+    /**
+     * The number of worker threads.
+     */
+    private final int threads;
+
+    /**
+     * Number of nodes indexed by this builder.
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * Number of finished units, including the ones finished before the
+     * build was resumed.
+     */
+    private final AtomicInteger finished = new AtomicInteger();
+
+    /**
+     * Total number of units.
+     */
+    private int total;
+
+    /**
+     * Time when the build was started.
+     */
+    private long startTime;
+
+    /**
+     * Set when a unit failed, to stop the other workers.
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a new builder.
+     *
+     * @param index    the multi index to build.
+     * @param handler  the query handler.
+     * @param stateMgr the item state manager.
+     * @param threads  the number of worker threads.
+     */
+    InitialIndexBuilder(MultiIndex index, SearchIndex handler,
+                        ItemStateManager stateMgr, int threads) {
+        this.index = index;
+        this.handler = handler;
+        this.stateMgr = stateMgr;
+        this.threads = threads;
+    }
+
+    /**
+     * Splits the tree starting at the node with <code>rootId</code> into
+     * units of work. The tree is expanded level by level until there are
+     * enough subtrees for all worker threads, or until too many nodes would
+     * have to be loaded.
+     *
+     * @param rootId   the id of the node from where to start.
+     * @param rootPath the path of the node from where to start.
+     * @return the units of work.
+     * @throws ItemStateException  if the root node cannot be read.
+     * @throws RepositoryException if any other error occurs.
+     */
+    List<Unit> split(NodeId rootId, Path rootPath)
+            throws ItemStateException, RepositoryException {
+        int maxUnits = threads * UNITS_PER_THREAD;
+        List<NodeId> inner = new ArrayList<NodeId>();
+        List<NodeState> level = new ArrayList<NodeState>();
+        List<Path> paths = new ArrayList<Path>();
+        level.add((NodeState) stateMgr.getItemState(rootId));
+        paths.add(rootPath);
+
+        int loaded = 0;
+        while (level.size() < maxUnits) {
+            int children = 0;
+            for (NodeState state : level) {
+                children += state.getChildNodeEntries().size();
+            }
+            if (children == 0 || loaded + children > MAX_SPLIT_NODES) {
+                break;
+            }
+            loaded += children;
+
+            List<NodeState> nextLevel = new ArrayList<NodeState>(children);
+            List<Path> nextPaths = new ArrayList<Path>(children);
+            for (int i = 0; i < level.size(); i++) {
+                NodeState state = level.get(i);
+                if (index.isExcluded(state.getNodeId())) {
+                    continue;
+                }
+                inner.add(state.getNodeId());
+                for (ChildNodeEntry child : state.getChildNodeEntries()) {
+                    Path childPath = PATH_FACTORY.create(paths.get(i),
+                            child.getName(), child.getIndex(), false);
+                    NodeState childState =
+                        getChildState(state, paths.get(i), child, childPath);
+                    if (childState != null) {
+                        nextLevel.add(childState);
+                        nextPaths.add(childPath);
+                    }
+                }
+            }
+            level = nextLevel;
+            paths = nextPaths;
+        }
+
+        List<Unit> units = new ArrayList<Unit>();
+        if (!inner.isEmpty()) {
+            Unit unit = new Unit();
+            for (NodeId id : inner) {
+                unit.addNode(id);
+            }
+            units.add(unit);
+        }
+        // distribute the subtrees over the units, siblings stay together
+        int n = Math.min(maxUnits, level.size());
+        for (int u = 0; u < n; u++) {
+            Unit unit = new Unit();
+            int end = (u + 1) * level.size() / n;
+            for (int i = u * level.size() / n; i < end; i++) {
+                unit.addRoot(level.get(i).getNodeId(), paths.get(i));
+            }
+            units.add(unit);
+        }
+        log.info("Split initial index into {} units of work ({} nodes "
+                + "indexed separately, {} subtrees)",
+                new Object[]{units.size(), inner.size(), level.size()});
+        return units;
+    }
+
+    /**
+     * Indexes all unfinished units of the checkpoint with the worker
+     * threads, and records every finished unit in the checkpoint.
+     *
+     * @param checkpoint the checkpoint with the units of work.
+     * @throws IOException if a unit cannot be indexed.
+     */
+    void build(final InitialIndexCheckpoint checkpoint) throws IOException {
+        List<Unit> pending = new ArrayList<Unit>();
+        for (Unit unit : checkpoint.getUnits()) {
+            if (unit.isFinished()) {
+                finished.incrementAndGet();
+            } else {
+                pending.add(unit);
+            }
+        }
+        total = checkpoint.getUnits().size();
+        if (finished.get() > 0) {
+            log.info("Resuming initial index, {} of {} units finished",
+                    finished.get(), total);
+        }
+        startTime = System.currentTimeMillis();
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                threads, new ThreadFactory() {
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable,
+                                "jackrabbit-initial-index-"
+                                + counter.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (final Unit unit : pending) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        try {
+                            build(unit, checkpoint);
+                            return null;
+                        } catch (Exception e) {
+                            cancelled = true;
+                            throw e;
+                        }
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    String msg = "Error indexing workspace";
+                    IOException ex = new IOException(msg);
+                    ex.initCause(e.getCause());
+                    throw ex;
+                } catch (InterruptedException e) {
+                    cancelled = true;
+                    throw new InterruptedIOException(
+                            "Interrupted while indexing workspace");
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        log.info("Created initial index for {} nodes in {} ms", count.get(),
+                System.currentTimeMillis() - startTime);
+    }
+
+    //----------------------------< internal >----------------------------------
+
+    /**
+     * Indexes a unit into a new index segment.
+     *
+     * @param unit       the unit of work.
+     * @param checkpoint the checkpoint where the unit is recorded.
+     * @throws Exception if an error occurs while indexing the unit.
+     */
+    private void build(Unit unit, InitialIndexCheckpoint checkpoint)
+            throws Exception {
+        PersistentIndex segment = index.getOrCreateIndex(null);
+        List<Document> documents = new ArrayList<Document>(BATCH_SIZE);
+        for (NodeId id : unit.getNodes()) {
+            NodeState state = getNodeState(id);
+            if (state != null && !index.isExcluded(id)) {
+                addDocument(segment, state, documents);
+            }
+        }
+        for (int i = 0; i < unit.getRoots().size(); i++) {
+            NodeState state = getNodeState(unit.getRoots().get(i));
+            if (state != null) {
+                createIndex(segment, state, unit.getPaths().get(i), documents);
+            }
+        }
+        addDocuments(segment, documents);
+        segment.commit();
+
+        if (segment.getNumDocuments() > 0) {
+            checkpoint.finished(unit, segment.getName());
+        } else {
+            segment.close();
+            index.deleteIndex(segment);
+            checkpoint.finished(unit, "");
+        }
+        log.info("Finished {} of {} units of the initial index",
+                finished.incrementAndGet(), total);
+    }
+
+    /**
+     * Recursively indexes the subtree starting with the NodeState
+     * <code>node</code> into <code>segment</code>.
+     *
+     * @param segment   the index segment.
+     * @param node      the current NodeState.
+     * @param path      the path of the current <code>node</code> state.
+     * @param documents the documents that are not yet added to the segment.
+     * @throws IOException         if an error occurs while writing to the
+     *                             index.
+     * @throws ItemStateException  if an node state cannot be found.
+     * @throws RepositoryException if any other error occurs
+     */
+    private void createIndex(PersistentIndex segment, NodeState node,
+                             Path path, List<Document> documents)
+            throws IOException, ItemStateException, RepositoryException {
+        if (cancelled) {
+            throw new InterruptedIOException("Initial index cancelled");
+        }
+        if (index.isExcluded(node.getNodeId())) {
+            return;
+        }
+        long n = addDocument(segment, node, documents);
+        if (n % PROGRESS_INTERVAL == 0) {
+            PathResolver resolver = new DefaultNamePathResolver(
+                    handler.getContext().getNamespaceRegistry());
+            long time = System.currentTimeMillis() - startTime;
+            log.info("indexing... {} ({} nodes, {} nodes/s, {} of {} units "
+                    + "finished)", new Object[]{resolver.getJCRPath(path), n,
+                    n * 1000 / Math.max(time, 1), finished.get(), total});
+        }
+        for (ChildNodeEntry child : node.getChildNodeEntries()) {
+            Path childPath = PATH_FACTORY.create(path, child.getName(),
+                    child.getIndex(), false);
+            NodeState childState = getChildState(node, path, child, childPath);
+            if (childState != null) {
+                createIndex(segment, childState, childPath, documents);
+            }
+        }
+    }
+
+    /**
+     * Creates the document for the given node and adds it to the segment
+     * once enough documents are collected.
+     *
+     * @return the number of nodes indexed so far.
+     */
+    private long addDocument(PersistentIndex segment, NodeState node,
+                             List<Document> documents) throws IOException {
+        try {
+            documents.add(index.createDocument(node));
+        } catch (RepositoryException e) {
+            // node cannot be indexed, same as in the AddNode action
+            log.debug(e.getMessage());
+        }
+        if (documents.size() >= BATCH_SIZE) {
+            addDocuments(segment, documents);
+        }
+        return count.incrementAndGet();
+    }
+
+    private static void addDocuments(PersistentIndex segment,
+                                     List<Document> documents)
+            throws IOException {
+        if (!documents.isEmpty()) {
+            segment.addDocuments(
+                    documents.toArray(new Document[documents.size()]));
+            documents.clear();
+        }
+    }
+
+    /**
+     * Returns the state of the node with the given id, or <code>null</code>
+     * if the node does not exist anymore.
+     */
+    private NodeState getNodeState(NodeId id) throws ItemStateException {
+        try {
+            return (NodeState) stateMgr.getItemState(id);
+        } catch (NoSuchItemStateException e) {
+            log.warn("Node {} does not exist anymore, not indexed", id);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the state of a child node, or <code>null</code> if it is
+     * missing or cannot be read. Inconsistencies are reported to the
+     * {@link SearchIndex#getOnWorkspaceInconsistencyHandler()} like when
+     * the index is created with a single thread.
+     */
+    private NodeState getChildState(NodeState node, Path path,
+                                    ChildNodeEntry child, Path childPath)
+            throws ItemStateException, RepositoryException {
+        try {
+            return (NodeState) stateMgr.getItemState(child.getId());
+        } catch (NoSuchItemStateException e) {
+            handler.getOnWorkspaceInconsistencyHandler().handleMissingChildNode(
+                    e, handler, path, node, child);
+        } catch (ItemStateException e) {
+            // JCR-3268 log bundle corruption and continue
+            handler.getOnWorkspaceInconsistencyHandler().logError(e,
+                    handler, childPath, node, child);
+        }
+        return null;
+    }
+
+}
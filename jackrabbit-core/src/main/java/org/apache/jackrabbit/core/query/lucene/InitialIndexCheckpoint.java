@@ -0,0 +1,337 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.query.lucene.directory.IndexInputStream;
+import org.apache.jackrabbit.core.query.lucene.directory.IndexOutputStream;
+import org.apache.jackrabbit.spi.Path;
+import org.apache.jackrabbit.spi.PathFactory;
+import org.apache.jackrabbit.spi.commons.name.PathFactoryImpl;
+import org.apache.lucene.store.Directory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps track of a parallel initial index build, so that it can be resumed
+ * after a crash or a shutdown. The checkpoint contains the units of work the
+ * workspace was split into and for every finished unit the name of the
+ * index segment that contains its documents. The finished segments are only
+ * registered with the {@link MultiIndex} when all units are done.
+ * <p>
+ * Like {@link IndexInfos} every update of the checkpoint is written to a new
+ * generation of the checkpoint file and the previous generation is deleted
+ * afterwards.
+ */
+class InitialIndexCheckpoint {
+
+    /**
+     * Logger instance for this class
+     */
+    private static final Logger log =
+        LoggerFactory.getLogger(InitialIndexCheckpoint.class);
+
+    /**
+     * A path factory.
+     */
+    private static final PathFactory PATH_FACTORY = PathFactoryImpl.getInstance();
+
+    /**
+     * Base name of the checkpoint files.
+     */
+    private static final String BASE_NAME = "initial_index_";
+
+    /**
+     * The directory where the checkpoint is stored.
+     */
+    private final Directory directory;
+
+    /**
+     * The units of work.
+     */
+    private final List<Unit> units;
+
+    /**
+     * The current generation of the checkpoint file, or zero if the
+     * checkpoint has not been written yet.
+     */
+    private long generation;
+
+    /**
+     * Creates a new checkpoint for the given units of work. The checkpoint
+     * is not written until {@link #write()} is called.
+     *
+     * @param directory the directory where the checkpoint is stored.
+     * @param units     the units of work.
+     */
+    InitialIndexCheckpoint(Directory directory, List<Unit> units) {
+        this.directory = directory;
+        this.units = units;
+    }
+
+    /**
+     * Reads the most recent checkpoint from the given directory.
+     *
+     * @param directory the directory where the checkpoint is stored.
+     * @return the checkpoint, or <code>null</code> if there is none.
+     * @throws IOException if the checkpoint cannot be read.
+     */
+    static InitialIndexCheckpoint read(Directory directory)
+            throws IOException {
+        List<Long> generations = getGenerations(directory);
+        for (int i = generations.size() - 1; i >= 0; i--) {
+            long gen = generations.get(i);
+            try {
+                InitialIndexCheckpoint checkpoint =
+                    new InitialIndexCheckpoint(directory, read(directory, gen));
+                checkpoint.generation = gen;
+                return checkpoint;
+            } catch (EOFException e) {
+                String fileName = getFileName(gen);
+                log.warn("deleting invalid initial index checkpoint: " + fileName);
+                directory.deleteFile(fileName);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the units of work.
+     */
+    List<Unit> getUnits() {
+        return units;
+    }
+
+    /**
+     * @return the names of the index segments of all finished units.
+     */
+    synchronized Set<String> getIndexNames() {
+        Set<String> names = new LinkedHashSet<String>();
+        for (Unit unit : units) {
+            if (unit.indexName != null && unit.indexName.length() > 0) {
+                names.add(unit.indexName);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Marks the given unit as finished and writes the checkpoint.
+     *
+     * @param unit      the finished unit.
+     * @param indexName the name of the index segment with the documents of
+     *                  the unit, or an empty string if the unit did not
+     *                  produce any documents.
+     * @throws IOException if the checkpoint cannot be written.
+     */
+    synchronized void finished(Unit unit, String indexName)
+            throws IOException {
+        unit.indexName = indexName;
+        write();
+    }
+
+    /**
+     * Writes a new generation of this checkpoint and deletes the previous
+     * one.
+     *
+     * @throws IOException if the checkpoint cannot be written.
+     */
+    synchronized void write() throws IOException {
+        String newName = getFileName(generation + 1);
+        boolean success = false;
+        try {
+            OutputStream out = new BufferedOutputStream(new IndexOutputStream(
+                    directory.createOutput(newName)));
+            try {
+                DataOutputStream dataOut = new DataOutputStream(out);
+                dataOut.writeInt(units.size());
+                for (Unit unit : units) {
+                    dataOut.writeUTF(unit.indexName != null ? unit.indexName : "");
+                    dataOut.writeBoolean(unit.indexName != null);
+                    dataOut.writeInt(unit.nodes.size());
+                    for (NodeId id : unit.nodes) {
+                        dataOut.writeUTF(id.toString());
+                    }
+                    dataOut.writeInt(unit.roots.size());
+                    for (int i = 0; i < unit.roots.size(); i++) {
+                        dataOut.writeUTF(unit.roots.get(i).toString());
+                        dataOut.writeUTF(unit.paths.get(i).getString());
+                    }
+                }
+            } finally {
+                out.close();
+            }
+            directory.sync(Collections.singleton(newName));
+            success = true;
+        } finally {
+            if (!success) {
+                try {
+                    directory.deleteFile(newName);
+                } catch (IOException e) {
+                    log.warn("Unable to delete file: " + directory + "/" + newName);
+                }
+            }
+        }
+        if (generation > 0) {
+            directory.deleteFile(getFileName(generation));
+        }
+        generation++;
+    }
+
+    /**
+     * Deletes all generations of this checkpoint.
+     *
+     * @throws IOException if a checkpoint file cannot be deleted.
+     */
+    synchronized void delete() throws IOException {
+        for (long gen : getGenerations(directory)) {
+            directory.deleteFile(getFileName(gen));
+        }
+        generation = 0;
+    }
+
+    //----------------------------------< internal >----------------------------
+
+    private static List<Unit> read(Directory directory, long gen)
+            throws IOException {
+        InputStream in = new BufferedInputStream(new IndexInputStream(
+                directory.openInput(getFileName(gen))));
+        try {
+            DataInputStream dataIn = new DataInputStream(in);
+            List<Unit> units = new ArrayList<Unit>();
+            for (int i = dataIn.readInt(); i > 0; i--) {
+                Unit unit = new Unit();
+                String indexName = dataIn.readUTF();
+                if (dataIn.readBoolean()) {
+                    unit.indexName = indexName;
+                }
+                for (int j = dataIn.readInt(); j > 0; j--) {
+                    unit.nodes.add(new NodeId(dataIn.readUTF()));
+                }
+                for (int j = dataIn.readInt(); j > 0; j--) {
+                    NodeId id = new NodeId(dataIn.readUTF());
+                    unit.addRoot(id, PATH_FACTORY.create(dataIn.readUTF()));
+                }
+                units.add(unit);
+            }
+            return units;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String getFileName(long gen) {
+        return BASE_NAME + Long.toString(gen, Character.MAX_RADIX);
+    }
+
+    /**
+     * Returns the generations of the checkpoint files in the given directory
+     * in ascending order.
+     */
+    private static List<Long> getGenerations(Directory directory)
+            throws IOException {
+        List<Long> generations = new ArrayList<Long>();
+        for (String name : directory.listAll()) {
+            if (name.startsWith(BASE_NAME)) {
+                try {
+                    generations.add(Long.parseLong(
+                            name.substring(BASE_NAME.length()),
+                            Character.MAX_RADIX));
+                } catch (NumberFormatException e) {
+                    log.warn("ignoring unexpected file: {}", name);
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    /**
+     * A unit of work of the initial index build. A unit consists of nodes
+     * that are indexed without their descendants and of subtrees that are
+     * indexed completely.
+     */
+    static class Unit {
+
+        /**
+         * Nodes that are indexed without their descendants.
+         */
+        private final List<NodeId> nodes = new ArrayList<NodeId>();
+
+        /**
+         * Root nodes of the subtrees of this unit.
+         */
+        private final List<NodeId> roots = new ArrayList<NodeId>();
+
+        /**
+         * Paths of the subtree root nodes.
+         */
+        private final List<Path> paths = new ArrayList<Path>();
+
+        /**
+         * Name of the index segment with the documents of this unit, an
+         * empty string if it did not produce documents or <code>null</code>
+         * if the unit is not finished yet.
+         */
+        private String indexName;
+
+        void addNode(NodeId id) {
+            nodes.add(id);
+        }
+
+        void addRoot(NodeId id, Path path) {
+            roots.add(id);
+            paths.add(path);
+        }
+
+        List<NodeId> getNodes() {
+            return nodes;
+        }
+
+        List<NodeId> getRoots() {
+            return roots;
+        }
+
+        List<Path> getPaths() {
+            return paths;
+        }
+
+        boolean isFinished() {
+            return indexName != null;
+        }
+
+        String getIndexName() {
+            return indexName;
+        }
+
+    }
+
+}
@@ -97,6 +97,13 @@ public final class JackrabbitIndexReader
         return resolver.getParents(n, docNumbers);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isAncestorsIndexed() {
+        return resolver.isAncestorsIndexed();
+    }
+
     //-------------------------< MultiIndexReader >-----------------------------
 
     /**
@@ -17,6 +17,12 @@
 package org.apache.jackrabbit.core.query.lucene;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.jackrabbit.core.SessionImpl;
 import org.apache.jackrabbit.core.query.lucene.constraint.EvaluationContext;
@@ -24,9 +30,24 @@ import org.apache.jackrabbit.core.state.ItemStateManager;
 import org.apache.jackrabbit.spi.Name;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.DisjunctionMaxQuery;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MultiPhraseQuery;
+import org.apache.lucene.search.MultiTermQueryWrapperFilter;
+import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Searcher;
 import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.Weight;
 
 /**
  * <code>JackrabbitIndexSearcher</code> implements an index searcher with
@@ -51,6 +72,12 @@ public class JackrabbitIndexSearcher
      */
     private final ItemStateManager ism;
 
+    /**
+     * The executor that evaluates the sub indexes in parallel or
+     * <code>null</code> if queries are evaluated by the calling thread only.
+     */
+    private ExecutorService executor;
+
     /**
      * Creates a new jackrabbit index searcher.
      *
@@ -104,7 +131,11 @@ public class JackrabbitIndexSearcher
         }
         if (hits == null) {
             if (sort.getSort().length == 0) {
-                hits = new LuceneQueryHits(reader, this, query);
+                if (isParallel(query)) {
+                    hits = new ScoreDocQueryHits(reader, search(query));
+                } else {
+                    hits = new LuceneQueryHits(reader, this, query);
+                }
             } else {
                 hits = new SortedLuceneQueryHits(this, query, sort,
                         resultFetchHint);
@@ -113,6 +144,116 @@ public class JackrabbitIndexSearcher
         return hits;
     }
 
+    /**
+     * Sets the executor that evaluates queries on the sub indexes of the
+     * index reader in parallel. Only queries that consist of plain lucene
+     * queries are evaluated in parallel, all other queries are evaluated by
+     * the calling thread.
+     *
+     * @param executor the executor or <code>null</code> to evaluate all
+     *                 queries with the calling thread.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Returns <code>true</code> if the given rewritten query is evaluated in
+     * parallel on the sub indexes of the index reader.
+     *
+     * @param query the rewritten query.
+     * @return <code>true</code> if the query is evaluated in parallel.
+     */
+    boolean isParallel(Query query) {
+        return executor != null
+                && getIndexReaders().size() > 1
+                && isParallelSafe(query);
+    }
+
+    /**
+     * Evaluates the rewritten query in parallel on the sub indexes and
+     * returns the hits in document order.
+     *
+     * @param query the rewritten query.
+     * @return the hits in document order.
+     * @throws IOException if an error occurs while executing the query.
+     */
+    ScoreDoc[] search(Query query) throws IOException {
+        // same weight as LuceneQueryHits, scores are not normalized
+        final Weight weight = query.createWeight(createSubIndexSearcher());
+        List<IndexReader> readers = getIndexReaders();
+        List<Callable<List<ScoreDoc>>> tasks =
+                new ArrayList<Callable<List<ScoreDoc>>>();
+        int start = 0;
+        for (final IndexReader r : readers) {
+            final int docBase = start;
+            tasks.add(new Callable<List<ScoreDoc>>() {
+                public List<ScoreDoc> call() throws IOException {
+                    List<ScoreDoc> docs = new ArrayList<ScoreDoc>();
+                    Scorer scorer = weight.scorer(r, true, false);
+                    if (scorer != null) {
+                        int doc;
+                        while ((doc = scorer.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                            docs.add(new ScoreDoc(docBase + doc, scorer.score()));
+                        }
+                    }
+                    return docs;
+                }
+            });
+            start += r.maxDoc();
+        }
+        List<ScoreDoc> hits = new ArrayList<ScoreDoc>();
+        for (List<ScoreDoc> docs : invokeAll(tasks)) {
+            hits.addAll(docs);
+        }
+        return hits.toArray(new ScoreDoc[hits.size()]);
+    }
+
+    /**
+     * Evaluates the rewritten query in parallel on the sub indexes and
+     * returns the top <code>numHits</code> hits according to the sort
+     * criteria.
+     *
+     * @param query   the rewritten query.
+     * @param sort    the sort criteria.
+     * @param numHits the maximum number of hits to return.
+     * @return the top hits.
+     * @throws IOException if an error occurs while executing the query.
+     */
+    TopDocs search(Query query, Sort sort, int numHits) throws IOException {
+        final Weight weight =
+                createSubIndexSearcher().createNormalizedWeight(query);
+        List<IndexReader> readers = getIndexReaders();
+        List<Callable<TopDocs>> tasks = new ArrayList<Callable<TopDocs>>();
+        int start = 0;
+        for (final IndexReader r : readers) {
+            final int docBase = start;
+            // the sort comparators work on document numbers of the top
+            // level reader. Initialize them here, this also makes sure the
+            // shared field cache is populated before the tasks run
+            final TopFieldCollector collector = TopFieldCollector.create(
+                    sort, numHits, true, true, false, false);
+            collector.setNextReader(reader, 0);
+            tasks.add(new Callable<TopDocs>() {
+                public TopDocs call() throws IOException {
+                    Scorer scorer = weight.scorer(r, true, false);
+                    if (scorer != null) {
+                        collector.setScorer(scorer);
+                        int doc;
+                        while ((doc = scorer.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+                            collector.collect(docBase + doc);
+                        }
+                    }
+                    return collector.topDocs();
+                }
+            });
+            start += r.maxDoc();
+        }
+        List<TopDocs> shards = invokeAll(tasks);
+        return TopDocs.merge(sort, numHits,
+                shards.toArray(new TopDocs[shards.size()]));
+    }
+
     //---------------------------< IndexSearcher >------------------------------
 
     @Override
@@ -152,4 +293,120 @@ public class JackrabbitIndexSearcher
     public ItemStateManager getItemStateManager() {
         return ism;
     }
+
+    //-------------------------------< internal >-------------------------------
+
+    /**
+     * Returns <code>true</code> if the scorers of the given query may be
+     * created and used concurrently. Jackrabbit specific queries keep state
+     * in the query or weight instance and are therefore not safe.
+     *
+     * @param query the rewritten query.
+     * @return <code>true</code> if the query can be evaluated in parallel.
+     */
+    private static boolean isParallelSafe(Query query) {
+        if (query instanceof BooleanQuery) {
+            for (BooleanClause clause : ((BooleanQuery) query).getClauses()) {
+                if (!isParallelSafe(clause.getQuery())) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (query instanceof DisjunctionMaxQuery) {
+            for (Query disjunct : (DisjunctionMaxQuery) query) {
+                if (!isParallelSafe(disjunct)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (query instanceof ConstantScoreQuery) {
+            ConstantScoreQuery csq = (ConstantScoreQuery) query;
+            if (csq.getQuery() != null) {
+                return isParallelSafe(csq.getQuery());
+            } else {
+                return csq.getFilter() instanceof MultiTermQueryWrapperFilter;
+            }
+        } else {
+            return query instanceof TermQuery
+                    || query instanceof PhraseQuery
+                    || query instanceof MultiPhraseQuery
+                    || query instanceof org.apache.lucene.search.MatchAllDocsQuery;
+        }
+    }
+
+    /**
+     * Returns a searcher for creating weights that are used with the sub
+     * index readers. Lucene term weights created with an
+     * <code>IndexSearcher</code> only score the readers of that searcher,
+     * see also {@link JackrabbitTermQuery}.
+     *
+     * @return a searcher that forwards all calls to this searcher.
+     */
+    private Searcher createSubIndexSearcher() {
+        Searcher searcher = new FilterSearcher(this);
+        searcher.setSimilarity(getSimilarity());
+        return searcher;
+    }
+
+    /**
+     * @return the sub index readers of the index reader in document order.
+     */
+    private List<IndexReader> getIndexReaders() {
+        List<IndexReader> readers = new ArrayList<IndexReader>();
+        getIndexReaders(readers, reader);
+        return readers;
+    }
+
+    private static void getIndexReaders(List<IndexReader> readers,
+                                        IndexReader reader) {
+        if (reader instanceof MultiIndexReader) {
+            for (IndexReader r : ((MultiIndexReader) reader).getIndexReaders()) {
+                getIndexReaders(readers, r);
+            }
+        } else {
+            readers.add(reader);
+        }
+    }
+
+    /**
+     * Runs the given tasks with the executor and returns their results in
+     * the order of the tasks.
+     *
+     * @param tasks the tasks to run.
+     * @return the results of the tasks.
+     * @throws IOException if a task fails or the calling thread is
+     *                     interrupted.
+     */
+    private <T> List<T> invokeAll(List<Callable<T>> tasks)
+            throws IOException {
+        List<Future<T>> futures = new ArrayList<Future<T>>();
+        try {
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            List<T> results = new ArrayList<T>();
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            throw new IOException("Interrupted while executing query", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Failed to execute query", cause);
+        } finally {
+            // do not interrupt running tasks, an interrupt closes the
+            // file channels of the index
+            for (Future<T> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
 }
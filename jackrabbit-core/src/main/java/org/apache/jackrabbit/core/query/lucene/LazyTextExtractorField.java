@@ -21,6 +21,7 @@ import java.io.Reader;
 import java.util.concurrent.Executor;
 
 import org.apache.jackrabbit.core.LowPriorityTask;
+import org.apache.jackrabbit.core.data.DataIdentifier;
 import org.apache.jackrabbit.core.value.InternalValue;
 import org.apache.lucene.analysis.TokenStream;
 import org.apache.lucene.document.AbstractField;
@@ -74,12 +75,46 @@ public class LazyTextExtractorField extends AbstractField {
             Parser parser, InternalValue value, Metadata metadata,
             Executor executor, boolean highlighting, int maxFieldLength,
             boolean withNorms) {
+        this(parser, value, metadata, executor, highlighting, maxFieldLength,
+                withNorms, null);
+    }
+
+    /**
+     * Creates a new <code>LazyTextExtractorField</code>. If the value is
+     * stored in the data store and its text, extracted with the same media
+     * type and encoding as given in the metadata, is found in the given
+     * cache, the cached text is used and no parsing task is started.
+     *
+     * @param parser
+     * @param value
+     * @param metadata
+     * @param executor
+     * @param highlighting
+     *            set to <code>true</code> to enable result highlighting support
+     * @param maxFieldLength
+     * @param withNorms
+     * @param cache
+     *            the text extraction cache, or <code>null</code>
+     */
+    public LazyTextExtractorField(
+            Parser parser, InternalValue value, Metadata metadata,
+            Executor executor, boolean highlighting, int maxFieldLength,
+            boolean withNorms, TextExtractionCache cache) {
         super(FieldNames.FULLTEXT,
                 highlighting ? Store.YES : Store.NO,
                 withNorms ? Field.Index.ANALYZED : Field.Index.ANALYZED_NO_NORMS,
                 highlighting ? TermVector.WITH_OFFSETS : TermVector.NO);
+        DataIdentifier identifier = value.getDataIdentifier();
+        if (cache != null && identifier != null) {
+            extract = cache.get(identifier,
+                    metadata.get(Metadata.CONTENT_TYPE),
+                    metadata.get(Metadata.CONTENT_ENCODING));
+            if (extract != null) {
+                return;
+            }
+        }
         executor.execute(new ParsingTask(parser, value, metadata,
-                maxFieldLength) {
+                maxFieldLength, cache) {
             public void setExtractedText(String value) {
                 LazyTextExtractorField.this.setExtractedText(value);
             }
@@ -159,22 +194,46 @@ public class LazyTextExtractorField extends AbstractField {
 
         private final WriteOutContentHandler writeOutContentHandler;
 
+        /**
+         * The cache for the extracted text, or <code>null</code>.
+         */
+        private final TextExtractionCache cache;
+
+        /**
+         * The media type and encoding the text is cached with. Taken from
+         * the metadata before parsing, as the parser may change it.
+         */
+        private final String mimeType;
+
+        private final String encoding;
+
         public ParsingTask(Parser parser, InternalValue value,
                 Metadata metadata, int maxFieldLength) {
+            this(parser, value, metadata, maxFieldLength, null);
+        }
+
+        public ParsingTask(Parser parser, InternalValue value,
+                Metadata metadata, int maxFieldLength,
+                TextExtractionCache cache) {
             this(new WriteOutContentHandler(maxFieldLength), parser, value,
-                    metadata);
+                    metadata, cache);
         }
 
         private ParsingTask(WriteOutContentHandler writeOutContentHandler,
-                Parser parser, InternalValue value, Metadata metadata) {
+                Parser parser, InternalValue value, Metadata metadata,
+                TextExtractionCache cache) {
             super(writeOutContentHandler);
             this.writeOutContentHandler = writeOutContentHandler;
             this.parser = parser;
             this.value = value;
             this.metadata = metadata;
+            this.cache = cache;
+            this.mimeType = metadata.get(Metadata.CONTENT_TYPE);
+            this.encoding = metadata.get(Metadata.CONTENT_ENCODING);
         }
 
         public void run() {
+            DataIdentifier identifier = value.getDataIdentifier();
             try {
                 InputStream stream = value.getStream();
                 try {
@@ -186,7 +245,9 @@ public class LazyTextExtractorField extends AbstractField {
                 // Capture and ignore errors caused by extraction libraries
                 // not being present. This is equivalent to disabling
                 // selected media types in configuration, so we can simply
-                // ignore these errors.
+                // ignore these errors. The result is not cached, as the
+                // libraries may be added later.
+                identifier = null;
             } catch (Throwable t) {
                 // Capture and report any other full text extraction problems.
                 // The special STOP exception is used for normal termination.
@@ -201,7 +262,11 @@ public class LazyTextExtractorField extends AbstractField {
             } finally {
                 value.discard();
             }
-            setExtractedText(writeOutContentHandler.toString());
+            String text = writeOutContentHandler.toString();
+            if (cache != null && identifier != null) {
+                cache.put(identifier, mimeType, encoding, text);
+            }
+            setExtractedText(text);
         }
 
         protected abstract void setExtractedText(String value);
@@ -535,12 +535,15 @@ public class LuceneQueryBuilder implements QueryNodeVisitor {
         }
 
         // check for position predicate
+        // the query tree may be shared through the parse cache and must
+        // therefore not be modified
+        int index = node.getIndex();
         QueryNode[] pred = node.getPredicates();
         for (QueryNode aPred : pred) {
             if (aPred.getType() == QueryNode.TYPE_RELATION) {
                 RelationQueryNode pos = (RelationQueryNode) aPred;
                 if (pos.getValueType() == QueryConstants.TYPE_POSITION) {
-                    node.setIndex(pos.getPositionValue());
+                    index = pos.getPositionValue();
                 }
             }
         }
@@ -576,13 +579,13 @@ public class LuceneQueryBuilder implements QueryNodeVisitor {
                     // only use descendant axis if path is not //*
                     PathQueryNode pathNode = (PathQueryNode) node.getParent();
                     if (pathNode.getPathSteps()[0] != node) {
-                        if (node.getIndex() == LocationStepQueryNode.NONE) {
+                        if (index == LocationStepQueryNode.NONE) {
                             context = new DescendantSelfAxisQuery(context, false);
                             andQuery.add(context, Occur.MUST);
                         } else {
                             context = new DescendantSelfAxisQuery(context, true);
                             andQuery.add(new ChildAxisQuery(sharedItemMgr,
-                                    context, null, node.getIndex(),
+                                    context, null, index,
                                     indexFormatVersion, nsMappings), Occur.MUST);
                         }
                     } else {
@@ -594,12 +597,12 @@ public class LuceneQueryBuilder implements QueryNodeVisitor {
             // name test
             if (nameTest != null) {
                 andQuery.add(new ChildAxisQuery(sharedItemMgr, context,
-                        nameTest.getName(), node.getIndex(), indexFormatVersion,
+                        nameTest.getName(), index, indexFormatVersion,
                         nsMappings), Occur.MUST);
             } else {
                 // select child nodes
                 andQuery.add(new ChildAxisQuery(sharedItemMgr, context, null,
-                        node.getIndex(), indexFormatVersion, nsMappings),
+                        index, indexFormatVersion, nsMappings),
                         Occur.MUST);
             }
         }
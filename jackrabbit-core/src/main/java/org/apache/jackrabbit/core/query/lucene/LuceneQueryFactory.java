@@ -48,10 +48,13 @@ import static org.apache.lucene.search.BooleanClause.Occur.SHOULD;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 import javax.jcr.ItemNotFoundException;
 import javax.jcr.Node;
@@ -93,21 +96,32 @@ import org.apache.jackrabbit.commons.predicate.Predicates;
 import org.apache.jackrabbit.commons.predicate.RowPredicate;
 import org.apache.jackrabbit.commons.query.qom.OperandEvaluator;
 import org.apache.jackrabbit.core.SessionImpl;
+import org.apache.jackrabbit.core.id.ItemId;
+import org.apache.jackrabbit.core.id.PropertyId;
+import org.apache.jackrabbit.core.query.lucene.join.ProjectionRow;
 import org.apache.jackrabbit.core.query.lucene.join.SelectorRow;
 import org.apache.jackrabbit.core.query.lucene.join.ValueComparator;
+import org.apache.jackrabbit.core.value.InternalValue;
 import org.apache.jackrabbit.spi.Name;
 import org.apache.jackrabbit.spi.commons.conversion.IllegalNameException;
 import org.apache.jackrabbit.spi.commons.conversion.NamePathResolver;
+import org.apache.jackrabbit.spi.commons.query.qom.AbstractQOMNode;
 import org.apache.jackrabbit.spi.commons.query.qom.FullTextSearchImpl;
 import org.apache.jackrabbit.spi.commons.query.qom.PropertyExistenceImpl;
+import org.apache.jackrabbit.spi.commons.value.ValueFormat;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Fieldable;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
 
 /**
  * Factory that creates Lucene queries from QOM elements.
@@ -146,6 +160,16 @@ public class LuceneQueryFactory {
 
     private final PerQueryCache cache = new PerQueryCache();
 
+    /**
+     * The bind variable values of the query
+     */
+    private final Map<String, Value> bindVariables;
+
+    /**
+     * Whether selectors may be evaluated in parallel on the sub indexes.
+     */
+    private boolean parallelExecution = true;
+
     /**
      * Creates a new lucene query factory.
      *
@@ -159,6 +183,7 @@ public class LuceneQueryFactory {
         this.session = session;
         this.ntManager = session.getWorkspace().getNodeTypeManager();
         this.index = index;
+        this.bindVariables = bindVariables;
         this.nsMappings = index.getNamespaceMappings();
         this.npResolver = NamePathResolverImpl.create(nsMappings);
         this.evaluator =
@@ -167,6 +192,17 @@ public class LuceneQueryFactory {
         this.primaryTypeField = nsMappings.translateName(JCR_PRIMARYTYPE);
     }
 
+    /**
+     * Enables or disables parallel evaluation of selectors on the sub indexes
+     * of the search index.
+     *
+     * @param parallelExecution <code>false</code> to evaluate selectors with
+     *                          the calling thread only.
+     */
+    public void setParallelExecution(boolean parallelExecution) {
+        this.parallelExecution = parallelExecution;
+    }
+
     /**
      * @param columns
      * @param selector
@@ -187,6 +223,12 @@ public class LuceneQueryFactory {
             Selector selector, Constraint constraint, Sort sort,
             boolean externalSort, long offsetIn, long limitIn)
             throws RepositoryException, IOException {
+        QueryResultCache resultCache = index.getResultCache();
+        Object key = null;
+        if (resultCache != null) {
+            key = createResultCacheKey(selector, constraint, sort);
+        }
+        long generation = index.getIndexGeneration(true);
         final IndexReader reader = index.getIndexReader(true);
         final int offset = offsetIn < 0 ? 0 : (int) offsetIn;
         final int limit = limitIn < 0 ? Integer.MAX_VALUE : (int) limitIn;
@@ -196,6 +238,9 @@ public class LuceneQueryFactory {
             JackrabbitIndexSearcher searcher = new JackrabbitIndexSearcher(
                     session, reader, index.getContext().getItemStateManager());
             searcher.setSimilarity(index.getSimilarity());
+            if (parallelExecution) {
+                searcher.setExecutor(index.getSearchExecutor());
+            }
 
             Predicate filter = Predicate.TRUE;
             BooleanQuery query = new BooleanQuery();
@@ -216,18 +261,32 @@ public class LuceneQueryFactory {
 
             // TODO depending on the filters, we could push the offset info
             // into the searcher
-            hits = searcher.evaluate(qp.mainQuery, sort, offset + limit);
+            if (key != null) {
+                hits = resultCache.get(key, generation);
+            }
+            if (hits == null) {
+                hits = searcher.evaluate(qp.mainQuery, sort, offset + limit);
+                if (key != null) {
+                    hits = resultCache.put(key, generation, hits);
+                }
+            }
             int currentNode = 0;
             int addedNodes = 0;
 
+            Map<String, Name> projected = getProjectedColumns(columns);
             ScoreNode node = hits.nextScoreNode();
             while (node != null) {
                 Row row = null;
                 try {
-                    row = new SelectorRow(columns, evaluator,
-                            selector.getSelectorName(),
-                            session.getNodeById(node.getNodeId()),
-                            node.getScore());
+                    if (projected.isEmpty()) {
+                        row = new SelectorRow(columns, evaluator,
+                                selector.getSelectorName(),
+                                session.getNodeById(node.getNodeId()),
+                                node.getScore());
+                    } else {
+                        row = createProjectionRow(columns, projected,
+                                selector.getSelectorName(), node, reader);
+                    }
                 } catch (ItemNotFoundException e) {
                     // skip the node
                 }
@@ -260,6 +319,228 @@ public class LuceneQueryFactory {
         }
     }
 
+    /**
+     * Creates the key for the hits of a selector in the query result cache.
+     * The key consists of the selector and constraint, which refer to bind
+     * variables by name, the values of the bind variables and the sort
+     * fields. Hits are not cached if a sort field compares values read
+     * through the session or if a bind variable is a binary value.
+     *
+     * @param selector   the selector.
+     * @param constraint the constraint or <code>null</code>.
+     * @param sort       the sort criteria.
+     * @return the key or <code>null</code> if the hits must not be cached.
+     * @throws RepositoryException if a bind variable value cannot be read.
+     */
+    private Object createResultCacheKey(
+            Selector selector, Constraint constraint, Sort sort)
+            throws RepositoryException {
+        if (!(selector instanceof AbstractQOMNode)
+                || (constraint != null
+                        && !(constraint instanceof AbstractQOMNode))) {
+            // no reliable string representation
+            return null;
+        }
+        for (SortField field : sort.getSort()) {
+            if (field.getComparatorSource() != null) {
+                return null;
+            }
+        }
+        Map<String, String> values = new TreeMap<String, String>();
+        for (Map.Entry<String, Value> entry : bindVariables.entrySet()) {
+            Value value = entry.getValue();
+            if (value == null || value.getType() == PropertyType.BINARY) {
+                return null;
+            }
+            values.put(entry.getKey(), PropertyType.nameFromValue(
+                    value.getType()) + ":" + value.getString());
+        }
+        return QueryResultCache.createKey(session,
+                javax.jcr.query.Query.JCR_SQL2,
+                selector.toString(), String.valueOf(constraint),
+                Arrays.asList(sort.getSort()), values);
+    }
+
+    /**
+     * Returns the columns of the query mapped to the names of their
+     * properties if every column reads a property whose values are stored
+     * in the index by some indexing rule. Otherwise most rows would have to
+     * load their node anyway and an empty map is returned, which makes the
+     * caller create plain {@link SelectorRow}s.
+     *
+     * @param columns the columns of the query.
+     * @return the names of the properties of the columns, keyed by column
+     *         name, or an empty map if the columns are not projected.
+     * @throws RepositoryException if a property name is invalid.
+     */
+    private Map<String, Name> getProjectedColumns(
+            Map<String, PropertyValue> columns) throws RepositoryException {
+        IndexingConfiguration config = index.getIndexingConfig();
+        if (columns.isEmpty()
+                || !(config instanceof IndexingConfigurationImpl)) {
+            return Collections.emptyMap();
+        }
+        Map<String, Name> projected = new HashMap<String, Name>();
+        for (Map.Entry<String, PropertyValue> entry : columns.entrySet()) {
+            Name name = session.getQName(entry.getValue().getPropertyName());
+            if (!((IndexingConfigurationImpl) config).isStored(name)) {
+                return Collections.emptyMap();
+            }
+            projected.put(entry.getKey(), name);
+        }
+        return projected;
+    }
+
+    /**
+     * Creates a row that reads the values of the projected columns from the
+     * {@link FieldNames#STORED_VALUES} field of the hit instead of from the
+     * node. Read access to the node and to the properties with stored values
+     * is checked with a single call to the access manager.
+     *
+     * @return the row, or <code>null</code> if the node is not readable.
+     */
+    private Row createProjectionRow(
+            Map<String, PropertyValue> columns, Map<String, Name> projected,
+            String selectorName, ScoreNode node, IndexReader reader)
+            throws RepositoryException, IOException {
+        Document doc = reader.document(
+                node.getDoc(reader), FieldSelectors.STORED_VALUES);
+        Map<String, List<String>> stored = new HashMap<String, List<String>>();
+        for (Fieldable field : doc.getFieldables(FieldNames.STORED_VALUES)) {
+            String value = field.stringValue();
+            int idx = FieldNames.getNameLength(value);
+            String fieldName = value.substring(0, idx - 1);
+            List<String> values = stored.get(fieldName);
+            if (values == null) {
+                values = new ArrayList<String>();
+                stored.put(fieldName, values);
+            }
+            values.add(value.substring(idx));
+        }
+
+        List<String> columnNames = new ArrayList<String>();
+        List<List<String>> columnValues = new ArrayList<List<String>>();
+        List<ItemId> ids = new ArrayList<ItemId>();
+        ids.add(node.getNodeId());
+        for (Map.Entry<String, Name> entry : projected.entrySet()) {
+            List<String> values =
+                stored.get(nsMappings.translateName(entry.getValue()));
+            if (values != null) {
+                columnNames.add(entry.getKey());
+                columnValues.add(values);
+                ids.add(new PropertyId(node.getNodeId(), entry.getValue()));
+            }
+        }
+        boolean[] readable = Util.canRead(session.getAccessManager(),
+                ids.toArray(new ItemId[ids.size()]));
+        if (!readable[0]) {
+            return null;
+        }
+
+        Map<String, Value[]> values = new HashMap<String, Value[]>();
+        for (int i = 0; i < columnNames.size(); i++) {
+            List<String> encoded = columnValues.get(i);
+            Value[] v = new Value[readable[i + 1] ? encoded.size() : 0];
+            for (int j = 0; j < v.length; j++) {
+                String value = encoded.get(j);
+                int colon = value.indexOf(':');
+                int type = PropertyType.valueFromName(value.substring(0, colon));
+                v[j] = ValueFormat.getJCRValue(
+                        InternalValue.valueOf(value.substring(colon + 1), type),
+                        session, session.getValueFactory());
+            }
+            values.put(columnNames.get(i), v);
+        }
+        return new ProjectionRow(columns, evaluator, session, selectorName,
+                node.getNodeId().toString(), node.getScore(), values);
+    }
+
+    /**
+     * Counts the nodes of the given selector that match the constraint and
+     * are readable by the session, without loading the nodes.
+     *
+     * @param selector   the selector.
+     * @param constraint the constraint, or <code>null</code>.
+     * @return the number of readable matches, or <code>-1</code> if the
+     *         constraint can not be evaluated on the index alone.
+     * @throws RepositoryException if an error occurs while creating the query
+     *                             or checking access rights.
+     * @throws IOException         if an error occurs while searching the
+     *                             index.
+     */
+    public long count(Selector selector, Constraint constraint)
+            throws RepositoryException, IOException {
+        IndexReader reader = index.getIndexReader(true);
+        try {
+            Query query = createIndexOnlyQuery(selector, constraint, reader);
+            if (query == null) {
+                return -1;
+            }
+            return new HitCounter(session, index, reader).count(query);
+        } finally {
+            Util.closeOrRelease(reader);
+        }
+    }
+
+    /**
+     * Counts the nodes of the given selector that match the constraint and
+     * are readable by the session, per value of the given property.
+     *
+     * @param selector     the selector.
+     * @param constraint   the constraint, or <code>null</code>.
+     * @param propertyName the name of the property.
+     * @return the number of readable matches per JCR string value, or
+     *         <code>null</code> if the constraint can not be evaluated on the
+     *         index alone.
+     * @throws RepositoryException if an error occurs while creating the query
+     *                             or checking access rights.
+     * @throws IOException         if an error occurs while searching the
+     *                             index.
+     */
+    public Map<String, Long> facet(
+            Selector selector, Constraint constraint, Name propertyName)
+            throws RepositoryException, IOException {
+        IndexReader reader = index.getIndexReader(true);
+        try {
+            Query query = createIndexOnlyQuery(selector, constraint, reader);
+            if (query == null) {
+                return null;
+            }
+            return new HitCounter(session, index, reader).facet(
+                    query, propertyName);
+        } finally {
+            Util.closeOrRelease(reader);
+        }
+    }
+
+    /**
+     * Creates a lucene query for the given selector and constraint, if the
+     * constraint can be mapped completely to the query.
+     *
+     * @return the query, or <code>null</code> if parts of the constraint need
+     *         to be evaluated on the result rows.
+     */
+    private Query createIndexOnlyQuery(
+            Selector selector, Constraint constraint, IndexReader reader)
+            throws RepositoryException, IOException {
+        BooleanQuery query = new BooleanQuery();
+        QueryPair qp = new QueryPair(query);
+        query.add(create(selector), MUST);
+        if (constraint != null) {
+            JackrabbitIndexSearcher searcher = new JackrabbitIndexSearcher(
+                    session, reader, index.getContext().getItemStateManager());
+            searcher.setSimilarity(index.getSimilarity());
+            NodeType type = ntManager.getNodeType(selector.getNodeTypeName());
+            Predicate filter = mapConstraintToQueryAndFilter(qp, constraint,
+                    Collections.singletonMap(selector.getSelectorName(), type),
+                    searcher, reader);
+            if (filter != Predicate.TRUE) {
+                return null;
+            }
+        }
+        return qp.mainQuery;
+    }
+
     /**
      * Creates a lucene query for the given QOM selector.
      *
@@ -290,6 +571,96 @@ public class LuceneQueryFactory {
         }
     }
 
+    /**
+     * Estimates the number of nodes that match the given selector and
+     * constraint. The estimate is derived from the document frequencies of
+     * the node type and property value terms in the index and does not
+     * evaluate the query. Constraints that can not be estimated from a
+     * term lookup (ranges, full text, etc.) do not reduce the estimate.
+     *
+     * @param selector   the selector.
+     * @param constraint the constraint on the selector or <code>null</code>.
+     * @return estimated number of matching nodes.
+     * @throws RepositoryException if an error occurs while creating the
+     *                             queries.
+     * @throws IOException if an error occurs while reading from the index.
+     */
+    public long estimate(Selector selector, Constraint constraint)
+            throws RepositoryException, IOException {
+        IndexReader reader = index.getIndexReader(true);
+        try {
+            long count = estimate(create(selector), reader);
+            if (constraint != null) {
+                String name = selector.getSelectorName();
+                NodeType type =
+                    ntManager.getNodeType(selector.getNodeTypeName());
+                count = Math.min(count, estimate(constraint,
+                        Collections.singletonMap(name, type), reader));
+            }
+            return count;
+        } finally {
+            Util.closeOrRelease(reader);
+        }
+    }
+
+    private long estimate(
+            Constraint constraint, Map<String, NodeType> selectorMap,
+            IndexReader reader) throws RepositoryException, IOException {
+        if (constraint instanceof And) {
+            And and = (And) constraint;
+            return Math.min(
+                    estimate(and.getConstraint1(), selectorMap, reader),
+                    estimate(and.getConstraint2(), selectorMap, reader));
+        } else if (constraint instanceof Or) {
+            Or or = (Or) constraint;
+            return Math.min(reader.maxDoc(),
+                    estimate(or.getConstraint1(), selectorMap, reader)
+                    + estimate(or.getConstraint2(), selectorMap, reader));
+        } else if (constraint instanceof Comparison) {
+            Comparison c = (Comparison) constraint;
+            Transform transform = new Transform(c.getOperand1());
+            if (JCR_OPERATOR_EQUAL_TO.equals(c.getOperator())
+                    && transform.transform == TRANSFORM_NONE
+                    && (transform.operand instanceof PropertyValue
+                            || transform.operand instanceof NodeName
+                            || transform.operand instanceof NodeLocalName)) {
+                return estimate(getComparisonQuery(
+                        transform.operand, transform.transform,
+                        c.getOperator(), c.getOperand2(), selectorMap), reader);
+            }
+        } else if (constraint instanceof SameNode) {
+            return 1;
+        } else if (constraint instanceof ChildNode) {
+            ChildNode cn = (ChildNode) constraint;
+            return estimate(getNodeIdQuery(PARENT, cn.getParentPath()), reader);
+        }
+        return reader.maxDoc();
+    }
+
+    private long estimate(Query query, IndexReader reader) throws IOException {
+        if (query instanceof TermQuery) {
+            return reader.docFreq(((TermQuery) query).getTerm());
+        } else if (query instanceof BooleanQuery) {
+            long required = reader.maxDoc();
+            long optional = 0;
+            boolean hasOptional = false;
+            for (BooleanClause clause : ((BooleanQuery) query).getClauses()) {
+                if (clause.getOccur() == MUST) {
+                    required = Math.min(
+                            required, estimate(clause.getQuery(), reader));
+                } else if (clause.getOccur() == SHOULD) {
+                    optional += estimate(clause.getQuery(), reader);
+                    hasOptional = true;
+                }
+            }
+            if (hasOptional) {
+                return Math.min(required, optional);
+            }
+            return required;
+        }
+        return reader.maxDoc();
+    }
+
     protected Term createNodeTypeTerm(NodeType type) throws RepositoryException {
         String field;
         if (type.isMixin()) {
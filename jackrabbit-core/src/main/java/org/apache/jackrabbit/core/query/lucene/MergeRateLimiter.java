@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * <code>MergeRateLimiter</code> limits the rate at which the {@link
+ * IndexMerger} writes merged index segments. The limit is shared by all
+ * merges that run concurrently. While queries are executed on the index the
+ * limit is lowered by {@link #BACKOFF_FACTOR}, which leaves more of the disk
+ * bandwidth to the queries.
+ */
+class MergeRateLimiter {
+
+    /**
+     * The factor by which the rate is lowered while queries are active.
+     */
+    static final int BACKOFF_FACTOR = 4;
+
+    /**
+     * The time in milliseconds after the start of a query during which
+     * queries are considered active.
+     */
+    static final long QUERY_ACTIVITY_PERIOD = 1000;
+
+    /**
+     * {@link #QUERY_ACTIVITY_PERIOD} in nano seconds.
+     */
+    private static final long QUERY_ACTIVITY_NANOS =
+            QUERY_ACTIVITY_PERIOD * 1000L * 1000L;
+
+    /**
+     * The maximum number of bytes per second or zero if unlimited.
+     */
+    private final double bytesPerSec;
+
+    /**
+     * The time in nano seconds when the next write may happen at the
+     * configured rate.
+     */
+    private long nextWrite = System.nanoTime();
+
+    /**
+     * The time in nano seconds when the last query was started.
+     */
+    private volatile long lastQuery = System.nanoTime() - QUERY_ACTIVITY_NANOS;
+
+    /**
+     * Creates a new rate limiter.
+     *
+     * @param mbPerSec the maximum number of mega bytes per second. A value
+     *                 less or equal to zero disables the limit.
+     */
+    MergeRateLimiter(double mbPerSec) {
+        this.bytesPerSec = mbPerSec > 0 ? mbPerSec * 1024 * 1024 : 0;
+    }
+
+    /**
+     * @return <code>true</code> if this rate limiter limits the write rate.
+     */
+    boolean isEnabled() {
+        return bytesPerSec > 0;
+    }
+
+    /**
+     * Informs this rate limiter that a query is started on the index.
+     */
+    void queryStarted() {
+        lastQuery = System.nanoTime();
+    }
+
+    /**
+     * @return <code>true</code> if a query was started on the index within
+     *         the last {@link #QUERY_ACTIVITY_PERIOD} milliseconds.
+     */
+    boolean isQueryActive() {
+        return System.nanoTime() - lastQuery < QUERY_ACTIVITY_NANOS;
+    }
+
+    /**
+     * Pauses the calling thread as long as it takes to write
+     * <code>bytes</code> at the current rate.
+     *
+     * @param bytes the number of bytes that were written.
+     * @throws IOException if the calling thread is interrupted.
+     */
+    void pause(long bytes) throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        double rate = bytesPerSec;
+        if (isQueryActive()) {
+            rate /= BACKOFF_FACTOR;
+        }
+        long now = System.nanoTime();
+        long target;
+        synchronized (this) {
+            target = Math.max(nextWrite, now) + (long) (bytes / rate * 1e9);
+            nextWrite = target;
+        }
+        long wait = target - now;
+        if (wait > 0) {
+            try {
+                Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException(e.getMessage());
+            }
+        }
+    }
+}
@@ -32,6 +32,7 @@ import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jcr.RepositoryException;
 
@@ -158,6 +159,12 @@ public class MultiIndex {
      */
     private CachingMultiIndexReader multiReader;
 
+    /**
+     * The generation of the index readers of this multi index. Incremented
+     * each time {@link #multiReader} is released.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
     /**
      * Shared document number cache across all persistent indexes.
      */
@@ -233,6 +240,17 @@ public class MultiIndex {
      */
     private final IndexFormatVersion version;
 
+    /**
+     * The checkpoint of an unfinished parallel initial index build, or
+     * <code>null</code> if there is none.
+     */
+    private InitialIndexCheckpoint initialIndexCheckpoint;
+
+    /**
+     * Re-indexes nodes with missing or outdated ancestors in the background.
+     */
+    private final AncestorReindexer ancestorReindexer;
+
     /**
      * Creates a new MultiIndex.
      *
@@ -261,10 +279,16 @@ public class MultiIndex {
         this.redoLog = redoLogFactory.createRedoLog(this);
 
         // initialize IndexMerger
-        merger = new IndexMerger(this, handler.getContext().getExecutor());
+        merger = new IndexMerger(this, handler.getContext().getExecutor(),
+                handler.getContext().getRepositoryStatistics());
         merger.setMaxMergeDocs(handler.getMaxMergeDocs());
         merger.setMergeFactor(handler.getMergeFactor());
         merger.setMinMergeDocs(handler.getMinMergeDocs());
+        merger.setMaxConcurrentMerges(handler.getMaxConcurrentMerges());
+        merger.setRateLimiter(handler.getMergeRateLimiter());
+
+        ancestorReindexer = new AncestorReindexer(
+                this, handler, handler.getContext().getExecutor());
 
         // initialize indexing queue
         this.indexingQueue = new IndexingQueue(new IndexingQueueStore(indexDir));
@@ -312,6 +336,9 @@ public class MultiIndex {
         // run recovery
         Recovery.run(this, redoLog);
 
+        // segments of an unfinished initial index are not registered yet
+        initialIndexCheckpoint = InitialIndexCheckpoint.read(indexDir);
+
         // enqueue unused segments for deletion
         enqueueUnusedSegments();
         attemptDelete();
@@ -360,9 +387,36 @@ public class MultiIndex {
         return version;
     }
 
+    /**
+     * @return <code>true</code> if a parallel initial index build was
+     *         interrupted and should be resumed with
+     *         {@link #createInitialIndex(ItemStateManager, NodeId, Path)}.
+     */
+    boolean isInitialIndexPending() {
+        return initialIndexCheckpoint != null;
+    }
+
+    /**
+     * @return <code>true</code> if ancestor indexing is enabled and every
+     *         document in this index has its ancestors indexed.
+     */
+    boolean isAncestorsIndexed() {
+        return handler.getIndexAncestors() && ancestorReindexer.isComplete();
+    }
+
+    /**
+     * Re-indexes the nodes that were indexed without ancestors in the
+     * background.
+     */
+    void migrateAncestors() {
+        ancestorReindexer.migrate();
+    }
+
     /**
      * Creates an initial index by traversing the node hierarchy starting at the
-     * node with <code>rootId</code>.
+     * node with <code>rootId</code>. If {@link SearchIndex#getInitialIndexThreads()}
+     * is greater than one, the workspace is indexed with multiple threads,
+     * see {@link InitialIndexBuilder}.
      *
      * @param stateMgr the item state manager.
      * @param rootId   the id of the node from where to start.
@@ -375,6 +429,13 @@ public class MultiIndex {
                             NodeId rootId,
                             Path rootPath)
             throws IOException {
+        // resume an interrupted parallel build even if it is
+        // configured to run with a single thread now
+        if (initialIndexCheckpoint != null || (indexNames.size() == 0
+                && handler.getInitialIndexThreads() > 1)) {
+            createInitialIndexInParallel(stateMgr, rootId, rootPath);
+            return;
+        }
         // only do an initial index if there are no indexes at all
         if (indexNames.size() == 0) {
             reindexing = true;
@@ -403,6 +464,94 @@ public class MultiIndex {
         }
     }
 
+    /**
+     * Creates or resumes an initial index with the threads of an
+     * {@link InitialIndexBuilder}. The index segments of the units are
+     * registered in a single transaction at the end, so that a search
+     * never sees a partial index.
+     *
+     * @param stateMgr the item state manager.
+     * @param rootId   the id of the node from where to start.
+     * @param rootPath the path of the node from where to start.
+     * @throws IOException if an error occurs while indexing the workspace.
+     */
+    private void createInitialIndexInParallel(ItemStateManager stateMgr,
+                                              NodeId rootId,
+                                              Path rootPath)
+            throws IOException {
+        InitialIndexBuilder builder = new InitialIndexBuilder(this, handler,
+                stateMgr, Math.max(1, handler.getInitialIndexThreads()));
+        try {
+            InitialIndexCheckpoint checkpoint = initialIndexCheckpoint;
+            if (checkpoint == null) {
+                checkpoint = new InitialIndexCheckpoint(
+                        indexDir, builder.split(rootId, rootPath));
+                checkpoint.write();
+                initialIndexCheckpoint = checkpoint;
+            }
+            // the segments are only registered when all units are
+            // finished, if there are any the build is already complete
+            if (indexNames.size() == 0) {
+                builder.build(checkpoint);
+                addIndexes(checkpoint.getIndexNames());
+            }
+            checkIndexingQueue(false);
+            releaseMultiReader();
+            safeFlush();
+            checkpoint.delete();
+            initialIndexCheckpoint = null;
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            String msg = "Error indexing workspace";
+            IOException ex = new IOException(msg);
+            ex.initCause(e);
+            throw ex;
+        } finally {
+            if (flushTask == null) {
+                scheduleFlushTask();
+            }
+        }
+    }
+
+    /**
+     * Registers the index segments with the given names in a single
+     * transaction.
+     *
+     * @param names the names of the index segments.
+     * @throws IOException if an error occurs while registering the segments.
+     */
+    private void addIndexes(Collection<String> names) throws IOException {
+        synchronized (this) {
+            synchronized (updateMonitor) {
+                updateInProgress = true;
+            }
+            try {
+                executeAndLog(new Start(Action.INTERNAL_TRANSACTION));
+                for (String name : names) {
+                    executeAndLog(new CreateIndex(getTransactionId(), name));
+                    executeAndLog(new AddIndex(getTransactionId(), name));
+                }
+                executeAndLog(new Commit(getTransactionId()));
+            } finally {
+                synchronized (updateMonitor) {
+                    updateInProgress = false;
+                    updateMonitor.notifyAll();
+                    releaseMultiReader();
+                }
+            }
+        }
+    }
+
+    /**
+     * @param id a node id.
+     * @return <code>true</code> if the node with the given id and its
+     *         descendants must not be indexed.
+     */
+    boolean isExcluded(NodeId id) {
+        return excludedIDs.contains(id);
+    }
+
     /**
      * Atomically updates the index by removing some documents and adding
      * others.
@@ -447,6 +596,7 @@ public class MultiIndex {
                 }
             }
             executeAndLog(new Commit(transactionId));
+            ancestorReindexer.nodesUpdated(remove);
         } finally {
             synchronized (updateMonitor) {
                 updateInProgress = false;
@@ -456,6 +606,26 @@ public class MultiIndex {
         }
     }
 
+    /**
+     * Atomically updates the index like {@link #update(Collection, Collection)}
+     * and re-indexes the descendants of moved nodes in the background, which
+     * still have the old ancestors of the moved nodes in the index.
+     *
+     * @param remove   collection of <code>id</code>s that identify documents
+     *                 to remove
+     * @param add      collection of <code>Document</code>s to add.
+     * @param movedIds the ids of the moved nodes.
+     * @throws IOException if an error occurs while updating the index.
+     */
+    synchronized void update(Collection<NodeId> remove,
+                             Collection<Document> add,
+                             Collection<NodeId> movedIds)
+            throws IOException {
+        // the re-index job waits for the reader until this update is done
+        ancestorReindexer.reindexDescendants(movedIds);
+        update(remove, add);
+    }
+
     /**
      * Adds a document to the index.
      *
@@ -717,6 +887,13 @@ public class MultiIndex {
     /**
      * Returns an read-only <code>IndexReader</code> that spans alls indexes of this
      * <code>MultiIndex</code>.
+     * <p>
+     * The reader is created again after each update, also in near real-time
+     * mode. Its sub readers are not: a persistent index returns the same
+     * read-only reader until its documents change, and the in-memory index
+     * keeps the reader of each of its segments. The caches of the sub
+     * readers are therefore kept, and only the array of sub readers is
+     * built again.
      *
      * @param initCache when set <code>true</code> the hierarchy cache is
      *                  completely initialized before this call returns.
@@ -748,10 +925,12 @@ public class MultiIndex {
                         readerList.add(pIdx.getReadOnlyIndexReader(initCache));
                     }
                 }
-                readerList.add(volatileIndex.getReadOnlyIndexReader());
+                readerList.addAll(Arrays.asList(
+                        volatileIndex.getReadOnlyIndexReaders(false)));
                 ReadOnlyIndexReader[] readers =
                     readerList.toArray(new ReadOnlyIndexReader[readerList.size()]);
-                multiReader = new CachingMultiIndexReader(readers, cache);
+                multiReader = new CachingMultiIndexReader(
+                        readers, cache, isAncestorsIndexed());
             }
             multiReader.acquire();
             return multiReader;
@@ -786,6 +965,7 @@ public class MultiIndex {
         // when calling this method we must not lock this MultiIndex, otherwise
         // a deadlock might occur
         merger.dispose();
+        ancestorReindexer.dispose();
 
         synchronized (this) {
             // stop timer
@@ -835,6 +1015,14 @@ public class MultiIndex {
         return indexingQueue;
     }
 
+    /**
+     * Returns the index merger for this multi index.
+     * @return the index merger for this multi index.
+     */
+    IndexMerger getMerger() {
+        return merger;
+    }
+
     /**
      * @return the base directory of the index.
      */
@@ -982,9 +1170,9 @@ public class MultiIndex {
 
     /**
      * Releases the {@link #multiReader} and sets it <code>null</code>. If the
-     * reader is already <code>null</code> this method does nothing. When this
-     * method returns {@link #multiReader} is guaranteed to be <code>null</code>
-     * even if an exception is thrown.
+     * reader is already <code>null</code> only the reader {@link #generation}
+     * is incremented. When this method returns {@link #multiReader} is
+     * guaranteed to be <code>null</code> even if an exception is thrown.
      * <p>
      * Please note that this method does not take care of any synchronization.
      * A caller must ensure that it is the only thread operating on this multi
@@ -993,11 +1181,44 @@ public class MultiIndex {
      * @throws IOException if an error occurs while releasing the reader.
      */
     void releaseMultiReader() throws IOException {
-        if (multiReader != null) {
+        try {
+            if (multiReader != null) {
+                try {
+                    multiReader.release();
+                } finally {
+                    multiReader = null;
+                }
+            }
+        } finally {
+            generation.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the generation of the index readers of this multi index. The
+     * generation changes whenever a reader returned by
+     * {@link #getIndexReader()} may see different content than the readers
+     * returned before. A caller that reads the generation before it acquires
+     * a reader can therefore use it to tell whether results computed on that
+     * reader are still current.
+     *
+     * @return the current reader generation.
+     */
+    long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Releases the {@link #multiReader} while holding the
+     * {@link #updateMonitor}. Called when the result of
+     * {@link #isAncestorsIndexed()} changes.
+     */
+    void invalidateReader() {
+        synchronized (updateMonitor) {
             try {
-                multiReader.release();
-            } finally {
-                multiReader = null;
+                releaseMultiReader();
+            } catch (IOException e) {
+                log.warn("Unable to release index reader", e);
             }
         }
     }
@@ -1046,6 +1267,11 @@ public class MultiIndex {
             if (!name.startsWith("_")) {
                 continue;
             }
+            if (initialIndexCheckpoint != null
+                    && initialIndexCheckpoint.getIndexNames().contains(name)) {
+                // finished segment of an interrupted initial index
+                continue;
+            }
             long lastUse = indexHistory.getLastUseOf(name);
             if (lastUse != Long.MAX_VALUE) {
                 if (log.isDebugEnabled()) {
@@ -1106,6 +1332,7 @@ public class MultiIndex {
                 handler.getSimilarity(), indexingQueue);
         volatileIndex.setUseCompoundFile(handler.getUseCompoundFile());
         volatileIndex.setBufferSize(handler.getBufferSize());
+        volatileIndex.setNearRealTime(handler.isNearRealTime());
     }
 
     /**
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.jackrabbit.core.id.NodeId;
+
+/**
+ * <code>NodeIdCache</code> caches the node ids of document numbers in a
+ * direct mapped table of longs. Each slot holds the version, the document
+ * number and the two longs of the node id. A document number that maps to
+ * a used slot replaces the existing entry.
+ * <p>
+ * Neither reads nor writes lock. A writer marks a slot with an odd version
+ * while it writes the slot and does not cache the node id if another writer
+ * holds the slot. A reader treats a slot that changes while it is read as a
+ * cache miss.
+ */
+final class NodeIdCache {
+
+    /**
+     * The number of longs per slot.
+     */
+    private static final int SLOT_LENGTH = 4;
+
+    /**
+     * The slots of the cache.
+     */
+    private final AtomicLongArray slots;
+
+    /**
+     * Mask to calculate the slot of a document number.
+     */
+    private final int mask;
+
+    /**
+     * Creates a new cache with at least <code>size</code> slots.
+     *
+     * @param size the minimum number of slots.
+     */
+    NodeIdCache(int size) {
+        int length = Integer.highestOneBit(Math.max(size, 2) - 1) * 2;
+        this.slots = new AtomicLongArray(length * SLOT_LENGTH);
+        this.mask = length - 1;
+    }
+
+    /**
+     * Returns the cached node id of a document or <code>null</code> if it
+     * is not cached.
+     *
+     * @param doc the document number.
+     * @return the node id or <code>null</code>.
+     */
+    NodeId get(int doc) {
+        int base = (doc & mask) * SLOT_LENGTH;
+        long version = slots.get(base);
+        if (version == 0 || (version & 1) != 0 || slots.get(base + 1) != doc) {
+            return null;
+        }
+        long msb = slots.get(base + 2);
+        long lsb = slots.get(base + 3);
+        if (slots.get(base) != version) {
+            return null;
+        }
+        return new NodeId(msb, lsb);
+    }
+
+    /**
+     * Caches the node id of a document.
+     *
+     * @param doc the document number.
+     * @param id  the node id.
+     */
+    void put(int doc, NodeId id) {
+        int base = (doc & mask) * SLOT_LENGTH;
+        long version = slots.get(base);
+        if ((version & 1) != 0 || !slots.compareAndSet(base, version, version + 1)) {
+            // another thread writes this slot
+            return;
+        }
+        slots.set(base + 1, doc);
+        slots.set(base + 2, id.getMostSignificantBits());
+        slots.set(base + 3, id.getLeastSignificantBits());
+        slots.set(base, version + 2);
+    }
+}
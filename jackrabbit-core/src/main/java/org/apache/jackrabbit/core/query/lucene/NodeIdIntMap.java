@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+/**
+ * <code>NodeIdIntMap</code> is an open addressing hash map from node ids to
+ * int values. The node ids are passed as their most and least significant
+ * bits and no objects are created per entry. This class is not thread-safe.
+ */
+final class NodeIdIntMap {
+
+    /**
+     * The keys, two longs per slot.
+     */
+    private long[] keys;
+
+    /**
+     * The values per slot.
+     */
+    private int[] values;
+
+    /**
+     * Whether a slot is used.
+     */
+    private boolean[] used;
+
+    /**
+     * The number of entries.
+     */
+    private int size;
+
+    /**
+     * Creates a new map.
+     *
+     * @param expectedSize the expected number of entries.
+     */
+    NodeIdIntMap(int expectedSize) {
+        allocate(Integer.highestOneBit(Math.max(expectedSize, 8) - 1) * 4);
+    }
+
+    /**
+     * @return the number of entries.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns <code>true</code> if the map contains the node id.
+     *
+     * @param msb the most significant bits of the node id.
+     * @param lsb the least significant bits of the node id.
+     * @return whether the map contains the node id.
+     */
+    boolean containsKey(long msb, long lsb) {
+        return used[slot(msb, lsb)];
+    }
+
+    /**
+     * Returns the value of a node id.
+     *
+     * @param msb the most significant bits of the node id.
+     * @param lsb the least significant bits of the node id.
+     * @return the value or <code>-1</code> if the map does not contain the
+     *         node id.
+     */
+    int get(long msb, long lsb) {
+        int i = slot(msb, lsb);
+        return used[i] ? values[i] : -1;
+    }
+
+    /**
+     * Puts a value for a node id.
+     *
+     * @param msb   the most significant bits of the node id.
+     * @param lsb   the least significant bits of the node id.
+     * @param value the value.
+     */
+    void put(long msb, long lsb, int value) {
+        int i = slot(msb, lsb);
+        if (!used[i]) {
+            if ((size + 1) * 2 > used.length) {
+                grow();
+                i = slot(msb, lsb);
+            }
+            used[i] = true;
+            keys[i * 2] = msb;
+            keys[i * 2 + 1] = lsb;
+            size++;
+        }
+        values[i] = value;
+    }
+
+    //-------------------------------< internal >-------------------------------
+
+    /**
+     * Returns the slot of the node id, or the free slot where it should be
+     * put.
+     */
+    private int slot(long msb, long lsb) {
+        int mask = used.length - 1;
+        long h = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+        int i = (int) (h >>> 32) & mask;
+        while (used[i] && (keys[i * 2] != msb || keys[i * 2 + 1] != lsb)) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity * 2];
+        values = new int[capacity];
+        used = new boolean[capacity];
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(used.length * 2);
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) {
+                int j = slot(oldKeys[i * 2], oldKeys[i * 2 + 1]);
+                used[j] = true;
+                keys[j * 2] = oldKeys[i * 2];
+                keys[j * 2 + 1] = oldKeys[i * 2 + 1];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
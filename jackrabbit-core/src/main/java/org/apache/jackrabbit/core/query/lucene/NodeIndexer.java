@@ -20,6 +20,8 @@ import java.math.BigDecimal;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Executor;
@@ -131,6 +133,16 @@ public class NodeIndexer {
      */
     private int maxExtractLength = Integer.MAX_VALUE;
 
+    /**
+     * The cache for text extracted from binaries, or <code>null</code>.
+     */
+    private TextExtractionCache textExtractionCache;
+
+    /**
+     * Whether the ids of all ancestors are added to the document.
+     */
+    private boolean indexAncestors = false;
+
     /**
      * Creates a new node indexer.
      *
@@ -205,6 +217,26 @@ public class NodeIndexer {
         this.maxExtractLength = length;
     }
 
+    /**
+     * Sets the cache that is consulted before text is extracted from
+     * binaries in the data store.
+     *
+     * @param cache the text extraction cache, or <code>null</code>
+     */
+    public void setTextExtractionCache(TextExtractionCache cache) {
+        this.textExtractionCache = cache;
+    }
+
+    /**
+     * If set to <code>true</code> the ids of all ancestors of the node are
+     * added to the {@link FieldNames#ANCESTORS} field.
+     *
+     * @param b <code>true</code> to index the ancestors of the node.
+     */
+    public void setIndexAncestors(boolean b) {
+        indexAncestors = b;
+    }
+
     /**
      * Creates a lucene Document.
      *
@@ -243,6 +275,9 @@ public class NodeIndexer {
                         Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS,
                         Field.TermVector.NO));
             }
+            if (indexAncestors) {
+                addAncestors(doc);
+            }
         } catch (NoSuchItemStateException e) {
             throwRepositoryException(e);
         } catch (ItemStateException e) {
@@ -403,6 +438,10 @@ public class NodeIndexer {
         if (indexFormatVersion.getVersion() >= IndexFormatVersion.V3.getVersion()) {
             addLength(doc, fieldName, value);
         }
+        // store the value for index-backed column projection
+        if (value.getType() != PropertyType.BINARY && isStored(name)) {
+            addStoredValue(doc, fieldName, value);
+        }
     }
 
     /**
@@ -622,6 +661,26 @@ public class NodeIndexer {
         }
     }
 
+    /**
+     * Adds the value to the {@link FieldNames#STORED_VALUES} field of the
+     * document. The field is stored but not indexed.
+     *
+     * @param doc           The document to which to add the field
+     * @param fieldName     The name of the property.
+     * @param internalValue The value to store.
+     * @throws RepositoryException if the value can not be converted into a
+     *                             string.
+     */
+    protected void addStoredValue(Document doc, String fieldName,
+                                  InternalValue internalValue)
+            throws RepositoryException {
+        String value = PropertyType.nameFromValue(internalValue.getType())
+                + ':' + internalValue.getString();
+        doc.add(new Field(FieldNames.STORED_VALUES, false,
+                FieldNames.createNamedValue(fieldName, value), Field.Store.YES,
+                Field.Index.NO, Field.TermVector.NO));
+    }
+
     /**
      * Adds the path value to the document as the named field. The path
      * value is converted to an indexable string value using the name space
@@ -870,7 +929,8 @@ public class NodeIndexer {
     protected Fieldable createFulltextField(
             InternalValue value, Metadata metadata, boolean withNorms) {
         return new LazyTextExtractorField(parser, value, metadata, executor,
-                supportHighlighting, getMaxExtractLength(), withNorms);
+                supportHighlighting, getMaxExtractLength(), withNorms,
+                textExtractionCache);
     }
 
     /**
@@ -937,6 +997,22 @@ public class NodeIndexer {
         return supportedMediaTypes.contains(MediaType.parse(type));
     }
 
+    /**
+     * Returns <code>true</code> if the values of the property with the given
+     * name should be stored in the index. Values are only stored if the
+     * indexing configuration is an {@link IndexingConfigurationImpl} that
+     * says so.
+     *
+     * @param propertyName the name of a property.
+     * @return <code>true</code> if the values should be stored;
+     *         <code>false</code> otherwise.
+     */
+    protected boolean isStored(Name propertyName) {
+        return indexingConfig instanceof IndexingConfigurationImpl
+                && ((IndexingConfigurationImpl) indexingConfig).isStored(
+                        node, propertyName);
+    }
+
     /**
      * Returns the boost value for the given property name.
      *
@@ -1035,4 +1111,57 @@ public class NodeIndexer {
         Name name = child.getName();
         addNodeName(doc, name.getNamespaceURI(), name.getLocalName());
     }
+
+    /**
+     * Adds the ids of all ancestors of the node to the
+     * {@link FieldNames#ANCESTORS} field of <code>doc</code>. The ancestors
+     * of shareable nodes are collected over all parents in the shared set.
+     * In addition an empty term is added, which marks the document as one
+     * with indexed ancestors.
+     *
+     * @param doc the document.
+     * @throws ItemStateException if an ancestor cannot be read.
+     */
+    protected void addAncestors(Document doc) throws ItemStateException {
+        addAncestor(doc, "");
+        Set<NodeId> ancestors = new HashSet<NodeId>();
+        LinkedList<NodeId> parents = new LinkedList<NodeId>();
+        addParents(node, parents);
+        while (!parents.isEmpty()) {
+            NodeId id = parents.removeFirst();
+            if (ancestors.add(id)) {
+                addAncestor(doc, id.toString());
+                addParents((NodeState) stateProvider.getItemState(id), parents);
+            }
+        }
+    }
+
+    /**
+     * Adds the ids of the parents of <code>state</code> to
+     * <code>parents</code>.
+     *
+     * @param state   a node state.
+     * @param parents where the parent ids are added.
+     */
+    private static void addParents(NodeState state, List<NodeId> parents) {
+        if (!state.getSharedSet().isEmpty()) {
+            parents.addAll(state.getSharedSet());
+        } else if (state.getParentId() != null) {
+            parents.add(state.getParentId());
+        }
+    }
+
+    /**
+     * Adds a single {@link FieldNames#ANCESTORS} term to <code>doc</code>.
+     *
+     * @param doc   the document.
+     * @param value the id of the ancestor or an empty string.
+     */
+    private static void addAncestor(Document doc, String value) {
+        Field ancestor = new Field(FieldNames.ANCESTORS, false, value,
+                Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS,
+                Field.TermVector.NO);
+        ancestor.setIndexOptions(FieldInfo.IndexOptions.DOCS_ONLY);
+        doc.add(ancestor);
+    }
 }
@@ -73,7 +73,8 @@ class PersistentIndex extends AbstractIndex {
                     IndexingQueue indexingQueue,
                     DirectoryManager directoryManager, long generationMaxAge)
             throws IOException {
-        super(analyzer, similarity, directoryManager.getDirectory(name),
+        super(analyzer, similarity,
+                new RateLimitedDirectory(directoryManager.getDirectory(name)),
                 cache, indexingQueue);
         this.name = name;
         this.indexDelPolicy = new IndexDeletionPolicyImpl(this,
@@ -102,17 +103,42 @@ class PersistentIndex extends AbstractIndex {
     }
 
     /**
-     * Merges the provided indexes into this index. After this completes, the
-     * index is optimized.
+     * Merges the provided indexes into this index and limits the rate at
+     * which the merged index is written. After this completes, the index is
+     * optimized.
      * <p>
      * The provided IndexReaders are not closed.
      *
-     * @param readers the readers of indexes to add.
+     * @param readers     the readers of indexes to add.
+     * @param rateLimiter the rate limiter for the merge or <code>null</code>
+     *                    to merge without a limit.
      * @throws IOException if an error occurs while adding indexes.
      */
-    void addIndexes(IndexReader[] readers) throws IOException {
-        getIndexWriter().addIndexes(readers);
-        getIndexWriter().optimize();
+    void addIndexes(IndexReader[] readers, MergeRateLimiter rateLimiter)
+            throws IOException {
+        RateLimitedDirectory dir = (RateLimitedDirectory) getDirectory();
+        dir.setRateLimiter(rateLimiter);
+        try {
+            getIndexWriter().addIndexes(readers);
+            getIndexWriter().optimize();
+        } finally {
+            dir.setRateLimiter(null);
+        }
+    }
+
+    /**
+     * Returns the size of the files of this index in the directory.
+     *
+     * @return the size of this index in bytes.
+     * @throws IOException if an error occurs while reading from the directory.
+     */
+    long getSizeInBytes() throws IOException {
+        Directory dir = getDirectory();
+        long size = 0;
+        for (String file : dir.listAll()) {
+            size += dir.fileLength(file);
+        }
+        return size;
     }
 
     /**
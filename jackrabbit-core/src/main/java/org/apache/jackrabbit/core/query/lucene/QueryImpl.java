@@ -32,7 +32,6 @@ import org.apache.jackrabbit.spi.commons.query.LocationStepQueryNode;
 import org.apache.jackrabbit.spi.commons.query.NodeTypeQueryNode;
 import org.apache.jackrabbit.spi.commons.query.OrderQueryNode;
 import org.apache.jackrabbit.spi.commons.query.QueryNodeFactory;
-import org.apache.jackrabbit.spi.commons.query.QueryParser;
 import org.apache.jackrabbit.spi.commons.query.QueryRootNode;
 import org.apache.jackrabbit.spi.commons.query.qom.ColumnImpl;
 import org.apache.lucene.search.Query;
@@ -45,6 +44,8 @@ import javax.jcr.nodetype.PropertyDefinition;
 import javax.jcr.query.InvalidQueryException;
 import javax.jcr.query.QueryResult;
 import javax.jcr.query.qom.QueryObjectModelFactory;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -69,6 +70,16 @@ public class QueryImpl extends AbstractQueryImpl {
      */
     protected final QueryRootNode root;
 
+    /**
+     * The query statement.
+     */
+    private final String statement;
+
+    /**
+     * The language of the query statement.
+     */
+    private final String language;
+
     /**
      * Creates a new query instance from a query string.
      *
@@ -88,8 +99,21 @@ public class QueryImpl extends AbstractQueryImpl {
         super(sessionContext, index, propReg);
         // parse query according to language
         // build query tree using the passed factory
-        this.root = QueryParser.parse(
+        this.root = index.parseQuery(
                 statement, language, sessionContext, factory);
+        this.statement = statement;
+        this.language = language;
+    }
+
+    /**
+     * Returns the language and statement of this query. The hits of the
+     * query only depend on the statement, offset and limit are applied to
+     * the hits afterwards.
+     *
+     * @return the language and statement of this query.
+     */
+    Object getResultCacheKey() {
+        return Arrays.asList(language, statement);
     }
 
     /**
@@ -106,13 +130,7 @@ public class QueryImpl extends AbstractQueryImpl {
         }
 
         // build lucene query
-        Query query = LuceneQueryBuilder.createQuery(
-                root, sessionContext.getSessionImpl(),
-                index.getContext().getItemStateManager(),
-                index.getNamespaceMappings(), index.getTextAnalyzer(),
-                propReg, index.getSynonymProvider(),
-                index.getIndexFormatVersion(),
-                cache);
+        Query query = createLuceneQuery();
 
         OrderQueryNode orderNode = root.getOrderNode();
 
@@ -139,6 +157,47 @@ public class QueryImpl extends AbstractQueryImpl {
                 offset, limit);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public long count() throws RepositoryException {
+        try {
+            return index.countQuery(sessionContext.getSessionImpl(),
+                    createLuceneQuery(), needsSystemTree());
+        } catch (IOException e) {
+            throw new RepositoryException("Failed to count query hits", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Map<String, Long> facet(Name propertyName)
+            throws RepositoryException {
+        try {
+            return index.facetQuery(sessionContext.getSessionImpl(),
+                    createLuceneQuery(), propertyName, needsSystemTree());
+        } catch (IOException e) {
+            throw new RepositoryException("Failed to count query hits", e);
+        }
+    }
+
+    /**
+     * Creates the lucene query for the query tree of this query.
+     *
+     * @return the lucene query.
+     * @throws RepositoryException if an error occurs
+     */
+    protected Query createLuceneQuery() throws RepositoryException {
+        return LuceneQueryBuilder.createQuery(
+                root, sessionContext.getSessionImpl(),
+                index.getContext().getItemStateManager(),
+                index.getNamespaceMappings(), index.getTextAnalyzer(),
+                propReg, index.getSynonymProvider(),
+                index.getIndexFormatVersion(),
+                cache);
+    }
+
     /**
      * Returns the columns for this query.
      *
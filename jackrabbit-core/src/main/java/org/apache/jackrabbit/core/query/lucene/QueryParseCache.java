@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.jcr.query.InvalidQueryException;
+
+import org.apache.jackrabbit.core.session.SessionContext;
+import org.apache.jackrabbit.spi.commons.query.QueryNodeFactory;
+import org.apache.jackrabbit.spi.commons.query.QueryParser;
+import org.apache.jackrabbit.spi.commons.query.QueryRootNode;
+import org.apache.jackrabbit.stats.QueryStatCore;
+
+/**
+ * <code>QueryParseCache</code> keeps the query trees of recently parsed
+ * XPath and SQL statements. A query tree is shared by all queries with the
+ * same statement and must not be modified once it is parsed, e.g. the
+ * {@link LuceneQueryBuilder} keeps the position of a location step in a
+ * local variable instead of setting it on the step. Statements
+ * of sessions with local namespace mappings are always parsed, because they
+ * resolve names differently.
+ */
+class QueryParseCache {
+
+    /**
+     * Records hits and misses of this cache.
+     */
+    private final QueryStatCore queryStat;
+
+    /**
+     * The cached query trees, in access order.
+     */
+    private final Map<Object, QueryRootNode> trees;
+
+    /**
+     * Creates a new query parse cache.
+     *
+     * @param size      the maximum number of cached query trees.
+     * @param queryStat records hits and misses of this cache.
+     */
+    QueryParseCache(final int size, QueryStatCore queryStat) {
+        this.queryStat = queryStat;
+        this.trees = new LinkedHashMap<Object, QueryRootNode>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 4419567436265536744L;
+
+            protected boolean removeEldestEntry(
+                    Map.Entry<Object, QueryRootNode> eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+    /**
+     * Returns the query tree for <code>statement</code>.
+     *
+     * @param statement      the query statement.
+     * @param language       the language of the statement.
+     * @param sessionContext the context of the session that parses the
+     *                       statement.
+     * @param factory        the query node factory.
+     * @return the query tree.
+     * @throws InvalidQueryException if the statement is invalid.
+     * @see QueryParser#parse(String, String,
+     *      org.apache.jackrabbit.spi.commons.conversion.NameResolver,
+     *      QueryNodeFactory)
+     */
+    QueryRootNode parse(String statement, String language,
+                        SessionContext sessionContext,
+                        QueryNodeFactory factory)
+            throws InvalidQueryException {
+        if (sessionContext.getSessionImpl().hasLocalNamespaceMappings()) {
+            return QueryParser.parse(
+                    statement, language, sessionContext, factory);
+        }
+        Object key = Arrays.asList(language, statement, factory);
+        QueryRootNode root;
+        synchronized (trees) {
+            root = trees.get(key);
+        }
+        queryStat.logParseCacheAccess(root != null);
+        if (root == null) {
+            root = QueryParser.parse(
+                    statement, language, sessionContext, factory);
+            synchronized (trees) {
+                trees.put(key, root);
+            }
+        }
+        return root;
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.IOException;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.jackrabbit.core.SessionImpl;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.stats.QueryStatCore;
+
+/**
+ * <code>QueryResultCache</code> keeps the hits of recently executed queries
+ * in the order they were returned by the index, before the access rights of
+ * the session are checked. An entry is only returned for the reader
+ * generation it was computed on, see {@link SearchIndex#getIndexGeneration(boolean)},
+ * which invalidates all entries as soon as the index changes.
+ * <p>
+ * Hits of queries that traverse nodes may depend on what the executing
+ * session is allowed to read. Keys therefore always include the principals
+ * of the session. Queries of sessions with local namespace mappings are not
+ * cached, because their statements resolve names differently.
+ */
+class QueryResultCache {
+
+    /**
+     * The maximum number of hits of a cached query.
+     */
+    private final int maxHits;
+
+    /**
+     * Records hits and misses of this cache.
+     */
+    private final QueryStatCore queryStat;
+
+    /**
+     * The cached hits, in access order.
+     */
+    private final Map<Object, Entry> entries;
+
+    /**
+     * Creates a new query result cache.
+     *
+     * @param size      the maximum number of cached queries.
+     * @param maxHits   queries with more hits are not cached.
+     * @param queryStat records hits and misses of this cache.
+     */
+    QueryResultCache(final int size, int maxHits, QueryStatCore queryStat) {
+        this.maxHits = maxHits;
+        this.queryStat = queryStat;
+        this.entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = -1640462935781618451L;
+
+            protected boolean removeEldestEntry(Map.Entry<Object, Entry> eldest) {
+                return size() > size;
+            }
+        };
+    }
+
+    /**
+     * Creates a key for a query executed by <code>session</code>.
+     *
+     * @param session the session that executes the query.
+     * @param parts   the parts that identify the query, e.g. its language and
+     *                statement. The parts must implement
+     *                {@link Object#equals(Object)} and
+     *                {@link Object#hashCode()}.
+     * @return the key or <code>null</code> if the hits of the query must not
+     *         be cached.
+     */
+    static Object createKey(SessionImpl session, Object... parts) {
+        if (session.hasLocalNamespaceMappings()) {
+            return null;
+        }
+        Set<String> principals = new TreeSet<String>();
+        for (Principal p : session.getSubject().getPrincipals()) {
+            principals.add(p.getClass().getName() + ":" + p.getName());
+        }
+        List<Object> key = new ArrayList<Object>(parts.length + 1);
+        key.addAll(Arrays.asList(parts));
+        key.add(principals);
+        return key;
+    }
+
+    /**
+     * Returns the cached hits for <code>key</code>.
+     *
+     * @param key        the key of the query.
+     * @param generation the reader generation the query is executed on.
+     * @return the hits or <code>null</code> if there are no hits cached for
+     *         <code>key</code> and <code>generation</code>.
+     */
+    QueryHits get(Object key, long generation) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry != null && entry.generation != generation) {
+                entries.remove(key);
+                entry = null;
+            }
+        }
+        queryStat.logResultCacheAccess(entry != null);
+        if (entry == null) {
+            return null;
+        }
+        // score nodes are handed out to callers, which may change the score
+        List<ScoreNode> nodes = new ArrayList<ScoreNode>(entry.ids.length);
+        for (int i = 0; i < entry.ids.length; i++) {
+            nodes.add(new ScoreNode(entry.ids[i], entry.scores[i]));
+        }
+        return new DefaultQueryHits(nodes);
+    }
+
+    /**
+     * Returns hits that replace <code>hits</code> and record the hits while
+     * they are read by the caller. Once the caller reads past the last hit,
+     * the recorded hits are cached under <code>key</code>, unless there were
+     * more than {@link #maxHits} of them. Hits are never read ahead of the
+     * caller. Hits of a query that is not read to the end, e.g. because of a
+     * limit or a result fetch hint, are therefore not cached.
+     *
+     * @param key        the key of the query.
+     * @param generation the reader generation the hits are read from.
+     * @param hits       the hits of the query.
+     * @return hits that replace <code>hits</code>.
+     */
+    QueryHits put(Object key, long generation, QueryHits hits) {
+        return new RecordingQueryHits(key, generation, hits);
+    }
+
+    /**
+     * The cached hits of a query.
+     */
+    private static final class Entry {
+
+        private final long generation;
+
+        private final NodeId[] ids;
+
+        private final float[] scores;
+
+        Entry(long generation, List<ScoreNode> nodes) {
+            this.generation = generation;
+            this.ids = new NodeId[nodes.size()];
+            this.scores = new float[nodes.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = nodes.get(i).getNodeId();
+                scores[i] = nodes.get(i).getScore();
+            }
+        }
+    }
+
+    /**
+     * Records the hits of the underlying query hits while they are read and
+     * caches them when they are exhausted.
+     */
+    private final class RecordingQueryHits extends AbstractQueryHits {
+
+        private final Object key;
+
+        private final long generation;
+
+        private final QueryHits hits;
+
+        /**
+         * Copies of the hits read so far, or <code>null</code> if the hits
+         * are not cached.
+         */
+        private List<ScoreNode> nodes = new ArrayList<ScoreNode>();
+
+        RecordingQueryHits(Object key, long generation, QueryHits hits) {
+            this.key = key;
+            this.generation = generation;
+            this.hits = hits;
+        }
+
+        public ScoreNode nextScoreNode() throws IOException {
+            ScoreNode sn = hits.nextScoreNode();
+            if (nodes != null) {
+                if (sn == null) {
+                    Entry entry = new Entry(generation, nodes);
+                    synchronized (entries) {
+                        entries.put(key, entry);
+                    }
+                    nodes = null;
+                } else if (nodes.size() < maxHits) {
+                    // the caller may change the score
+                    nodes.add(new ScoreNode(sn.getNodeId(), sn.getScore()));
+                } else {
+                    nodes = null;
+                }
+            }
+            return sn;
+        }
+
+        public int getSize() {
+            return hits.getSize();
+        }
+
+        public void close() throws IOException {
+            hits.close();
+        }
+    }
+}
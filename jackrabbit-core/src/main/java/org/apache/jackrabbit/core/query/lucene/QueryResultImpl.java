@@ -23,12 +23,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 
-import javax.jcr.ItemNotFoundException;
 import javax.jcr.NodeIterator;
 import javax.jcr.RepositoryException;
 import javax.jcr.query.RowIterator;
 
 import org.apache.jackrabbit.api.query.JackrabbitQueryResult;
+import org.apache.jackrabbit.core.id.ItemId;
 import org.apache.jackrabbit.core.session.SessionContext;
 import org.apache.jackrabbit.spi.Name;
 import org.apache.jackrabbit.spi.commons.query.qom.ColumnImpl;
@@ -45,6 +45,11 @@ public abstract class QueryResultImpl implements JackrabbitQueryResult {
      */
     private static final Logger log = LoggerFactory.getLogger(QueryResultImpl.class);
 
+    /**
+     * The maximum number of score nodes that are access checked at once.
+     */
+    private static final int ACCESS_CHECK_BATCH_SIZE = 1000;
+
     /**
      * The search index to execute the query.
      */
@@ -351,7 +356,8 @@ public abstract class QueryResultImpl implements JackrabbitQueryResult {
     /**
      * Collect score nodes from <code>hits</code> into the <code>collector</code>
      * list until the size of <code>collector</code> reaches <code>maxResults</code>
-     * or there are not more results.
+     * or there are not more results. The hits are read and access checked a
+     * page of at most {@link #ACCESS_CHECK_BATCH_SIZE} score nodes at a time.
      *
      * @param hits the raw hits.
      * @param collector where the access checked score nodes are collected.
@@ -363,43 +369,70 @@ public abstract class QueryResultImpl implements JackrabbitQueryResult {
                                    List<ScoreNode[]> collector,
                                    long maxResults)
             throws IOException, RepositoryException {
-        while (collector.size() < maxResults) {
-            ScoreNode[] sn = hits.nextScoreNodes();
-            if (sn == null) {
-                // no more results
-                break;
+        List<ScoreNode[]> page = new ArrayList<ScoreNode[]>();
+        boolean more = true;
+        while (more && collector.size() < maxResults) {
+            // never read more hits than needed, the number of hits consumed
+            // is used to skip over them when more results are fetched
+            long pageSize = Math.min(
+                    maxResults - collector.size(), ACCESS_CHECK_BATCH_SIZE);
+            page.clear();
+            while (page.size() < pageSize) {
+                ScoreNode[] sn = hits.nextScoreNodes();
+                if (sn == null) {
+                    // no more results
+                    more = false;
+                    break;
+                }
+                page.add(sn);
             }
             // check access
-            if (isAccessGranted(sn)) {
-                collector.add(sn);
-            } else {
-                invalid++;
+            boolean[] granted = isAccessGranted(page);
+            for (int i = 0; i < granted.length; i++) {
+                if (granted[i]) {
+                    collector.add(page.get(i));
+                } else {
+                    invalid++;
+                }
             }
         }
     }
 
     /**
-     * Checks if access is granted to all <code>nodes</code>.
+     * Checks for each of the given rows if access is granted to all of its
+     * nodes. The nodes of all rows are checked together through
+     * {@link Util#canRead(org.apache.jackrabbit.core.security.AccessManager, ItemId[])}.
      *
-     * @param nodes the nodes to check.
-     * @return <code>true</code> if read access is granted to all
-     *         <code>nodes</code>.
+     * @param rows the rows to check.
+     * @return an array with one element per row, which is <code>true</code>
+     *         if read access is granted to all nodes of the row.
      * @throws RepositoryException if an error occurs while checking access
      *                             rights.
      */
-    protected boolean isAccessGranted(ScoreNode[] nodes)
+    protected boolean[] isAccessGranted(List<ScoreNode[]> rows)
             throws RepositoryException {
-        for (ScoreNode node : nodes) {
-            try {
-                if (node != null && !sessionContext.getAccessManager().canRead(
-                        null, node.getNodeId())) {
-                    return false;
+        List<ItemId> ids = new ArrayList<ItemId>();
+        for (ScoreNode[] nodes : rows) {
+            for (ScoreNode node : nodes) {
+                if (node != null) {
+                    ids.add(node.getNodeId());
+                }
+            }
+        }
+        boolean[] readable = Util.canRead(sessionContext.getAccessManager(),
+                ids.toArray(new ItemId[ids.size()]));
+
+        boolean[] granted = new boolean[rows.size()];
+        int n = 0;
+        for (int i = 0; i < granted.length; i++) {
+            granted[i] = true;
+            for (ScoreNode node : rows.get(i)) {
+                if (node != null && !readable[n++]) {
+                    granted[i] = false;
                 }
-            } catch (ItemNotFoundException e) {
-                // node deleted while query was executed
             }
         }
-        return true;
+        return granted;
     }
 
     /**
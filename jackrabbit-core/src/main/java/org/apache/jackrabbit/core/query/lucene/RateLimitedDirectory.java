@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.IOException;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.Lock;
+import org.apache.lucene.store.LockFactory;
+
+/**
+ * <code>RateLimitedDirectory</code> wraps a directory and limits the rate at
+ * which index outputs are written while a {@link MergeRateLimiter} is set.
+ * Index outputs that are created without a rate limiter are returned
+ * unwrapped.
+ */
+class RateLimitedDirectory extends Directory {
+
+    /**
+     * The number of bytes written before the rate limiter is asked to pause.
+     */
+    private static final int PAUSE_BYTES = 64 * 1024;
+
+    /**
+     * The wrapped directory.
+     */
+    private final Directory directory;
+
+    /**
+     * The rate limiter for new index outputs or <code>null</code> if
+     * writes are not limited.
+     */
+    private volatile MergeRateLimiter rateLimiter;
+
+    /**
+     * Creates a new rate limited directory.
+     *
+     * @param directory the directory to wrap.
+     */
+    RateLimitedDirectory(Directory directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Sets the rate limiter for index outputs created from now on.
+     *
+     * @param rateLimiter the rate limiter or <code>null</code> to write
+     *                    without a limit.
+     */
+    void setRateLimiter(MergeRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public String[] listAll() throws IOException {
+        return directory.listAll();
+    }
+
+    @Override
+    public boolean fileExists(String name) throws IOException {
+        return directory.fileExists(name);
+    }
+
+    @Override
+    public long fileModified(String name) throws IOException {
+        return directory.fileModified(name);
+    }
+
+    @Override
+    public void touchFile(String name) throws IOException {
+        directory.touchFile(name);
+    }
+
+    @Override
+    public void deleteFile(String name) throws IOException {
+        directory.deleteFile(name);
+    }
+
+    @Override
+    public long fileLength(String name) throws IOException {
+        return directory.fileLength(name);
+    }
+
+    @Override
+    public IndexOutput createOutput(String name) throws IOException {
+        IndexOutput out = directory.createOutput(name);
+        MergeRateLimiter limiter = rateLimiter;
+        if (limiter != null && limiter.isEnabled()) {
+            out = new RateLimitedIndexOutput(out, limiter);
+        }
+        return out;
+    }
+
+    @Override
+    public void sync(String name) throws IOException {
+        directory.sync(name);
+    }
+
+    @Override
+    public IndexInput openInput(String name) throws IOException {
+        return directory.openInput(name);
+    }
+
+    @Override
+    public IndexInput openInput(String name, int bufferSize)
+            throws IOException {
+        return directory.openInput(name, bufferSize);
+    }
+
+    @Override
+    public void close() throws IOException {
+        directory.close();
+    }
+
+    @Override
+    public Lock makeLock(String name) {
+        return directory.makeLock(name);
+    }
+
+    @Override
+    public void clearLock(String name) throws IOException {
+        directory.clearLock(name);
+    }
+
+    @Override
+    public void setLockFactory(LockFactory lockFactory) throws IOException {
+        directory.setLockFactory(lockFactory);
+    }
+
+    @Override
+    public LockFactory getLockFactory() {
+        return directory.getLockFactory();
+    }
+
+    @Override
+    public String getLockID() {
+        return directory.getLockID();
+    }
+
+    public String toString() {
+        return getClass().getName() + '@' + directory;
+    }
+
+    /**
+     * Index output that pauses after every {@link #PAUSE_BYTES} written
+     * bytes as requested by a rate limiter.
+     */
+    private static final class RateLimitedIndexOutput extends IndexOutput {
+
+        private final IndexOutput out;
+
+        private final MergeRateLimiter limiter;
+
+        /**
+         * The number of bytes written since the last pause.
+         */
+        private int unpaused;
+
+        RateLimitedIndexOutput(IndexOutput out, MergeRateLimiter limiter) {
+            this.out = out;
+            this.limiter = limiter;
+        }
+
+        @Override
+        public void writeByte(byte b) throws IOException {
+            out.writeByte(b);
+            written(1);
+        }
+
+        @Override
+        public void writeBytes(byte[] b, int offset, int length)
+                throws IOException {
+            out.writeBytes(b, offset, length);
+            written(length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        @Override
+        public long getFilePointer() {
+            return out.getFilePointer();
+        }
+
+        @Override
+            public void seek(long pos) throws IOException {
+            out.seek(pos);
+        }
+
+        @Override
+        public long length() throws IOException {
+            return out.length();
+        }
+
+        @Override
+        public void setLength(long length) throws IOException {
+            out.setLength(length);
+        }
+
+        private void written(int length) throws IOException {
+            unpaused += length;
+            if (unpaused >= PAUSE_BYTES) {
+                limiter.pause(unpaused);
+                unpaused = 0;
+            }
+        }
+    }
+}
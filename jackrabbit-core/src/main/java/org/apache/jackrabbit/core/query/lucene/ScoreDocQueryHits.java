@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.IOException;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.ScoreDoc;
+
+/**
+ * <code>ScoreDocQueryHits</code> implements query hits on an array of lucene
+ * score docs that have already been collected. The node ids are read from
+ * the index when the hits are iterated.
+ */
+public class ScoreDocQueryHits extends AbstractQueryHits {
+
+    /**
+     * The index reader the score docs refer to.
+     */
+    private final IndexReader reader;
+
+    /**
+     * The collected score docs.
+     */
+    private final ScoreDoc[] scoreDocs;
+
+    /**
+     * The index of the next hit.
+     */
+    private int hitIndex = 0;
+
+    /**
+     * Creates new query hits.
+     *
+     * @param reader    the index reader the score docs refer to.
+     * @param scoreDocs the collected score docs.
+     */
+    public ScoreDocQueryHits(IndexReader reader, ScoreDoc[] scoreDocs) {
+        this.reader = reader;
+        this.scoreDocs = scoreDocs;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public ScoreNode nextScoreNode() throws IOException {
+        if (hitIndex >= scoreDocs.length) {
+            return null;
+        }
+        ScoreDoc doc = scoreDocs[hitIndex++];
+        NodeId id = new NodeId(reader.document(
+                doc.doc, FieldSelectors.UUID).get(FieldNames.UUID));
+        return new ScoreNode(id, doc.score, doc.doc);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void skip(int n) throws IOException {
+        hitIndex += n;
+    }
+
+    /**
+     * @return the number of hits.
+     */
+    public int getSize() {
+        return scoreDocs.length;
+    }
+}
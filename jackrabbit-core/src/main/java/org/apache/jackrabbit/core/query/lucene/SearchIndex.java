@@ -32,6 +32,10 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
@@ -81,6 +85,9 @@ import org.apache.jackrabbit.spi.PathFactory;
 import org.apache.jackrabbit.spi.commons.name.NameConstants;
 import org.apache.jackrabbit.spi.commons.name.PathFactoryImpl;
 import org.apache.jackrabbit.spi.commons.query.DefaultQueryNodeFactory;
+import org.apache.jackrabbit.spi.commons.query.QueryNodeFactory;
+import org.apache.jackrabbit.spi.commons.query.QueryParser;
+import org.apache.jackrabbit.spi.commons.query.QueryRootNode;
 import org.apache.jackrabbit.spi.commons.query.qom.OrderingImpl;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.LimitTokenCountAnalyzer;
@@ -167,6 +174,16 @@ public class SearchIndex extends AbstractQueryHandler {
      */
     public static final int DEFAULT_MERGE_FACTOR = 10;
 
+    /**
+     * the default value for property {@link #maxConcurrentMerges}.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_MERGES = 2;
+
+    /**
+     * the default value for property {@link #resultCacheMaxHits}.
+     */
+    public static final int DEFAULT_RESULT_CACHE_MAX_HITS = 1000;
+
     /**
      * the default value for property {@link #maxFieldLength}.
      */
@@ -179,6 +196,12 @@ public class SearchIndex extends AbstractQueryHandler {
      */
     public static final int DEFAULT_EXTRACTOR_POOL_SIZE = 0;
 
+    /**
+     * The default value for property {@link #textExtractionCacheSize},
+     * in megabytes.
+     */
+    public static final long DEFAULT_TEXT_EXTRACTION_CACHE_SIZE = 256;
+
     /**
      * The default value for property {@link #extractorBackLog}.
      */
@@ -276,6 +299,11 @@ public class SearchIndex extends AbstractQueryHandler {
      */
     private int volatileIdleTime = 3;
 
+    /**
+     * Whether the in-memory index is searched through near real-time readers.
+     */
+    private boolean nearRealTime = false;
+
     /**
      * The maximum age (in seconds) of the index history. The default value is
      * zero. Which means, index commits are deleted as soon as they are not used
@@ -504,6 +532,88 @@ public class SearchIndex extends AbstractQueryHandler {
      */
     private boolean initializeHierarchyCache = true;
 
+    /**
+     * Number of threads that create the initial index of a workspace.
+     */
+    private int initialIndexThreads = 1;
+
+    /**
+     * The directory of the text extraction cache, or <code>null</code> if
+     * text extracted from binaries is not cached.
+     */
+    private String textExtractionCachePath;
+
+    /**
+     * The maximum size of the text extraction cache in megabytes.
+     */
+    private long textExtractionCacheSize = DEFAULT_TEXT_EXTRACTION_CACHE_SIZE;
+
+    /**
+     * The cache for text extracted from binaries in the data store, or
+     * <code>null</code> if none is configured.
+     */
+    private TextExtractionCache textExtractionCache;
+
+    /**
+     * Whether the ids of all ancestors are indexed with each node.
+     */
+    private boolean indexAncestors = false;
+
+    /**
+     * The maximum number of threads that evaluate a query on the sub indexes
+     * in parallel. A value of one disables parallel query evaluation.
+     */
+    private int searchParallelism = 1;
+
+    /**
+     * The executor for parallel query evaluation or <code>null</code> if
+     * parallel query evaluation is disabled.
+     */
+    private ExecutorService searchExecutor;
+
+    /**
+     * The maximum number of index merges that run at the same time.
+     */
+    private int maxConcurrentMerges = DEFAULT_MAX_CONCURRENT_MERGES;
+
+    /**
+     * The maximum rate in MB per second at which index merges write the
+     * merged index. A value of zero does not limit the rate.
+     */
+    private double mergeRateLimit = 0;
+
+    /**
+     * The rate limiter shared by all merges of this index.
+     */
+    private MergeRateLimiter mergeRateLimiter;
+
+    /**
+     * The maximum number of queries whose hits are cached. A value of zero
+     * disables the query result cache.
+     */
+    private int resultCacheSize = 0;
+
+    /**
+     * Queries with more hits are not kept in the query result cache.
+     */
+    private int resultCacheMaxHits = DEFAULT_RESULT_CACHE_MAX_HITS;
+
+    /**
+     * The cache of query hits or <code>null</code> if disabled.
+     */
+    private QueryResultCache resultCache;
+
+    /**
+     * The maximum number of cached query trees. A value of zero disables the
+     * query parse cache.
+     */
+    private int parseCacheSize = 0;
+
+    /**
+     * The cache of query trees or <code>null</code> if disabled.
+     */
+    private QueryParseCache parseCache;
+
     /**
      * The name of the redo log factory class implementation.
      */
@@ -569,9 +679,28 @@ public class SearchIndex extends AbstractQueryHandler {
 
         // initialize the Tika parser
         parser = createParser();
-
+        if (textExtractionCachePath != null) {
+            textExtractionCache = new TextExtractionCache(
+                    new File(textExtractionCachePath),
+                    textExtractionCacheSize * 1024 * 1024,
+                    TextExtractionCache.getVersion(
+                            getTikaConfig(tikaConfigPath),
+                            getMaxExtractLength()),
+                    context.getRepositoryStatistics());
+        }
+
+        mergeRateLimiter = new MergeRateLimiter(mergeRateLimit);
+        if (resultCacheSize > 0) {
+            resultCache = new QueryResultCache(
+                    resultCacheSize, resultCacheMaxHits,
+                    context.getQueryStat());
+        }
+        if (parseCacheSize > 0) {
+            parseCache = new QueryParseCache(
+                    parseCacheSize, context.getQueryStat());
+        }
         index = new MultiIndex(this, excludedIDs);
-        if (index.numDocs() == 0) {
+        if (index.numDocs() == 0 || index.isInitialIndexPending()) {
             Path rootPath;
             if (excludedIDs.isEmpty()) {
                 // this is the index for jcr:system
@@ -604,6 +733,24 @@ public class SearchIndex extends AbstractQueryHandler {
             }
         }
 
+        if (indexAncestors) {
+            // add ancestors to documents that were indexed without them
+            index.migrateAncestors();
+        }
+
+        if (searchParallelism > 1) {
+            searchExecutor = Executors.newFixedThreadPool(
+                    searchParallelism, new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "SearchIndex-search-"
+                                    + count.incrementAndGet());
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        }
+
         // initialize spell checker
         spellChecker = createSpellChecker();
 
@@ -664,11 +811,15 @@ public class SearchIndex extends AbstractQueryHandler {
         }
 
         Collection<Document> addCollection = new ArrayList<Document>();
+        Collection<NodeState> updatedStates = new ArrayList<NodeState>();
         while (add.hasNext()) {
             NodeState state = add.next();
             if (state != null) {
                 NodeId id = state.getNodeId();
                 addedIds.add(id);
+                if (indexAncestors && removedIds.contains(id)) {
+                    updatedStates.add(state);
+                }
                 retrieveAggregateRoot(state, aggregateRoots);
 
                 try {
@@ -682,7 +833,12 @@ public class SearchIndex extends AbstractQueryHandler {
             }
         }
 
-        index.update(removeCollection, addCollection);
+        if (updatedStates.isEmpty()) {
+            index.update(removeCollection, addCollection);
+        } else {
+            index.update(removeCollection, addCollection,
+                    getMovedNodes(updatedStates));
+        }
 
         // remove any aggregateRoot nodes that are new
         // and therefore already up-to-date
@@ -711,6 +867,56 @@ public class SearchIndex extends AbstractQueryHandler {
         }
     }
 
+    /**
+     * Returns the ids of the nodes that have descendants in the index and
+     * whose parents differ from the parents in the index. The ancestors of
+     * the descendants of these nodes are outdated.
+     *
+     * @param states the states of nodes that are about to be re-indexed.
+     * @return the ids of the moved nodes.
+     * @throws IOException if an error occurs while reading from the index.
+     */
+    private Collection<NodeId> getMovedNodes(Collection<NodeState> states)
+            throws IOException {
+        List<NodeId> moved = new ArrayList<NodeId>();
+        CachingMultiIndexReader reader = index.getIndexReader();
+        try {
+            for (NodeState state : states) {
+                String uuid = state.getNodeId().toString();
+                if (state.getParentId() == null
+                        || reader.docFreq(new Term(FieldNames.ANCESTORS, uuid)) == 0) {
+                    // root node or no descendants
+                    continue;
+                }
+                Set<String> parents = new HashSet<String>();
+                if (state.getSharedSet().isEmpty()) {
+                    parents.add(state.getParentId().toString());
+                } else {
+                    for (NodeId id : state.getSharedSet()) {
+                        parents.add(id.toString());
+                    }
+                }
+                TermDocs tDocs = reader.termDocs(new Term(FieldNames.UUID, uuid));
+                try {
+                    if (tDocs.next()) {
+                        Document doc = reader.document(
+                                tDocs.doc(), FieldSelectors.UUID_AND_PARENT);
+                        List<String> indexed = Arrays.asList(
+                                doc.getValues(FieldNames.PARENT));
+                        if (!parents.equals(new HashSet<String>(indexed))) {
+                            moved.add(state.getNodeId());
+                        }
+                    }
+                } finally {
+                    tDocs.close();
+                }
+            }
+        } finally {
+            reader.release();
+        }
+        return moved;
+    }
+
     /**
      * Creates a new query by specifying the query statement itself and the
      * language in which the query is stated.  If the query statement is
@@ -836,7 +1042,13 @@ public class SearchIndex extends AbstractQueryHandler {
         if (spellChecker != null) {
             spellChecker.close();
         }
+        if (searchExecutor != null) {
+            searchExecutor.shutdown();
+        }
         index.close();
+        if (textExtractionCache != null) {
+            textExtractionCache.close();
+        }
         getContext().destroy();
         super.close();
         closed = true;
@@ -868,13 +1080,35 @@ public class SearchIndex extends AbstractQueryHandler {
 
         Sort sort = new Sort(createSortFields(orderProps, orderSpecs, orderFuncs));
 
+        long generation = getIndexGeneration(queryImpl.needsSystemTree());
+        Object key = null;
+        if (resultCache != null) {
+            key = queryImpl.getResultCacheKey();
+            if (key != null) {
+                key = QueryResultCache.createKey(session, key);
+            }
+        }
+        if (key != null) {
+            QueryHits hits = resultCache.get(key, generation);
+            if (hits != null) {
+                return new QueryHitsAdapter(
+                        hits, QueryImpl.DEFAULT_SELECTOR_NAME);
+            }
+        }
+
         final IndexReader reader = getIndexReader(queryImpl.needsSystemTree());
         JackrabbitIndexSearcher searcher = new JackrabbitIndexSearcher(
                 session, reader, getContext().getItemStateManager());
         searcher.setSimilarity(getSimilarity());
-        return new FilterMultiColumnQueryHits(
-                searcher.execute(query, sort, resultFetchHint,
-                        QueryImpl.DEFAULT_SELECTOR_NAME)) {
+        if (queryImpl.isParallelExecution()) {
+            searcher.setExecutor(searchExecutor);
+        }
+        QueryHits hits = searcher.evaluate(query, sort, resultFetchHint);
+        if (key != null) {
+            hits = resultCache.put(key, generation, hits);
+        }
+        return new FilterMultiColumnQueryHits(new QueryHitsAdapter(
+                hits, QueryImpl.DEFAULT_SELECTOR_NAME)) {
             public void close() throws IOException {
                 try {
                     super.close();
@@ -885,6 +1119,60 @@ public class SearchIndex extends AbstractQueryHandler {
         };
     }
 
+    /**
+     * Counts the hits of a query that are readable by the session.
+     *
+     * @param session            the session that executes the query.
+     * @param query              the lucene query.
+     * @param includeSystemIndex whether the system index is searched.
+     * @return the number of readable hits.
+     * @throws IOException         if an error occurs while searching the
+     *                             index.
+     * @throws RepositoryException if an error occurs while checking access
+     *                             rights.
+     */
+    public long countQuery(SessionImpl session, Query query,
+                           boolean includeSystemIndex)
+            throws IOException, RepositoryException {
+        checkOpen();
+
+        IndexReader reader = getIndexReader(includeSystemIndex);
+        try {
+            return new HitCounter(session, this, reader).count(query);
+        } finally {
+            Util.closeOrRelease(reader);
+        }
+    }
+
+    /**
+     * Counts the hits of a query that are readable by the session, per
+     * value of a property.
+     *
+     * @param session            the session that executes the query.
+     * @param query              the lucene query.
+     * @param propertyName       the name of the property.
+     * @param includeSystemIndex whether the system index is searched.
+     * @return the number of readable hits per JCR string value.
+     * @throws IOException         if an error occurs while searching the
+     *                             index.
+     * @throws RepositoryException if an error occurs while checking access
+     *                             rights.
+     */
+    public Map<String, Long> facetQuery(SessionImpl session, Query query,
+                                        Name propertyName,
+                                        boolean includeSystemIndex)
+            throws IOException, RepositoryException {
+        checkOpen();
+
+        IndexReader reader = getIndexReader(includeSystemIndex);
+        try {
+            return new HitCounter(session, this, reader).facet(
+                    query, propertyName);
+        } finally {
+            Util.closeOrRelease(reader);
+        }
+    }
+
     /**
      * Executes the query on the search index.
      *
@@ -996,7 +1284,15 @@ public class SearchIndex extends AbstractQueryHandler {
         return parser;
     }
 
-    private Parser createParser() {
+    /**
+     * Returns the Tika configuration used for text extraction.
+     *
+     * @param tikaConfigPath the file system or class resource path of the
+     *                       configuration, or <code>null</code> for the
+     *                       default configuration.
+     * @return the configuration URL.
+     */
+    static URL getTikaConfig(String tikaConfigPath) {
         URL url = null;
         if (tikaConfigPath != null) {
             File file = new File(tikaConfigPath);
@@ -1014,6 +1310,11 @@ public class SearchIndex extends AbstractQueryHandler {
         if (url == null) {
             url = SearchIndex.class.getResource("tika-config.xml");
         }
+        return url;
+    }
+
+    private Parser createParser() {
+        URL url = getTikaConfig(tikaConfigPath);
 
         TikaConfig config = null;
         if (url != null) {
@@ -1161,6 +1462,8 @@ public class SearchIndex extends AbstractQueryHandler {
      */
     protected IndexReader getIndexReader(boolean includeSystemIndex)
             throws IOException {
+        // merges back off while the index is searched
+        mergeRateLimiter.queryStarted();
         QueryHandler parentHandler = getContext().getParentHandler();
         CachingMultiIndexReader parentReader = null;
         if (parentHandler instanceof SearchIndex && includeSystemIndex) {
@@ -1177,6 +1480,57 @@ public class SearchIndex extends AbstractQueryHandler {
         return new JackrabbitIndexReader(reader);
     }
 
+    /**
+     * Returns the generation of the readers returned by
+     * {@link #getIndexReader(boolean)}. The generation changes whenever the
+     * content of the index changes. It must be read before the reader is
+     * acquired to tell whether results computed on the reader are current.
+     *
+     * @param includeSystemIndex whether the system index is searched.
+     * @return the reader generation.
+     */
+    long getIndexGeneration(boolean includeSystemIndex) {
+        long generation = index.getGeneration();
+        QueryHandler parentHandler = getContext().getParentHandler();
+        if (parentHandler instanceof SearchIndex && includeSystemIndex) {
+            // both generations only ever increase, so does their sum
+            generation += ((SearchIndex) parentHandler).index.getGeneration();
+        }
+        return generation;
+    }
+
+    /**
+     * @return the cache of query hits or <code>null</code> if the query
+     *         result cache is disabled.
+     */
+    QueryResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Parses a query statement, using the query parse cache if it is enabled.
+     *
+     * @param statement      the query statement.
+     * @param language       the language of the statement.
+     * @param sessionContext the context of the session that parses the
+     *                       statement.
+     * @param factory        the query node factory.
+     * @return the query tree.
+     * @throws InvalidQueryException if the statement is invalid.
+     */
+    QueryRootNode parseQuery(String statement, String language,
+                             SessionContext sessionContext,
+                             QueryNodeFactory factory)
+            throws InvalidQueryException {
+        if (parseCache != null) {
+            return parseCache.parse(
+                    statement, language, sessionContext, factory);
+        } else {
+            return QueryParser.parse(
+                    statement, language, sessionContext, factory);
+        }
+    }
+
     /**
      * Creates the SortFields for the order properties.
      *
@@ -1251,6 +1605,8 @@ public class SearchIndex extends AbstractQueryHandler {
         indexer.setIndexingConfiguration(indexingConfig);
         indexer.setIndexFormatVersion(indexFormatVersion);
         indexer.setMaxExtractLength(getMaxExtractLength());
+        indexer.setTextExtractionCache(textExtractionCache);
+        indexer.setIndexAncestors(indexAncestors);
         Document doc = indexer.createDoc();
         mergeAggregatedNodeIndexes(node, doc, indexFormatVersion);
         return doc;
@@ -1819,6 +2175,18 @@ public class SearchIndex extends AbstractQueryHandler {
             return id.getDocumentNumbers(this, docNumbers);
         }
 
+        /**
+         * @inheritDoc
+         */
+        public boolean isAncestorsIndexed() {
+            for (CachingMultiIndexReader subReader : subReaders) {
+                if (!subReader.isAncestorsIndexed()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
         //-------------------------< MultiIndexReader >-------------------------
 
         /**
@@ -1987,6 +2355,40 @@ public class SearchIndex extends AbstractQueryHandler {
         return volatileIdleTime;
     }
 
+    /**
+     * @return <code>true</code> if the in-memory index is searched through
+     *         near real-time readers.
+     */
+    public boolean isNearRealTime() {
+        return nearRealTime;
+    }
+
+    /**
+     * Sets whether the in-memory index is searched through near real-time
+     * readers. In this mode the index writer of the in-memory index is kept
+     * open, nodes are also deleted through it, and readers are reopened
+     * incrementally from the writer. The caching reader of a segment is
+     * reused for as long as the segment exists. Otherwise every query after
+     * a change closes the writer and opens a new reader on the in-memory
+     * index. The default is <code>false</code>.
+     * <p>
+     * The reader over all indexes is still created again after each
+     * change. It reuses the readers of the unchanged persistent indexes
+     * and in-memory segments, with their caches.
+     * <p>
+     * This mode only changes how the in-memory index is read. Changes are
+     * still recorded in the redo log, and the in-memory index is still
+     * written to a persistent index when it reaches
+     * {@link #getMaxVolatileIndexSize()} or has been idle for
+     * {@link #getVolatileIdleTime()} seconds. Updates wait while this
+     * happens.
+     *
+     * @param nearRealTime <code>true</code> to use near real-time readers.
+     */
+    public void setNearRealTime(boolean nearRealTime) {
+        this.nearRealTime = nearRealTime;
+    }
+
     /**
      * The lucene index writer property: maxMergeDocs
      */
@@ -2517,6 +2919,231 @@ public class SearchIndex extends AbstractQueryHandler {
         this.initializeHierarchyCache = initializeHierarchyCache;
     }
 
+    /**
+     * @return the number of threads that create the initial index.
+     */
+    public int getInitialIndexThreads() {
+        return initialIndexThreads;
+    }
+
+    /**
+     * Sets the number of threads that create the initial index of a
+     * workspace. With more than one thread the workspace is split into
+     * subtrees that are indexed concurrently, and an interrupted build is
+     * resumed when the repository is restarted. The default is one thread,
+     * which indexes the workspace in a single traversal.
+     *
+     * @param initialIndexThreads the number of threads.
+     */
+    public void setInitialIndexThreads(int initialIndexThreads) {
+        this.initialIndexThreads = initialIndexThreads;
+    }
+
+    /**
+     * @return the directory of the text extraction cache.
+     */
+    public String getTextExtractionCachePath() {
+        return textExtractionCachePath;
+    }
+
+    /**
+     * Sets the directory of the text extraction cache. Text extracted from
+     * binaries in the data store is kept in this directory and reused for
+     * other nodes with the same binary and when the workspace is
+     * re-indexed. By default no text extraction cache is used.
+     *
+     * @param path the cache directory.
+     */
+    public void setTextExtractionCachePath(String path) {
+        this.textExtractionCachePath = path;
+    }
+
+    /**
+     * @return the maximum size of the text extraction cache in megabytes.
+     */
+    public long getTextExtractionCacheSize() {
+        return textExtractionCacheSize;
+    }
+
+    /**
+     * Sets the maximum size of the text extraction cache in megabytes.
+     * The default is {@link #DEFAULT_TEXT_EXTRACTION_CACHE_SIZE}.
+     *
+     * @param size the maximum size in megabytes.
+     */
+    public void setTextExtractionCacheSize(long size) {
+        this.textExtractionCacheSize = size;
+    }
+
+    /**
+     * @return the text extraction cache or <code>null</code> if none is
+     *         configured.
+     */
+    public TextExtractionCache getTextExtractionCache() {
+        return textExtractionCache;
+    }
+
+    /**
+     * @return <code>true</code> if the ids of all ancestors are indexed with
+     *         each node.
+     */
+    public boolean getIndexAncestors() {
+        return indexAncestors;
+    }
+
+    /**
+     * If set to <code>true</code> the ids of all ancestors are indexed with
+     * each node. Descendant axis constraints are then evaluated with a term
+     * lookup per context node instead of walking up the hierarchy of every
+     * candidate node. Existing indexes are migrated in the background when
+     * the repository is started and subtrees are re-indexed in the
+     * background when a node is moved. Until such a background job is
+     * finished descendant axis constraints are evaluated using the hierarchy.
+     * The default is <code>false</code>.
+     *
+     * @param b <code>true</code> to index the ancestors of each node.
+     */
+    public void setIndexAncestors(boolean b) {
+        this.indexAncestors = b;
+    }
+
+    /**
+     * @return the maximum number of threads that evaluate a query on the sub
+     *         indexes in parallel.
+     */
+    public int getSearchParallelism() {
+        return searchParallelism;
+    }
+
+    /**
+     * Sets the maximum number of threads that evaluate a query on the sub
+     * indexes in parallel. The threads are shared by all queries on this
+     * index. Only queries that map to plain lucene queries, like property
+     * and full text constraints, are evaluated in parallel. Queries with
+     * hierarchy constraints are always evaluated by the calling thread.
+     * Parallel evaluation can be switched off per query with
+     * {@link org.apache.jackrabbit.api.query.JackrabbitQuery#setParallelExecution(boolean)}.
+     * The default is <code>1</code>, which disables parallel evaluation.
+     *
+     * @param parallelism the maximum number of threads.
+     */
+    public void setSearchParallelism(int parallelism) {
+        this.searchParallelism = parallelism;
+    }
+
+    /**
+     * @return the executor for parallel query evaluation or
+     *         <code>null</code> if parallel query evaluation is disabled.
+     */
+    public ExecutorService getSearchExecutor() {
+        return searchExecutor;
+    }
+
+    /**
+     * @return the maximum number of index merges that run at the same time.
+     */
+    public int getMaxConcurrentMerges() {
+        return maxConcurrentMerges;
+    }
+
+    /**
+     * Sets the maximum number of index merges that run at the same time.
+     * Further merges wait until a running merge completes, smaller merges
+     * are started first. Which indexes are merged is still decided by
+     * {@link #setMergeFactor(int) mergeFactor}, {@link #setMinMergeDocs(int)
+     * minMergeDocs} and {@link #setMaxMergeDocs(int) maxMergeDocs}.
+     * The default is <code>2</code>.
+     *
+     * @param maxConcurrentMerges the maximum number of concurrent merges.
+     */
+    public void setMaxConcurrentMerges(int maxConcurrentMerges) {
+        this.maxConcurrentMerges = maxConcurrentMerges;
+    }
+
+    /**
+     * @return the maximum rate in MB per second at which index merges write
+     *         the merged index.
+     */
+    public double getMergeRateLimit() {
+        return mergeRateLimit;
+    }
+
+    /**
+     * Sets the maximum rate in MB per second at which index merges write the
+     * merged index. The rate is shared by all concurrent merges and lowered
+     * to a quarter while queries are executed on the index. The default is
+     * <code>0</code>, which does not limit the rate.
+     *
+     * @param mbPerSec the maximum rate in MB per second.
+     */
+    public void setMergeRateLimit(double mbPerSec) {
+        this.mergeRateLimit = mbPerSec;
+    }
+
+    /**
+     * @return the rate limiter shared by all merges of this index.
+     */
+    MergeRateLimiter getMergeRateLimiter() {
+        return mergeRateLimiter;
+    }
+
+    /**
+     * @return the maximum number of queries whose hits are cached.
+     */
+    public int getResultCacheSize() {
+        return resultCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of queries whose hits are cached. The hits are
+     * cached before access rights are checked and are invalidated as soon as
+     * the index changes. Queries are identified by their language, statement,
+     * bind variable values and the principals of the executing session.
+     * The default is <code>0</code>, which disables the query result cache.
+     *
+     * @param size the maximum number of cached queries.
+     */
+    public void setResultCacheSize(int size) {
+        this.resultCacheSize = size;
+    }
+
+    /**
+     * @return the maximum number of hits of a query in the query result
+     *         cache.
+     */
+    public int getResultCacheMaxHits() {
+        return resultCacheMaxHits;
+    }
+
+    /**
+     * Sets the maximum number of hits of a query in the query result cache.
+     * Queries with more hits are not cached. The default is
+     * <code>1000</code>.
+     *
+     * @param maxHits the maximum number of hits of a cached query.
+     */
+    public void setResultCacheMaxHits(int maxHits) {
+        this.resultCacheMaxHits = maxHits;
+    }
+
+    /**
+     * @return the maximum number of cached query trees.
+     */
+    public int getParseCacheSize() {
+        return parseCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of parsed XPath and SQL statements that are
+     * cached. The default is <code>0</code>, which disables the query parse
+     * cache.
+     *
+     * @param size the maximum number of cached query trees.
+     */
+    public void setParseCacheSize(int size) {
+        this.parseCacheSize = size;
+    }
+
     /**
      * @return the maximum age in seconds for outdated generations of
      * {@link IndexInfos}.
@@ -17,8 +17,13 @@
 package org.apache.jackrabbit.core.query.lucene;
 
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
 
@@ -39,7 +44,16 @@ import org.apache.lucene.index.TermPositions;
 public class SharedFieldCache {
 
     /**
-     * Expert: Stores term text values and document ordering data.
+     * Expert: Stores the sort values of the documents of an index segment.
+     * <p>
+     * Values are kept in primitive columns instead of one object per
+     * document. Properties with only long or date values use a
+     * <code>long[]</code>, double properties a <code>double[]</code> and
+     * decimal properties a <code>long[]</code> of unscaled values if they fit.
+     * All other properties store an ordinal per document into a dictionary
+     * that holds every distinct value once. Sparse properties only keep the
+     * ordinals of the documents that have a value. Multi-valued documents are
+     * kept as {@link ComparableArray}s.
      */
     public static class ValueIndex {
 
@@ -51,17 +65,85 @@ public class SharedFieldCache {
         private static final int SPARSE_FACTOR = 100;
 
         /**
-         * Values indexed by document id.
+         * Column kind for ordinals into the {@link #terms} dictionary.
+         */
+        static final int ORDINALS = 0;
+
+        /**
+         * Column kind for long and date values in {@link #longs}.
+         */
+        static final int LONGS = 1;
+
+        /**
+         * Column kind for double values in {@link #doubles}.
+         */
+        static final int DOUBLES = 2;
+
+        /**
+         * Column kind for decimal values, stored as unscaled values with
+         * a common {@link #scale} in {@link #longs}.
+         */
+        static final int DECIMALS = 3;
+
+        /**
+         * The kind of column used by this value index.
+         */
+        private final int kind;
+
+        /**
+         * The long, date or unscaled decimal values indexed by document id.
+         */
+        private final long[] longs;
+
+        /**
+         * The double values indexed by document id.
          */
-        private final Comparable<?>[] values;
+        private final double[] doubles;
 
         /**
-         * Values (Comparable) map indexed by document id.
+         * The scale of the decimal values.
          */
-        public final Map<Integer, Comparable<?>> valuesMap;
+        private final int scale;
 
         /**
-         * Boolean indicating whether the {@link #valuesMap} impl has to be used
+         * The documents that have a value in {@link #longs} or
+         * {@link #doubles}.
+         */
+        private final BitSet present;
+
+        /**
+         * The distinct values, referenced by the ordinals.
+         */
+        private final Comparable<?>[] terms;
+
+        /**
+         * The ordinal (index into {@link #terms} plus one) indexed by
+         * document id, or zero for documents without a value. This is
+         * <code>null</code> if the index is sparse.
+         */
+        private final int[] ords;
+
+        /**
+         * The ascending ids of the documents with a value if the index is
+         * sparse.
+         */
+        private final int[] sparseDocs;
+
+        /**
+         * The ordinals of the {@link #sparseDocs}.
+         */
+        private final int[] sparseOrds;
+
+        /**
+         * The values of documents with more than one value, or
+         * <code>null</code> if all documents have at most one value.
+         * If not <code>null</code> all values are returned as
+         * {@link ComparableArray}s.
+         */
+        private final Map<Integer, ComparableArray> multiValues;
+
+        /**
+         * Boolean indicating whether only the documents with a value are kept.
          */
         public final boolean sparse;
 
@@ -69,47 +151,296 @@ public class SharedFieldCache {
          * Creates one of these objects
          */
         public ValueIndex(Comparable<?>[] values, int setValues) {
-            if (isSparse(values, setValues)) {
-                this.sparse = true;
-                this.values = null;
-                if (setValues == 0) {
-                    this.valuesMap = null;
+            this(Builder.fromArray(values), setValues);
+        }
+
+        private ValueIndex(Builder builder, int setValues) {
+            int maxDoc = builder.maxDoc;
+            this.multiValues = builder.multiValues;
+            this.sparse = (long) setValues * SPARSE_FACTOR < maxDoc;
+
+            int kind = ORDINALS;
+            int scale = 0;
+            if (!sparse && multiValues == null) {
+                if (builder.valueClass == Long.class) {
+                    kind = LONGS;
+                } else if (builder.valueClass == Double.class) {
+                    kind = DOUBLES;
+                } else if (builder.valueClass == BigDecimal.class) {
+                    scale = getCommonScale(builder.terms);
+                    if (scale != Integer.MIN_VALUE) {
+                        kind = DECIMALS;
+                    }
+                }
+            }
+            this.kind = kind;
+            this.scale = scale;
+
+            int[] docOrds = builder.docOrds;
+            if (kind == ORDINALS) {
+                this.terms = builder.terms.toArray(
+                        new Comparable<?>[builder.terms.size()]);
+                this.longs = null;
+                this.doubles = null;
+                this.present = null;
+                if (sparse) {
+                    int count = 0;
+                    for (int ord : docOrds) {
+                        if (ord != 0) {
+                            count++;
+                        }
+                    }
+                    this.sparseDocs = new int[count];
+                    this.sparseOrds = new int[count];
+                    for (int doc = 0, i = 0; i < count; doc++) {
+                        if (docOrds[doc] != 0) {
+                            sparseDocs[i] = doc;
+                            sparseOrds[i++] = docOrds[doc];
+                        }
+                    }
+                    this.ords = null;
                 } else {
-                    this.valuesMap = getValuesMap(values, setValues);
+                    this.ords = docOrds;
+                    this.sparseDocs = null;
+                    this.sparseOrds = null;
                 }
             } else {
-                this.sparse = false;
-                this.values = values;
-                this.valuesMap = null;
+                this.terms = null;
+                this.ords = null;
+                this.sparseDocs = null;
+                this.sparseOrds = null;
+                this.present = new BitSet(maxDoc);
+                if (kind == DOUBLES) {
+                    this.longs = null;
+                    this.doubles = new double[maxDoc];
+                } else {
+                    this.longs = new long[maxDoc];
+                    this.doubles = null;
+                }
+                for (int doc = 0; doc < maxDoc; doc++) {
+                    int ord = docOrds[doc];
+                    if (ord == 0) {
+                        continue;
+                    }
+                    Comparable<?> value = builder.terms.get(ord - 1);
+                    present.set(doc);
+                    if (kind == LONGS) {
+                        longs[doc] = (Long) value;
+                    } else if (kind == DOUBLES) {
+                        doubles[doc] = (Double) value;
+                    } else {
+                        longs[doc] = ((BigDecimal) value).setScale(scale)
+                                .unscaledValue().longValue();
+                    }
+                }
             }
         }
 
         public Comparable<?> getValue(int i) {
-            if (sparse) {
-                return valuesMap == null ? null : valuesMap.get(i);
-            } else {
-                return values[i];
+            if (multiValues != null) {
+                ComparableArray values = multiValues.get(i);
+                if (values != null) {
+                    return values;
+                }
+                Comparable<?> value = getSingleValue(i);
+                return value == null ? null : new ComparableArray(value, 0);
             }
+            return getSingleValue(i);
         }
 
-        private static Map<Integer, Comparable<?>> getValuesMap(Comparable<?>[] values, int setValues) {
-            Map<Integer, Comparable<?>> map = new HashMap<Integer, Comparable<?>>(setValues);
-            for (int i = 0; i < values.length && setValues > 0; i++) {
+        /**
+         * Compares a value with the value of a document. The result is the
+         * same as {@link Util#compare(Comparable, Comparable)} with the value
+         * returned by {@link #getValue(int)}, but avoids creating objects
+         * where possible.
+         *
+         * @param value a value.
+         * @param i     the document id.
+         * @return the comparison of <code>value</code> and the value of the
+         *         document.
+         */
+        public int compare(Comparable<?> value, int i) {
+            if (multiValues == null && value != null) {
+                switch (kind) {
+                    case LONGS:
+                        if (value instanceof Long) {
+                            if (!present.get(i)) {
+                                return 1;
+                            }
+                            long v = (Long) value;
+                            return v < longs[i] ? -1 : (v == longs[i] ? 0 : 1);
+                        }
+                        break;
+                    case DOUBLES:
+                        if (value instanceof Double) {
+                            if (!present.get(i)) {
+                                return 1;
+                            }
+                            return Double.compare((Double) value, doubles[i]);
+                        }
+                        break;
+                    case ORDINALS:
+                        return Util.compare(value, getSingleValue(i));
+                    default:
+                        break;
+                }
+            }
+            return Util.compare(value, getValue(i));
+        }
+
+        /**
+         * Returns the column kind of this value index.
+         *
+         * @return one of {@link #ORDINALS}, {@link #LONGS}, {@link #DOUBLES}
+         *         or {@link #DECIMALS}.
+         */
+        int getKind() {
+            return kind;
+        }
+
+        private Comparable<?> getSingleValue(int i) {
+            switch (kind) {
+                case LONGS:
+                    return present.get(i) ? Long.valueOf(longs[i]) : null;
+                case DOUBLES:
+                    return present.get(i) ? Double.valueOf(doubles[i]) : null;
+                case DECIMALS:
+                    return present.get(i)
+                            ? BigDecimal.valueOf(longs[i], scale) : null;
+                default:
+                    int ord;
+                    if (sparse) {
+                        int pos = Arrays.binarySearch(sparseDocs, i);
+                        ord = pos < 0 ? 0 : sparseOrds[pos];
+                    } else {
+                        ord = ords[i];
+                    }
+                    return ord == 0 ? null : terms[ord - 1];
+            }
+        }
+
+        /**
+         * Returns the largest scale of the given decimals if all of them can
+         * be represented as long values with that scale.
+         *
+         * @param values decimal values.
+         * @return the scale or {@link Integer#MIN_VALUE} if the values do not
+         *         fit into long values.
+         */
+        private static int getCommonScale(List<Comparable<?>> values) {
+            int scale = Integer.MIN_VALUE;
+            for (Comparable<?> value : values) {
+                scale = Math.max(scale, ((BigDecimal) value).scale());
+            }
+            for (Comparable<?> value : values) {
+                BigInteger unscaled =
+                    ((BigDecimal) value).setScale(scale).unscaledValue();
+                if (unscaled.bitLength() > 63) {
+                    return Integer.MIN_VALUE;
+                }
+            }
+            return scale;
+        }
+    }
+
+    /**
+     * Collects the values of a {@link ValueIndex} term by term.
+     */
+    static final class Builder {
+
+        /**
+         * The number of documents.
+         */
+        private final int maxDoc;
+
+        /**
+         * The ordinal of the value per document, zero if there is none.
+         */
+        private final int[] docOrds;
+
+        /**
+         * The term positions of the single values of the documents, only
+         * needed when a document turns out to have more than one value.
+         */
+        private final int[] docPositions;
+
+        /**
+         * The distinct values.
+         */
+        private final List<Comparable<?>> terms =
+            new ArrayList<Comparable<?>>();
+
+        /**
+         * The class of all values, or <code>null</code> if there are values
+         * of different classes or no values at all.
+         */
+        private Class<?> valueClass;
+
+        /**
+         * The values of documents with more than one value.
+         */
+        private Map<Integer, ComparableArray> multiValues;
+
+        Builder(int maxDoc) {
+            this.maxDoc = maxDoc;
+            this.docOrds = new int[maxDoc];
+            this.docPositions = new int[maxDoc];
+        }
+
+        static Builder fromArray(Comparable<?>[] values) {
+            Builder builder = new Builder(values.length);
+            for (int i = 0; i < values.length; i++) {
                 if (values[i] != null) {
-                    map.put(i, values[i]);
-                    setValues--;
+                    builder.addTerm(values[i]);
+                    builder.addDoc(i, 0);
                 }
             }
-            return map;
+            return builder;
         }
 
-        private static boolean isSparse(Comparable<?>[] values, int setValues) {
-            // some really simple test to test whether the array is sparse. Currently, when less then 1% is set, the array is already sparse 
-            // for this typical cache to avoid memory issues
-            if (setValues * SPARSE_FACTOR < values.length) {
-                return true;
+        /**
+         * Adds a value. The following calls to {@link #addDoc(int, int)}
+         * refer to this value.
+         *
+         * @param value the value.
+         */
+        void addTerm(Comparable<?> value) {
+            if (terms.isEmpty()) {
+                valueClass = value.getClass();
+            } else if (valueClass != value.getClass()) {
+                valueClass = null;
+            }
+            terms.add(value);
+        }
+
+        /**
+         * Adds a document that has the current value.
+         *
+         * @param doc      the document id.
+         * @param position the term position of the value.
+         */
+        void addDoc(int doc, int position) {
+            int ord = terms.size();
+            Comparable<?> value = terms.get(ord - 1);
+            if (docOrds[doc] == 0) {
+                docOrds[doc] = ord;
+                docPositions[doc] = position;
+            } else {
+                if (multiValues == null) {
+                    multiValues = new HashMap<Integer, ComparableArray>();
+                }
+                ComparableArray values = multiValues.get(doc);
+                if (values == null) {
+                    values = new ComparableArray(
+                            terms.get(docOrds[doc] - 1), docPositions[doc]);
+                    multiValues.put(doc, values);
+                }
+                values.insert(value, position);
             }
-            return false;
+        }
+
+        ValueIndex build(int setValues) {
+            return new ValueIndex(this, setValues);
         }
     }
 
@@ -228,9 +559,7 @@ public class SharedFieldCache {
         ValueIndex ret = lookup(reader, field, prefix);
         if (ret == null) {
             final int maxDocs = reader.maxDoc();
-            Comparable<?>[] retArray = new Comparable<?>[maxDocs];
-            Map<Integer, Integer> positions = new HashMap<Integer, Integer>();
-            boolean usingSimpleComparable = true;
+            Builder builder = new Builder(maxDocs);
             int setValues = 0;
             if (maxDocs > 0) {
                 IndexFormatVersion version = IndexFormatVersion.getVersion(reader);
@@ -256,6 +585,7 @@ public class SharedFieldCache {
                         }
                         final String value = termValueAsString(term, prefix);
                         termDocs.seek(term);
+                        int lastType = -1;
                         while (termDocs.next()) {
                             int termPosition = 0;
                             type = PropertyType.UNDEFINED;
@@ -268,37 +598,13 @@ public class SharedFieldCache {
                                 }
                             }
                             setValues++;
-                            Comparable<?> v = getValue(value, type);
-                            int doc = termDocs.doc();
-                            Comparable<?> ca = retArray[doc];
-                            if (ca == null) {
-                                if (usingSimpleComparable) {
-                                    // put simple value on the queue
-                                    positions.put(doc, termPosition);
-                                    retArray[doc] = v;
-                                } else {
-                                    retArray[doc] = new ComparableArray(v,
-                                            termPosition);
-                                }
-                            } else {
-                                if (ca instanceof ComparableArray) {
-                                    ((ComparableArray) ca).insert(v,
-                                            termPosition);
-                                } else {
-                                    // transform all of the existing values from
-                                    // Comparable to ComparableArray
-                                    for (int pos : positions.keySet()) {
-                                        retArray[pos] = new ComparableArray(
-                                                retArray[pos],
-                                                positions.get(pos));
-                                    }
-                                    positions = null;
-                                    usingSimpleComparable = false;
-                                    ComparableArray caNew = (ComparableArray) retArray[doc];
-                                    retArray[doc] = caNew.insert(v,
-                                            termPosition);
-                                }
+                            if (type != lastType) {
+                                // the same term text shared by documents
+                                // becomes a single dictionary entry per type
+                                builder.addTerm(getValue(value, type));
+                                lastType = type;
                             }
+                            builder.addDoc(termDocs.doc(), termPosition);
                         }
                     } while (termEnum.next());
                 } finally {
@@ -306,7 +612,7 @@ public class SharedFieldCache {
                     termEnum.close();
                 }
             }
-            ValueIndex value = new ValueIndex(retArray, setValues);
+            ValueIndex value = builder.build(setValues);
             store(reader, field, prefix, value);
             return value;
         }
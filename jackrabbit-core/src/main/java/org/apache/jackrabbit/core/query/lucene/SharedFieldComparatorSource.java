@@ -163,6 +163,16 @@ public class SharedFieldComparatorSource extends FieldComparatorSource {
             return indexes[idx].getValue(doc - starts[idx]);
         }
 
+        /**
+         * Compares the bottom value directly with the primitive column of
+         * the value index instead of creating a sort value for the document.
+         */
+        @Override
+        public int compareBottom(int doc) {
+            int idx = readerIndex(doc);
+            return indexes[idx].compare(getBottom(), doc - starts[idx]);
+        }
+
     }
 
     /**
@@ -23,6 +23,7 @@ import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopFieldCollector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -152,11 +153,21 @@ public final class SortedLuceneQueryHits extends AbstractQueryHits {
     //-------------------------------< internal >-------------------------------
 
     private void getHits() throws IOException {
-        TopFieldCollector collector = TopFieldCollector.create(sort, numHits, false, true, false, false);
-        searcher.search(query, collector);
-        size = collector.getTotalHits();
         offset += scoreDocs.length;
-        scoreDocs = collector.topDocs(offset, numHits).scoreDocs;
+        if (searcher instanceof JackrabbitIndexSearcher
+                && ((JackrabbitIndexSearcher) searcher).isParallel(query)) {
+            TopDocs topDocs = ((JackrabbitIndexSearcher) searcher).search(
+                    query, sort, numHits);
+            size = topDocs.totalHits;
+            int length = Math.max(topDocs.scoreDocs.length - offset, 0);
+            scoreDocs = new ScoreDoc[length];
+            System.arraycopy(topDocs.scoreDocs, offset, scoreDocs, 0, length);
+        } else {
+            TopFieldCollector collector = TopFieldCollector.create(sort, numHits, false, true, false, false);
+            searcher.search(query, collector);
+            size = collector.getTotalHits();
+            scoreDocs = collector.topDocs(offset, numHits).scoreDocs;
+        }
         log.debug("getHits() {}/{}", scoreDocs.length, numHits);
         // double hits for next round
         numHits *= 2;
@@ -0,0 +1,548 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.jackrabbit.api.stats.RepositoryStatistics;
+import org.apache.jackrabbit.core.data.DataIdentifier;
+import org.apache.jackrabbit.core.data.DataStore;
+import org.apache.jackrabbit.core.data.DataStoreException;
+import org.apache.jackrabbit.core.data.FileDataStore;
+import org.apache.jackrabbit.core.value.InternalValue;
+import org.apache.jackrabbit.stats.RepositoryStatisticsImpl;
+import org.apache.jackrabbit.util.Text;
+import org.apache.tika.config.TikaConfig;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.Parser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <code>TextExtractionCache</code> keeps the text extracted from binaries in
+ * the data store in a directory on disk. The entries are keyed by the
+ * {@link DataIdentifier} of the binary, which is a hash of its content, by
+ * the media type and encoding passed to the parser, as the text extracted
+ * from the same content depends on them, and by a version of the text
+ * extractor configuration. The same binary referenced by many nodes, or
+ * indexed again during a re-index, is therefore parsed only once.
+ * <p>
+ * Entries are stored compressed in files below the cache directory. Once the
+ * total size of the files exceeds the configured maximum, the least recently
+ * used entries are deleted. The access order is kept in memory and restored
+ * from the file modification times when the cache is opened. A cache
+ * directory should therefore be used by a single search index at a time.
+ * <p>
+ * The cache can be populated offline from a {@link FileDataStore} with
+ * the {@link #main(String...)} method or
+ * {@link #populate(DataStore, Map, Parser, int)}, given the media type and
+ * encoding of each binary.
+ */
+public class TextExtractionCache {
+
+    /**
+     * The logger instance for this class.
+     */
+    private static final Logger log =
+        LoggerFactory.getLogger(TextExtractionCache.class);
+
+    /**
+     * Suffix of files that are being written.
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * The directory that holds the cache entries.
+     */
+    private final File directory;
+
+    /**
+     * The maximum size of the cache entries in bytes.
+     */
+    private final long maxSize;
+
+    /**
+     * The version of the text extractor configuration.
+     */
+    private final String version;
+
+    /**
+     * The size of the cache entries in bytes, keyed by file name, in least
+     * recently used order.
+     */
+    private final LinkedHashMap<String, Long> entries =
+        new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+    /**
+     * The total size of the cache entries in bytes.
+     */
+    private final AtomicLong size = new AtomicLong();
+
+    /**
+     * The number of lookups that found an entry.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * The number of lookups that did not find an entry.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * The repository wide counters for hits, misses and the cache size,
+     * or <code>null</code> if they are not recorded.
+     */
+    private final AtomicLong hitCounter;
+
+    private final AtomicLong missCounter;
+
+    private final AtomicLong sizeCounter;
+
+    /**
+     * Opens a text extraction cache.
+     *
+     * @param directory  the cache directory, created if it does not exist.
+     * @param maxSize    the maximum size of the cache entries in bytes.
+     * @param version    the version of the text extractor configuration,
+     *                   see {@link #getVersion(URL, int)}.
+     * @param statistics the repository statistics that record hits, misses
+     *                   and the cache size, or <code>null</code>.
+     * @throws IOException if the cache directory cannot be created.
+     */
+    public TextExtractionCache(
+            File directory, long maxSize, String version,
+            RepositoryStatisticsImpl statistics) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException(
+                    "Unable to create text extraction cache: " + directory);
+        }
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.version = version;
+        if (statistics != null) {
+            hitCounter = statistics.getCounter(
+                    RepositoryStatistics.Type.TEXT_EXTRACTION_CACHE_HIT_COUNTER);
+            missCounter = statistics.getCounter(
+                    RepositoryStatistics.Type.TEXT_EXTRACTION_CACHE_MISS_COUNTER);
+            sizeCounter = statistics.getCounter(
+                    RepositoryStatistics.Type.TEXT_EXTRACTION_CACHE_SIZE_COUNTER);
+        } else {
+            hitCounter = null;
+            missCounter = null;
+            sizeCounter = null;
+        }
+        load();
+    }
+
+    /**
+     * Returns the version of a text extractor configuration. Text extracted
+     * with a different Tika version, Tika configuration or maximum extract
+     * length is not used.
+     *
+     * @param tikaConfig       the Tika configuration or <code>null</code>.
+     * @param maxExtractLength the maximum number of extracted characters.
+     * @return the version.
+     * @throws IOException if the Tika configuration cannot be read.
+     */
+    public static String getVersion(URL tikaConfig, int maxExtractLength)
+            throws IOException {
+        StringBuilder builder = new StringBuilder();
+        builder.append(Parser.class.getPackage().getImplementationVersion());
+        builder.append('/').append(maxExtractLength).append('/');
+        if (tikaConfig != null) {
+            InputStream in = tikaConfig.openStream();
+            try {
+                builder.append(IOUtils.toString(in, "UTF-8"));
+            } finally {
+                in.close();
+            }
+        }
+        try {
+            return Text.md5(builder.toString()).substring(0, 8);
+        } catch (Exception e) {
+            throw Util.createIOException(e);
+        }
+    }
+
+    /**
+     * Returns the extracted text of a binary.
+     *
+     * @param identifier the identifier of the binary.
+     * @param mimeType   the media type of the binary, or <code>null</code>.
+     * @param encoding   the encoding of the binary, or <code>null</code>.
+     * @return the extracted text, or <code>null</code> if it is not cached.
+     */
+    public String get(
+            DataIdentifier identifier, String mimeType, String encoding) {
+        String name = getName(identifier, mimeType, encoding);
+        synchronized (entries) {
+            if (entries.get(name) == null) {
+                count(misses, missCounter, 1);
+                return null;
+            }
+        }
+        File file = getFile(name);
+        try {
+            InputStream in = new GZIPInputStream(new FileInputStream(file));
+            try {
+                String text = IOUtils.toString(in, "UTF-8");
+                file.setLastModified(System.currentTimeMillis());
+                count(hits, hitCounter, 1);
+                return text;
+            } finally {
+                in.close();
+            }
+        } catch (FileNotFoundException e) {
+            // evicted concurrently
+            remove(name);
+        } catch (IOException e) {
+            log.warn("Unable to read text extraction cache entry " + file, e);
+            remove(name);
+            file.delete();
+        }
+        count(misses, missCounter, 1);
+        return null;
+    }
+
+    /**
+     * Adds the extracted text of a binary to the cache.
+     *
+     * @param identifier the identifier of the binary.
+     * @param mimeType   the media type of the binary, or <code>null</code>.
+     * @param encoding   the encoding of the binary, or <code>null</code>.
+     * @param text       the extracted text.
+     */
+    public void put(DataIdentifier identifier, String mimeType,
+            String encoding, String text) {
+        String name = getName(identifier, mimeType, encoding);
+        File file = getFile(name);
+        File temp = new File(file.getParentFile(), name + TEMP_SUFFIX
+                + Thread.currentThread().getId());
+        try {
+            file.getParentFile().mkdirs();
+            OutputStream out =
+                new GZIPOutputStream(new FileOutputStream(temp));
+            try {
+                out.write(text.getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+            file.delete();
+            if (!temp.renameTo(file)) {
+                throw new IOException("Unable to rename " + temp);
+            }
+        } catch (IOException e) {
+            log.warn("Unable to write text extraction cache entry " + file, e);
+            temp.delete();
+            return;
+        }
+        add(name, file.length());
+    }
+
+    /**
+     * Extracts the text of the given binaries in a data store that are not
+     * yet in this cache. The media type ({@link Metadata#CONTENT_TYPE}) and
+     * encoding ({@link Metadata#CONTENT_ENCODING}) of each binary are passed
+     * to the parser, and should match the <code>jcr:mimeType</code> and
+     * <code>jcr:encoding</code> properties of the nodes that reference it,
+     * as otherwise the entries are not found when these nodes are indexed.
+     *
+     * @param store    the data store.
+     * @param binaries the media type and encoding of the binaries,
+     *                 keyed by their identifiers.
+     * @param parser   the parser used to extract the text.
+     * @param maxExtractLength the maximum number of extracted characters.
+     * @return the number of binaries added to the cache.
+     * @throws DataStoreException if a binary cannot be found.
+     */
+    public int populate(DataStore store,
+            Map<DataIdentifier, Metadata> binaries, Parser parser,
+            int maxExtractLength) throws DataStoreException {
+        int count = 0;
+        for (Map.Entry<DataIdentifier, Metadata> binary : binaries.entrySet()) {
+            DataIdentifier identifier = binary.getKey();
+            String mimeType = binary.getValue().get(Metadata.CONTENT_TYPE);
+            String encoding = binary.getValue().get(Metadata.CONTENT_ENCODING);
+            synchronized (entries) {
+                if (entries.containsKey(
+                        getName(identifier, mimeType, encoding))) {
+                    continue;
+                }
+            }
+            // the parser may add to the metadata, so pass a copy
+            Metadata metadata = new Metadata();
+            if (mimeType != null) {
+                metadata.set(Metadata.CONTENT_TYPE, mimeType);
+            }
+            if (encoding != null) {
+                metadata.set(Metadata.CONTENT_ENCODING, encoding);
+            }
+            LazyTextExtractorField.ParsingTask task =
+                new LazyTextExtractorField.ParsingTask(
+                        parser, InternalValue.create(store, identifier),
+                        metadata, maxExtractLength, this) {
+                    protected void setExtractedText(String value) {
+                    }
+                };
+            task.run();
+            count++;
+            if (count % 1000 == 0) {
+                log.info("Extracted text of {} binaries", count);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of lookups that found an entry.
+     *
+     * @return the number of cache hits.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups that did not find an entry.
+     *
+     * @return the number of cache misses.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Returns the total size of the cache entries.
+     *
+     * @return the size in bytes.
+     */
+    public long getSize() {
+        return size.get();
+    }
+
+    /**
+     * Closes this cache. The entries are kept on disk.
+     */
+    public void close() {
+        if (sizeCounter != null) {
+            sizeCounter.addAndGet(-size.get());
+        }
+    }
+
+    /**
+     * Populates a text extraction cache from a file data store.
+     *
+     * @param args the data store directory, the cache directory, the list
+     *             of binaries and optionally the maximum extract length,
+     *             the maximum cache size in megabytes and the Tika
+     *             configuration file.
+     * @throws Exception if the cache cannot be populated.
+     */
+    public static void main(String... args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Usage: java " + TextExtractionCache.class.getName()
+                    + " <dataStorePath> <cachePath> <binaryListPath>"
+                    + " [<maxExtractLength> [<cacheSizeMB> [<tikaConfigPath>]]]");
+            System.out.println("where each line of the binary list contains"
+                    + " the identifier, media type and optionally the"
+                    + " encoding of a binary, separated by whitespace, and"
+                    + " the maximum extract length, cache size and Tika"
+                    + " configuration match the search index configuration.");
+            return;
+        }
+        Map<DataIdentifier, Metadata> binaries = readBinaries(new File(args[2]));
+        int maxExtractLength = SearchIndex.DEFAULT_MAX_FIELD_LENGTH * 10;
+        if (args.length > 3) {
+            maxExtractLength = Integer.parseInt(args[3]);
+        }
+        long cacheSize = SearchIndex.DEFAULT_TEXT_EXTRACTION_CACHE_SIZE;
+        if (args.length > 4) {
+            cacheSize = Long.parseLong(args[4]);
+        }
+        URL tikaConfig = SearchIndex.getTikaConfig(
+                args.length > 5 ? args[5] : null);
+
+        FileDataStore store = new FileDataStore();
+        store.setPath(args[0]);
+        store.init(null);
+        try {
+            TextExtractionCache cache = new TextExtractionCache(
+                    new File(args[1]), cacheSize * 1024 * 1024,
+                    getVersion(tikaConfig, maxExtractLength), null);
+            Parser parser = new AutoDetectParser(tikaConfig != null
+                    ? new TikaConfig(tikaConfig)
+                    : TikaConfig.getDefaultConfig());
+            int count = cache.populate(
+                    store, binaries, parser, maxExtractLength);
+            System.out.println("Extracted text of " + count + " binaries, "
+                    + "cache size " + cache.getSize() + " bytes");
+        } finally {
+            store.close();
+        }
+    }
+
+    //------------------------------------------------------------< internal >
+
+    /**
+     * Reads a list of binaries with their media type and optional encoding.
+     *
+     * @param file the file with one binary per line.
+     * @return the media type and encoding, keyed by binary identifiers.
+     * @throws IOException if the file cannot be read.
+     */
+    private static Map<DataIdentifier, Metadata> readBinaries(File file)
+            throws IOException {
+        Map<DataIdentifier, Metadata> binaries =
+            new LinkedHashMap<DataIdentifier, Metadata>();
+        for (String line : FileUtils.readLines(file, "UTF-8")) {
+            String[] parts = line.trim().split("\\s+");
+            if (parts.length < 2) {
+                continue;
+            }
+            Metadata metadata = new Metadata();
+            metadata.set(Metadata.CONTENT_TYPE, parts[1]);
+            if (parts.length > 2) {
+                metadata.set(Metadata.CONTENT_ENCODING, parts[2]);
+            }
+            binaries.put(new DataIdentifier(parts[0]), metadata);
+        }
+        return binaries;
+    }
+
+    /**
+     * Reads the entries in the cache directory, oldest first, and deletes
+     * left over temporary files.
+     */
+    private void load() {
+        List<File> files = new ArrayList<File>();
+        File[] shards = directory.listFiles();
+        if (shards != null) {
+            for (File shard : shards) {
+                File[] list = shard.listFiles();
+                if (list == null) {
+                    continue;
+                }
+                for (File file : list) {
+                    if (file.getName().contains(TEMP_SUFFIX)) {
+                        file.delete();
+                    } else {
+                        files.add(file);
+                    }
+                }
+            }
+        }
+        Collections.sort(files, new Comparator<File>() {
+            public int compare(File a, File b) {
+                long x = a.lastModified();
+                long y = b.lastModified();
+                return x < y ? -1 : (x == y ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            add(file.getName(), file.length());
+        }
+        log.info("Text extraction cache {} contains {} entries ({} bytes)",
+                new Object[]{directory, files.size(), size.get()});
+    }
+
+    /**
+     * Registers an entry and evicts the least recently used entries if the
+     * maximum size is exceeded.
+     *
+     * @param name   the file name of the entry.
+     * @param length the file length.
+     */
+    private void add(String name, long length) {
+        List<String> evicted = new ArrayList<String>();
+        synchronized (entries) {
+            Long previous = entries.put(name, length);
+            if (previous != null) {
+                count(size, sizeCounter, -previous);
+            }
+            count(size, sizeCounter, length);
+            Iterator<Map.Entry<String, Long>> it =
+                entries.entrySet().iterator();
+            while (size.get() > maxSize && it.hasNext()) {
+                Map.Entry<String, Long> entry = it.next();
+                count(size, sizeCounter, -entry.getValue());
+                evicted.add(entry.getKey());
+                it.remove();
+            }
+        }
+        for (String key : evicted) {
+            getFile(key).delete();
+        }
+    }
+
+    private static void count(AtomicLong counter, AtomicLong shared, long delta) {
+        counter.addAndGet(delta);
+        if (shared != null) {
+            shared.addAndGet(delta);
+        }
+    }
+
+    private void remove(String name) {
+        synchronized (entries) {
+            Long length = entries.remove(name);
+            if (length != null) {
+                count(size, sizeCounter, -length);
+            }
+        }
+    }
+
+    /**
+     * Returns the file name of an entry. It starts with the identifier, so
+     * that the entries are spread over the shard directories.
+     */
+    private String getName(
+            DataIdentifier identifier, String mimeType, String encoding) {
+        String type;
+        try {
+            type = Text.md5(mimeType + "/" + encoding).substring(0, 8);
+        } catch (Exception e) {
+            // MD5 and UTF-8 are always available
+            throw new IllegalStateException(e);
+        }
+        return identifier.toString() + "." + type + "." + version;
+    }
+
+    private File getFile(String name) {
+        String shard = name.length() > 2 ? name.substring(0, 2) : "00";
+        return new File(new File(directory, shard), name);
+    }
+
+}
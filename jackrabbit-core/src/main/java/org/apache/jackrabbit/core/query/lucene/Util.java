@@ -21,11 +21,15 @@ import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.util.regex.Pattern;
 
+import javax.jcr.ItemNotFoundException;
 import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
 import javax.jcr.Value;
 import javax.jcr.ValueFormatException;
 
+import org.apache.jackrabbit.core.id.ItemId;
+import org.apache.jackrabbit.core.security.AccessManager;
+import org.apache.jackrabbit.core.security.BulkReadAccessManager;
 import org.apache.jackrabbit.core.value.InternalValue;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Fieldable;
@@ -442,4 +446,35 @@ public class Util {
             }
         }
     }
+
+    /**
+     * Determines for each of the given items whether it can be read through
+     * <code>accessMgr</code>. If the access manager is a
+     * {@link BulkReadAccessManager} the items are checked with a single call,
+     * otherwise each item is checked on its own. An item that does not exist
+     * (any more) is reported as not readable.
+     *
+     * @param accessMgr the access manager of the session.
+     * @param itemIds   the ids of the items to check.
+     * @return an array of the same length as <code>itemIds</code> where the
+     *         element at index <code>i</code> is <code>true</code> if the
+     *         item <code>itemIds[i]</code> can be read.
+     * @throws RepositoryException if an error occurs while checking access
+     *                             rights.
+     */
+    public static boolean[] canRead(AccessManager accessMgr, ItemId[] itemIds)
+            throws RepositoryException {
+        if (accessMgr instanceof BulkReadAccessManager) {
+            return ((BulkReadAccessManager) accessMgr).canRead(itemIds);
+        }
+        boolean[] readable = new boolean[itemIds.length];
+        for (int i = 0; i < itemIds.length; i++) {
+            try {
+                readable[i] = accessMgr.canRead(null, itemIds[i]);
+            } catch (ItemNotFoundException e) {
+                // item has been removed in the meantime
+            }
+        }
+        return readable;
+    }
 }
@@ -24,7 +24,9 @@ import org.apache.lucene.store.RAMDirectory;
 import org.apache.lucene.search.Similarity;
 
 import java.io.IOException;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Implements an in-memory index with a pending buffer.
@@ -52,6 +54,12 @@ class VolatileIndex extends AbstractIndex {
      */
     private int numDocs = 0;
 
+    /**
+     * The UUIDs of the documents added to the index in near real-time mode.
+     * Used to delete documents through the index writer.
+     */
+    private final Set<String> indexedIds = new HashSet<String>();
+
     /**
      * Creates a new <code>VolatileIndex</code> using an <code>analyzer</code>.
      *
@@ -103,6 +111,14 @@ class VolatileIndex extends AbstractIndex {
             Util.disposeDocument(doc);
             // pending document has been removed
             num = 1;
+        } else if (isNearRealTime()) {
+            // delete through the index writer, which is kept open
+            if (indexedIds.remove(idTerm.text())) {
+                deleteDocuments(idTerm);
+                num = 1;
+            } else {
+                num = 0;
+            }
         } else {
             // remove document from index
             num = super.getIndexReader().deleteDocuments(idTerm);
@@ -131,6 +147,20 @@ class VolatileIndex extends AbstractIndex {
         return super.getIndexReader();
     }
 
+    /**
+     * Overwrites the implementation in {@link AbstractIndex} to trigger
+     * commit of pending documents to index.
+     * @param initCache if the caches in the index readers should be
+     *          initialized before the index readers are returned.
+     * @return the read-only index readers.
+     * @throws IOException if an error occurs building a reader.
+     */
+    synchronized ReadOnlyIndexReader[] getReadOnlyIndexReaders(
+            boolean initCache) throws IOException {
+        commitPending();
+        return super.getReadOnlyIndexReaders(initCache);
+    }
+
     /**
      * Overwrites the implementation in {@link AbstractIndex} to commit
      * pending documents.
@@ -171,6 +201,9 @@ class VolatileIndex extends AbstractIndex {
         }
         super.addDocuments((Document[]) pending.values().toArray(
                 new Document[pending.size()]));
+        if (isNearRealTime()) {
+            indexedIds.addAll(pending.keySet());
+        }
         pending.clear();
     }
 }
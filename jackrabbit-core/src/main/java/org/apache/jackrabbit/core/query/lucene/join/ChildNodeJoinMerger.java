@@ -80,6 +80,25 @@ class ChildNodeJoinMerger extends JoinMerger {
         return constraints;
     }
 
+    @Override
+    public List<Constraint> getLeftJoinConstraints(Collection<Row> rightRows)
+            throws RepositoryException {
+        Set<String> paths = new HashSet<String>();
+        for (Row row : rightRows) {
+            paths.addAll(getRightValues(row));
+        }
+
+        List<Constraint> constraints = new ArrayList<Constraint>();
+        for (String path: paths) {
+            if (leftSelectors.contains(childSelector)) {
+                constraints.add(factory.childNode(childSelector, path));
+            } else {
+                constraints.add(factory.sameNode(parentSelector, path));
+            }
+        }
+        return constraints;
+    }
+
     private Set<String> getValues(Set<String> selectors, Row row)
             throws RepositoryException {
         if (selectors.contains(childSelector)) {
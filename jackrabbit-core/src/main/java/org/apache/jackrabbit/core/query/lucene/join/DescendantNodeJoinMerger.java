@@ -81,6 +81,26 @@ class DescendantNodeJoinMerger extends JoinMerger {
         return constraints;
     }
 
+    @Override
+    public List<Constraint> getLeftJoinConstraints(Collection<Row> rightRows)
+            throws RepositoryException {
+        Set<String> paths = new HashSet<String>();
+        for (Row row : rightRows) {
+            paths.addAll(getRightValues(row));
+        }
+
+        List<Constraint> constraints = new ArrayList<Constraint>();
+        for (String path : paths) {
+            if (leftSelectors.contains(descendantSelector)) {
+                constraints.add(
+                        factory.descendantNode(descendantSelector, path));
+            } else {
+                constraints.add(factory.sameNode(ancestorSelector, path));
+            }
+        }
+        return constraints;
+    }
+
     private Set<String> getValues(Set<String> selectors, Row row)
             throws RepositoryException {
         if (selectors.contains(descendantSelector)) {
@@ -97,6 +97,25 @@ class EquiJoinMerger extends JoinMerger {
         return constraints;
     }
 
+    @Override
+    public List<Constraint> getLeftJoinConstraints(Collection<Row> rightRows)
+            throws RepositoryException {
+        Map<String, Literal> literals = new HashMap<String, Literal>();
+        for (Row rightRow : rightRows) {
+            for (Value value : evaluator.getValues(rightProperty, rightRow)) {
+                literals.put(value.getString(), factory.literal(value));
+            }
+        }
+
+        List<Constraint> constraints =
+            new ArrayList<Constraint>(literals.size());
+        for (Literal literal : literals.values()) {
+            constraints.add(factory.comparison(
+                    leftProperty, JCR_OPERATOR_EQUAL_TO, literal));
+        }
+        return constraints;
+    }
+
     private Set<String> getValues(PropertyValue property, Row row)
             throws RepositoryException {
         Set<String> strings = new HashSet<String>();
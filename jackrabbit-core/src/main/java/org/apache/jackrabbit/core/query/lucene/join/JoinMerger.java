@@ -318,4 +318,7 @@ abstract class JoinMerger {
     public abstract List<Constraint> getRightJoinConstraints(Collection<Row> leftRows)
             throws RepositoryException;
 
+    public abstract List<Constraint> getLeftJoinConstraints(Collection<Row> rightRows)
+            throws RepositoryException;
+
 }
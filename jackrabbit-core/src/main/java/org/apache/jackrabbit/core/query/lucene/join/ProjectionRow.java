@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene.join;
+
+import java.util.Map;
+
+import javax.jcr.ItemNotFoundException;
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.ValueFactory;
+import javax.jcr.query.qom.PropertyValue;
+
+import org.apache.jackrabbit.commons.query.qom.OperandEvaluator;
+
+/**
+ * A row implementation for a query with just a single selector, whose
+ * column values are partly read from the query index. The node of the row
+ * is only loaded when a column without stored values or the node itself is
+ * accessed.
+ */
+public class ProjectionRow extends AbstractRow {
+
+    private final Session session;
+
+    private final ValueFactory factory;
+
+    private final String selector;
+
+    private final String identifier;
+
+    private final double score;
+
+    /**
+     * The stored values of the projected columns, keyed by column name.
+     */
+    private final Map<String, Value[]> values;
+
+    /**
+     * The node of this row, loaded on first access.
+     */
+    private Node node;
+
+    public ProjectionRow(
+            Map<String, PropertyValue> columns, OperandEvaluator evaluator,
+            Session session, String selector, String identifier, double score,
+            Map<String, Value[]> values) throws RepositoryException {
+        super(columns, evaluator);
+        this.session = session;
+        this.factory = session.getValueFactory();
+        this.selector = selector;
+        this.identifier = identifier;
+        this.score = score;
+        this.values = values;
+    }
+
+    /**
+     * Returns the value of the given column. Values of projected columns are
+     * combined the same way as {@link OperandEvaluator#getValue} combines the
+     * values of a property.
+     */
+    @Override
+    public Value getValue(String columnName)
+            throws ItemNotFoundException, RepositoryException {
+        Value[] stored = values.get(columnName);
+        if (stored == null) {
+            return super.getValue(columnName);
+        } else if (stored.length == 1) {
+            return stored[0];
+        } else {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < stored.length; i++) {
+                if (i > 0) {
+                    builder.append(' ');
+                }
+                builder.append(stored[i].getString());
+            }
+            return factory.createValue(builder.toString());
+        }
+    }
+
+    public Node getNode() throws RepositoryException {
+        if (node == null) {
+            node = session.getNodeByIdentifier(identifier);
+        }
+        return node;
+    }
+
+    public Node getNode(String selectorName) throws RepositoryException {
+        checkSelectorName(selectorName);
+        return getNode();
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public double getScore(String selectorName) throws RepositoryException {
+        checkSelectorName(selectorName);
+        return score;
+    }
+
+    private void checkSelectorName(String name) throws RepositoryException {
+        if (!selector.equals(name)) {
+            throw new RepositoryException(
+                    "Selector " + name + " is not included in this row");
+        }
+    }
+
+    //--------------------------------------------------------------< Object >
+
+    public String toString() {
+        return "{ " + selector + ": " + identifier + " }";
+    }
+
+}
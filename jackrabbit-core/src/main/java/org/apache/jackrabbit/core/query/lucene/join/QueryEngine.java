@@ -25,6 +25,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -61,8 +62,8 @@ import org.apache.jackrabbit.commons.JcrUtils;
 import org.apache.jackrabbit.commons.iterator.RowIteratorAdapter;
 import org.apache.jackrabbit.commons.query.qom.OperandEvaluator;
 import org.apache.jackrabbit.core.query.lucene.LuceneQueryFactory;
+import org.apache.jackrabbit.core.query.lucene.join.QueryPlan.Strategy;
 import org.apache.jackrabbit.core.query.lucene.sort.DynamicOperandFieldComparatorSource;
-import org.apache.jackrabbit.core.query.lucene.sort.RowComparator;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.slf4j.Logger;
@@ -82,6 +83,19 @@ public class QueryEngine {
     private static final boolean NATIVE_SORT = Boolean.valueOf(System
             .getProperty(NATIVE_SORT_SYSTEM_PROPERTY, "false"));
 
+    /**
+     * Name of the system property that sets the number of rows that are
+     * sorted in memory when a query without a limit is sorted by the
+     * query engine. Additional rows are sorted in runs on disk.
+     */
+    public static final String SORT_SPILL_THRESHOLD_SYSTEM_PROPERTY =
+        "org.apache.jackrabbit.core.query.sortSpillThreshold";
+
+    /**
+     * The default number of rows sorted in memory.
+     */
+    private static final int DEFAULT_SORT_SPILL_THRESHOLD = 100000;
+
     private static final int printIndentStep = 4;
     
     private final Session session;
@@ -147,9 +161,10 @@ public class QueryEngine {
             return execute(columns, betterJoin, constraint, orderings, offset,
                     limit, printIndentation);
         }
+        Map<String, PropertyValue> columnMap =
+            getColumnMap(columns, getSelectorNames(join));
         JoinMerger merger = JoinMerger.getJoinMerger(join,
-                getColumnMap(columns, getSelectorNames(join)), evaluator,
-                qomFactory);
+                columnMap, evaluator, qomFactory);
         ConstraintSplitter splitter = new ConstraintSplitter(constraint,
                 qomFactory, merger.getLeftSelectors(),
                 merger.getRightSelectors(), join);
@@ -159,20 +174,84 @@ public class QueryEngine {
 
         boolean isOuterJoin = JCR_JOIN_TYPE_LEFT_OUTER.equalsIgnoreCase(join
                 .getJoinType());
+        QueryPlan plan = plan(join, csInfo);
+        log.debug("{} SQL2 JOIN plan: {}{}", new Object[] {
+                genString(printIndentation), IOUtils.LINE_SEPARATOR, plan });
         QueryResult result = execute(merger, csInfo, isOuterJoin,
-                printIndentation);
+                plan.getStrategy(), printIndentation);
 
         long sort = System.currentTimeMillis();
-        QueryResult sortedResult = sort(result, orderings, evaluator, offset,
+        QueryResult sortedResult = sort(result, orderings, columnMap, offset,
                 limit);
         log.debug(" {} SQL2 SORT took {} ms.", genString(printIndentation),
                 System.currentTimeMillis() - sort);
         return sortedResult;
     }
 
+    /**
+     * Returns the plan that would be used to evaluate the given source and
+     * constraint. The query is not executed, the plan is based on the
+     * estimated number of nodes matched by each selector.
+     *
+     * @param source the source of the query
+     * @param constraint the constraint of the query, or <code>null</code>
+     * @return the query plan
+     * @throws RepositoryException if the plan can not be created
+     */
+    public QueryPlan explain(Source source, Constraint constraint)
+            throws RepositoryException {
+        if (source instanceof Selector) {
+            Selector selector = (Selector) source;
+            try {
+                return new QueryPlan(selector, constraint,
+                        lqf.estimate(selector, constraint));
+            } catch (IOException e) {
+                throw new RepositoryException(
+                        "Failed to access the query index", e);
+            }
+        }
+        if (source instanceof Join) {
+            Join join = (Join) source;
+            if (JCR_JOIN_TYPE_RIGHT_OUTER.equalsIgnoreCase(join.getJoinType())) {
+                join = qomFactory.join(join.getRight(), join.getLeft(),
+                        JCR_JOIN_TYPE_LEFT_OUTER, join.getJoinCondition());
+            }
+            JoinMerger merger = JoinMerger.getJoinMerger(join,
+                    Collections.<String, PropertyValue>emptyMap(), evaluator,
+                    qomFactory);
+            ConstraintSplitter splitter = new ConstraintSplitter(constraint,
+                    qomFactory, merger.getLeftSelectors(),
+                    merger.getRightSelectors(), join);
+            return plan(join, splitter.getConstraintSplitInfo());
+        }
+        throw new UnsupportedRepositoryOperationException(
+                "Unknown source type: " + source);
+    }
+
+    private QueryPlan plan(Join join, ConstraintSplitInfo csInfo)
+            throws RepositoryException {
+        Constraint leftConstraint = null;
+        Constraint rightConstraint = null;
+        if (!csInfo.isMultiple()) {
+            leftConstraint = csInfo.getLeftConstraint();
+            rightConstraint = csInfo.getRightConstraint();
+        }
+        return QueryPlan.join(join, csInfo.isMultiple(),
+                explain(join.getLeft(), leftConstraint),
+                explain(join.getRight(), rightConstraint));
+    }
+
     protected QueryResult execute(JoinMerger merger,
             ConstraintSplitInfo csInfo, boolean isOuterJoin,
             int printIndentation) throws RepositoryException {
+        return execute(merger, csInfo, isOuterJoin, Strategy.MERGE,
+                printIndentation);
+    }
+
+    protected QueryResult execute(JoinMerger merger,
+            ConstraintSplitInfo csInfo, boolean isOuterJoin,
+            Strategy strategy, int printIndentation)
+            throws RepositoryException {
 
         Comparator<Row> leftCo = new RowPathComparator(
                 merger.getLeftSelectors());
@@ -185,7 +264,7 @@ public class QueryEngine {
             // first branch
             long bTime = System.currentTimeMillis();
             QueryResult branch1 = execute(merger,
-                    csInfo.getLeftInnerConstraints(), isOuterJoin,
+                    csInfo.getLeftInnerConstraints(), isOuterJoin, strategy,
                     printIndentation + printIndentStep);
             Set<Row> allRows = new TreeSet<Row>(new RowPathComparator(
                     Arrays.asList(merger.getSelectorNames())));
@@ -201,7 +280,7 @@ public class QueryEngine {
             // second branch
             bTime = System.currentTimeMillis();
             QueryResult branch2 = execute(merger,
-                    csInfo.getRightInnerConstraints(), isOuterJoin,
+                    csInfo.getRightInnerConstraints(), isOuterJoin, strategy,
                     printIndentation + printIndentStep);
             RowIterator ri2 = branch2.getRows();
             while (ri2.hasNext()) {
@@ -215,6 +294,11 @@ public class QueryEngine {
                     merger.getSelectorNames(), new RowIteratorAdapter(allRows));
         }
 
+        if (strategy == Strategy.RIGHT_FIRST) {
+            return executeRightFirstJoin(merger, csInfo, leftCo,
+                    printIndentation);
+        }
+
         Set<Row> leftRows = buildLeftRowsJoin(csInfo, leftCo, printIndentation
                 + printIndentStep);
         if (log.isDebugEnabled()) {
@@ -240,8 +324,6 @@ public class QueryEngine {
         // NULL if there is no 'WHERE' condition
 
         long timeJoinRightSide = System.currentTimeMillis();
-        List<Constraint> rightConstraints = merger
-                .getRightJoinConstraints(leftRows);
         Comparator<Row> rightCo = new RowPathComparator(
                 merger.getRightSelectors());
 
@@ -249,6 +331,17 @@ public class QueryEngine {
             return merger.merge(new RowIteratorAdapter((leftRows == null) ? Collections.emptySet() : leftRows),
                     new RowIteratorAdapter(new TreeSet<Row>()), null, rightCo);
         }
+        if (strategy == Strategy.HASH) {
+            return executeHashJoin(merger, csInfo, leftRows, rightCo,
+                    printIndentation);
+        }
+        if (strategy == Strategy.INDEX_NESTED_LOOP) {
+            return executeIndexNestedLoopJoin(merger, csInfo, leftRows,
+                    rightCo, printIndentation);
+        }
+
+        List<Constraint> rightConstraints = merger
+                .getRightJoinConstraints(leftRows);
 
         Set<Row> rightRows = buildRightRowsJoin(csInfo, rightConstraints,
                 isOuterJoin, rightCo, printIndentation + printIndentStep);
@@ -274,6 +367,141 @@ public class QueryEngine {
 
     }
 
+    /**
+     * Evaluates the right side of an inner join with its own constraints
+     * only and joins the rows by hashing the right rows on their join values.
+     */
+    private QueryResult executeHashJoin(JoinMerger merger,
+            ConstraintSplitInfo csi, Set<Row> leftRows,
+            Comparator<Row> rightCo, int printIndentation)
+            throws RepositoryException {
+        long time = System.currentTimeMillis();
+        Set<Row> rightRows = new TreeSet<Row>(rightCo);
+        QueryResult rightResult = execute(null, csi.getSource().getRight(),
+                csi.getRightConstraint(), null, 0, -1,
+                printIndentation + printIndentStep);
+        for (Row row : JcrUtils.getRows(rightResult)) {
+            rightRows.add(row);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug(genString(printIndentation)
+                    + "SQL2 JOIN RIGHT SIDE (hash) took "
+                    + (System.currentTimeMillis() - time) + " ms. fetched "
+                    + rightRows.size() + " rows.");
+        }
+        return merger.merge(new RowIteratorAdapter(leftRows),
+                new RowIteratorAdapter(rightRows), null, rightCo);
+    }
+
+    /**
+     * Joins the left rows of an inner join in batches. For each batch the
+     * matching right rows are looked up with the join values of the batch
+     * and merged with the batch.
+     */
+    private QueryResult executeIndexNestedLoopJoin(JoinMerger merger,
+            ConstraintSplitInfo csi, Set<Row> leftRows,
+            Comparator<Row> rightCo, int printIndentation)
+            throws RepositoryException {
+        long time = System.currentTimeMillis();
+        List<Row> rows = new ArrayList<Row>();
+        List<Row> batch = new ArrayList<Row>();
+        Set<String> values = new HashSet<String>();
+        int batches = 0;
+        for (Row row : leftRows) {
+            batch.add(row);
+            values.addAll(merger.getLeftValues(row));
+            if (values.size() >= QueryPlan.BATCH_SIZE) {
+                joinBatch(merger, csi, batch, rightCo, rows, printIndentation);
+                batch.clear();
+                values.clear();
+                batches++;
+            }
+        }
+        if (!batch.isEmpty()) {
+            joinBatch(merger, csi, batch, rightCo, rows, printIndentation);
+            batches++;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug(genString(printIndentation)
+                    + "SQL2 JOIN RIGHT SIDE (index nested loop) took "
+                    + (System.currentTimeMillis() - time) + " ms. in "
+                    + batches + " batches.");
+        }
+        return new SimpleQueryResult(merger.getColumnNames(),
+                merger.getSelectorNames(), new RowIteratorAdapter(rows));
+    }
+
+    /**
+     * Evaluates the right side of an inner join first and looks up the
+     * matching left rows with the join values of the right rows. The rows
+     * are merged with their original left and right orientation.
+     */
+    private QueryResult executeRightFirstJoin(JoinMerger merger,
+            ConstraintSplitInfo csi, Comparator<Row> leftCo,
+            int printIndentation) throws RepositoryException {
+        long time = System.currentTimeMillis();
+        Comparator<Row> rightCo = new RowPathComparator(
+                merger.getRightSelectors());
+        Set<Row> rightRows = new TreeSet<Row>(rightCo);
+        QueryResult rightResult = execute(null, csi.getSource().getRight(),
+                csi.getRightConstraint(), null, 0, -1,
+                printIndentation + printIndentStep);
+        for (Row row : JcrUtils.getRows(rightResult)) {
+            rightRows.add(row);
+        }
+
+        Set<Row> leftRows = new TreeSet<Row>(leftCo);
+        List<Constraint> leftConstraints =
+            merger.getLeftJoinConstraints(rightRows);
+        for (int i = 0; i < leftConstraints.size(); i += QueryPlan.BATCH_SIZE) {
+            Constraint leftConstraint = Constraints.and(qomFactory,
+                    Constraints.or(qomFactory, leftConstraints.subList(
+                            i, Math.min(i + QueryPlan.BATCH_SIZE,
+                                    leftConstraints.size()))),
+                    csi.getLeftConstraint());
+            QueryResult leftResult = execute(null, csi.getSource().getLeft(),
+                    leftConstraint, null, 0, -1,
+                    printIndentation + printIndentStep);
+            for (Row row : JcrUtils.getRows(leftResult)) {
+                leftRows.add(row);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug(genString(printIndentation)
+                    + "SQL2 JOIN (right first) took "
+                    + (System.currentTimeMillis() - time) + " ms. fetched "
+                    + rightRows.size() + " right and " + leftRows.size()
+                    + " left rows.");
+        }
+        return merger.merge(new RowIteratorAdapter(leftRows),
+                new RowIteratorAdapter(rightRows), null, rightCo);
+    }
+
+    private void joinBatch(JoinMerger merger, ConstraintSplitInfo csi,
+            List<Row> batch, Comparator<Row> rightCo, List<Row> rows,
+            int printIndentation) throws RepositoryException {
+        List<Constraint> rightConstraints =
+            merger.getRightJoinConstraints(batch);
+        if (rightConstraints.isEmpty()) {
+            return;
+        }
+        Constraint rightConstraint = Constraints.and(qomFactory,
+                Constraints.or(qomFactory, rightConstraints),
+                csi.getRightConstraint());
+        Set<Row> rightRows = new TreeSet<Row>(rightCo);
+        QueryResult rightResult = execute(null, csi.getSource().getRight(),
+                rightConstraint, null, 0, -1,
+                printIndentation + printIndentStep);
+        for (Row row : JcrUtils.getRows(rightResult)) {
+            rightRows.add(row);
+        }
+        QueryResult merged = merger.merge(new RowIteratorAdapter(batch),
+                new RowIteratorAdapter(rightRows), null, rightCo);
+        for (Row row : JcrUtils.getRows(merged)) {
+            rows.add(row);
+        }
+    }
+
     private Set<Row> buildLeftRowsJoin(ConstraintSplitInfo csi,
             Comparator<Row> comparator, int printIndentation)
             throws RepositoryException {
@@ -481,7 +709,7 @@ public class QueryEngine {
         }
 
         long timeSort = System.currentTimeMillis();
-        QueryResult sorted = sort(result, orderings, evaluator, offset, limit);
+        QueryResult sorted = sort(result, orderings, columnMap, offset, limit);
         log.debug("{}SQL2 SORT took {} ms.", genString(printIndentation),
                 System.currentTimeMillis() - timeSort);
         return sorted;
@@ -592,11 +820,40 @@ public class QueryEngine {
     }
 
     /**
-     * Sorts the given query results according to the given QOM orderings. If
-     * one or more orderings have been specified, this method will iterate
-     * through the entire original result set, order the collected rows, and
-     * return a new result set based on the sorted collection of rows.
-     * 
+     * Sorts the given query results according to the given QOM orderings and
+     * applies offset and limit. If a limit is given only the first
+     * <code>offset + limit</code> rows are kept while the results are read.
+     * Otherwise the rows are sorted in memory, or in runs on disk if there
+     * are more than the configured spill threshold.
+     *
+     * @param result
+     *            original query results
+     * @param orderings
+     *            QOM orderings
+     * @param columns
+     *            the columns of the query results
+     * @param offset
+     *            result offset
+     * @param limit
+     *            result limit
+     * @return sorted query results
+     * @throws RepositoryException
+     *             if the results can not be sorted
+     * @see #SORT_SPILL_THRESHOLD_SYSTEM_PROPERTY
+     */
+    protected QueryResult sort(QueryResult result, Ordering[] orderings,
+            Map<String, PropertyValue> columns, long offset, long limit)
+            throws RepositoryException {
+        int threshold = Integer.getInteger(SORT_SPILL_THRESHOLD_SYSTEM_PROPERTY,
+                DEFAULT_SORT_SPILL_THRESHOLD);
+        return sort(result, new RowSorter(orderings, evaluator, session,
+                columns, threshold), offset, limit);
+    }
+
+    /**
+     * Sorts the given query results according to the given QOM orderings
+     * in memory and applies offset and limit.
+     *
      * @param result
      *            original query results
      * @param orderings
@@ -612,33 +869,18 @@ public class QueryEngine {
     protected static QueryResult sort(QueryResult result,
             final Ordering[] orderings, OperandEvaluator evaluator,
             long offset, long limit) throws RepositoryException {
-        if ((orderings != null && orderings.length > 0) || offset != 0
-                || limit >= 0) {
-            List<Row> rows = new ArrayList<Row>();
-
-            RowIterator iterator = result.getRows();
-            while (iterator.hasNext()) {
-                rows.add(iterator.nextRow());
-            }
-
-            if (orderings != null && orderings.length > 0) {
-                Collections.sort(rows, new RowComparator(orderings, evaluator));
-            }
-
-            if (offset > 0) {
-                int size = rows.size();
-                rows = rows.subList((int) Math.min(offset, size), size);
-            }
-            if (limit >= 0) {
-                int size = rows.size();
-                rows = rows.subList(0, (int) Math.min(limit, size));
-            }
+        return sort(result, new RowSorter(orderings, evaluator, null, null, 0),
+                offset, limit);
+    }
 
-            return new SimpleQueryResult(result.getColumnNames(),
-                    result.getSelectorNames(), new RowIteratorAdapter(rows));
-        } else {
+    private static QueryResult sort(QueryResult result, RowSorter sorter,
+            long offset, long limit) throws RepositoryException {
+        if (sorter.isSorted() && offset == 0 && limit < 0) {
             return result;
         }
+        return new SimpleQueryResult(result.getColumnNames(),
+                result.getSelectorNames(), sorter.sort(result.getRows(),
+                        result.getSelectorNames(), offset, limit));
     }
 
 }
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene.join;
+
+import static javax.jcr.query.qom.QueryObjectModelConstants.JCR_JOIN_TYPE_INNER;
+
+import javax.jcr.query.qom.Constraint;
+import javax.jcr.query.qom.Join;
+import javax.jcr.query.qom.Selector;
+
+/**
+ * The plan chosen by the {@link QueryEngine} to evaluate the source of a
+ * query. A plan is a tree with one node per selector and per join. Selector
+ * nodes carry the number of matching nodes estimated from the index term
+ * statistics; join nodes carry the strategy used to combine the two sides.
+ * <p>
+ * The {@link #toString()} of a plan is a human readable, indented
+ * description of the tree, similar to the output of an EXPLAIN statement.
+ */
+public class QueryPlan {
+
+    /**
+     * The strategies used to evaluate a part of a query.
+     */
+    public enum Strategy {
+
+        /**
+         * A single selector evaluated with a query on the search index.
+         */
+        SELECTOR,
+
+        /**
+         * The left side is evaluated first, then the right side is evaluated
+         * restricted to the join values of all left rows (in batches of
+         * {@link QueryPlan#BATCH_SIZE} values) and the two sets are merged.
+         * Used for outer joins and for constraints that are split into
+         * multiple branches.
+         */
+        MERGE,
+
+        /**
+         * Both sides are evaluated independently, the right rows are hashed
+         * on their join values and probed with the left rows.
+         */
+        HASH,
+
+        /**
+         * The left side is evaluated first and its rows are processed in
+         * batches. For each batch the matching right rows are looked up in
+         * the index using the join values of the batch and merged right away.
+         */
+        INDEX_NESTED_LOOP,
+
+        /**
+         * The right side is evaluated first. The left side is then looked
+         * up in the index using the join values of all right rows (in
+         * batches of {@link QueryPlan#BATCH_SIZE} values) and the two sets
+         * are merged. Used for inner joins whose right side matches far
+         * fewer nodes than the left side.
+         */
+        RIGHT_FIRST
+
+    }
+
+    /**
+     * The maximum number of join values looked up with a single query on the
+     * right side of a join.
+     */
+    static final int BATCH_SIZE = 500;
+
+    /**
+     * The cost of running one additional query on the index, expressed in
+     * the number of rows that could be read in the same time.
+     */
+    static final int QUERY_COST = 100;
+
+    private final Strategy strategy;
+
+    private final String description;
+
+    private final long estimate;
+
+    private final QueryPlan left;
+
+    private final QueryPlan right;
+
+    QueryPlan(Selector selector, Constraint constraint, long estimate) {
+        this.strategy = Strategy.SELECTOR;
+        if (constraint != null) {
+            this.description = selector + " WHERE " + constraint;
+        } else {
+            this.description = String.valueOf(selector);
+        }
+        this.estimate = estimate;
+        this.left = null;
+        this.right = null;
+    }
+
+    private QueryPlan(
+            Strategy strategy, Join join, QueryPlan left, QueryPlan right) {
+        this.strategy = strategy;
+        this.description =
+            join.getJoinType() + " ON " + join.getJoinCondition();
+        this.estimate = Math.max(left.estimate, right.estimate);
+        this.left = left;
+        this.right = right;
+    }
+
+    /**
+     * Chooses the strategy for the given join based on the estimated
+     * cardinalities of both sides. Only inner joins without split
+     * constraints are considered for the hash and index nested loop
+     * strategies, all other joins are merged.
+     * <p>
+     * Both the hash join and the index nested loop join read all left rows.
+     * The hash join additionally reads all right rows, while the index
+     * nested loop join runs one query per batch of left rows and reads only
+     * the matching right rows. The right first join is the index nested
+     * loop join with the sides swapped. The cheapest of the three is
+     * chosen.
+     *
+     * @param join      the join, normalized to an inner or left outer join
+     * @param multiple  whether the constraint of the join is split into
+     *                  multiple branches
+     * @param left      the plan of the left side
+     * @param right     the plan of the right side
+     * @return the plan for the join
+     */
+    static QueryPlan join(
+            Join join, boolean multiple, QueryPlan left, QueryPlan right) {
+        Strategy strategy = Strategy.MERGE;
+        if (!multiple && JCR_JOIN_TYPE_INNER.equals(join.getJoinType())) {
+            long matches = Math.min(left.estimate, right.estimate);
+            long hash = left.estimate + right.estimate;
+            long leftFirst = left.estimate + matches
+                + getBatches(left.estimate) * QUERY_COST;
+            long rightFirst = right.estimate + matches
+                + getBatches(right.estimate) * QUERY_COST;
+            if (rightFirst < Math.min(hash, leftFirst)) {
+                strategy = Strategy.RIGHT_FIRST;
+            } else if (hash <= leftFirst) {
+                strategy = Strategy.HASH;
+            } else {
+                strategy = Strategy.INDEX_NESTED_LOOP;
+            }
+        }
+        return new QueryPlan(strategy, join, left, right);
+    }
+
+    /**
+     * @return the number of batches needed to look up the join values of
+     *         the given number of rows.
+     */
+    private static long getBatches(long rows) {
+        return (rows + BATCH_SIZE - 1) / BATCH_SIZE;
+    }
+
+    /**
+     * @return the strategy used to evaluate this part of the query.
+     */
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Returns the estimated number of rows of this part of the query. For
+     * joins this is the larger of the estimates of both sides.
+     *
+     * @return estimated number of rows.
+     */
+    public long getEstimate() {
+        return estimate;
+    }
+
+    /**
+     * @return the plan of the left side of a join, or <code>null</code> if
+     *         this is a selector plan.
+     */
+    public QueryPlan getLeft() {
+        return left;
+    }
+
+    /**
+     * @return the plan of the right side of a join, or <code>null</code> if
+     *         this is a selector plan.
+     */
+    public QueryPlan getRight() {
+        return right;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        append(builder, 0);
+        return builder.toString();
+    }
+
+    private void append(StringBuilder builder, int indentation) {
+        for (int i = 0; i < indentation; i++) {
+            builder.append(' ');
+        }
+        builder.append(strategy);
+        builder.append(' ');
+        builder.append(description);
+        builder.append(" (estimated rows: ");
+        builder.append(estimate);
+        builder.append(')');
+        if (left != null) {
+            builder.append('\n');
+            left.append(builder, indentation + 2);
+            builder.append('\n');
+            right.append(builder, indentation + 2);
+        }
+    }
+
+}
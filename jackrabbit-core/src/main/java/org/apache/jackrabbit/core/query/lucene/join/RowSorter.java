@@ -0,0 +1,629 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene.join;
+
+import static javax.jcr.query.qom.QueryObjectModelConstants.JCR_ORDER_DESCENDING;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.ValueFactory;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+import javax.jcr.query.qom.Ordering;
+import javax.jcr.query.qom.PropertyValue;
+
+import org.apache.jackrabbit.commons.iterator.RangeIteratorAdapter;
+import org.apache.jackrabbit.commons.iterator.RowIteratorAdapter;
+import org.apache.jackrabbit.commons.query.qom.OperandEvaluator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sorts query result rows that could not be sorted by the search index.
+ * <p>
+ * If the offset and limit of the query are known and their sum does not
+ * exceed the spill threshold, only the first <code>offset + limit</code>
+ * rows are kept in a bounded heap while the rows are read. Otherwise the
+ * rows are collected in memory and, once their number exceeds the spill
+ * threshold, written to temporary files in sorted runs that are merged
+ * while the result is read. Spilled rows only keep the
+ * identifiers and scores of their nodes, and are loaded again through the
+ * session when they are returned.
+ */
+final class RowSorter {
+
+    /**
+     * The logger instance for this class
+     */
+    private static final Logger log = LoggerFactory.getLogger(RowSorter.class);
+
+    /**
+     * Compares the values of the sort keys.
+     */
+    private static final ValueComparator comparator = new ValueComparator();
+
+    /**
+     * The orderings of the query, possibly empty.
+     */
+    private final Ordering[] orderings;
+
+    private final OperandEvaluator evaluator;
+
+    /**
+     * The session used to load spilled rows, or <code>null</code> if rows
+     * must not be spilled.
+     */
+    private final Session session;
+
+    /**
+     * The columns of the query result, needed to evaluate the column values
+     * of spilled rows.
+     */
+    private final Map<String, PropertyValue> columns;
+
+    /**
+     * The maximum number of rows kept in memory before they are spilled.
+     */
+    private final int spillThreshold;
+
+    /**
+     * The number of rows read so far, used to keep the sort stable.
+     */
+    private long count = 0;
+
+    RowSorter(Ordering[] orderings, OperandEvaluator evaluator,
+            Session session, Map<String, PropertyValue> columns,
+            int spillThreshold) {
+        this.orderings = orderings != null ? orderings : new Ordering[0];
+        this.evaluator = evaluator;
+        this.session = session;
+        this.columns = columns;
+        this.spillThreshold = spillThreshold;
+    }
+
+    /**
+     * Returns <code>true</code> if there are no orderings, and the rows
+     * therefore need not be sorted.
+     *
+     * @return whether the rows are sorted.
+     */
+    boolean isSorted() {
+        return orderings.length == 0;
+    }
+
+    /**
+     * Sorts the rows and applies offset and limit.
+     *
+     * @param rows          the rows to sort.
+     * @param selectorNames the selector names of the rows.
+     * @param offset        the number of rows to skip.
+     * @param limit         the maximum number of rows, or a negative number
+     *                      for all rows.
+     * @return the sorted rows.
+     * @throws RepositoryException if the rows cannot be read or sorted.
+     */
+    RowIterator sort(RowIterator rows, String[] selectorNames,
+            long offset, long limit) throws RepositoryException {
+        offset = Math.max(offset, 0);
+        if (orderings.length == 0) {
+            // skip rows without collecting them
+            long skipped = 0;
+            while (skipped < offset && rows.hasNext()) {
+                rows.nextRow();
+                skipped++;
+            }
+            if (limit >= 0) {
+                List<Row> result = new ArrayList<Row>();
+                while (result.size() < limit && rows.hasNext()) {
+                    result.add(rows.nextRow());
+                }
+                return new RowIteratorAdapter(result);
+            }
+            long size = rows.getSize();
+            return new RowIteratorAdapter(new RangeIteratorAdapter(
+                    rows, size >= 0 ? size - skipped : -1));
+        }
+        // a heap larger than the spill threshold would hold more rows in
+        // memory than sorting all rows with spilling
+        boolean spill = session != null && columns != null;
+        long maxTop = spill ? spillThreshold : Integer.MAX_VALUE;
+        if (limit >= 0 && offset + limit <= maxTop) {
+            List<Row> sorted = top(rows, (int) (offset + limit));
+            int from = (int) Math.min(offset, sorted.size());
+            return new RowIteratorAdapter(sorted.subList(from, sorted.size()));
+        }
+        return sortAll(rows, selectorNames, offset, limit);
+    }
+
+    /**
+     * Returns the first <code>k</code> rows in sort order.
+     */
+    private List<Row> top(RowIterator rows, int k) throws RepositoryException {
+        List<Row> result = new ArrayList<Row>();
+        if (k == 0) {
+            return result;
+        }
+        // a max-heap that keeps the k smallest keys seen so far
+        PriorityQueue<SortKey> heap = new PriorityQueue<SortKey>(
+                Math.min(k, 1024), Collections.reverseOrder(KEY_ORDER));
+        while (rows.hasNext()) {
+            SortKey key = createKey(rows.nextRow());
+            if (heap.size() < k) {
+                heap.add(key);
+            } else if (KEY_ORDER.compare(key, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(key);
+            }
+        }
+        List<SortKey> keys = new ArrayList<SortKey>(heap);
+        Collections.sort(keys, KEY_ORDER);
+        for (SortKey key : keys) {
+            result.add(key.row);
+        }
+        log.debug("Kept {} of {} rows for top {} sort",
+                new Object[] { result.size(), count, k });
+        return result;
+    }
+
+    /**
+     * Sorts all rows, spilling sorted runs to disk if there are more rows
+     * than the spill threshold.
+     */
+    private RowIterator sortAll(RowIterator rows, String[] selectorNames,
+            long offset, long limit) throws RepositoryException {
+        boolean spill = session != null && columns != null;
+        List<SortKey> buffer = new ArrayList<SortKey>();
+        List<File> runs = new ArrayList<File>();
+        try {
+            while (rows.hasNext()) {
+                buffer.add(createKey(rows.nextRow()));
+                if (spill && buffer.size() >= spillThreshold) {
+                    runs.add(writeRun(buffer, selectorNames));
+                    buffer.clear();
+                }
+            }
+            Collections.sort(buffer, KEY_ORDER);
+            long end = buffer.size();
+            if (limit >= 0) {
+                end = Math.min(end, offset + limit);
+            }
+            if (runs.isEmpty()) {
+                List<Row> sorted = new ArrayList<Row>();
+                for (int i = (int) Math.min(offset, end); i < end; i++) {
+                    sorted.add(buffer.get(i).row);
+                }
+                return new RowIteratorAdapter(sorted);
+            }
+            log.debug("Merging {} sorted runs of {} rows", runs.size(), count);
+            long size = count;
+            if (limit >= 0) {
+                size = Math.min(size, offset + limit);
+            }
+            MergeIterator merge =
+                new MergeIterator(runs, buffer, selectorNames, size);
+            runs = null;
+            long skipped = 0;
+            while (skipped < offset && merge.hasNext()) {
+                merge.next();
+                skipped++;
+            }
+            return new RowIteratorAdapter(
+                    new RangeIteratorAdapter(merge, size - skipped));
+        } catch (IOException e) {
+            throw new RepositoryException("Failed to sort query result", e);
+        } finally {
+            if (runs != null) {
+                for (File run : runs) {
+                    run.delete();
+                }
+            }
+        }
+    }
+
+    private SortKey createKey(Row row) throws RepositoryException {
+        Value[][] values = new Value[orderings.length][];
+        for (int i = 0; i < orderings.length; i++) {
+            values[i] = evaluator.getValues(orderings[i].getOperand(), row);
+        }
+        return new SortKey(row, values, count++);
+    }
+
+    /**
+     * Compares sort keys by their values and falls back to the order in
+     * which the rows were read.
+     */
+    private final Comparator<SortKey> KEY_ORDER = new Comparator<SortKey>() {
+        public int compare(SortKey a, SortKey b) {
+            for (int i = 0; i < orderings.length; i++) {
+                int d = comparator.compare(a.values[i], b.values[i]);
+                if (d != 0) {
+                    if (JCR_ORDER_DESCENDING.equals(orderings[i].getOrder())) {
+                        return -d;
+                    } else {
+                        return d;
+                    }
+                }
+            }
+            return a.sequence < b.sequence
+                    ? -1 : (a.sequence == b.sequence ? 0 : 1);
+        }
+    };
+
+    //------------------------------------------------------------< spilling >
+
+    /**
+     * Sorts the buffered rows and writes them to a temporary file.
+     */
+    private File writeRun(List<SortKey> buffer, String[] selectorNames)
+            throws IOException, RepositoryException {
+        Collections.sort(buffer, KEY_ORDER);
+        File file = File.createTempFile("jackrabbit-sort-", ".tmp");
+        boolean success = false;
+        try {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file)));
+            try {
+                for (SortKey key : buffer) {
+                    writeKey(out, key, selectorNames);
+                }
+            } finally {
+                out.close();
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                file.delete();
+            }
+        }
+        log.debug("Wrote sorted run of {} rows to {}", buffer.size(), file);
+        return file;
+    }
+
+    private void writeKey(DataOutputStream out, SortKey key,
+            String[] selectorNames) throws IOException, RepositoryException {
+        out.writeLong(key.sequence);
+        for (Value[] values : key.values) {
+            if (values == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(values.length);
+                for (Value value : values) {
+                    out.writeInt(value.getType());
+                    writeString(out, value.getString());
+                }
+            }
+        }
+        for (String selectorName : selectorNames) {
+            Node node = key.row.getNode(selectorName);
+            out.writeBoolean(node != null);
+            if (node != null) {
+                writeString(out, node.getIdentifier());
+                out.writeDouble(key.row.getScore(selectorName));
+            }
+        }
+    }
+
+    private SortKey readKey(DataInputStream in, String[] selectorNames)
+            throws IOException, RepositoryException {
+        long sequence;
+        try {
+            sequence = in.readLong();
+        } catch (EOFException e) {
+            return null;
+        }
+        ValueFactory factory = session.getValueFactory();
+        Value[][] values = new Value[orderings.length][];
+        for (int i = 0; i < values.length; i++) {
+            int length = in.readInt();
+            if (length >= 0) {
+                values[i] = new Value[length];
+                for (int j = 0; j < length; j++) {
+                    int type = in.readInt();
+                    values[i][j] = factory.createValue(readString(in), type);
+                }
+            }
+        }
+        String[] identifiers = new String[selectorNames.length];
+        double[] scores = new double[selectorNames.length];
+        for (int i = 0; i < selectorNames.length; i++) {
+            if (in.readBoolean()) {
+                identifiers[i] = readString(in);
+                scores[i] = in.readDouble();
+            }
+        }
+        Row row = new SpilledRow(
+                columns, evaluator, session, selectorNames, identifiers, scores);
+        return new SortKey(row, values, sequence);
+    }
+
+    private static void writeString(DataOutputStream out, String s)
+            throws IOException {
+        byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * The sort values of a row.
+     */
+    private static final class SortKey {
+
+        private final Row row;
+
+        private final Value[][] values;
+
+        /**
+         * The position of the row in the unsorted result.
+         */
+        private final long sequence;
+
+        SortKey(Row row, Value[][] values, long sequence) {
+            this.row = row;
+            this.values = values;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Reads the rows of a sorted run.
+     */
+    private final class Run {
+
+        private final File file;
+
+        private final DataInputStream in;
+
+        private final String[] selectorNames;
+
+        private SortKey current;
+
+        Run(File file, String[] selectorNames)
+                throws IOException, RepositoryException {
+            this.file = file;
+            this.in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)));
+            this.selectorNames = selectorNames;
+            // the open stream can still be read, so the file is not left
+            // behind if the result is not read to the end
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+            next();
+        }
+
+        void next() throws IOException, RepositoryException {
+            current = readKey(in, selectorNames);
+            if (current == null) {
+                close();
+            }
+        }
+
+        void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                log.warn("Unable to close sorted run " + file, e);
+            }
+            file.delete();
+        }
+    }
+
+    /**
+     * Merges the sorted runs and the rows that remained in memory.
+     */
+    private final class MergeIterator implements Iterator<Row> {
+
+        private final PriorityQueue<Run> queue;
+
+        private final Iterator<SortKey> memory;
+
+        private SortKey memoryKey;
+
+        /**
+         * The number of rows still to be returned.
+         */
+        private long remaining;
+
+        MergeIterator(List<File> files, List<SortKey> buffer,
+                String[] selectorNames, long size)
+                throws IOException, RepositoryException {
+            this.remaining = size;
+            this.queue = new PriorityQueue<Run>(files.size(),
+                    new Comparator<Run>() {
+                        public int compare(Run a, Run b) {
+                            return KEY_ORDER.compare(a.current, b.current);
+                        }
+                    });
+            try {
+                for (File file : files) {
+                    Run run = new Run(file, selectorNames);
+                    if (run.current != null) {
+                        queue.add(run);
+                    }
+                }
+            } catch (IOException e) {
+                close(files);
+                throw e;
+            } catch (RepositoryException e) {
+                close(files);
+                throw e;
+            }
+            this.memory = buffer.iterator();
+            this.memoryKey = memory.hasNext() ? memory.next() : null;
+            if (remaining <= 0) {
+                close(null);
+            }
+        }
+
+        public boolean hasNext() {
+            return remaining > 0 && (memoryKey != null || !queue.isEmpty());
+        }
+
+        public Row next() {
+            if (remaining <= 0) {
+                throw new NoSuchElementException();
+            }
+            if (--remaining == 0) {
+                // the rows after the limit are not read
+                Row row = nextRow();
+                close(null);
+                return row;
+            }
+            return nextRow();
+        }
+
+        private Row nextRow() {
+            Run run = queue.peek();
+            if (memoryKey != null && (run == null
+                    || KEY_ORDER.compare(memoryKey, run.current) < 0)) {
+                Row row = memoryKey.row;
+                memoryKey = memory.hasNext() ? memory.next() : null;
+                return row;
+            }
+            if (run == null) {
+                throw new NoSuchElementException();
+            }
+            queue.poll();
+            Row row = run.current.row;
+            try {
+                run.next();
+            } catch (Exception e) {
+                run.close();
+                close(null);
+                throw new RuntimeException("Unable to read sorted rows", e);
+            }
+            if (run.current != null) {
+                queue.add(run);
+            }
+            return row;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private void close(List<File> files) {
+            for (Run run : queue) {
+                run.close();
+            }
+            queue.clear();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * A row that was spilled to disk. Its nodes are loaded by identifier.
+     */
+    private static final class SpilledRow extends AbstractRow {
+
+        private final Session session;
+
+        private final String[] selectorNames;
+
+        private final String[] identifiers;
+
+        private final double[] scores;
+
+        SpilledRow(Map<String, PropertyValue> columns,
+                OperandEvaluator evaluator, Session session,
+                String[] selectorNames, String[] identifiers,
+                double[] scores) {
+            super(columns, evaluator);
+            this.session = session;
+            this.selectorNames = selectorNames;
+            this.identifiers = identifiers;
+            this.scores = scores;
+        }
+
+        public Node getNode() throws RepositoryException {
+            if (selectorNames.length != 1) {
+                throw new RepositoryException();
+            }
+            return getNode(selectorNames[0]);
+        }
+
+        public Node getNode(String selectorName) throws RepositoryException {
+            String identifier = identifiers[getIndex(selectorName)];
+            if (identifier != null) {
+                return session.getNodeByIdentifier(identifier);
+            } else {
+                return null;
+            }
+        }
+
+        public double getScore() throws RepositoryException {
+            if (selectorNames.length != 1) {
+                throw new RepositoryException();
+            }
+            return scores[0];
+        }
+
+        public double getScore(String selectorName) throws RepositoryException {
+            return scores[getIndex(selectorName)];
+        }
+
+        private int getIndex(String selectorName) throws RepositoryException {
+            for (int i = 0; i < selectorNames.length; i++) {
+                if (selectorNames[i].equals(selectorName)) {
+                    return i;
+                }
+            }
+            throw new RepositoryException(
+                    "Selector " + selectorName + " is not included in this row");
+        }
+
+        public String toString() {
+            StringBuilder builder = new StringBuilder("{ ");
+            for (int i = 0; i < selectorNames.length; i++) {
+                builder.append(selectorNames[i]).append("=");
+                builder.append(identifiers[i]).append(" ");
+            }
+            return builder.append("}").toString();
+        }
+    }
+
+}
@@ -83,6 +83,25 @@ class SameNodeJoinMerger extends JoinMerger {
         return constraints;
     }
 
+    @Override
+    public List<Constraint> getLeftJoinConstraints(Collection<Row> rightRows)
+            throws RepositoryException {
+        Set<String> paths = new HashSet<String>();
+        for (Row row : rightRows) {
+            paths.addAll(getRightValues(row));
+        }
+
+        List<Constraint> constraints = new ArrayList<Constraint>();
+        for (String path : paths) {
+            if (leftSelectors.contains(selector1)) {
+                constraints.add(factory.sameNode(selector1, path));
+            } else {
+                constraints.add(factory.sameNode(selector2, path));
+            }
+        }
+        return constraints;
+    }
+
     private Set<String> getValues(Set<String> selectors, Row row)
             throws RepositoryException {
         if (selectors.contains(selector1)) {
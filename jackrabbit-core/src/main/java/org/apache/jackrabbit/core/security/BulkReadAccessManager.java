@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.security;
+
+import javax.jcr.RepositoryException;
+
+import org.apache.jackrabbit.core.id.ItemId;
+
+/**
+ * Optional extension of an {@link AccessManager} that is able to determine
+ * the read access of many items at once, e.g. the results of a query.
+ * Callers test for this interface and fall back to
+ * {@link AccessManager#canRead(org.apache.jackrabbit.spi.Path, ItemId)}
+ * for each item if the access manager does not implement it.
+ *
+ * @since Jackrabbit 2.14
+ */
+public interface BulkReadAccessManager extends AccessManager {
+
+    /**
+     * Determines for each of the given items whether it can be read. This
+     * is the bulk variant of
+     * {@link AccessManager#canRead(org.apache.jackrabbit.spi.Path, ItemId)}
+     * and like that method it should only be called for persisted items.
+     * An item that does not exist (any more) is reported as not readable.
+     *
+     * @param itemIds The ids of the items to be tested.
+     * @return an array of the same length as <code>itemIds</code> where the
+     * element at index <code>i</code> is <code>true</code> if the item
+     * <code>itemIds[i]</code> can be read.
+     * @throws RepositoryException if an error occurs.
+     */
+    boolean[] canRead(ItemId[] itemIds) throws RepositoryException;
+
+}
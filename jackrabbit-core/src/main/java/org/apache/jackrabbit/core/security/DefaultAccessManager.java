@@ -22,6 +22,7 @@ import org.apache.jackrabbit.commons.iterator.AccessControlPolicyIteratorAdapter
 import org.apache.jackrabbit.core.HierarchyManager;
 import org.apache.jackrabbit.core.SessionImpl;
 import org.apache.jackrabbit.core.id.ItemId;
+import org.apache.jackrabbit.core.security.authorization.AbstractCompiledPermissions;
 import org.apache.jackrabbit.core.security.authorization.AccessControlEditor;
 import org.apache.jackrabbit.core.security.authorization.AccessControlProvider;
 import org.apache.jackrabbit.core.security.authorization.CompiledPermissions;
@@ -74,7 +75,7 @@ import java.util.Set;
  * @see AccessManager
  * @see javax.jcr.security.AccessControlManager
  */
-public class DefaultAccessManager extends AbstractAccessControlManager implements AccessManager {
+public class DefaultAccessManager extends AbstractAccessControlManager implements BulkReadAccessManager {
 
     private static final Logger log = LoggerFactory.getLogger(DefaultAccessManager.class);
 
@@ -266,6 +267,28 @@ public class DefaultAccessManager extends AbstractAccessControlManager implement
         }
     }
 
+    /**
+     * @see BulkReadAccessManager#canRead(ItemId[])
+     */
+    public boolean[] canRead(ItemId[] itemIds) throws RepositoryException {
+        checkInitialized();
+        boolean[] readable = new boolean[itemIds.length];
+        if (compiledPermissions.canReadAll()) {
+            Arrays.fill(readable, true);
+        } else if (compiledPermissions instanceof AbstractCompiledPermissions) {
+            readable = ((AbstractCompiledPermissions) compiledPermissions).canRead(itemIds);
+        } else {
+            for (int i = 0; i < itemIds.length; i++) {
+                try {
+                    readable[i] = compiledPermissions.canRead(null, itemIds[i]);
+                } catch (ItemNotFoundException e) {
+                    // item has been removed in the meantime
+                }
+            }
+        }
+        return readable;
+    }
+
     /**
      * @see AccessManager#canAccess(String)
      */
@@ -18,7 +18,9 @@ package org.apache.jackrabbit.core.security.authorization;
 
 import org.apache.commons.collections.map.LRUMap;
 import org.apache.jackrabbit.spi.Path;
+import org.apache.jackrabbit.core.id.ItemId;
 
+import javax.jcr.ItemNotFoundException;
 import javax.jcr.RepositoryException;
 import javax.jcr.security.Privilege;
 import java.util.Map;
@@ -143,6 +145,33 @@ public abstract class AbstractCompiledPermissions implements CompiledPermissions
         return false;
     }
 
+    /**
+     * Returns for each of the given <i>existing</i> items whether READ
+     * permission is granted. This is the bulk variant of
+     * {@link #canRead(Path, ItemId)}; subclasses may override it in order to
+     * share the evaluation of common ancestors between the items. This
+     * implementation evaluates {@link #canRead(Path, ItemId)} for each item.
+     * An item that does not exist (any more) is reported as not readable.
+     *
+     * @param itemIds The ids of the items to check.
+     * @return an array of the same length as <code>itemIds</code> where the
+     * element at index <code>i</code> is <code>true</code> if the item
+     * <code>itemIds[i]</code> can be read.
+     * @throws RepositoryException If an error occurs.
+     * @since Jackrabbit 2.14
+     */
+    public boolean[] canRead(ItemId[] itemIds) throws RepositoryException {
+        boolean[] readable = new boolean[itemIds.length];
+        for (int i = 0; i < itemIds.length; i++) {
+            try {
+                readable[i] = canRead(null, itemIds[i]);
+            } catch (ItemNotFoundException e) {
+                // item has been removed in the meantime
+            }
+        }
+        return readable;
+    }
+
     //--------------------------------------------------------< inner class >---
     /**
      * Result of permission (and optionally privilege) evaluation for a given path.
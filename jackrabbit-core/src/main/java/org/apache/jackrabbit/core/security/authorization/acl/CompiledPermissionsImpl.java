@@ -43,6 +43,7 @@ import javax.jcr.ItemNotFoundException;
 import javax.jcr.RepositoryException;
 import java.security.Principal;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -286,6 +287,86 @@ class CompiledPermissionsImpl extends AbstractCompiledPermissions implements Acc
         return canRead;
     }
 
+    /**
+     * Evaluates the READ permission for a batch of items. A node that is not
+     * an access control item and does not define entries itself can be read
+     * if and only if its nearest access controlled ancestor can be read, as
+     * long as no entry on the way to the root carries a restriction. These
+     * ancestor decisions are kept for the duration of the call, which shares
+     * their evaluation between siblings and resolves every node below a
+     * denied ancestor without collecting the entries again.
+     *
+     * @see org.apache.jackrabbit.core.security.authorization.AbstractCompiledPermissions#canRead(ItemId[])
+     */
+    @Override
+    public boolean[] canRead(ItemId[] itemIds) throws RepositoryException {
+        boolean[] readable = new boolean[itemIds.length];
+        Map<NodeId, Boolean> inherited = new HashMap<NodeId, Boolean>();
+        ItemManager itemMgr = session.getItemManager();
+        synchronized (monitor) {
+            for (int i = 0; i < itemIds.length; i++) {
+                ItemId id = itemIds[i];
+                try {
+                    Boolean canRead = readCache.get(id);
+                    if (canRead == null && id.denotesNode()
+                            && !util.isAcItem((NodeImpl) itemMgr.getItem(id))) {
+                        canRead = getInheritedRead((NodeId) id, inherited);
+                        if (canRead != null) {
+                            readCache.put(id, canRead);
+                        }
+                    }
+                    if (canRead == null) {
+                        canRead = canRead(null, id);
+                    }
+                    readable[i] = canRead;
+                } catch (ItemNotFoundException e) {
+                    // item has been removed in the meantime
+                }
+            }
+        }
+        return readable;
+    }
+
+    /**
+     * Returns the READ permission that the node with the given id passes on
+     * to descendants without entries of their own, or <code>null</code> if
+     * the permission of such descendants depends on their path.
+     *
+     * @param id the id of a node.
+     * @param inherited the decisions already evaluated in this batch.
+     * @return the inherited READ permission or <code>null</code>.
+     * @throws RepositoryException if an error occurs.
+     */
+    private Boolean getInheritedRead(NodeId id, Map<NodeId, Boolean> inherited)
+            throws RepositoryException {
+        if (inherited.containsKey(id)) {
+            return inherited.get(id);
+        }
+        EntryCollector.Entries entries = entryCollector.getEntries(id);
+        NodeId nextId = entries.getNextId();
+        Boolean canRead;
+        if (entries.isEmpty()) {
+            // no entries at all up to the root -> nothing grants READ
+            canRead = (nextId == null) ? Boolean.FALSE : getInheritedRead(nextId, inherited);
+        } else if (hasRestrictions(entries.getACEs())
+                || (nextId != null && getInheritedRead(nextId, inherited) == null)) {
+            canRead = null;
+        } else {
+            canRead = canRead(null, id);
+        }
+        inherited.put(id, canRead);
+        return canRead;
+    }
+
+    private static boolean hasRestrictions(List<Entry> aces) {
+        for (Entry ace : aces) {
+            if (ace.hasRestrictions()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     //----------------------------------------< ACLModificationListener >---
     /**
      * @see org.apache.jackrabbit.core.security.authorization.AccessControlListener#acModified(org.apache.jackrabbit.core.security.authorization.AccessControlModifications)
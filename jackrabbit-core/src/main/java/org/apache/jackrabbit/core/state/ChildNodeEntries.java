@@ -20,20 +20,53 @@ import org.apache.commons.collections.map.LinkedMap;
 import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.util.EmptyLinkedMap;
 import org.apache.jackrabbit.spi.Name;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.HashMap;
 import java.util.Collections;
 import java.util.ArrayList;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * <code>ChildNodeEntries</code> represents an insertion-ordered
  * collection of <code>ChildNodeEntry</code>s that also maintains
  * the index values of same-name siblings on insertion and removal.
+ * <p>
+ * The entries of a shared node state can be {@link #pack() packed} into
+ * a compact, immutable form that keeps the names and the node ids of the
+ * entries in arrays. The <code>ChildNodeEntry</code> instances are then
+ * created on demand and the entries are only expanded into maps again
+ * when they are modified, i.e. when a copy in a transient layer is changed.
+ * Packing returns a new instance, so that concurrent readers of the
+ * original entries never see them change.
+ * <p>
+ * The entries of a node with many child nodes can also be kept in
+ * {@link ChildNodeEntryPages pages} outside of this instance. Each page is
+ * packed when it is loaded and only softly reachable, so that it can be
+ * reclaimed while it is not used.
  */
 class ChildNodeEntries implements Cloneable {
 
+    /**
+     * Logger instance
+     */
+    private static final Logger log =
+        LoggerFactory.getLogger(ChildNodeEntries.class);
+
+    /**
+     * Recently packed names, used to share equal name instances between
+     * the packed entries of different node states. Access is not
+     * synchronized, since names are immutable and losing an update only
+     * means that an equal name instance is not shared.
+     */
+    private static final Name[] NAME_CACHE = new Name[1024];
+
     /**
      * Insertion-ordered map of entries
      * (key=NodeId, value=entry)
@@ -52,16 +85,128 @@ class ChildNodeEntries implements Cloneable {
      */
     private boolean shared;
 
+    /**
+     * The packed entries, or <code>null</code> if the entries are kept in
+     * the {@link #entries} and {@link #nameMap} maps. Packed entries are
+     * immutable and may be shared with other ChildNodeEntries instances.
+     */
+    private Packed packed;
+
+    /**
+     * The entries kept in pages, or <code>null</code>. Paged entries are not
+     * modified and may be shared with other ChildNodeEntries instances.
+     */
+    private Paged paged;
+
     ChildNodeEntries() {
         init();
     }
 
+    /**
+     * Creates entries that are loaded from the given pages when they are
+     * accessed.
+     *
+     * @param pages the pages of the entries
+     */
+    ChildNodeEntries(ChildNodeEntryPages pages) {
+        init();
+        paged = new Paged(pages);
+    }
+
     ChildNodeEntry get(NodeId id) {
+        if (paged != null) {
+            return paged.get(id);
+        }
+        if (packed != null) {
+            int position = packed.find(id);
+            return position != -1 ? packed.getEntry(position) : null;
+        }
         return (ChildNodeEntry) entries.get(id);
     }
 
+    /**
+     * Returns the name of the entry refering to the node with the given id.
+     * Unlike {@link #get(NodeId)} this does not create an entry if the
+     * entries are packed.
+     *
+     * @param id id of a child node
+     * @return the name of the entry, or <code>null</code> if there is no
+     *         such entry
+     */
+    Name getName(NodeId id) {
+        if (paged != null) {
+            return paged.getName(id);
+        }
+        if (packed != null) {
+            int position = packed.find(id);
+            return position != -1 ? packed.getName(position) : null;
+        }
+        ChildNodeEntry entry = (ChildNodeEntry) entries.get(id);
+        return entry != null ? entry.getName() : null;
+    }
+
+    /**
+     * Returns <code>true</code> if there is an entry refering to the node
+     * with the given id.
+     *
+     * @param id id of a child node
+     * @return whether there is such an entry
+     */
+    boolean contains(NodeId id) {
+        if (paged != null) {
+            return paged.getName(id) != null;
+        }
+        if (packed != null) {
+            return packed.find(id) != -1;
+        }
+        return entries.containsKey(id);
+    }
+
+    /**
+     * Returns <code>true</code> if there is an entry with the given name.
+     *
+     * @param nodeName name of a child node
+     * @return whether there is such an entry
+     */
+    boolean contains(Name nodeName) {
+        if (paged != null) {
+            return paged.contains(nodeName);
+        }
+        if (packed != null) {
+            return packed.find(nodeName, 0) != -1;
+        }
+        return nameMap.containsKey(nodeName);
+    }
+
+    /**
+     * Returns <code>true</code> if there is an entry with the given name
+     * and index.
+     *
+     * @param nodeName name of a child node
+     * @param index    1-based index of the child node
+     * @return whether there is such an entry
+     */
+    boolean contains(Name nodeName, int index) {
+        if (index < 1) {
+            throw new IllegalArgumentException("index is 1-based");
+        }
+        if (paged != null) {
+            return paged.find(nodeName, index) != null;
+        }
+        if (packed != null) {
+            return packed.find(nodeName, index) != -1;
+        }
+        return get(nodeName, index) != null;
+    }
+
     @SuppressWarnings("unchecked")
     List<ChildNodeEntry> get(Name nodeName) {
+        if (paged != null) {
+            return paged.get(nodeName);
+        }
+        if (packed != null) {
+            return packed.get(nodeName);
+        }
         Object obj = nameMap.get(nodeName);
         if (obj == null) {
             return Collections.emptyList();
@@ -80,6 +225,13 @@ class ChildNodeEntries implements Cloneable {
         if (index < 1) {
             throw new IllegalArgumentException("index is 1-based");
         }
+        if (paged != null) {
+            return paged.find(nodeName, index);
+        }
+        if (packed != null) {
+            int position = packed.find(nodeName, index);
+            return position != -1 ? packed.getEntry(position) : null;
+        }
 
         Object obj = nameMap.get(nodeName);
         if (obj == null) {
@@ -214,7 +366,7 @@ class ChildNodeEntries implements Cloneable {
      * @return the removed entry or <code>null</code> if there is no such entry.
      */
     ChildNodeEntry remove(NodeId id) {
-        ChildNodeEntry entry = (ChildNodeEntry) entries.get(id);
+        ChildNodeEntry entry = get(id);
         if (entry != null) {
             return remove(entry.getName(), entry.getIndex());
         }
@@ -252,22 +404,20 @@ class ChildNodeEntries implements Cloneable {
      *         <code>this</code> but not in <code>other</code>
      */
     List<ChildNodeEntry> removeAll(ChildNodeEntries other) {
-        if (entries.isEmpty()) {
+        if (isEmpty()) {
             return Collections.emptyList();
         }
         if (other.isEmpty()) {
             return list();
         }
+        if (isSame(other)) {
+            return Collections.emptyList();
+        }
 
         List<ChildNodeEntry> result = new ArrayList<ChildNodeEntry>();
-        for (Object e : entries.values()) {
-            ChildNodeEntry entry = (ChildNodeEntry) e;
-            ChildNodeEntry otherEntry = other.get(entry.getId());
-            if (entry == otherEntry) {
-                continue;
-            }
-            if (otherEntry == null
-                    || !entry.getName().equals(otherEntry.getName())) {
+        for (ChildNodeEntry entry : list()) {
+            Name otherName = other.getName(entry.getId());
+            if (otherName == null || !entry.getName().equals(otherName)) {
                 result.add(entry);
             }
         }
@@ -288,19 +438,18 @@ class ChildNodeEntries implements Cloneable {
      *         <code>this</code> <i>and</i> in <code>other</code>
      */
     List<ChildNodeEntry> retainAll(ChildNodeEntries other) {
-        if (entries.isEmpty()
+        if (isEmpty()
                 || other.isEmpty()) {
             return Collections.emptyList();
         }
+        if (isSame(other)) {
+            return list();
+        }
 
         List<ChildNodeEntry> result = new ArrayList<ChildNodeEntry>();
-        for (Object e : entries.values()) {
-            ChildNodeEntry entry = (ChildNodeEntry) e;
-            ChildNodeEntry otherEntry = other.get(entry.getId());
-            if (entry == otherEntry) {
-                result.add(entry);
-            } else if (otherEntry != null
-                    && entry.getName().equals(otherEntry.getName())) {
+        for (ChildNodeEntry entry : list()) {
+            Name otherName = other.getName(entry.getId());
+            if (otherName != null && entry.getName().equals(otherName)) {
                 result.add(entry);
             }
         }
@@ -310,20 +459,34 @@ class ChildNodeEntries implements Cloneable {
     //-----------------------------------------------< unmodifiable List view >
 
     public boolean isEmpty() {
+        if (paged != null) {
+            return paged.size() == 0;
+        }
+        if (packed != null) {
+            return false;
+        }
         return entries.isEmpty();
     }
 
     @SuppressWarnings("unchecked")
     public List<ChildNodeEntry> list() {
+        if (paged != null) {
+            return paged.list();
+        }
+        if (packed != null) {
+            return packed.list();
+        }
         return new ArrayList<ChildNodeEntry>(entries.values());
     }
 
     public List<ChildNodeEntry> getRenamedEntries(ChildNodeEntries that) {
         List<ChildNodeEntry> renamed = Collections.emptyList();
-        for (Object e : entries.values()) {
-            ChildNodeEntry entry = (ChildNodeEntry) e;
-            ChildNodeEntry other = that.get(entry.getId());
-            if (other != null && !entry.getName().equals(other.getName())) {
+        if (isSame(that)) {
+            return renamed;
+        }
+        for (ChildNodeEntry entry : list()) {
+            Name other = that.getName(entry.getId());
+            if (other != null && !entry.getName().equals(other)) {
                 // child node entry with same id but different name exists in
                 // overlaid and this state => renamed entry detected
                 if (renamed.isEmpty()) {
@@ -336,9 +499,56 @@ class ChildNodeEntries implements Cloneable {
     }
 
     public int size() {
+        if (paged != null) {
+            return paged.size();
+        }
+        if (packed != null) {
+            return packed.size();
+        }
         return entries.size();
     }
 
+    /**
+     * Returns <code>true</code> if the entries are currently
+     * {@link #pack() packed}.
+     *
+     * @return whether the entries are packed
+     */
+    boolean isPacked() {
+        return packed != null;
+    }
+
+    /**
+     * Returns these entries in their compact, immutable form. The returned
+     * entries are expanded again on their next modification. This instance
+     * is not changed, so it can still be read concurrently.
+     *
+     * @return packed copy of these entries, or this instance if it is
+     *         already packed, paged or empty
+     */
+    ChildNodeEntries pack() {
+        if (packed != null || paged != null || entries.isEmpty()) {
+            return this;
+        }
+        ChildNodeEntries copy = new ChildNodeEntries();
+        copy.packed = new Packed(list());
+        return copy;
+    }
+
+    /**
+     * Called when a node state replaces these entries with the given ones.
+     * Paged entries that the replacement does not share are loaded
+     * completely, as other copies of them may still be read after their
+     * pages have been rewritten.
+     *
+     * @param replacement the entries that replace these entries
+     */
+    void replacedBy(ChildNodeEntries replacement) {
+        if (paged != null && paged != replacement.paged) {
+            paged.pin();
+        }
+    }
+
     //-------------------------------------------< java.lang.Object overrides >
     public boolean equals(Object obj) {
         if (this == obj) {
@@ -346,6 +556,10 @@ class ChildNodeEntries implements Cloneable {
         }
         if (obj instanceof ChildNodeEntries) {
             ChildNodeEntries other = (ChildNodeEntries) obj;
+            if (packed != null || other.packed != null
+                    || paged != null || other.paged != null) {
+                return list().equals(other.list());
+            }
             return (nameMap.equals(other.nameMap)
                     && entries.equals(other.entries)
                     && shared == other.shared);
@@ -368,7 +582,8 @@ class ChildNodeEntries implements Cloneable {
 
     /**
      * Returns a shallow copy of this <code>ChildNodeEntries</code> instance;
-     * the entries themselves are not cloned.
+     * the entries themselves are not cloned. Packed entries are shared
+     * with the copy.
      *
      * @return a shallow copy of this instance.
      */
@@ -395,6 +610,20 @@ class ChildNodeEntries implements Cloneable {
         nameMap = Collections.emptyMap();
         entries = EmptyLinkedMap.INSTANCE;
         shared = false;
+        packed = null;
+        paged = null;
+    }
+
+    /**
+     * Returns <code>true</code> if these entries and the given ones share
+     * the same packed or paged entries.
+     *
+     * @param other other entries
+     * @return whether the entries are the same
+     */
+    private boolean isSame(ChildNodeEntries other) {
+        return (packed != null && packed == other.packed)
+            || (paged != null && paged == other.paged);
     }
 
     /**
@@ -403,7 +632,25 @@ class ChildNodeEntries implements Cloneable {
      */
     @SuppressWarnings("unchecked")
     private void ensureModifiable() {
-        if (nameMap == Collections.EMPTY_MAP) {
+        if (packed != null) {
+            // expand the packed entries
+            Packed p = packed;
+            packed = null;
+            nameMap = new HashMap<Name, Object>();
+            entries = new LinkedMap();
+            for (int i = 0; i < p.size(); i++) {
+                add(p.getName(i), p.getId(i));
+            }
+        } else if (paged != null) {
+            // load and expand the paged entries
+            List<ChildNodeEntry> list = paged.list();
+            paged = null;
+            nameMap = new HashMap<Name, Object>();
+            entries = new LinkedMap();
+            for (ChildNodeEntry entry : list) {
+                add(entry.getName(), entry.getId());
+            }
+        } else if (nameMap == Collections.EMPTY_MAP) {
             nameMap = new HashMap<Name, Object>();
             entries = new LinkedMap();
         } else if (shared) {
@@ -420,4 +667,431 @@ class ChildNodeEntries implements Cloneable {
         }
     }
 
+    /**
+     * Returns an equal, recently packed name instance, or the given name.
+     *
+     * @param name a name
+     * @return an equal name
+     */
+    private static Name intern(Name name) {
+        int hash = name.hashCode();
+        int i = (hash ^ (hash >>> 16)) & (NAME_CACHE.length - 1);
+        Name cached = NAME_CACHE[i];
+        if (name.equals(cached)) {
+            return cached;
+        }
+        NAME_CACHE[i] = name;
+        return name;
+    }
+
+    /**
+     * Compact, immutable form of a list of child node entries. The node ids
+     * are kept as pairs of longs, and two index arrays sorted by node id and
+     * by name hash code provide the lookups.
+     */
+    private static final class Packed {
+
+        /**
+         * Names of the entries, in entry order.
+         */
+        private final Name[] names;
+
+        /**
+         * Most and least significant bits of the node ids, in entry order.
+         */
+        private final long[] ids;
+
+        /**
+         * Same name sibling indexes, in entry order, or <code>null</code>
+         * if there are no same name siblings.
+         */
+        private final int[] indexes;
+
+        /**
+         * Entry positions sorted by node id.
+         */
+        private final int[] byId;
+
+        /**
+         * Entry positions sorted by name hash code and then by position.
+         */
+        private final int[] byName;
+
+        private Packed(List<ChildNodeEntry> list) {
+            int size = list.size();
+            names = new Name[size];
+            ids = new long[size * 2];
+            int[] snsIndexes = null;
+            long[] nameKeys = new long[size];
+            Integer[] positions = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                ChildNodeEntry entry = list.get(i);
+                names[i] = intern(entry.getName());
+                ids[2 * i] = entry.getId().getMostSignificantBits();
+                ids[2 * i + 1] = entry.getId().getLeastSignificantBits();
+                if (entry.getIndex() != 1) {
+                    if (snsIndexes == null) {
+                        snsIndexes = new int[size];
+                        Arrays.fill(snsIndexes, 1);
+                    }
+                    snsIndexes[i] = entry.getIndex();
+                }
+                nameKeys[i] = ((long) names[i].hashCode() << 32) | i;
+                positions[i] = i;
+            }
+            indexes = snsIndexes;
+
+            Arrays.sort(nameKeys);
+            byName = new int[size];
+            for (int i = 0; i < size; i++) {
+                byName[i] = (int) nameKeys[i];
+            }
+
+            Arrays.sort(positions, new Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    return compareId(a, ids[2 * b], ids[2 * b + 1]);
+                }
+            });
+            byId = new int[size];
+            for (int i = 0; i < size; i++) {
+                byId[i] = positions[i];
+            }
+        }
+
+        private int size() {
+            return names.length;
+        }
+
+        private Name getName(int i) {
+            return names[i];
+        }
+
+        private NodeId getId(int i) {
+            return new NodeId(ids[2 * i], ids[2 * i + 1]);
+        }
+
+        private int getIndex(int i) {
+            return indexes != null ? indexes[i] : 1;
+        }
+
+        private ChildNodeEntry getEntry(int i) {
+            return getEntry(i, getIndex(i));
+        }
+
+        private ChildNodeEntry getEntry(int i, int index) {
+            return new ChildNodeEntry(names[i], getId(i), index);
+        }
+
+        private List<ChildNodeEntry> list() {
+            List<ChildNodeEntry> list =
+                new ArrayList<ChildNodeEntry>(names.length);
+            for (int i = 0; i < names.length; i++) {
+                list.add(getEntry(i));
+            }
+            return list;
+        }
+
+        /**
+         * Returns the position of the entry refering to the node with the
+         * given id, comparing the stored node id bits.
+         *
+         * @return the position, or -1 if there is no such entry
+         */
+        private int find(NodeId id) {
+            long msb = id.getMostSignificantBits();
+            long lsb = id.getLeastSignificantBits();
+            int low = 0;
+            int high = byId.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int c = compareId(byId[mid], msb, lsb);
+                if (c < 0) {
+                    low = mid + 1;
+                } else if (c > 0) {
+                    high = mid - 1;
+                } else {
+                    return byId[mid];
+                }
+            }
+            return -1;
+        }
+
+        private List<ChildNodeEntry> get(Name name) {
+            List<ChildNodeEntry> siblings = Collections.emptyList();
+            for (int i = findName(name); i < byName.length; i++) {
+                int position = byName[i];
+                if (names[position].hashCode() != name.hashCode()) {
+                    break;
+                }
+                if (name.equals(names[position])) {
+                    if (siblings.isEmpty()) {
+                        siblings = new ArrayList<ChildNodeEntry>(1);
+                    }
+                    siblings.add(getEntry(position));
+                }
+            }
+            return Collections.unmodifiableList(siblings);
+        }
+
+        /**
+         * Returns the position of the entry with the given name and index.
+         *
+         * @param index the 1-based index, or 0 for any index
+         * @return the position, or -1 if there is no such entry
+         */
+        private int find(Name name, int index) {
+            if (indexes == null && index > 1) {
+                return -1;
+            }
+            for (int i = findName(name); i < byName.length; i++) {
+                int position = byName[i];
+                if (names[position].hashCode() != name.hashCode()) {
+                    break;
+                }
+                if (name.equals(names[position]) && (index == 0
+                        || indexes == null || indexes[position] == index)) {
+                    return position;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Returns the number of entries with the given name.
+         */
+        private int count(Name name) {
+            int count = 0;
+            for (int i = findName(name); i < byName.length; i++) {
+                int position = byName[i];
+                if (names[position].hashCode() != name.hashCode()) {
+                    break;
+                }
+                if (name.equals(names[position])) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Returns the first position in {@link #byName} of an entry whose
+         * name has the hash code of the given name, or a position after
+         * the last entry with a smaller hash code.
+         */
+        private int findName(Name name) {
+            int hash = name.hashCode();
+            int low = 0;
+            int high = byName.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (names[byName[mid]].hashCode() < hash) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Compares the node id of the entry at the given position with the
+         * given node id bits, using the order of {@link NodeId#compareTo}.
+         */
+        private int compareId(int position, long msb, long lsb) {
+            long m = ids[2 * position];
+            if (m != msb) {
+                return m < msb ? -1 : 1;
+            }
+            long l = ids[2 * position + 1];
+            if (l != lsb) {
+                return l < lsb ? -1 : 1;
+            }
+            return 0;
+        }
+
+    }
+
+
+    /**
+     * Child node entries kept in {@link ChildNodeEntryPages pages}. Each
+     * page is packed when it is loaded and kept softly reachable, until the
+     * entries are {@link #pin() pinned}. The same name sibling indexes of
+     * the entries are counted across the pages.
+     */
+    private static final class Paged {
+
+        /**
+         * The pages of the entries.
+         */
+        private final ChildNodeEntryPages pages;
+
+        /**
+         * The loaded pages, either as soft references to the packed pages
+         * or, once pinned, as the packed pages themselves.
+         */
+        private final AtomicReferenceArray<Object> contents;
+
+        /**
+         * The number of entries in all pages.
+         */
+        private final int size;
+
+        private Paged(ChildNodeEntryPages pages) {
+            this.pages = pages;
+            int count = pages.getPageCount();
+            contents = new AtomicReferenceArray<Object>(count);
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                n += pages.getEntryCount(i);
+            }
+            size = n;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        /**
+         * Returns the given page, which is loaded if it is not held.
+         *
+         * @throws IllegalStateException if the page can not be loaded
+         */
+        @SuppressWarnings("unchecked")
+        private Packed getPage(int i) {
+            Object content = contents.get(i);
+            if (content instanceof Packed) {
+                return (Packed) content;
+            }
+            Packed page = null;
+            if (content != null) {
+                page = ((SoftReference<Packed>) content).get();
+            }
+            if (page == null) {
+                page = load(i);
+                // do not replace a page pinned in the meantime
+                contents.compareAndSet(i, content, new SoftReference<Packed>(page));
+            }
+            return page;
+        }
+
+        private Packed load(int i) {
+            List<Name> names = new ArrayList<Name>();
+            List<NodeId> ids = new ArrayList<NodeId>();
+            try {
+                pages.loadPage(i, names, ids);
+            } catch (ItemStateException e) {
+                throw new IllegalStateException(
+                        "Unable to load child node entries", e);
+            }
+            // same name sibling indexes within the page
+            Map<Name, Integer> counts = new HashMap<Name, Integer>();
+            List<ChildNodeEntry> list =
+                new ArrayList<ChildNodeEntry>(names.size());
+            for (int k = 0; k < names.size(); k++) {
+                Name name = names.get(k);
+                Integer count = counts.get(name);
+                int index = count != null ? count + 1 : 1;
+                counts.put(name, index);
+                list.add(new ChildNodeEntry(name, ids.get(k), index));
+            }
+            return new Packed(list);
+        }
+
+        /**
+         * Loads all pages and keeps them strongly reachable. Pages that can
+         * not be loaded are skipped.
+         */
+        private void pin() {
+            for (int i = 0; i < contents.length(); i++) {
+                if (!(contents.get(i) instanceof Packed)) {
+                    try {
+                        contents.set(i, getPage(i));
+                    } catch (IllegalStateException e) {
+                        log.debug("Unable to pin child node entries", e);
+                    }
+                }
+            }
+        }
+
+        private List<ChildNodeEntry> list() {
+            List<ChildNodeEntry> list = new ArrayList<ChildNodeEntry>(size);
+            Map<Name, Integer> counts = new HashMap<Name, Integer>();
+            for (int i = 0; i < contents.length(); i++) {
+                Packed page = getPage(i);
+                for (int position = 0; position < page.size(); position++) {
+                    Name name = page.getName(position);
+                    Integer count = counts.get(name);
+                    int index = count != null ? count + 1 : 1;
+                    counts.put(name, index);
+                    list.add(page.getEntry(position, index));
+                }
+            }
+            return list;
+        }
+
+        private ChildNodeEntry get(NodeId id) {
+            for (int i = 0; i < contents.length(); i++) {
+                Packed page = getPage(i);
+                int position = page.find(id);
+                if (position != -1) {
+                    Name name = page.getName(position);
+                    int index = page.getIndex(position);
+                    for (int j = 0; j < i; j++) {
+                        index += getPage(j).count(name);
+                    }
+                    return page.getEntry(position, index);
+                }
+            }
+            return null;
+        }
+
+        private Name getName(NodeId id) {
+            for (int i = 0; i < contents.length(); i++) {
+                Packed page = getPage(i);
+                int position = page.find(id);
+                if (position != -1) {
+                    return page.getName(position);
+                }
+            }
+            return null;
+        }
+
+        private boolean contains(Name name) {
+            for (int i = 0; i < contents.length(); i++) {
+                if (getPage(i).find(name, 0) != -1) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private List<ChildNodeEntry> get(Name name) {
+            List<ChildNodeEntry> siblings = Collections.emptyList();
+            for (int i = 0; i < contents.length(); i++) {
+                for (ChildNodeEntry entry : getPage(i).get(name)) {
+                    if (siblings.isEmpty()) {
+                        siblings = new ArrayList<ChildNodeEntry>(1);
+                    }
+                    siblings.add(new ChildNodeEntry(entry.getName(),
+                            entry.getId(), siblings.size() + 1));
+                }
+            }
+            return Collections.unmodifiableList(siblings);
+        }
+
+        private ChildNodeEntry find(Name name, int index) {
+            int local = index;
+            for (int i = 0; i < contents.length(); i++) {
+                Packed page = getPage(i);
+                int count = page.count(name);
+                if (local <= count) {
+                    return page.getEntry(page.find(name, local), index);
+                }
+                local -= count;
+            }
+            return null;
+        }
+
+    }
+
 }
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.state;
+
+import java.util.List;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.spi.Name;
+
+/**
+ * The child node entries of a node state that are kept in pages outside of
+ * the node state, see
+ * {@link NodeState#setChildNodeEntryPages(ChildNodeEntryPages)}. The pages
+ * are loaded when the entries are accessed and must always contain the
+ * same entries.
+ *
+ * @since Jackrabbit 2.14
+ */
+public interface ChildNodeEntryPages {
+
+    /**
+     * Returns the number of pages.
+     *
+     * @return the number of pages
+     */
+    int getPageCount();
+
+    /**
+     * Returns the number of entries in the given page, without loading it.
+     *
+     * @param page the index of the page
+     * @return the number of entries in the page
+     */
+    int getEntryCount(int page);
+
+    /**
+     * Loads the given page and adds the names and node ids of its entries
+     * to the given lists, in the order of the entries.
+     *
+     * @param page  the index of the page
+     * @param names the list to add the names of the entries to
+     * @param ids   the list to add the node ids of the entries to
+     * @throws ItemStateException if the page can not be loaded
+     */
+    void loadPage(int page, List<Name> names, List<NodeId> ids)
+            throws ItemStateException;
+
+}
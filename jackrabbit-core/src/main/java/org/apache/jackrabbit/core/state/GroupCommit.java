@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.state;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jackrabbit.api.stats.RepositoryStatistics;
+import org.apache.jackrabbit.core.id.ItemId;
+import org.apache.jackrabbit.core.persistence.PersistenceManager;
+import org.apache.jackrabbit.stats.RepositoryStatisticsImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores the change logs of concurrently ending updates in a single
+ * persistence manager transaction. The first update that arrives while
+ * no group is being stored becomes the leader: it stores all change logs
+ * that have queued up in the meantime and wakes up their updates. The
+ * other updates wait until their change log has been stored by a leader,
+ * or until they become the leader of the next group themselves.
+ * <p>
+ * Change logs are only merged if they do not touch the same items. If the
+ * merged change log cannot be stored, each change log of the group is
+ * stored on its own, so that every update sees its own outcome.
+ * <p>
+ * Besides the {@link RepositoryStatistics.Type#GROUP_COMMIT_COUNTER group}
+ * statistics, the time between an update arriving here and its change log
+ * being stored is recorded in the counters named
+ * <code>GROUP_COMMIT_LATENCY_&lt;n&gt;MS</code> (at most <i>n</i>
+ * milliseconds, for powers of two up to 1024) and
+ * <code>GROUP_COMMIT_LATENCY_OVER_1024MS</code>.
+ */
+class GroupCommit {
+
+    /**
+     * Logger instance
+     */
+    private static final Logger log = LoggerFactory.getLogger(GroupCommit.class);
+
+    /**
+     * The persistence manager to store the change logs in.
+     */
+    private final PersistenceManager persistMgr;
+
+    /**
+     * Change logs waiting for the next group, guarded by <code>this</code>.
+     */
+    private List<Commit> queue = new ArrayList<Commit>();
+
+    /**
+     * Whether a leader is currently storing a group, guarded by
+     * <code>this</code>.
+     */
+    private boolean storing = false;
+
+    private final AtomicLong groupCounter;
+
+    private final AtomicLong updateCounter;
+
+    private final AtomicLong durationCounter;
+
+    private final LatencyHistogram latency;
+
+    /**
+     * Creates a new group commit for the given persistence manager.
+     *
+     * @param persistMgr persistence manager
+     * @param stats repository statistics
+     */
+    GroupCommit(PersistenceManager persistMgr, RepositoryStatisticsImpl stats) {
+        this.persistMgr = persistMgr;
+        groupCounter = stats.getCounter(
+                RepositoryStatistics.Type.GROUP_COMMIT_COUNTER);
+        updateCounter = stats.getCounter(
+                RepositoryStatistics.Type.GROUP_COMMIT_UPDATE_COUNTER);
+        durationCounter = stats.getCounter(
+                RepositoryStatistics.Type.GROUP_COMMIT_DURATION);
+        latency = new LatencyHistogram(stats, "GROUP_COMMIT_LATENCY");
+    }
+
+    /**
+     * Stores the given change log, possibly together with the change logs
+     * of other updates that end at the same time. Returns once the change
+     * log has been stored.
+     *
+     * @param changes the change log to store
+     * @throws ItemStateException if the change log could not be stored
+     */
+    void store(ChangeLog changes) throws ItemStateException {
+        Commit commit = new Commit(changes);
+        List<Commit> group;
+        synchronized (this) {
+            queue.add(commit);
+            boolean interrupted = false;
+            while (storing && !commit.done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // the update needs to know the outcome of its change
+                    // log, so keep waiting and restore the flag afterwards
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (commit.done) {
+                commit.checkStored();
+                return;
+            }
+            // become the leader of the next group
+            storing = true;
+            group = queue;
+            queue = new ArrayList<Commit>();
+        }
+
+        try {
+            storeGroup(group);
+        } catch (RuntimeException e) {
+            for (Commit c : group) {
+                if (!c.done) {
+                    c.exception = e;
+                }
+            }
+        } finally {
+            synchronized (this) {
+                for (Commit c : group) {
+                    c.done = true;
+                }
+                storing = false;
+                notifyAll();
+            }
+        }
+        commit.checkStored();
+    }
+
+    /**
+     * Stores the change logs of a group, merged into a single change log if
+     * possible.
+     *
+     * @param group the commits of the group
+     */
+    private void storeGroup(List<Commit> group) {
+        groupCounter.incrementAndGet();
+        if (group.size() > 1 && isDisjoint(group)) {
+            ChangeLog merged = new ChangeLog();
+            for (Commit c : group) {
+                merged.merge(c.changes);
+            }
+            try {
+                persistMgr.store(merged);
+                for (Commit c : group) {
+                    c.changes.setUpdateSize(
+                            merged.getUpdateSize() / group.size());
+                    c.stored();
+                }
+                return;
+            } catch (ItemStateException e) {
+                log.warn("Failed to store a group of " + group.size()
+                        + " change logs, storing them one by one", e);
+            }
+        }
+        for (Commit c : group) {
+            try {
+                persistMgr.store(c.changes);
+                c.stored();
+            } catch (ItemStateException e) {
+                c.exception = e;
+            }
+        }
+    }
+
+    /**
+     * Checks whether no two change logs of the given group contain the
+     * same item or references to the same node.
+     *
+     * @param group the commits of a group
+     * @return <code>true</code> if the change logs can be merged
+     */
+    private static boolean isDisjoint(List<Commit> group) {
+        Set<ItemId> ids = new HashSet<ItemId>();
+        Set<ItemId> refs = new HashSet<ItemId>();
+        for (Commit c : group) {
+            for (ItemState state : c.changes.addedStates()) {
+                if (!ids.add(state.getId())) {
+                    return false;
+                }
+            }
+            for (ItemState state : c.changes.modifiedStates()) {
+                if (!ids.add(state.getId())) {
+                    return false;
+                }
+            }
+            for (ItemState state : c.changes.deletedStates()) {
+                if (!ids.add(state.getId())) {
+                    return false;
+                }
+            }
+            for (NodeReferences r : c.changes.modifiedRefs()) {
+                if (!refs.add(r.getTargetId())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records the latency of a stored change log.
+     *
+     * @param nanos time since the update arrived, in nano seconds
+     */
+    private void recordLatency(long nanos) {
+        updateCounter.incrementAndGet();
+        durationCounter.addAndGet(nanos);
+        latency.record(nanos);
+    }
+
+    /**
+     * A change log waiting to be stored.
+     */
+    private final class Commit {
+
+        private final ChangeLog changes;
+
+        private final long start = System.nanoTime();
+
+        /**
+         * Set once the change log has been handled by a leader, guarded
+         * by the enclosing group commit.
+         */
+        private boolean done = false;
+
+        /**
+         * The reason why the change log could not be stored, or
+         * <code>null</code>.
+         */
+        private Exception exception;
+
+        Commit(ChangeLog changes) {
+            this.changes = changes;
+        }
+
+        void stored() {
+            recordLatency(System.nanoTime() - start);
+        }
+
+        void checkStored() throws ItemStateException {
+            if (exception instanceof ItemStateException) {
+                throw (ItemStateException) exception;
+            } else if (exception != null) {
+                throw new ItemStateException(
+                        "Failed to store change log", exception);
+            }
+        }
+    }
+}
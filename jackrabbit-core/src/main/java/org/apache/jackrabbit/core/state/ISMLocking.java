@@ -46,12 +46,21 @@ import org.apache.jackrabbit.core.id.ItemId;
  * is not necessary for a holder of a read lock to be able to upgrade to a
  * write lock.</li>
  * </ul>
+ * <p>
+ * An implementation that lets writers with disjoint change logs hold their
+ * write locks concurrently may find that the holders of two write locks
+ * wait to read each other's items. As none of them can ever proceed, the
+ * read lock is then refused with a {@link DeadlockException}, after which
+ * the holder needs to release its write lock and start over.
  */
 public interface ISMLocking {
 
     /**
      * Acquire a read lock for the given item <code>id</code>.
      * @param id an item id.
+     * @throws DeadlockException if the current thread holds a write lock
+     *                           and waiting for the read lock would never
+     *                           return
      */
     ReadLock acquireReadLock(ItemId id) throws InterruptedException;
 
@@ -92,4 +101,33 @@ public interface ISMLocking {
 
     }
 
+    /**
+     * Thrown when the holder of a write lock requests a read lock that can
+     * not be granted until another write lock is released, whose holder in
+     * turn waits for the first one.
+     *
+     * @since Jackrabbit 2.14
+     */
+    public class DeadlockException extends RuntimeException {
+
+        private static final long serialVersionUID = 7165262339573398539L;
+
+        private final ItemId id;
+
+        public DeadlockException(ItemId id) {
+            super("Deadlock while acquiring read lock for " + id);
+            this.id = id;
+        }
+
+        /**
+         * Returns the id of the item whose read lock was refused.
+         *
+         * @return item id
+         */
+        public ItemId getItemId() {
+            return id;
+        }
+
+    }
+
 }
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.state;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jackrabbit.stats.RepositoryStatisticsImpl;
+
+/**
+ * Records durations in a histogram of named repository statistics
+ * counters. The counter <code>&lt;prefix&gt;_&lt;n&gt;MS</code> counts the
+ * durations of at most <i>n</i> milliseconds, for powers of two up to 1024,
+ * and <code>&lt;prefix&gt;_OVER_1024MS</code> counts the longer ones.
+ */
+class LatencyHistogram {
+
+    /**
+     * Upper bounds of the buckets, in milliseconds.
+     */
+    private static final long[] BOUNDS =
+        { 1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024 };
+
+    private final AtomicLong[] counters;
+
+    /**
+     * Creates a histogram whose counters are named after the given prefix.
+     *
+     * @param stats repository statistics
+     * @param prefix prefix of the counter names
+     */
+    LatencyHistogram(RepositoryStatisticsImpl stats, String prefix) {
+        counters = new AtomicLong[BOUNDS.length + 1];
+        for (int i = 0; i < BOUNDS.length; i++) {
+            counters[i] = stats.getCounter(
+                    prefix + "_" + BOUNDS[i] + "MS", true);
+        }
+        counters[BOUNDS.length] = stats.getCounter(
+                prefix + "_OVER_" + BOUNDS[BOUNDS.length - 1] + "MS", true);
+    }
+
+    /**
+     * Records the given duration.
+     *
+     * @param nanos duration in nanoseconds
+     */
+    void record(long nanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < BOUNDS.length && millis > BOUNDS[bucket]) {
+            bucket++;
+        }
+        counters[bucket].incrementAndGet();
+    }
+
+}
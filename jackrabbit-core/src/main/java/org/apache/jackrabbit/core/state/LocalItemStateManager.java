@@ -16,6 +16,10 @@
  */
 package org.apache.jackrabbit.core.state;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 import javax.jcr.InvalidItemStateException;
 import javax.jcr.ReferentialIntegrityException;
 import javax.jcr.RepositoryException;
@@ -205,6 +209,24 @@ public class LocalItemStateManager
         return sharedStateMgr.hasItemState(id);
     }
 
+    /**
+     * Prefetches the identified node states that are neither cached nor
+     * modified by this manager from the shared item state manager.
+     *
+     * @param ids node ids
+     * @see SharedItemStateManager#prefetch(Collection)
+     */
+    public void prefetch(Collection<NodeId> ids) {
+        List<NodeId> missing = new ArrayList<NodeId>();
+        for (NodeId id : ids) {
+            if (!cache.isCached(id)
+                    && !changeLog.has(id) && !changeLog.deleted(id)) {
+                missing.add(id);
+            }
+        }
+        sharedStateMgr.prefetch(missing);
+    }
+
     /**
      * {@inheritDoc}
      */
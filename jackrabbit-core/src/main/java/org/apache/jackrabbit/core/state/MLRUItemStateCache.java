@@ -21,6 +21,7 @@ import java.util.List;
 import org.apache.commons.collections.map.LinkedMap;
 import org.apache.jackrabbit.core.cache.CacheManager;
 import org.apache.jackrabbit.core.cache.ConcurrentCache;
+import org.apache.jackrabbit.core.cache.KeyValueCache;
 import org.apache.jackrabbit.core.id.ItemId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,10 +47,23 @@ public class MLRUItemStateCache implements ItemStateCache {
     /** the number of writes */
     private volatile long numWrites = 0;
 
-    private final ConcurrentCache<ItemId, ItemState> cache =
-        new ConcurrentCache<ItemId, ItemState>(MLRUItemStateCache.class.getSimpleName());
+    private final KeyValueCache<ItemId, ItemState> cache;
 
     public MLRUItemStateCache(CacheManager cacheMgr) {
+        this(cacheMgr, new ConcurrentCache<ItemId, ItemState>(
+                MLRUItemStateCache.class.getSimpleName()));
+    }
+
+    /**
+     * Creates an item state cache that is backed by the given cache.
+     *
+     * @param cacheMgr the cache manager
+     * @param cache    the cache that holds the item states
+     * @since Jackrabbit 2.14
+     */
+    protected MLRUItemStateCache(
+            CacheManager cacheMgr, KeyValueCache<ItemId, ItemState> cache) {
+        this.cache = cache;
         cache.setMaxMemorySize(DEFAULT_MAX_MEM);
         cache.setAccessListener(cacheMgr);
         cacheMgr.add(cache);
@@ -54,9 +54,11 @@ public class NodeState extends ItemState {
     private NodeId parentId;
 
     /**
-     * insertion-ordered collection of ChildNodeEntry objects
+     * insertion-ordered collection of ChildNodeEntry objects. Volatile, as
+     * {@link #compact()} replaces the entries of states that are read
+     * without holding their monitor.
      */
-    private ChildNodeEntries childNodeEntries = new ChildNodeEntries();
+    private volatile ChildNodeEntries childNodeEntries = new ChildNodeEntries();
 
     /**
      * set of property names (Name objects)
@@ -123,7 +125,9 @@ public class NodeState extends ItemState {
             nodeTypeName = nodeState.nodeTypeName;
             mixinTypeNames = (NameSet) nodeState.mixinTypeNames.clone();
             propertyNames = (NameSet) nodeState.propertyNames.clone();
+            ChildNodeEntries previous = childNodeEntries;
             childNodeEntries = (ChildNodeEntries) nodeState.childNodeEntries.clone();
+            previous.replacedBy(childNodeEntries);
             if (syncModCount) {
                 setModCount(state.getModCount());
             }
@@ -225,7 +229,7 @@ public class NodeState extends ItemState {
      *         the specified <code>name</code>.
      */
     public synchronized boolean hasChildNodeEntry(Name name) {
-        return !childNodeEntries.get(name).isEmpty();
+        return childNodeEntries.contains(name);
     }
 
     /**
@@ -237,7 +241,7 @@ public class NodeState extends ItemState {
      *         the specified <code>name</code>.
      */
     public synchronized boolean hasChildNodeEntry(NodeId id) {
-        return childNodeEntries.get(id) != null;
+        return childNodeEntries.contains(id);
     }
 
     /**
@@ -250,7 +254,7 @@ public class NodeState extends ItemState {
      *         the specified <code>name</code> and <code>index</code>.
      */
     public synchronized boolean hasChildNodeEntry(Name name, int index) {
-        return childNodeEntries.get(name, index) != null;
+        return childNodeEntries.contains(name, index);
     }
 
     /**
@@ -403,7 +407,7 @@ public class NodeState extends ItemState {
 
             ChildNodeEntries entries = new ChildNodeEntries();
             for (ChildNodeEntry entry : childNodeEntries.list()) {
-                if (entry.getId() == oldId) {
+                if (entry.getId().equals(oldId)) {
                     entries.add(newName, newId);
                 } else {
                     entries.add(entry.getName(), entry.getId());
@@ -476,6 +480,33 @@ public class NodeState extends ItemState {
         notifyNodesReplaced();
     }
 
+    /**
+     * Sets the child node entries of this node state to the entries of the
+     * given pages, which must be the current entries of this node state.
+     * The entries are loaded from the pages when they are accessed and can
+     * be reclaimed while they are not used, so that a node state with many
+     * child nodes does not need to hold all of them. Listeners are not
+     * notified.
+     *
+     * @param pages the pages of the child node entries
+     * @since Jackrabbit 2.14
+     */
+    public synchronized void setChildNodeEntryPages(ChildNodeEntryPages pages) {
+        ChildNodeEntries previous = childNodeEntries;
+        childNodeEntries = new ChildNodeEntries(pages);
+        previous.replacedBy(childNodeEntries);
+    }
+
+    /**
+     * Packs the child node entries of this node into their compact form.
+     * Used for node states that are held by the shared item state caches.
+     * The entries are expanded again when they are next modified, which
+     * also holds for the copies of this state made by the transient layers.
+     */
+    public synchronized void compact() {
+        childNodeEntries = childNodeEntries.pack();
+    }
+
     /**
      * Returns the names of this node's properties as a set of
      * <code>QNames</code> objects.
@@ -39,6 +39,7 @@ import org.apache.jackrabbit.core.id.ItemId;
 import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.id.PropertyId;
 import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.stats.RepositoryStatisticsImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -91,10 +92,24 @@ public class SessionItemStateManager
      */
     public SessionItemStateManager(
             NodeId rootNodeId, LocalItemStateManager stateMgr) {
+        this(rootNodeId, stateMgr, null);
+    }
+
+    /**
+     * Creates a new <code>SessionItemStateManager</code> instance whose
+     * hierarchy manager records its cache hit rate in the given statistics.
+     *
+     * @param rootNodeId the root node id
+     * @param stateMgr the local item state manager
+     * @param stats repository statistics, or <code>null</code>
+     */
+    public SessionItemStateManager(
+            NodeId rootNodeId, LocalItemStateManager stateMgr,
+            RepositoryStatisticsImpl stats) {
         this.stateMgr = stateMgr;
 
         // create hierarchy manager that uses both transient and persistent state
-        hierMgr = new CachingHierarchyManager(rootNodeId, this);
+        hierMgr = new CachingHierarchyManager(rootNodeId, this, stats);
         addListener(hierMgr);
     }
 
@@ -182,6 +197,23 @@ public class SessionItemStateManager
         return stateMgr.hasItemState(id);
     }
 
+    /**
+     * Prefetches the identified node states that have no transient state
+     * in this session.
+     *
+     * @param ids node ids
+     * @see SharedItemStateManager#prefetch(Collection)
+     */
+    public void prefetch(Collection<NodeId> ids) {
+        List<NodeId> persistent = new ArrayList<NodeId>();
+        for (NodeId id : ids) {
+            if (!transientStore.containsKey(id) && !atticStore.containsKey(id)) {
+                persistent.add(id);
+            }
+        }
+        stateMgr.prefetch(persistent);
+    }
+
     /**
      * {@inheritDoc}
      */
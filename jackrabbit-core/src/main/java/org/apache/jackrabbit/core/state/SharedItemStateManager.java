@@ -16,6 +16,8 @@
  */
 package org.apache.jackrabbit.core.state;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -41,12 +43,14 @@ import org.apache.jackrabbit.core.observation.EventState;
 import org.apache.jackrabbit.core.observation.EventStateCollection;
 import org.apache.jackrabbit.core.observation.EventStateCollectionFactory;
 import org.apache.jackrabbit.core.persistence.CachingPersistenceManager;
+import org.apache.jackrabbit.core.persistence.PrefetchingPersistenceManager;
 import org.apache.jackrabbit.core.persistence.PersistenceManager;
 import org.apache.jackrabbit.core.value.InternalValue;
 import org.apache.jackrabbit.core.virtual.VirtualItemStateProvider;
 import org.apache.jackrabbit.spi.Name;
 import org.apache.jackrabbit.spi.QNodeDefinition;
 import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.stats.RepositoryStatisticsImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -190,6 +194,12 @@ public class SharedItemStateManager
 
     private final NodeIdFactory nodeIdFactory;
 
+    /**
+     * Group commit of concurrently ending updates, or <code>null</code> if
+     * every update is stored in a persistence manager transaction of its own.
+     */
+    private GroupCommit groupCommit;
+
     /**
      * Creates a new <code>SharedItemStateManager</code> instance.
      *
@@ -239,6 +249,21 @@ public class SharedItemStateManager
         this.eventChannel = eventChannel;
     }
 
+    /**
+     * Enables the group commit mode, in which the change logs of updates
+     * that end concurrently are stored in a single persistence manager
+     * transaction. Each update still sees its own outcome and dispatches
+     * its own events. Updates only end concurrently if the
+     * {@link ISMLocking locking strategy} lets non-conflicting updates hold
+     * write locks at the same time; otherwise each group holds one update.
+     *
+     * @param stats repository statistics to record group sizes and commit
+     *              latencies in
+     */
+    public void enableGroupCommit(RepositoryStatisticsImpl stats) {
+        groupCommit = new GroupCommit(persistMgr, stats);
+    }
+
     /**
      * Sets a new locking strategy.
      *
@@ -459,6 +484,36 @@ public class SharedItemStateManager
     }
 
     //-------------------------------------------------< misc. public methods >
+
+    /**
+     * Loads the identified node states into the cache of the persistence
+     * manager, if it is a {@link PrefetchingPersistenceManager}, so that
+     * they can later be retrieved without further round trips to the
+     * underlying storage. Node states that are already cached by this
+     * manager are skipped. Prefetching is only an optimization, so any
+     * errors are logged and otherwise ignored.
+     *
+     * @param ids node ids, typically the child nodes of a node
+     */
+    public void prefetch(Collection<NodeId> ids) {
+        if (!(persistMgr instanceof PrefetchingPersistenceManager)) {
+            return;
+        }
+        List<NodeId> missing = new ArrayList<NodeId>();
+        for (NodeId id : ids) {
+            if (!cache.isCached(id)) {
+                missing.add(id);
+            }
+        }
+        if (missing.size() > 1) {
+            try {
+                ((PrefetchingPersistenceManager) persistMgr).prefetch(missing);
+            } catch (ItemStateException e) {
+                log.warn("Unable to prefetch " + missing.size()
+                        + " node states", e);
+            }
+        }
+    }
     /**
      * Disposes this <code>SharedItemStateManager</code> and frees resources.
      */
@@ -565,8 +620,51 @@ public class SharedItemStateManager
          * If this method succeeds, a write lock will have been acquired on the
          * item state manager and either {@link #end()} or {@link #cancel()} has
          * to be called in order to release it.
+         * <p>
+         * If the read lock of an item is refused because another update
+         * waits for this one, the update is cancelled and started over
+         * once the other update has released its write lock.
          */
         public void begin() throws ItemStateException, ReferentialIntegrityException {
+            // the node references are updated in the local change log
+            List<NodeReferences> refs = new ArrayList<NodeReferences>();
+            for (NodeReferences r : local.modifiedRefs()) {
+                refs.add(r);
+            }
+            for (;;) {
+                List<NodeReferences> copies = new ArrayList<NodeReferences>();
+                for (NodeReferences r : refs) {
+                    copies.add(copy(r));
+                }
+                try {
+                    tryBegin();
+                    return;
+                } catch (ISMLocking.DeadlockException e) {
+                    log.debug("Restarting update: {}", e.getMessage());
+                    List<NodeId> targets = new ArrayList<NodeId>();
+                    for (NodeReferences r : local.modifiedRefs()) {
+                        targets.add(r.getTargetId());
+                    }
+                    for (NodeId target : targets) {
+                        local.removeReferencesEntry(target);
+                    }
+                    for (NodeReferences r : copies) {
+                        local.modified(r);
+                    }
+                    refs = copies;
+                    // wait for the other update to release its write lock
+                    acquireReadLock(e.getItemId()).release();
+                }
+            }
+        }
+
+        /**
+         * Tries to begin the update operation.
+         *
+         * @throws ISMLocking.DeadlockException if the update has been
+         *         cancelled to let another update proceed
+         */
+        private void tryBegin() throws ItemStateException, ReferentialIntegrityException {
             shared = new ChangeLog();
 
             virtualNodeReferences = new ChangeLog[virtualProviders.length];
@@ -654,6 +752,8 @@ public class SharedItemStateManager
                                                         parent.getMixinTypeNames());
                                                 QNodeDefinition def = ent.getApplicableChildNodeDef(name, ns.getNodeTypeName(), ntReg);
                                                 return def != null ? def.allowsSameNameSiblings() : false;
+                                            } catch (ISMLocking.DeadlockException e) {
+                                                throw e;
                                             } catch (Exception e) {
                                                 log.warn("Unable to get node definition", e);
                                                 return false;
@@ -769,6 +869,7 @@ public class SharedItemStateManager
 
                 /* Push all changes from the local items to the shared items */
                 local.push();
+                compact(shared);
 
                 succeeded = true;
 
@@ -792,7 +893,11 @@ public class SharedItemStateManager
             try {
                 /* Store items in the underlying persistence manager */
                 long t0 = System.currentTimeMillis();
-                persistMgr.store(shared);
+                if (groupCommit != null) {
+                    groupCommit.store(shared);
+                } else {
+                    persistMgr.store(shared);
+                }
                 setAttribute(ATTRIBUTE_UPDATE_SIZE, shared.getUpdateSize());
                 succeeded = true;
                 if (log.isDebugEnabled()) {
@@ -1796,6 +1901,9 @@ public class SharedItemStateManager
             state = loadItemState(id);
             state.setStatus(ItemState.STATUS_EXISTING);
             state.setContainer(this);
+            if (state.isNode()) {
+                ((NodeState) state).compact();
+            }
 
             // put it in cache
             cache.cache(state);
@@ -1862,6 +1970,37 @@ public class SharedItemStateManager
         return state;
     }
 
+    /**
+     * Packs the child node entries of the node states that an update added
+     * to or modified in the shared layer.
+     *
+     * @param changes shared change log
+     */
+    private static void compact(ChangeLog changes) {
+        for (ItemState state : changes.addedStates()) {
+            if (state.isNode()) {
+                ((NodeState) state).compact();
+            }
+        }
+        for (ItemState state : changes.modifiedStates()) {
+            if (state.isNode()) {
+                ((NodeState) state).compact();
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the given node references.
+     *
+     * @param refs node references
+     * @return copy of the node references
+     */
+    private static NodeReferences copy(NodeReferences refs) {
+        NodeReferences copy = new NodeReferences(refs.getTargetId());
+        copy.addAllReferences(refs.getReferences());
+        return copy;
+    }
+
     /**
      * Load item state from persistent storage.
      *
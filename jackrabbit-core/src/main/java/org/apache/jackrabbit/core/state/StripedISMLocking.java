@@ -0,0 +1,457 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.state;
+
+import static org.apache.jackrabbit.data.core.TransactionContext.getCurrentThreadId;
+import static org.apache.jackrabbit.data.core.TransactionContext.isSameThreadId;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.jackrabbit.core.id.ItemId;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.id.PropertyId;
+
+/**
+ * Item state locking strategy that splits the workspace into a fixed number
+ * of lock stripes. An item is mapped to a stripe by the hash code of its
+ * node id, or of its parent node id for a property, so that a node and its
+ * properties always share a stripe. Node references share the stripe of
+ * their target node.
+ * <p>
+ * A read lock only synchronizes on the stripe of the requested item. A write
+ * lock is taken on the stripes of all items contained in the change log, so
+ * that writers with non-overlapping change logs may proceed concurrently.
+ * The stripes of a write lock are acquired all at once: a writer that finds
+ * one of its stripes in use releases the stripes it already holds before it
+ * waits, which means that a waiting writer never blocks anybody else.
+ * <p>
+ * Like {@link DefaultISMLocking}, this strategy gives preference to writers:
+ * new readers of a stripe wait while a writer waits for it, unless the reader
+ * shares the thread id with the holder of a (possibly downgraded) write lock.
+ * <p>
+ * The holder of a write lock may need to read items that are write locked
+ * by another, concurrent writer, and wait for it to finish. A read lock is
+ * never granted across the write lock of another writer. If that writer in
+ * turn waits, directly or through other writers, to read an item of the
+ * first one, the read lock is refused with an
+ * {@link ISMLocking.DeadlockException} to the writer that closes the cycle,
+ * which then releases its write lock and starts over. Note that a nested
+ * write lock requested by the holder of another write lock is not covered
+ * by this detection.
+ * <p>
+ * This class can be configured with the following parameter:
+ * <ul>
+ * <li>&lt;param name="{@link #setStripes(int) stripes}" value="64"/&gt;
+ * </ul>
+ */
+public class StripedISMLocking implements ISMLocking {
+
+    /**
+     * Default number of lock stripes.
+     */
+    private static final int DEFAULT_STRIPES = 64;
+
+    /**
+     * The lock stripes. The length of the array is a power of two.
+     */
+    private Stripe[] stripes = createStripes(DEFAULT_STRIPES);
+
+    /**
+     * The holders of write locks and downgraded write locks, keyed by their
+     * thread id. Only modified while synchronized on the map.
+     */
+    private final Map<Object, Owner> owners =
+        new ConcurrentHashMap<Object, Owner>();
+
+    /**
+     * Returns the number of lock stripes.
+     *
+     * @return number of lock stripes
+     */
+    public int getStripes() {
+        return stripes.length;
+    }
+
+    /**
+     * Sets the number of lock stripes. The number is rounded up to the next
+     * power of two. Must be called before any lock is acquired.
+     *
+     * @param stripes number of lock stripes
+     */
+    public void setStripes(int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException(
+                    "Invalid number of lock stripes: " + stripes);
+        }
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        this.stripes = createStripes(size);
+    }
+
+    /**
+     * Returns the read lock once the stripe of the given item is neither
+     * write locked by another thread id nor wanted by a waiting writer.
+     *
+     * @throws ISMLocking.DeadlockException if the current thread holds a
+     *         write lock and waits for a writer that waits for it
+     */
+    public ReadLock acquireReadLock(ItemId id) throws InterruptedException {
+        Stripe stripe = getStripe(id);
+        Object currentId = getCurrentThreadId();
+        Owner owner = owners.isEmpty() ? null : owners.get(currentId);
+        synchronized (stripe) {
+            if (stripe.blocksReader(currentId, owner)) {
+                if (owner != null) {
+                    owner.waitingFor = stripe;
+                }
+                try {
+                    while (stripe.blocksReader(currentId, owner)) {
+                        if (isDeadlocked(owner, stripe)) {
+                            throw new DeadlockException(id);
+                        }
+                        stripe.wait();
+                    }
+                } finally {
+                    if (owner != null) {
+                        owner.waitingFor = null;
+                    }
+                }
+            }
+            stripe.readerCount++;
+        }
+        return new ReadLockImpl(stripe);
+    }
+
+    /**
+     * Returns the write lock once all stripes of the items in the given
+     * change log are available at the same time. A <code>null</code> change
+     * log locks all stripes.
+     */
+    public WriteLock acquireWriteLock(ChangeLog changeLog)
+            throws InterruptedException {
+        Stripe[] locked = getStripes(changeLog);
+        Owner owner = acquireOwner(getCurrentThreadId());
+        boolean acquired = false;
+        try {
+            for (;;) {
+                int n = 0;
+                while (n < locked.length && locked[n].tryWrite(owner)) {
+                    n++;
+                }
+                if (n == locked.length) {
+                    break;
+                }
+                for (int i = 0; i < n; i++) {
+                    locked[i].releaseWrite(false);
+                }
+                locked[n].awaitWritable(owner);
+            }
+            acquired = true;
+        } finally {
+            if (!acquired) {
+                releaseOwner(owner);
+            }
+        }
+        return new WriteLockImpl(owner, locked);
+    }
+
+    //-------------------------------------------------------------< internal >
+
+    /**
+     * Returns the stripe of the given item.
+     *
+     * @param id item id, or <code>null</code>
+     * @return lock stripe
+     */
+    Stripe getStripe(ItemId id) {
+        return stripes[getStripeIndex(id)];
+    }
+
+    private int getStripeIndex(ItemId id) {
+        if (id == null) {
+            return 0;
+        }
+        NodeId nodeId;
+        if (id.denotesNode()) {
+            nodeId = (NodeId) id;
+        } else {
+            nodeId = ((PropertyId) id).getParentId();
+        }
+        int hash = nodeId.hashCode();
+        return (hash ^ (hash >>> 16)) & (stripes.length - 1);
+    }
+
+    /**
+     * Returns the distinct stripes of the items in the given change log,
+     * in stripe order.
+     *
+     * @param changeLog change log, or <code>null</code>
+     * @return lock stripes
+     */
+    private Stripe[] getStripes(ChangeLog changeLog) {
+        if (changeLog == null) {
+            return stripes.clone();
+        }
+        BitSet indexes = new BitSet(stripes.length);
+        for (ItemState state : changeLog.addedStates()) {
+            indexes.set(getStripeIndex(state.getId()));
+        }
+        for (ItemState state : changeLog.modifiedStates()) {
+            indexes.set(getStripeIndex(state.getId()));
+        }
+        for (ItemState state : changeLog.deletedStates()) {
+            indexes.set(getStripeIndex(state.getId()));
+        }
+        for (NodeReferences refs : changeLog.modifiedRefs()) {
+            indexes.set(getStripeIndex(refs.getTargetId()));
+        }
+        Stripe[] locked = new Stripe[indexes.cardinality()];
+        int n = 0;
+        for (int i = indexes.nextSetBit(0); i >= 0; i = indexes.nextSetBit(i + 1)) {
+            locked[n++] = stripes[i];
+        }
+        return locked;
+    }
+
+    /**
+     * Checks whether the given owner waits for the given stripe as part of a
+     * cycle of write lock holders that wait to read each other's items.
+     * As every owner sets the stripe it waits for before looking for a
+     * cycle, at least the last owner to join a cycle finds it.
+     *
+     * @param owner the waiting owner, or <code>null</code>
+     * @param stripe the stripe the owner waits for
+     * @return <code>true</code> if waiting would deadlock
+     */
+    private boolean isDeadlocked(Owner owner, Stripe stripe) {
+        if (owner == null) {
+            return false;
+        }
+        Owner other = stripe.writer;
+        for (int i = 0; other != null && i <= stripes.length; i++) {
+            if (other == owner) {
+                return true;
+            }
+            Stripe waitingFor = other.waitingFor;
+            if (waitingFor == null || waitingFor.writeCount == 0) {
+                return false;
+            }
+            other = waitingFor.writer;
+        }
+        return false;
+    }
+
+    private Owner acquireOwner(Object id) {
+        synchronized (owners) {
+            Owner owner = owners.get(id);
+            if (owner == null) {
+                owner = new Owner(id);
+                owners.put(id, owner);
+            }
+            owner.locks++;
+            return owner;
+        }
+    }
+
+    private void releaseOwner(Owner owner) {
+        synchronized (owners) {
+            if (--owner.locks == 0) {
+                owners.remove(owner.id);
+            }
+        }
+    }
+
+    private static Stripe[] createStripes(int size) {
+        Stripe[] stripes = new Stripe[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new Stripe();
+        }
+        return stripes;
+    }
+
+    /**
+     * A lock stripe. All fields are guarded by the stripe itself, the
+     * {@link #writer} and {@link #writeCount} are also read without it
+     * when looking for deadlocks.
+     */
+    static final class Stripe {
+
+        /**
+         * The holder of the write locks or downgraded write locks on this
+         * stripe, or <code>null</code> if there is none.
+         */
+        private volatile Owner writer;
+
+        /**
+         * Number of write locks held on this stripe by the {@link #writer}.
+         */
+        private volatile int writeCount;
+
+        /**
+         * Number of downgraded write locks held on this stripe by the
+         * {@link #writer}.
+         */
+        private int downgradeCount;
+
+        /**
+         * Number of read locks held on this stripe.
+         */
+        private int readerCount;
+
+        /**
+         * Number of writers waiting for this stripe.
+         */
+        private int writersWaiting;
+
+        private boolean blocksReader(Object currentId, Owner owner) {
+            if (writer != null) {
+                return writeCount > 0 && !isSameThreadId(writer.id, currentId);
+            } else {
+                return writersWaiting > 0 && owner == null;
+            }
+        }
+
+        private boolean isWritable(Owner owner) {
+            return writer == null ? readerCount == 0 : writer == owner;
+        }
+
+        private synchronized boolean tryWrite(Owner owner) {
+            if (isWritable(owner)) {
+                writer = owner;
+                writeCount++;
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        private synchronized void awaitWritable(Owner owner)
+                throws InterruptedException {
+            writersWaiting++;
+            try {
+                while (!isWritable(owner)) {
+                    wait();
+                }
+            } finally {
+                if (--writersWaiting == 0) {
+                    notifyAll();
+                }
+            }
+        }
+
+        private synchronized void releaseWrite(boolean downgrade) {
+            writeCount--;
+            if (downgrade) {
+                downgradeCount++;
+            } else if (writeCount == 0 && downgradeCount == 0) {
+                writer = null;
+            }
+            notifyAll();
+        }
+
+        private synchronized void releaseDowngrade() {
+            if (--downgradeCount == 0 && writeCount == 0) {
+                writer = null;
+            }
+            notifyAll();
+        }
+
+        private synchronized void releaseRead() {
+            if (--readerCount == 0) {
+                notifyAll();
+            }
+        }
+
+    }
+
+    /**
+     * The holder of write locks for a given thread id.
+     */
+    private static final class Owner {
+
+        private final Object id;
+
+        /**
+         * Number of write locks and downgraded write locks held, guarded
+         * by the {@link StripedISMLocking#owners} map.
+         */
+        private int locks;
+
+        /**
+         * The stripe this owner waits to read, or <code>null</code>.
+         */
+        private volatile Stripe waitingFor;
+
+        private Owner(Object id) {
+            this.id = id;
+        }
+
+    }
+
+    private static final class ReadLockImpl implements ReadLock {
+
+        private final Stripe stripe;
+
+        private ReadLockImpl(Stripe stripe) {
+            this.stripe = stripe;
+        }
+
+        public void release() {
+            stripe.releaseRead();
+        }
+
+    }
+
+    private final class WriteLockImpl implements WriteLock {
+
+        private final Owner owner;
+
+        private final Stripe[] locked;
+
+        private WriteLockImpl(Owner owner, Stripe[] locked) {
+            this.owner = owner;
+            this.locked = locked;
+        }
+
+        public void release() {
+            for (Stripe stripe : locked) {
+                stripe.releaseWrite(false);
+            }
+            releaseOwner(owner);
+        }
+
+        public ReadLock downgrade() {
+            for (Stripe stripe : locked) {
+                stripe.releaseWrite(true);
+            }
+            return new ReadLock() {
+                public void release() {
+                    for (Stripe stripe : locked) {
+                        stripe.releaseDowngrade();
+                    }
+                    releaseOwner(owner);
+                }
+            };
+        }
+
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.state;
+
+import org.apache.jackrabbit.core.id.ItemId;
+import org.apache.jackrabbit.stats.RepositoryStatisticsImpl;
+
+/**
+ * Item state locking strategy that records the time spent waiting for and
+ * holding the locks of another locking strategy. The durations are recorded
+ * per lock mode in the histograms named <code>ISM_LOCKING_READ_WAIT</code>,
+ * <code>ISM_LOCKING_READ_HOLD</code>, <code>ISM_LOCKING_WRITE_WAIT</code>
+ * and <code>ISM_LOCKING_WRITE_HOLD</code>, see {@link LatencyHistogram} for
+ * the counter names. The time a downgraded write lock is held counts as
+ * read hold time.
+ *
+ * @since Jackrabbit 2.14
+ */
+public class TimedISMLocking implements ISMLocking {
+
+    private final ISMLocking locking;
+
+    private final LatencyHistogram readWait;
+
+    private final LatencyHistogram readHold;
+
+    private final LatencyHistogram writeWait;
+
+    private final LatencyHistogram writeHold;
+
+    /**
+     * Creates a locking strategy that records the lock times of the given
+     * one in the given repository statistics.
+     *
+     * @param locking the locking strategy to time
+     * @param stats repository statistics
+     */
+    public TimedISMLocking(ISMLocking locking, RepositoryStatisticsImpl stats) {
+        this.locking = locking;
+        this.readWait = new LatencyHistogram(stats, "ISM_LOCKING_READ_WAIT");
+        this.readHold = new LatencyHistogram(stats, "ISM_LOCKING_READ_HOLD");
+        this.writeWait = new LatencyHistogram(stats, "ISM_LOCKING_WRITE_WAIT");
+        this.writeHold = new LatencyHistogram(stats, "ISM_LOCKING_WRITE_HOLD");
+    }
+
+    public ReadLock acquireReadLock(ItemId id) throws InterruptedException {
+        long start = System.nanoTime();
+        ReadLock lock = locking.acquireReadLock(id);
+        long now = System.nanoTime();
+        readWait.record(now - start);
+        return new TimedReadLock(lock, now);
+    }
+
+    public WriteLock acquireWriteLock(ChangeLog changeLog)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        final WriteLock lock = locking.acquireWriteLock(changeLog);
+        final long now = System.nanoTime();
+        writeWait.record(now - start);
+        return new WriteLock() {
+            public void release() {
+                lock.release();
+                writeHold.record(System.nanoTime() - now);
+            }
+            public ReadLock downgrade() {
+                ReadLock readLock = lock.downgrade();
+                long downgraded = System.nanoTime();
+                writeHold.record(downgraded - now);
+                return new TimedReadLock(readLock, downgraded);
+            }
+        };
+    }
+
+    private final class TimedReadLock implements ReadLock {
+
+        private final ReadLock lock;
+
+        private final long start;
+
+        private TimedReadLock(ReadLock lock, long start) {
+            this.lock = lock;
+            this.start = start;
+        }
+
+        public void release() {
+            lock.release();
+            readHold.record(System.nanoTime() - start);
+        }
+
+    }
+
+}
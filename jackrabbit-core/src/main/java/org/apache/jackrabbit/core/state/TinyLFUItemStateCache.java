@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.state;
+
+import org.apache.jackrabbit.core.cache.CacheManager;
+import org.apache.jackrabbit.core.cache.TinyLFUCache;
+import org.apache.jackrabbit.core.id.ItemId;
+
+/**
+ * An <code>ItemStateCache</code> implementation that internally uses a
+ * {@link TinyLFUCache} to maintain a cache of <code>ItemState</code> objects.
+ * Unlike the {@link MLRUItemStateCache} it extends, cache hits do not acquire
+ * any locks and entries that are only accessed once, for example during a
+ * traversal of the whole repository, do not displace frequently used
+ * entries. The cache uses a rough estimate of the memory consumption of the
+ * cached item states for calculating the maximum number of entries.
+ */
+public class TinyLFUItemStateCache extends MLRUItemStateCache {
+
+    public TinyLFUItemStateCache(CacheManager cacheMgr) {
+        super(cacheMgr, new TinyLFUCache<ItemId, ItemState>(
+                TinyLFUItemStateCache.class.getSimpleName()));
+    }
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A reentrant read-write lock for read-mostly data that is split into a
+ * number of stripes. A reader only locks the stripe of the current thread,
+ * so that concurrent readers do not contend on a single lock. A writer
+ * locks all stripes, in order.
+ * <p>
+ * As with {@link ReentrantReadWriteLock}, a thread holding the read lock
+ * must not request the write lock, and conditions are not supported.
+ *
+ * @since Jackrabbit 2.14
+ */
+public class StripedReadWriteLock implements ReadWriteLock {
+
+    /**
+     * Default number of stripes: the number of processors, rounded up to
+     * the next power of two and limited to 16.
+     */
+    private static final int DEFAULT_STRIPES;
+
+    static {
+        int processors = Math.min(
+                Runtime.getRuntime().availableProcessors(), 16);
+        int stripes = 1;
+        while (stripes < processors) {
+            stripes <<= 1;
+        }
+        DEFAULT_STRIPES = stripes;
+    }
+
+    private final ReentrantReadWriteLock[] stripes;
+
+    private final Lock readLock = new ReadLock();
+
+    private final Lock writeLock = new WriteLock();
+
+    /**
+     * Creates a lock with the default number of stripes.
+     */
+    public StripedReadWriteLock() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * Creates a lock with the given number of stripes, rounded up to the
+     * next power of two.
+     *
+     * @param stripes number of stripes
+     */
+    public StripedReadWriteLock(int stripes) {
+        int size = 1;
+        while (size < stripes) {
+            size <<= 1;
+        }
+        this.stripes = new ReentrantReadWriteLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    public Lock readLock() {
+        return readLock;
+    }
+
+    public Lock writeLock() {
+        return writeLock;
+    }
+
+    /**
+     * Returns the read lock of the stripe of the current thread.
+     *
+     * @return read lock
+     */
+    private Lock getReadLock() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32));
+        hash ^= hash >>> 16;
+        return stripes[hash & (stripes.length - 1)].readLock();
+    }
+
+    private void unlockWrite(int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            stripes[i].writeLock().unlock();
+        }
+    }
+
+    private final class ReadLock implements Lock {
+
+        public void lock() {
+            getReadLock().lock();
+        }
+
+        public void lockInterruptibly() throws InterruptedException {
+            getReadLock().lockInterruptibly();
+        }
+
+        public boolean tryLock() {
+            return getReadLock().tryLock();
+        }
+
+        public boolean tryLock(long time, TimeUnit unit)
+                throws InterruptedException {
+            return getReadLock().tryLock(time, unit);
+        }
+
+        public void unlock() {
+            getReadLock().unlock();
+        }
+
+        public Condition newCondition() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+    private final class WriteLock implements Lock {
+
+        public void lock() {
+            for (ReentrantReadWriteLock stripe : stripes) {
+                stripe.writeLock().lock();
+            }
+        }
+
+        public void lockInterruptibly() throws InterruptedException {
+            int n = 0;
+            try {
+                while (n < stripes.length) {
+                    stripes[n].writeLock().lockInterruptibly();
+                    n++;
+                }
+            } finally {
+                if (n < stripes.length) {
+                    unlockWrite(n);
+                }
+            }
+        }
+
+        public boolean tryLock() {
+            for (int n = 0; n < stripes.length; n++) {
+                if (!stripes[n].writeLock().tryLock()) {
+                    unlockWrite(n);
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public boolean tryLock(long time, TimeUnit unit)
+                throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(time);
+            int n = 0;
+            try {
+                while (n < stripes.length && stripes[n].writeLock().tryLock(
+                        deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    n++;
+                }
+            } finally {
+                if (n < stripes.length) {
+                    unlockWrite(n);
+                }
+            }
+            return n == stripes.length;
+        }
+
+        public void unlock() {
+            unlockWrite(stripes.length);
+        }
+
+        public Condition newCondition() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+}
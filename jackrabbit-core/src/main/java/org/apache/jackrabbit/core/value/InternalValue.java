@@ -411,6 +411,17 @@ public class InternalValue extends AbstractQValue {
         return new InternalValue(getBLOBFileValue(store, id));
     }
 
+    /**
+     * Create a binary object for a record in the data store.
+     *
+     * @param store the data store
+     * @param identifier the identifier of the record
+     * @return the value
+     */
+    public static InternalValue create(DataStore store, DataIdentifier identifier) {
+        return new InternalValue(BLOBInDataStore.getInstance(store, identifier));
+    }
+
     /**
      * @param value
      * @return the created value
@@ -644,6 +655,19 @@ public class InternalValue extends AbstractQValue {
         return val instanceof BLOBInDataStore;
     }
 
+    /**
+     * Returns the data store identifier of a binary value.
+     *
+     * @return the identifier, or null if this is not a binary value
+     *         in the data store
+     */
+    public DataIdentifier getDataIdentifier() {
+        if (type == PropertyType.BINARY) {
+            return getBLOBFileValue().getDataIdentifier();
+        }
+        return null;
+    }
+
     //-------------------------------------------------------------< QValue >---
     /**
      * @see org.apache.jackrabbit.spi.QValue#getLength()
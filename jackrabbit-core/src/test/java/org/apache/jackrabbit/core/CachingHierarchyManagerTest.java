@@ -18,9 +18,11 @@ package org.apache.jackrabbit.core;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import junit.framework.TestCase;
 
+import org.apache.jackrabbit.api.stats.RepositoryStatistics.Type;
 import org.apache.jackrabbit.core.id.ItemId;
 import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.id.PropertyId;
@@ -38,6 +40,7 @@ import org.apache.jackrabbit.spi.Path;
 import org.apache.jackrabbit.spi.commons.name.NameConstants;
 import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
 import org.apache.jackrabbit.spi.commons.name.PathFactoryImpl;
+import org.apache.jackrabbit.stats.RepositoryStatisticsImpl;
 
 public class CachingHierarchyManagerTest extends TestCase {
 
@@ -314,6 +317,37 @@ public class CachingHierarchyManagerTest extends TestCase {
         assertEquals(toPath("/a1/b1"), path);
     }
 
+    /**
+     * Verify that lookups are recorded in the repository statistics and
+     * that the estimated memory of the cache stays consistent.
+     */
+    public void testStatistics() throws Exception {
+        RepositoryStatisticsImpl stats = new RepositoryStatisticsImpl();
+        StaticItemStateManager ism = new StaticItemStateManager();
+        cache = new CachingHierarchyManager(ism.getRootNodeId(), ism, stats);
+        cache.enableConsistencyChecks(true);
+        ism.setContainer(cache);
+        NodeState a = ism.addNode(ism.getRoot(), "a");
+        NodeState b = ism.addNode(a, "b");
+        NodeState c = ism.addNode(b, "c");
+        AtomicLong access = stats.getCounter(Type.HIERARCHY_CACHE_ACCESS_COUNTER);
+        AtomicLong miss = stats.getCounter(Type.HIERARCHY_CACHE_MISS_COUNTER);
+
+        cache.getPath(c.getNodeId());
+        long accesses = access.get();
+        long misses = miss.get();
+        assertTrue(misses > 0);
+        assertEquals(toPath("/a/b/c"), cache.getPath(c.getNodeId()));
+        assertEquals(c.getNodeId(), cache.resolveNodePath(toPath("/a/b/c")));
+        assertEquals(accesses + 2, access.get());
+        assertEquals(misses, miss.get());
+
+        ism.renameNode(b, "b1");
+        assertEquals(toPath("/a/b1/c"), cache.getPath(c.getNodeId()));
+        ism.removeNode(b);
+        assertFalse(cache.isCached(c.getNodeId(), null));
+    }
+
     /**
      * Static item state manager, that can be filled programmatically and that
      * keeps a hash map of item states. <code>ItemId</code>s generated by
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jackrabbit.core.id.NodeId;
+
+import junit.framework.TestCase;
+
+/**
+ * Test cases for the {@link TinyLFUCache} class.
+ */
+public class TinyLFUCacheTest extends TestCase {
+
+    public void testPutGetRemove() {
+        TinyLFUCache<NodeId, String> cache =
+            new TinyLFUCache<NodeId, String>("test");
+        cache.setMaxMemorySize(100);
+        NodeId id = NodeId.randomId();
+
+        assertNull(cache.get(id));
+        assertNull(cache.put(id, "a", 10));
+        assertEquals("a", cache.get(id));
+        assertEquals("a", cache.put(id, "b", 20));
+        assertEquals("b", cache.get(id));
+        assertEquals(20, cache.getMemoryUsed());
+        assertEquals(1, cache.getElementCount());
+
+        assertEquals("b", cache.remove(id));
+        assertFalse(cache.containsKey(id));
+        assertTrue(cache.isEmpty());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    /**
+     * Tests that the cache stays within its size limit and that entries
+     * are evicted once the limit is lowered.
+     */
+    public void testSizeLimit() {
+        final List<NodeId> evicted = new ArrayList<NodeId>();
+        TinyLFUCache<NodeId, NodeId> cache =
+            new TinyLFUCache<NodeId, NodeId>("test") {
+                @Override
+                protected void entryEvicted(NodeId key, NodeId value) {
+                    evicted.add(key);
+                }
+            };
+        cache.setMaxMemorySize(500);
+        for (int i = 0; i < 1000; i++) {
+            NodeId id = NodeId.randomId();
+            cache.put(id, id, 1);
+            assertTrue(cache.getMemoryUsed() <= 500);
+        }
+        assertEquals(500, cache.getElementCount());
+        assertEquals(500, evicted.size());
+
+        cache.setMaxMemorySize(100);
+        assertEquals(100, cache.getMemoryUsed());
+        assertEquals(100, cache.getElementCount());
+
+        cache.clear();
+        assertEquals(0, cache.getMemoryUsed());
+        assertEquals(0, cache.getElementCount());
+    }
+
+    /**
+     * Tests that a scan over many entries that are only used once does
+     * not flush a frequently used working set out of the cache. Between
+     * two uses of a hot entry more distinct entries are accessed than fit
+     * into the cache, so a plain LRU cache would miss on every hot access.
+     */
+    public void testScanResistance() {
+        NodeId[] hot = new NodeId[200];
+        for (int i = 0; i < hot.length; i++) {
+            hot[i] = NodeId.randomId();
+        }
+
+        TinyLFUCache<NodeId, NodeId> cache =
+            new TinyLFUCache<NodeId, NodeId>("test");
+        cache.setMaxMemorySize(400);
+
+        int hits = 0;
+        int accesses = 0;
+        for (int i = 0; i < 20000; i++) {
+            NodeId id = hot[i % hot.length];
+            if (cache.get(id) == null) {
+                cache.put(id, id, 1);
+            } else if (i >= 10000) {
+                hits++;
+            }
+            if (i >= 10000) {
+                accesses++;
+            }
+            for (int j = 0; j < 2; j++) {
+                NodeId scan = NodeId.randomId();
+                if (cache.get(scan) == null) {
+                    cache.put(scan, scan, 1);
+                }
+            }
+        }
+
+        assertTrue("hit rate of hot entries only " + hits + "/" + accesses,
+                hits > accesses * 9 / 10);
+        assertTrue(cache.getMemoryUsed() <= 400);
+    }
+
+    /**
+     * Tests concurrent reads and writes on a small cache.
+     */
+    public void testConcurrentAccess() throws Exception {
+        final NodeId[] ids = new NodeId[1000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = NodeId.randomId();
+        }
+        final TinyLFUCache<NodeId, NodeId> cache =
+            new TinyLFUCache<NodeId, NodeId>("test");
+        cache.setMaxMemorySize(ids.length / 4);
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 20000; i++) {
+                        NodeId id = ids[(i * 7 + offset) % ids.length];
+                        NodeId value = cache.get(id);
+                        if (value == null) {
+                            cache.put(id, id, 1);
+                        } else {
+                            assertEquals(id, value);
+                        }
+                        if (i % 100 == 0) {
+                            cache.remove(ids[i % ids.length]);
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(cache.getMemoryUsed() <= ids.length / 4);
+        assertEquals(cache.getMemoryUsed(), cache.getElementCount());
+    }
+
+}
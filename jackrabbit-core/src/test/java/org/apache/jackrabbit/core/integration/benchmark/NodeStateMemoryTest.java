@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.integration.benchmark;
+
+import junit.framework.TestCase;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.state.ItemState;
+import org.apache.jackrabbit.core.state.NodeState;
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.NameFactory;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+
+/**
+ * Measures the heap used per cached node state, with the child node entries
+ * expanded as in a transient layer and packed as in the shared layer. Note
+ * that this test does not contain normal assertions and its results depend
+ * on the JVM, so it should only be invoked explicitly instead of being
+ * included in the normal test suite.
+ */
+public class NodeStateMemoryTest extends TestCase {
+
+    private static final NameFactory FACTORY = NameFactoryImpl.getInstance();
+
+    private static final int NODES = 10000;
+
+    public void testBytesPerNode() {
+        for (int children : new int[] { 0, 1, 10, 100 }) {
+            long expanded = bytesPerNode(children, false);
+            long packed = bytesPerNode(children, true);
+            System.out.println(children + " child nodes: "
+                    + expanded + " bytes per node expanded, "
+                    + packed + " bytes per node packed");
+        }
+    }
+
+    private long bytesPerNode(int children, boolean compact) {
+        long before = usedMemory();
+        NodeState[] states = new NodeState[NODES];
+        for (int i = 0; i < states.length; i++) {
+            NodeState state = new NodeState(
+                    NodeId.randomId(), NameConstants.NT_UNSTRUCTURED,
+                    NodeId.randomId(), ItemState.STATUS_EXISTING, false);
+            for (int j = 0; j < children; j++) {
+                // child names are read from storage, so each is a new instance
+                Name name = FACTORY.create(
+                        Name.NS_DEFAULT_URI, j % 2 == 0 ? "jcr:content" : "child" + j);
+                state.addChildNodeEntry(name, NodeId.randomId());
+            }
+            if (compact) {
+                state.compact();
+            }
+            states[i] = state;
+        }
+        long after = usedMemory();
+        assertEquals(NODES, states.length);
+        return (after - before) / states.length;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
@@ -17,24 +17,37 @@
 package org.apache.jackrabbit.core.persistence;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jcr.PropertyType;
 
 import junit.framework.TestCase;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.api.stats.RepositoryStatistics.Type;
 import org.apache.jackrabbit.core.NamespaceRegistryImpl;
 import org.apache.jackrabbit.core.RepositoryImpl;
 import org.apache.jackrabbit.core.fs.mem.MemoryFileSystem;
 import org.apache.jackrabbit.core.id.NodeId;
 import org.apache.jackrabbit.core.id.PropertyId;
+import org.apache.jackrabbit.core.persistence.bundle.AbstractBundlePersistenceManager;
+import org.apache.jackrabbit.core.persistence.bundle.BundleFsPersistenceManager;
+import org.apache.jackrabbit.core.persistence.bundle.ChildNodePageStore;
 import org.apache.jackrabbit.core.persistence.mem.InMemBundlePersistenceManager;
 import org.apache.jackrabbit.core.persistence.mem.InMemPersistenceManager;
 import org.apache.jackrabbit.core.persistence.obj.ObjectPersistenceManager;
+import org.apache.jackrabbit.core.persistence.pool.BundleDbPersistenceManager;
+import org.apache.jackrabbit.core.persistence.util.NodeInfo;
 import org.apache.jackrabbit.core.persistence.xml.XMLPersistenceManager;
 import org.apache.jackrabbit.core.state.ChangeLog;
+import org.apache.jackrabbit.core.state.ChildNodeEntry;
 import org.apache.jackrabbit.core.state.ItemState;
+import org.apache.jackrabbit.core.state.ItemStateException;
 import org.apache.jackrabbit.core.state.NoSuchItemStateException;
 import org.apache.jackrabbit.core.state.NodeReferences;
 import org.apache.jackrabbit.core.state.NodeState;
@@ -83,6 +96,19 @@ public class PersistenceManagerTest extends TestCase {
         assertPersistenceManager(new InMemBundlePersistenceManager());
     }
 
+    public void testInMemBundlePersistenceManagerWithOffHeapCache()
+            throws Exception {
+        InMemBundlePersistenceManager manager =
+            new InMemBundlePersistenceManager();
+        // evict every bundle from the heap cache right away
+        manager.setBundleCacheSize("0");
+        manager.setOffHeapBundleCacheSize("1");
+        RepositoryStatisticsImpl stats = new RepositoryStatisticsImpl();
+        assertPersistenceManager(manager, stats);
+        assertTrue(stats.getCounter(
+                Type.BUNDLE_OFFHEAP_CACHE_HIT_COUNTER).get() > 0);
+    }
+
     public void testXMLPersistenceManager() throws Exception {
         assertPersistenceManager(new XMLPersistenceManager());
     }
@@ -118,21 +144,254 @@ public class PersistenceManagerTest extends TestCase {
         assertPersistenceManager(manager);
     }
 
-    private void assertPersistenceManager(PersistenceManager manager)
+    public void testH2PoolPersistenceManagerWithOffHeapCache()
+            throws Exception {
+        org.apache.jackrabbit.core.persistence.pool.H2PersistenceManager manager =
+            new org.apache.jackrabbit.core.persistence.pool.H2PersistenceManager();
+        manager.setDriver("org.h2.Driver");
+        manager.setUrl("jdbc:h2:mem:" + database.getPath());
+        manager.setConnectionFactory(new ConnectionFactory());
+        manager.setBundleCacheSize("0");
+        manager.setOffHeapBundleCacheSize("1");
+        RepositoryStatisticsImpl stats = new RepositoryStatisticsImpl();
+        assertPersistenceManager(manager, stats);
+        assertTrue(stats.getCounter(
+                Type.BUNDLE_OFFHEAP_CACHE_HIT_COUNTER).get() > 0);
+    }
+
+    public void testH2PoolPersistenceManagerWithChildNodePages()
+            throws Exception {
+        CountingH2PersistenceManager manager =
+            new CountingH2PersistenceManager();
+        manager.setDriver("org.h2.Driver");
+        manager.setUrl("jdbc:h2:mem:" + database.getPath());
+        manager.setConnectionFactory(new ConnectionFactory());
+        // load every bundle with its pages from the database
+        manager.setBundleCacheSize("0");
+        manager.setChildNodePageSize("10");
+        assertPersistenceManager(manager);
+    }
+
+    public void testChildNodePageCache() throws Exception {
+        CountingH2PersistenceManager manager =
+            new CountingH2PersistenceManager();
+        manager.setDriver("org.h2.Driver");
+        manager.setUrl("jdbc:h2:mem:" + database.getPath());
+        manager.setConnectionFactory(new ConnectionFactory());
+        manager.setChildNodePageSize("10");
+        manager.init(createContext(new RepositoryStatisticsImpl()));
+        try {
+            NodeState node = createNodeWithChildren(45);
+            ChangeLog create = new ChangeLog();
+            create.added(node);
+            manager.store(create);
+            assertEquals(5, manager.pageWrites);
+
+            // the pages are not loaded with the bundle
+            assertTrue(manager.exists(NODE_ID));
+            assertTrue(manager.exists(new PropertyId(
+                    NODE_ID, NameConstants.JCR_PRIMARYTYPE)));
+            assertEquals(0, manager.pageLoads);
+
+            // but with the node state, and then kept in the page cache
+            node.setStatus(ItemState.STATUS_EXISTING);
+            assertEquals(node, manager.load(NODE_ID));
+            assertEquals(5, manager.pageLoads);
+            assertEquals(node, manager.load(NODE_ID));
+            assertEquals(5, manager.pageLoads);
+
+            // unchanged pages are compared with the cached ones
+            node.addChildNodeEntry(TEST, CHILD_ID);
+            ChangeLog update = new ChangeLog();
+            update.modified(node);
+            manager.store(update);
+            assertEquals(6, manager.pageWrites);
+            assertEquals(5, manager.pageLoads);
+            assertEquals(node, manager.load(NODE_ID));
+            assertEquals(5, manager.pageLoads);
+
+            // a page with the same size and first entry is still written
+            // if another of its entries changed
+            List<ChildNodeEntry> entries = node.getChildNodeEntries();
+            ChildNodeEntry last = entries.get(entries.size() - 1);
+            node.removeChildNodeEntry(last.getId());
+            node.addChildNodeEntry(last.getName(), NodeId.randomId());
+            update = new ChangeLog();
+            update.modified(node);
+            manager.store(update);
+            assertEquals(7, manager.pageWrites);
+            assertEquals(node, manager.load(NODE_ID));
+
+            // evicted bundles take their pages with them
+            ChangeLog external = new ChangeLog();
+            external.modified(node);
+            manager.onExternalUpdate(external);
+            assertEquals(node, manager.load(NODE_ID));
+            assertEquals(10, manager.pageLoads);
+        } finally {
+            manager.close();
+        }
+    }
+
+    public void testStaleChildNodePages() throws Exception {
+        final CountingH2PersistenceManager manager =
+            new CountingH2PersistenceManager();
+        manager.setDriver("org.h2.Driver");
+        manager.setUrl("jdbc:h2:mem:" + database.getPath());
+        manager.setConnectionFactory(new ConnectionFactory());
+        manager.setChildNodePageSize("10");
+        manager.init(createContext(new RepositoryStatisticsImpl()));
+        try {
+            final NodeState node = createNodeWithChildren(45);
+            ChangeLog create = new ChangeLog();
+            create.added(node);
+            manager.store(create);
+
+            // the entries of the node state are loaded on access
+            NodeState loaded = manager.load(NODE_ID);
+            assertEquals(0, manager.pageLoads);
+            assertTrue(loaded.hasChildNodeEntries());
+            assertEquals(0, manager.pageLoads);
+            assertEquals(node.getChildNodeEntries(),
+                    loaded.getChildNodeEntries());
+            assertEquals(5, manager.pageLoads);
+
+            // the pages are stored after the bundle was read
+            node.setStatus(ItemState.STATUS_EXISTING);
+            node.removeChildNodeEntry(
+                    node.getChildNodeEntries().get(0).getId());
+            manager.beforePageLoad = new Runnable() {
+                public void run() {
+                    ChangeLog update = new ChangeLog();
+                    update.modified(node);
+                    try {
+                        manager.store(update);
+                    } catch (ItemStateException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            };
+            manager.onExternalUpdate(create);
+            NodeInfo info = manager.getAllNodeInfos(null, 0).get(NODE_ID);
+            assertNull(manager.beforePageLoad);
+            assertEquals(44, info.getChildren().size());
+        } finally {
+            manager.close();
+        }
+    }
+
+    public void testDerbyPoolPersistenceManagerWithChildNodePages()
             throws Exception {
-        manager.init(new PMContext(
+        org.apache.jackrabbit.core.persistence.pool.DerbyPersistenceManager manager =
+            new org.apache.jackrabbit.core.persistence.pool.DerbyPersistenceManager();
+        manager.setDriver("org.apache.derby.jdbc.EmbeddedDriver");
+        manager.setUrl("jdbc:derby:" + database.getPath() + ";create=true");
+        manager.setConnectionFactory(new ConnectionFactory());
+        manager.setBundleCacheSize("0");
+        manager.setChildNodePageSize("10");
+        assertPersistenceManager(manager);
+    }
+
+    public void testBundleFsPersistenceManagerWithChildNodePages()
+            throws Exception {
+        BundleFsPersistenceManager manager = new BundleFsPersistenceManager();
+        manager.setBundleCacheSize("0");
+        manager.setChildNodePageSize("10");
+        assertPersistenceManager(manager);
+    }
+
+    public void testChildNodePagesUpgrade() throws Exception {
+        NodeState node = createNodeWithChildren(45);
+        ChangeLog create = new ChangeLog();
+        create.added(node);
+
+        // store the node with a schema that has no child node pages yet
+        PersistenceManager manager = createDerbyPoolPersistenceManager(null);
+        try {
+            manager.store(create);
+        } finally {
+            manager.close();
+        }
+
+        node.setStatus(ItemState.STATUS_EXISTING);
+        manager = createDerbyPoolPersistenceManager("10");
+        try {
+            assertEquals(node, manager.load(NODE_ID));
+            node.addChildNodeEntry(TEST, NodeId.randomId());
+            ChangeLog update = new ChangeLog();
+            update.modified(node);
+            manager.store(update);
+            assertEquals(node, manager.load(NODE_ID));
+        } finally {
+            manager.close();
+        }
+
+        // the pages can still be read once paging is disabled again
+        manager = createDerbyPoolPersistenceManager(null);
+        try {
+            assertEquals(node, manager.load(NODE_ID));
+            node.removeChildNodeEntry(node.getChildNodeEntries().get(0).getId());
+            ChangeLog update = new ChangeLog();
+            update.modified(node);
+            manager.store(update);
+            assertEquals(node, manager.load(NODE_ID));
+        } finally {
+            manager.close();
+        }
+    }
+
+    private PersistenceManager createDerbyPoolPersistenceManager(
+            String childNodePageSize) throws Exception {
+        org.apache.jackrabbit.core.persistence.pool.DerbyPersistenceManager manager =
+            new org.apache.jackrabbit.core.persistence.pool.DerbyPersistenceManager();
+        manager.setDriver("org.apache.derby.jdbc.EmbeddedDriver");
+        manager.setUrl("jdbc:derby:" + database.getPath() + ";create=true");
+        manager.setConnectionFactory(new ConnectionFactory());
+        manager.setBundleCacheSize("0");
+        if (childNodePageSize != null) {
+            manager.setChildNodePageSize(childNodePageSize);
+        }
+        manager.init(createContext(new RepositoryStatisticsImpl()));
+        return manager;
+    }
+
+    private PMContext createContext(RepositoryStatisticsImpl stats)
+            throws Exception {
+        return new PMContext(
                 directory,
                 new MemoryFileSystem(),
                 RepositoryImpl.ROOT_NODE_ID,
                 new NamespaceRegistryImpl(new MemoryFileSystem()),
                 null,
                 null,
-                new RepositoryStatisticsImpl()));
+                stats);
+    }
+
+    private void assertPersistenceManager(PersistenceManager manager)
+            throws Exception {
+        assertPersistenceManager(manager, new RepositoryStatisticsImpl());
+    }
+
+    private void assertPersistenceManager(
+            PersistenceManager manager, RepositoryStatisticsImpl stats)
+            throws Exception {
+        manager.init(createContext(stats));
         try {
             assertCreateNewNode(manager);
             assertCreateNewProperty(manager);
             assertMissingItemStates(manager);
             assertCreateUpdateDelete(manager);
+            // prefetching needs a heap cache to prefetch into
+            if (manager instanceof AbstractBundlePersistenceManager
+                    && !"0".equals(((AbstractBundlePersistenceManager)
+                            manager).getBundleCacheSize())) {
+                assertPrefetch(manager, stats);
+            }
+            if (manager instanceof AbstractBundlePersistenceManager
+                    && !"0".equals(((AbstractBundlePersistenceManager)
+                            manager).getChildNodePageSize())) {
+                assertChildNodePages(manager);
+            }
         } finally {
             manager.close();
         }
@@ -258,6 +517,133 @@ public class PersistenceManagerTest extends TestCase {
         assertFalse(manager.existsReferencesTo(CHILD_ID));
     }
 
+    private void assertPrefetch(
+            PersistenceManager manager, RepositoryStatisticsImpl stats)
+            throws Exception {
+        NodeId[] ids = new NodeId[120];
+        ChangeLog create = new ChangeLog();
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = NodeId.randomId();
+            NodeState node = new NodeState(
+                    ids[i], TEST, RepositoryImpl.ROOT_NODE_ID,
+                    ItemState.STATUS_NEW, true);
+            node.addPropertyName(NameConstants.JCR_PRIMARYTYPE);
+            create.added(node);
+        }
+        AtomicLong statements =
+            stats.getCounter(Type.BUNDLE_WS_STATEMENT_COUNTER);
+        long statementsBefore = statements.get();
+        manager.store(create);
+        if (manager instanceof BundleDbPersistenceManager) {
+            // all inserts are sent to the database in a single batch
+            assertEquals(statementsBefore + 1, statements.get());
+        }
+
+        List<NodeId> prefetch = new ArrayList<NodeId>(Arrays.asList(ids));
+        NodeId missing = NodeId.randomId();
+        prefetch.add(missing);
+        ((PrefetchingPersistenceManager) manager).prefetch(prefetch);
+
+        AtomicLong misses = stats.getCounter(Type.BUNDLE_CACHE_MISS_COUNTER);
+        long before = misses.get();
+        for (NodeId id : ids) {
+            assertEquals(id, manager.load(id).getNodeId());
+        }
+        assertFalse(manager.exists(missing));
+        assertEquals(before, misses.get());
+
+        ChangeLog delete = new ChangeLog();
+        for (NodeId id : ids) {
+            delete.deleted(manager.load(id));
+        }
+        manager.store(delete);
+        for (NodeId id : ids) {
+            assertFalse(manager.exists(id));
+        }
+    }
+
+    private NodeState createNodeWithChildren(int count) {
+        NodeState node = new NodeState(
+                NODE_ID, TEST, RepositoryImpl.ROOT_NODE_ID,
+                ItemState.STATUS_NEW, true);
+        node.addPropertyName(NameConstants.JCR_PRIMARYTYPE);
+        for (int i = 0; i < count; i++) {
+            node.addChildNodeEntry(
+                    NameFactoryImpl.getInstance().create("", "child" + i),
+                    NodeId.randomId());
+        }
+        return node;
+    }
+
+    private void assertChildNodePages(PersistenceManager manager)
+            throws Exception {
+        CountingH2PersistenceManager counting = null;
+        if (manager instanceof CountingH2PersistenceManager) {
+            counting = (CountingH2PersistenceManager) manager;
+        }
+
+        // 45 entries are split into five pages of nine entries
+        NodeState node = createNodeWithChildren(45);
+        ChangeLog create = new ChangeLog();
+        create.added(node);
+        manager.store(create);
+        assertEquals(node, manager.load(NODE_ID));
+        if (counting != null) {
+            assertEquals(5, counting.pageWrites);
+        }
+
+        // adding or removing an entry only rewrites the affected page
+        node.setStatus(ItemState.STATUS_EXISTING);
+        node.addChildNodeEntry(TEST, CHILD_ID);
+        ChangeLog update = new ChangeLog();
+        update.modified(node);
+        manager.store(update);
+        assertEquals(node, manager.load(NODE_ID));
+        if (counting != null) {
+            assertEquals(6, counting.pageWrites);
+        }
+        node.removeChildNodeEntry(node.getChildNodeEntries().get(12).getId());
+        update = new ChangeLog();
+        update.modified(node);
+        manager.store(update);
+        assertEquals(node, manager.load(NODE_ID));
+        if (counting != null) {
+            assertEquals(7, counting.pageWrites);
+            assertEquals(0, counting.pageDeletes);
+        }
+
+        // removing the first entry of a page adds the rest of the page to
+        // the preceding one, which is then split again
+        node.removeChildNodeEntry(node.getChildNodeEntries().get(9).getId());
+        update = new ChangeLog();
+        update.modified(node);
+        manager.store(update);
+        assertEquals(node, manager.load(NODE_ID));
+        if (counting != null) {
+            assertEquals(9, counting.pageWrites);
+            assertEquals(1, counting.pageDeletes);
+        }
+
+        // the entries move back into the bundle once there are few of them
+        while (node.getChildNodeEntries().size() > 5) {
+            node.removeChildNodeEntry(
+                    node.getChildNodeEntries().get(1).getId());
+        }
+        update = new ChangeLog();
+        update.modified(node);
+        manager.store(update);
+        assertEquals(node, manager.load(NODE_ID));
+        if (counting != null) {
+            assertEquals(9, counting.pageWrites);
+            assertEquals(6, counting.pageDeletes);
+        }
+
+        ChangeLog delete = new ChangeLog();
+        delete.deleted(node);
+        manager.store(delete);
+        assertFalse(manager.exists(NODE_ID));
+    }
+
     private void assertEquals(NodeState expected, NodeState actual) {
         assertEquals(expected.getId(), actual.getId());
         assertEquals(expected.getNodeId(), actual.getNodeId());
@@ -279,4 +665,59 @@ public class PersistenceManagerTest extends TestCase {
         assertEquals(expected.getReferences(), actual.getReferences());
     }
 
+    /**
+     * Counts the child node pages that are loaded, written and deleted.
+     */
+    private static class CountingH2PersistenceManager
+            extends org.apache.jackrabbit.core.persistence.pool.H2PersistenceManager {
+
+        private int pageLoads;
+
+        private int pageWrites;
+
+        private int pageDeletes;
+
+        private Runnable beforePageLoad;
+
+        private final ChildNodePageStore store = new ChildNodePageStore() {
+
+            public Map<NodeId, Map<Integer, byte[]>> loadChildNodePages(
+                    Map<NodeId, Collection<Integer>> numbers)
+                    throws ItemStateException {
+                if (beforePageLoad != null) {
+                    Runnable runnable = beforePageLoad;
+                    beforePageLoad = null;
+                    runnable.run();
+                }
+                for (Collection<Integer> list : numbers.values()) {
+                    pageLoads += list.size();
+                }
+                return CountingH2PersistenceManager.super
+                        .getChildNodePageStore().loadChildNodePages(numbers);
+            }
+
+            public void storeChildNodePage(
+                    NodeId id, int number, byte[] data, boolean isNew)
+                    throws ItemStateException {
+                pageWrites++;
+                CountingH2PersistenceManager.super.getChildNodePageStore()
+                        .storeChildNodePage(id, number, data, isNew);
+            }
+
+            public void destroyChildNodePage(NodeId id, int number)
+                    throws ItemStateException {
+                pageDeletes++;
+                CountingH2PersistenceManager.super.getChildNodePageStore()
+                        .destroyChildNodePage(id, number);
+            }
+
+        };
+
+        @Override
+        protected ChildNodePageStore getChildNodePageStore() {
+            return store;
+        }
+
+    }
+
 }
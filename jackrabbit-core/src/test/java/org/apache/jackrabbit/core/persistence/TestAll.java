@@ -20,6 +20,8 @@ import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
+import org.apache.jackrabbit.core.persistence.bundle.OffHeapBundleCacheTest;
+
 /**
  * Test suite that includes all test cases for this package.
  */
@@ -34,6 +36,7 @@ public class TestAll extends TestCase {
 
         suite.addTestSuite(PersistenceManagerTest.class);
         suite.addTestSuite(AutoFixCorruptNode.class);
+        suite.addTestSuite(OffHeapBundleCacheTest.class);
 
         return suite;
     }
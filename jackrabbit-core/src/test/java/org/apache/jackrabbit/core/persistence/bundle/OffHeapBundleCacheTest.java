@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.persistence.bundle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.jackrabbit.core.id.NodeId;
+
+/**
+ * <code>OffHeapBundleCacheTest</code> checks the slab based off-heap bundle
+ * cache.
+ */
+public class OffHeapBundleCacheTest extends TestCase {
+
+    public void testPutAndTake() {
+        OffHeapBundleCache cache = new OffHeapBundleCache("test", 8 * 1024);
+        NodeId id = NodeId.randomId();
+        cache.put(id, data(100, 1), 100);
+        assertEquals(1, cache.size());
+        assertEquals(100, cache.getMemoryUsed());
+
+        // replace
+        cache.put(id, data(50, 2), 50);
+        assertEquals(1, cache.size());
+        assertEquals(50, cache.getMemoryUsed());
+
+        assertTrue(Arrays.equals(data(50, 2), cache.take(id)));
+        assertNull(cache.take(id));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getMemoryUsed());
+    }
+
+    public void testTooLarge() {
+        OffHeapBundleCache cache = new OffHeapBundleCache("test", 8 * 1024);
+        NodeId id = NodeId.randomId();
+        cache.put(id, data(2048, 1), 2048);
+        assertNull(cache.take(id));
+    }
+
+    public void testSegmentRecycling() {
+        // 8 segments of 1kB in a single stripe, each holds 4 bundles
+        OffHeapBundleCache cache = new OffHeapBundleCache("test", 8 * 1024, 1);
+        List<NodeId> ids = new ArrayList<NodeId>();
+        for (int i = 0; i < 40; i++) {
+            NodeId id = NodeId.randomId();
+            ids.add(id);
+            cache.put(id, data(256, i), 256);
+        }
+        assertTrue(cache.getMemoryUsed() <= 8 * 1024);
+        // the oldest bundles were dropped with their segments
+        assertNull(cache.take(ids.get(0)));
+        assertNull(cache.take(ids.get(7)));
+        for (int i = 32; i < 40; i++) {
+            assertTrue(Arrays.equals(data(256, i), cache.take(ids.get(i))));
+        }
+    }
+
+    public void testManyBundles() {
+        OffHeapBundleCache cache =
+            new OffHeapBundleCache("test", 8 * 1024 * 1024);
+        List<NodeId> ids = new ArrayList<NodeId>();
+        for (int i = 0; i < 10000; i++) {
+            NodeId id = NodeId.randomId();
+            ids.add(id);
+            cache.put(id, data(10 + i % 50, i), 10 + i % 50);
+        }
+        assertEquals(10000, cache.size());
+        // remove every other bundle to exercise the table deletions
+        for (int i = 0; i < ids.size(); i += 2) {
+            cache.remove(ids.get(i));
+        }
+        assertEquals(5000, cache.size());
+        for (int i = 0; i < ids.size(); i++) {
+            byte[] data = cache.take(ids.get(i));
+            if (i % 2 == 0) {
+                assertNull(data);
+            } else {
+                assertTrue(Arrays.equals(data(10 + i % 50, i), data));
+            }
+        }
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getMemoryUsed());
+    }
+
+    public void testStripes() {
+        OffHeapBundleCache cache = new OffHeapBundleCache("test", 8 * 1024);
+        assertEquals(8 * 1024, cache.getMaxMemorySize());
+        List<NodeId> ids = new ArrayList<NodeId>();
+        for (int i = 0; i < 16; i++) {
+            NodeId id = NodeId.randomId();
+            ids.add(id);
+            cache.put(id, data(100, i), 100);
+        }
+        assertEquals(16, cache.size());
+        assertEquals(1600, cache.getMemoryUsed());
+        for (int i = 0; i < ids.size(); i++) {
+            assertTrue(Arrays.equals(data(100, i), cache.take(ids.get(i))));
+        }
+        assertEquals(0, cache.getMemoryUsed());
+    }
+
+    public void testStamp() {
+        OffHeapBundleCache cache = new OffHeapBundleCache("test", 8 * 1024);
+        NodeId id = NodeId.randomId();
+        long stamp = cache.getStamp(id);
+        assertTrue(cache.put(id, data(100, 1), 100, stamp));
+        assertEquals(stamp, cache.getStamp(id));
+
+        // a bundle removed after its eviction is not added
+        stamp = cache.getStamp(id);
+        cache.remove(id);
+        assertFalse(cache.put(id, data(100, 2), 100, stamp));
+        assertNull(cache.take(id));
+
+        stamp = cache.getStamp(id);
+        cache.clear();
+        assertFalse(cache.put(id, data(100, 3), 100, stamp));
+        assertTrue(cache.put(id, data(100, 4), 100, cache.getStamp(id)));
+        assertTrue(Arrays.equals(data(100, 4), cache.take(id)));
+    }
+
+    private static byte[] data(int length, int seed) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (seed + i);
+        }
+        return data;
+    }
+}
@@ -25,6 +25,7 @@ import java.util.Calendar;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 
 import javax.jcr.PropertyType;
 
@@ -443,6 +444,47 @@ public class BundleBindingTest extends TestCase {
         }
     }
 
+    /**
+     * Tests serialization of a bundle with child node pages.
+     */
+    public void testChildNodePages() throws Exception {
+        NodePropBundle bundle = new NodePropBundle(NodeId.randomId());
+        bundle.setParentId(NodeId.randomId());
+        bundle.setNodeTypeName(NameConstants.NT_UNSTRUCTURED);
+        bundle.setMixinTypeNames(Collections.<Name>emptySet());
+        bundle.setSharedSet(Collections.<NodeId>emptySet());
+        bundle.addChildNodeEntry(factory.create("", "a"), NodeId.randomId());
+        bundle.addChildNodeEntry(factory.create("", "b"), NodeId.randomId());
+        bundle.addChildNodeEntry(factory.create("", "c"), NodeId.randomId());
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        binding.writeBundle(buffer, bundle);
+        assertEquals(BundleBinding.VERSION_CURRENT, buffer.toByteArray()[0]);
+
+        List<NodePropBundle.ChildNodePage> pages = Arrays.asList(
+                new NodePropBundle.ChildNodePage(
+                        0, 2, bundle.getChildNodeEntries().get(0).getId()),
+                new NodePropBundle.ChildNodePage(
+                        3, 1, bundle.getChildNodeEntries().get(2).getId()));
+        bundle.setChildNodePages(pages);
+        buffer = new ByteArrayOutputStream();
+        binding.writeBundle(buffer, bundle);
+        byte[] bytes = buffer.toByteArray();
+        assertEquals(BundleBinding.VERSION_4, bytes[0]);
+
+        // the child node entries are only stored in the pages
+        NodePropBundle result =
+            binding.readBundle(new ByteArrayInputStream(bytes), bundle.getId());
+        assertEquals(pages, result.getChildNodePages());
+        assertTrue(result.getChildNodeEntries().isEmpty());
+        assertFalse(result.isChildNodeEntriesLoaded());
+
+        buffer = new ByteArrayOutputStream();
+        binding.writeChildNodePage(buffer, bundle.getChildNodeEntries());
+        assertEquals(bundle.getChildNodeEntries(), binding.readChildNodePage(
+                new ByteArrayInputStream(buffer.toByteArray())));
+    }
+
     private void assertDateSerialization(String date) throws Exception {
         assertValueSerialization(
                 InternalValue.valueOf(date, PropertyType.DATE));
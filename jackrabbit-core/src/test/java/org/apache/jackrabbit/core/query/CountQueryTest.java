@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query;
+
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.jcr.Node;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+import javax.jcr.security.AccessControlPolicy;
+import javax.jcr.security.AccessControlPolicyIterator;
+import javax.jcr.security.Privilege;
+
+import org.apache.jackrabbit.api.JackrabbitSession;
+import org.apache.jackrabbit.api.query.JackrabbitQuery;
+import org.apache.jackrabbit.api.security.JackrabbitAccessControlList;
+import org.apache.jackrabbit.test.NotExecutableException;
+import org.apache.jackrabbit.test.api.security.AbstractAccessControlTest;
+
+/**
+ * <code>CountQueryTest</code> checks the counts and facets returned by
+ * {@link JackrabbitQuery}.
+ */
+public class CountQueryTest extends AbstractAccessControlTest {
+
+    private Session anonymous;
+
+    private String ntName;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        anonymous = getHelper().getReadOnlySession();
+
+        Node n1 = testRootNode.addNode(nodeName1);
+        n1.setProperty(propertyName1, "a");
+        n1.setProperty(propertyName2, 42);
+        Node n2 = testRootNode.addNode(nodeName2);
+        n2.setProperty(propertyName1, "b");
+        n2.setProperty(propertyName2, 42);
+        Node n3 = testRootNode.addNode(nodeName3);
+        n3.setProperty(propertyName1, new String[]{"c", "a"});
+        Node n4 = testRootNode.addNode(nodeName4);
+        n4.setProperty(propertyName1, "a");
+        n4.setProperty(propertyName2, 7);
+        superuser.save();
+        ntName = n1.getPrimaryNodeType().getName();
+
+        JackrabbitAccessControlList acl = getACL(n2.getPath());
+        acl.addEntry(getPrincipal(anonymous),
+                privilegesFromName(Privilege.JCR_READ), false);
+        acMgr.setPolicy(n2.getPath(), acl);
+        superuser.save();
+    }
+
+    protected void tearDown() throws Exception {
+        anonymous.logout();
+        super.tearDown();
+    }
+
+    public void testCount() throws RepositoryException {
+        String stmt = testPath + "/*";
+        assertEquals(4, xpath(superuser, stmt).count());
+        assertEquals(3, xpath(anonymous, stmt).count());
+
+        JackrabbitQuery query = xpath(anonymous, stmt + "[@" + propertyName1 + " = 'a']");
+        query.setLimit(1);
+        assertEquals(3, query.count());
+    }
+
+    public void testFacet() throws RepositoryException {
+        JackrabbitQuery query = xpath(anonymous, testPath + "/*");
+
+        Map<String, Long> expected = new HashMap<String, Long>();
+        expected.put("a", 3L);
+        expected.put("c", 1L);
+        assertEquals(expected, query.facet(propertyName1));
+
+        expected.clear();
+        expected.put("42", 1L);
+        expected.put("7", 1L);
+        assertEquals(expected, query.facet(propertyName2));
+
+        expected.clear();
+        expected.put(ntName, 3L);
+        assertEquals(expected, query.facet("jcr:primaryType"));
+    }
+
+    public void testSQL2() throws RepositoryException {
+        String stmt = "SELECT * FROM [nt:base] AS s WHERE ISCHILDNODE(s, ["
+                + testRoot + "])";
+        assertEquals(3, sql2(anonymous, stmt).count());
+
+        Map<String, Long> expected = new HashMap<String, Long>();
+        expected.put("a", 3L);
+        expected.put("c", 1L);
+        assertEquals(expected, sql2(anonymous, stmt).facet(propertyName1));
+
+        // evaluated on the rows
+        stmt += " AND NAME(s) <> 'unknown'";
+        assertEquals(3, sql2(anonymous, stmt).count());
+        assertEquals(expected, sql2(anonymous, stmt).facet(propertyName1));
+
+        // join
+        stmt = "SELECT * FROM [nt:base] AS a INNER JOIN [nt:base] AS b"
+                + " ON ISSAMENODE(a, b) WHERE ISCHILDNODE(a, ["
+                + testRoot + "])";
+        assertEquals(3, sql2(anonymous, stmt).count());
+        assertEquals(expected, sql2(anonymous, stmt).facet(propertyName1));
+    }
+
+    private JackrabbitQuery xpath(Session session, String stmt)
+            throws RepositoryException {
+        QueryManager qm = session.getWorkspace().getQueryManager();
+        return (JackrabbitQuery) qm.createQuery(stmt, Query.XPATH);
+    }
+
+    private JackrabbitQuery sql2(Session session, String stmt)
+            throws RepositoryException {
+        QueryManager qm = session.getWorkspace().getQueryManager();
+        return (JackrabbitQuery) qm.createQuery(stmt, Query.JCR_SQL2);
+    }
+
+    private static Principal getPrincipal(Session session)
+            throws RepositoryException, NotExecutableException {
+        if (!(session instanceof JackrabbitSession)) {
+            throw new NotExecutableException();
+        }
+        return ((JackrabbitSession) session).getUserManager().getAuthorizable(
+                session.getUserID()).getPrincipal();
+    }
+
+    private JackrabbitAccessControlList getACL(String path)
+            throws RepositoryException, NotExecutableException {
+        AccessControlPolicyIterator it = acMgr.getApplicablePolicies(path);
+        while (it.hasNext()) {
+            AccessControlPolicy acp = it.nextAccessControlPolicy();
+            if (acp instanceof JackrabbitAccessControlList) {
+                return (JackrabbitAccessControlList) acp;
+            }
+        }
+        throw new NotExecutableException(
+                "No JackrabbitAccessControlList found at " + path + " .");
+    }
+}
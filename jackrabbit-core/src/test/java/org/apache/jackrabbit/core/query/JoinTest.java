@@ -18,9 +18,15 @@ package org.apache.jackrabbit.core.query;
 
 import javax.jcr.Node;
 import javax.jcr.PropertyType;
+import javax.jcr.RepositoryException;
 import javax.jcr.nodetype.NodeType;
 import javax.jcr.query.Query;
 import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
+import javax.jcr.query.RowIterator;
+
+import org.apache.jackrabbit.core.query.lucene.join.QueryPlan;
+import org.apache.jackrabbit.core.query.lucene.join.QueryPlan.Strategy;
 
 /**
  * Test case for JOIN queries with JCR_SQL2
@@ -167,4 +173,107 @@ public class JoinTest extends AbstractQueryTest {
         checkResult(qm.createQuery(join.toString(), Query.JCR_SQL2).execute(),
                 2);
     }
+
+    public void testHashJoin() throws Exception {
+        addPlanTestNodes();
+
+        String join = "SELECT a.*, b.*"
+                + " FROM [nt:unstructured] AS a"
+                + " INNER JOIN [nt:unstructured] AS b ON a.key = b.key"
+                + " WHERE a.type = 'few' AND b.type = 'few'";
+        QueryObjectModelImpl qom = (QueryObjectModelImpl) qm.createQuery(
+                join, Query.JCR_SQL2);
+        QueryPlan plan = qom.explain();
+        assertEquals(plan.toString(), Strategy.HASH, plan.getStrategy());
+        assertEquals(Strategy.SELECTOR, plan.getLeft().getStrategy());
+        checkResult(qom.execute(), 5);
+    }
+
+    public void testRightFirstJoin() throws Exception {
+        addPlanTestNodes();
+
+        String join = "SELECT a.*, b.*"
+                + " FROM [nt:unstructured] AS a"
+                + " INNER JOIN [nt:unstructured] AS b ON a.key = b.key"
+                + " WHERE a.type = 'many' AND b.type = 'few'";
+        QueryObjectModelImpl qom = (QueryObjectModelImpl) qm.createQuery(
+                join, Query.JCR_SQL2);
+        QueryPlan plan = qom.explain();
+        assertEquals(plan.toString(), Strategy.RIGHT_FIRST,
+                plan.getStrategy());
+        assertTrue(plan.getLeft().getEstimate() >= 200);
+        checkResult(qom.execute(), 200);
+
+        // the rows keep their selectors
+        RowIterator rows = qom.execute().getRows();
+        while (rows.hasNext()) {
+            Row row = rows.nextRow();
+            assertEquals("many", row.getNode("a").getProperty("type").getString());
+            assertEquals("few", row.getNode("b").getProperty("type").getString());
+        }
+    }
+
+    public void testRightFirstChildNodeJoin() throws Exception {
+        addPlanTestNodes();
+        node.getNode("many7").addNode("child", "nt:unstructured");
+        testRootNode.getSession().save();
+
+        String join = "SELECT a.*, b.*"
+                + " FROM [nt:unstructured] AS a"
+                + " INNER JOIN [nt:unstructured] AS b ON ISCHILDNODE(b, a)"
+                + " WHERE a.type = 'many' AND ISSAMENODE(b, ["
+                + node.getPath() + "/many7/child])";
+        QueryObjectModelImpl qom = (QueryObjectModelImpl) qm.createQuery(
+                join, Query.JCR_SQL2);
+        QueryPlan plan = qom.explain();
+        assertEquals(plan.toString(), Strategy.RIGHT_FIRST,
+                plan.getStrategy());
+        RowIterator rows = qom.execute().getRows();
+        assertTrue(rows.hasNext());
+        assertEquals(node.getPath() + "/many7", rows.nextRow().getPath("a"));
+        assertFalse(rows.hasNext());
+    }
+
+    public void testIndexNestedLoopJoin() throws Exception {
+        addPlanTestNodes();
+
+        String join = "SELECT a.*, b.*"
+                + " FROM [nt:unstructured] AS a"
+                + " INNER JOIN [nt:unstructured] AS b ON a.key = b.key"
+                + " WHERE a.type = 'few' AND b.type = 'many'";
+        QueryObjectModelImpl qom = (QueryObjectModelImpl) qm.createQuery(
+                join, Query.JCR_SQL2);
+        QueryPlan plan = qom.explain();
+        assertEquals(plan.toString(), Strategy.INDEX_NESTED_LOOP,
+                plan.getStrategy());
+        assertTrue(plan.getRight().getEstimate() >= 200);
+        checkResult(qom.execute(), 200);
+    }
+
+    public void testOuterJoinPlan() throws Exception {
+        addPlanTestNodes();
+
+        String join = "SELECT a.*, b.*"
+                + " FROM [nt:unstructured] AS a"
+                + " LEFT OUTER JOIN [nt:unstructured] AS b ON a.key = b.key"
+                + " WHERE a.type = 'few'";
+        QueryObjectModelImpl qom = (QueryObjectModelImpl) qm.createQuery(
+                join, Query.JCR_SQL2);
+        assertEquals(Strategy.MERGE, qom.explain().getStrategy());
+        checkResult(qom.execute(), 205);
+    }
+
+    private void addPlanTestNodes() throws RepositoryException {
+        for (int i = 0; i < 5; i++) {
+            Node n = node.addNode("few" + i, "nt:unstructured");
+            n.setProperty("type", "few");
+            n.setProperty("key", "k" + i);
+        }
+        for (int i = 0; i < 200; i++) {
+            Node n = node.addNode("many" + i, "nt:unstructured");
+            n.setProperty("type", "many");
+            n.setProperty("key", "k" + (i % 5));
+        }
+        testRootNode.getSession().save();
+    }
 }
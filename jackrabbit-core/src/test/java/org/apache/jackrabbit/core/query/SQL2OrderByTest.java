@@ -19,11 +19,13 @@ package org.apache.jackrabbit.core.query;
 import javax.jcr.Node;
 import javax.jcr.NodeIterator;
 import javax.jcr.RepositoryException;
+import javax.jcr.query.Query;
 import javax.jcr.query.QueryResult;
 import javax.jcr.query.Row;
 import javax.jcr.query.RowIterator;
 
 import org.apache.jackrabbit.commons.JcrUtils;
+import org.apache.jackrabbit.core.query.lucene.join.QueryEngine;
 
 /**
  * Tests queries with order by.
@@ -245,6 +247,75 @@ public class SQL2OrderByTest extends AbstractQueryTest {
         checkSeq(qr, new Node[] { n1, n3, n2 });
     }
 
+    public void testOrderByLimit() throws RepositoryException {
+        for (int i = 0; i < 10; i++) {
+            testRootNode.addNode("node" + i).setProperty("value", i * 7 % 10);
+        }
+        testRootNode.getSession().save();
+
+        Query q = qm.createQuery("SELECT * FROM [nt:base] WHERE ISCHILDNODE(["
+                + testRoot + "]) ORDER BY [value] desc", Query.JCR_SQL2);
+        q.setOffset(2);
+        q.setLimit(3);
+        RowIterator rows = q.execute().getRows();
+        assertEquals(3, rows.getSize());
+        for (long value = 7; value >= 5; value--) {
+            assertEquals(value, rows.nextRow().getNode().getProperty("value").getLong());
+        }
+        assertFalse(rows.hasNext());
+    }
+
+    public void testOrderBySpill() throws RepositoryException {
+        Node[] nodes = new Node[10];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = testRootNode.addNode("node" + i);
+            nodes[i].setProperty("value", i * 7 % 10);
+        }
+        testRootNode.getSession().save();
+
+        // sort in runs of three rows
+        System.setProperty(QueryEngine.SORT_SPILL_THRESHOLD_SYSTEM_PROPERTY, "3");
+        try {
+            Query q = qm.createQuery("SELECT [value] FROM [nt:base] WHERE ISCHILDNODE(["
+                    + testRoot + "]) ORDER BY [value]", Query.JCR_SQL2);
+            q.setOffset(1);
+            RowIterator rows = q.execute().getRows();
+            assertEquals(9, rows.getSize());
+            for (long value = 1; value < 10; value++) {
+                Row row = rows.nextRow();
+                assertEquals(value, row.getValue("value").getLong());
+                assertEquals(nodes[(int) (value * 3 % 10)].getPath(), row.getPath());
+            }
+            assertFalse(rows.hasNext());
+        } finally {
+            System.clearProperty(QueryEngine.SORT_SPILL_THRESHOLD_SYSTEM_PROPERTY);
+        }
+    }
+
+    public void testOrderBySpillWithLimit() throws RepositoryException {
+        for (int i = 0; i < 10; i++) {
+            testRootNode.addNode("node" + i).setProperty("value", i * 7 % 10);
+        }
+        testRootNode.getSession().save();
+
+        // offset + limit exceeds the threshold, the rows are spilled
+        System.setProperty(QueryEngine.SORT_SPILL_THRESHOLD_SYSTEM_PROPERTY, "3");
+        try {
+            Query q = qm.createQuery("SELECT [value] FROM [nt:base] WHERE ISCHILDNODE(["
+                    + testRoot + "]) ORDER BY [value]", Query.JCR_SQL2);
+            q.setOffset(2);
+            q.setLimit(5);
+            RowIterator rows = q.execute().getRows();
+            assertEquals(5, rows.getSize());
+            for (long value = 2; value < 7; value++) {
+                assertEquals(value, rows.nextRow().getValue("value").getLong());
+            }
+            assertFalse(rows.hasNext());
+        } finally {
+            System.clearProperty(QueryEngine.SORT_SPILL_THRESHOLD_SYSTEM_PROPERTY);
+        }
+    }
+
     private void checkSeq(QueryResult qr, Node[] nodes)
             throws RepositoryException {
         NodeIterator ni = qr.getNodes();
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import javax.jcr.Node;
+
+import org.apache.jackrabbit.core.RepositoryImpl;
+import org.apache.jackrabbit.core.TestHelper;
+import org.apache.jackrabbit.core.query.AbstractIndexingTest;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+
+/**
+ * <code>AncestorIndexTest</code> checks descendant axis queries on the
+ * ancestors-test workspace, which indexes the ancestors of each node.
+ */
+public class AncestorIndexTest extends AbstractIndexingTest {
+
+    private static final String WORKSPACE_NAME = "ancestors-test";
+
+    protected String getWorkspaceName() {
+        return WORKSPACE_NAME;
+    }
+
+    public void testDescendantQuery() throws Exception {
+        Node a = testRootNode.addNode("a");
+        a.setProperty("p", "value");
+        Node b = a.addNode("b");
+        b.setProperty("p", "value");
+        Node c = b.addNode("c");
+        c.setProperty("p", "value");
+        Node x = testRootNode.addNode("x");
+        x.addNode("y").setProperty("p", "value");
+        session.save();
+        waitForAncestors();
+
+        executeXPathQuery(testPath + "/a//*[@p = 'value']", new Node[]{b, c});
+        executeXPathQuery(testPath + "/a//*", new Node[]{b, c});
+        executeXPathQuery(testPath + "/a/b//*", new Node[]{c});
+        executeSQL2Query("SELECT * FROM [nt:base] WHERE ISDESCENDANTNODE(["
+                + a.getPath() + "]) AND [p] = 'value'", new Node[]{b, c});
+        assertEquals(2, countDescendants(a));
+        assertEquals(1, countDescendants(x));
+    }
+
+    public void testMove() throws Exception {
+        Node a = testRootNode.addNode("a");
+        a.setProperty("p", "value");
+        Node b = a.addNode("b");
+        b.setProperty("p", "value");
+        Node c = b.addNode("c");
+        c.setProperty("p", "value");
+        Node x = testRootNode.addNode("x");
+        session.save();
+        waitForAncestors();
+
+        session.move(a.getPath(), x.getPath() + "/a");
+        session.save();
+        // correct regardless of the background job
+        executeXPathQuery(testPath + "/x//*[@p = 'value']", new Node[]{a, b, c});
+
+        waitForAncestors();
+        executeXPathQuery(testPath + "/x//*[@p = 'value']", new Node[]{a, b, c});
+        executeXPathQuery(testPath + "/x/a//*", new Node[]{b, c});
+        assertEquals(3, countDescendants(x));
+        assertEquals(2, countDescendants(a));
+    }
+
+    public void testMigration() throws Exception {
+        // index nodes without ancestors
+        getSearchIndex().setIndexAncestors(false);
+        Node a = testRootNode.addNode("a");
+        a.addNode("b").addNode("c");
+        session.save();
+        assertEquals(0, countDescendants(a));
+
+        // restart the workspace, which migrates the index
+        RepositoryImpl repo = (RepositoryImpl) session.getRepository();
+        session.logout();
+        superuser.logout();
+        superuser = null;
+        TestHelper.shutdownWorkspace(getWorkspaceName(), repo);
+        session = getHelper().getSuperuserSession(getWorkspaceName());
+        qm = session.getWorkspace().getQueryManager();
+        testRootNode = session.getRootNode().getNode(testPath);
+        waitForAncestors();
+
+        a = testRootNode.getNode("a");
+        executeXPathQuery(testPath + "/a//*",
+                new Node[]{a.getNode("b"), a.getNode("b/c")});
+        assertEquals(2, countDescendants(a));
+        CachingMultiIndexReader reader = getSearchIndex().getIndex().getIndexReader();
+        try {
+            assertTrue(IndexMigration.getDocumentsWithoutAncestors(reader).isEmpty());
+        } finally {
+            reader.release();
+        }
+    }
+
+    /**
+     * Waits until the background jobs of the ancestor re-indexer are done.
+     */
+    private void waitForAncestors() throws Exception {
+        MultiIndex index = getSearchIndex().getIndex();
+        for (int i = 0; i < 100 && !index.isAncestorsIndexed(); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue("Ancestors not indexed", index.isAncestorsIndexed());
+    }
+
+    /**
+     * Returns the number of documents that have <code>node</code> as an
+     * ancestor in the index.
+     */
+    private int countDescendants(Node node) throws Exception {
+        int count = 0;
+        CachingMultiIndexReader reader = getSearchIndex().getIndex().getIndexReader();
+        try {
+            TermDocs tDocs = reader.termDocs(
+                    new Term(FieldNames.ANCESTORS, node.getIdentifier()));
+            try {
+                while (tDocs.next()) {
+                    count++;
+                }
+            } finally {
+                tDocs.close();
+            }
+        } finally {
+            reader.release();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+import junit.framework.TestCase;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+
+/**
+ * <code>CachingIndexReaderTest</code> checks the parent and document number
+ * caches of {@link CachingIndexReader} and the persisted parent cache.
+ */
+public class CachingIndexReaderTest extends TestCase {
+
+    private static final String PARENTS_FILE = "cache.parents";
+
+    private final NodeId root = NodeId.randomId();
+
+    private final NodeId a = NodeId.randomId();
+
+    private final NodeId b = NodeId.randomId();
+
+    private final NodeId foreign = NodeId.randomId();
+
+    private CountingDirectory dir;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        dir = new CountingDirectory();
+        IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(
+                Version.LUCENE_36, new StandardAnalyzer(Version.LUCENE_36)));
+        try {
+            writer.addDocument(createDocument(b, a));
+            writer.addDocument(createDocument(root, null));
+            writer.addDocument(createDocument(a, root));
+            for (int i = 0; i < 100; i++) {
+                writer.addDocument(createDocument(NodeId.randomId(), foreign));
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    public void testParents() throws Exception {
+        CachingIndexReader reader = createReader(null);
+        try {
+            assertParents(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testPersistedParents() throws Exception {
+        createReader(null).close();
+        assertTrue(dir.fileExists(PARENTS_FILE));
+        assertEquals(1, dir.outputs);
+
+        // same segments -> loaded from file
+        CachingIndexReader reader = createReader(null);
+        try {
+            assertEquals(1, dir.outputs);
+            assertParents(reader);
+        } finally {
+            reader.close();
+        }
+
+        // deleted documents do not change the document numbers
+        IndexReader r = IndexReader.open(dir, false);
+        try {
+            r.deleteDocument(reader.maxDoc() - 1);
+        } finally {
+            r.close();
+        }
+        createReader(null).close();
+        assertEquals(1, dir.outputs);
+
+        // a new segment changes the layout
+        IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(
+                Version.LUCENE_36, new StandardAnalyzer(Version.LUCENE_36)));
+        try {
+            writer.addDocument(createDocument(NodeId.randomId(), b));
+        } finally {
+            writer.close();
+        }
+        reader = createReader(null);
+        try {
+            assertEquals(2, dir.outputs);
+            assertParents(reader);
+            assertEquals(DocId.create(0).toString(), reader.getParent(
+                    reader.maxDoc() - 1, new BitSet()).toString());
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testCorruptPersistedParents() throws Exception {
+        createReader(null).close();
+        byte[] data = new byte[(int) dir.fileLength(PARENTS_FILE)];
+        IndexInput in = dir.openInput(PARENTS_FILE);
+        try {
+            in.readBytes(data, 0, data.length);
+        } finally {
+            in.close();
+        }
+        // flip a bit in the middle of the file
+        data[data.length / 2] ^= 1;
+        IndexOutput out = dir.createOutput(PARENTS_FILE);
+        try {
+            out.writeBytes(data, data.length);
+        } finally {
+            out.close();
+        }
+
+        CachingIndexReader reader = createReader(null);
+        try {
+            assertParents(reader);
+            // rebuilt and saved again
+            assertEquals(3, dir.outputs);
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testDocNumberCache() throws Exception {
+        DocNumberCache cache = new DocNumberCache(100);
+        CachingIndexReader older = createReader(cache);
+        CachingIndexReader newer = createReader(cache);
+        try {
+            assertEquals(2, getDoc(older, a));
+            DocNumberCache.Entry e = cache.get(a.toString());
+            assertEquals(older.getCreationTick(), e.creationTick);
+            assertEquals(2, e.doc);
+
+            // replaced by a newer reader but not by an older one
+            assertEquals(2, getDoc(newer, a));
+            assertEquals(newer.getCreationTick(),
+                    cache.get(a.toString()).creationTick);
+            cache.put(a.toString(), older, 5);
+            assertEquals(2, cache.get(a.toString()).doc);
+
+            // only the lower case form is cached
+            assertNull(cache.get(a.toString().toUpperCase()));
+            cache.put(b.toString().toUpperCase(), older, 0);
+            assertNull(cache.get(b.toString()));
+            assertNull(cache.get("invalid"));
+            cache.put("invalid", older, 0);
+            assertNull(cache.get("invalid"));
+        } finally {
+            older.close();
+            newer.close();
+        }
+    }
+
+    public void testDocNumberCacheSize() throws Exception {
+        DocNumberCache cache = new DocNumberCache(100);
+        CachingIndexReader reader = createReader(cache);
+        try {
+            NodeId[] ids = new NodeId[10000];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = NodeId.randomId();
+                cache.put(ids[i].toString(), reader, i);
+            }
+            int cached = 0;
+            for (int i = 0; i < ids.length; i++) {
+                DocNumberCache.Entry e = cache.get(ids[i].toString());
+                if (e != null) {
+                    assertEquals(i, e.doc);
+                    cached++;
+                }
+            }
+            // minimum size is 1024
+            assertTrue(cached > 0);
+            assertTrue(cached <= 1024);
+            // the most recent entry is always cached
+            assertNotNull(cache.get(ids[ids.length - 1].toString()));
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testNodeIdCache() throws Exception {
+        NodeIdCache cache = new NodeIdCache(10);
+        cache.put(3, a);
+        assertEquals(a, cache.get(3));
+        assertNull(cache.get(4));
+        // 19 maps to the same slot as 3
+        cache.put(19, b);
+        assertEquals(b, cache.get(19));
+        assertNull(cache.get(3));
+    }
+
+    private void assertParents(CachingIndexReader reader) throws Exception {
+        BitSet deleted = new BitSet();
+        assertEquals(DocId.create(2).toString(),
+                reader.getParent(0, deleted).toString());
+        assertSame(DocId.NULL, reader.getParent(1, deleted));
+        assertEquals(DocId.create(1).toString(),
+                reader.getParent(2, deleted).toString());
+        for (int i = 3; i < 103; i++) {
+            assertEquals(DocId.create(foreign).toString(),
+                    reader.getParent(i, deleted).toString());
+        }
+    }
+
+    private int getDoc(IndexReader reader, NodeId id) throws Exception {
+        TermDocs tDocs = reader.termDocs(
+                new Term(FieldNames.UUID, id.toString()));
+        try {
+            assertTrue(tDocs.next());
+            return tDocs.doc();
+        } finally {
+            tDocs.close();
+        }
+    }
+
+    private CachingIndexReader createReader(DocNumberCache cache)
+            throws Exception {
+        return new CachingIndexReader(IndexReader.open(dir), cache, true);
+    }
+
+    private static Document createDocument(NodeId id, NodeId parent) {
+        Document doc = new Document();
+        doc.add(new Field(FieldNames.UUID, false, id.toString(),
+                Field.Store.YES, Field.Index.NOT_ANALYZED_NO_NORMS,
+                Field.TermVector.NO));
+        doc.add(new Field(FieldNames.PARENT, false,
+                parent != null ? parent.toString() : "",
+                Field.Store.YES, Field.Index.NOT_ANALYZED_NO_NORMS,
+                Field.TermVector.NO));
+        return doc;
+    }
+
+    /**
+     * Counts the outputs created for the persisted parent cache.
+     */
+    private static final class CountingDirectory extends RAMDirectory {
+
+        int outputs;
+
+        @Override
+        public IndexOutput createOutput(String name) throws IOException {
+            if (name.equals(PARENTS_FILE)) {
+                outputs++;
+            }
+            return super.createOutput(name);
+        }
+    }
+}
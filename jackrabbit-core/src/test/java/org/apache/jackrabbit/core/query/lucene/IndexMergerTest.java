@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import javax.jcr.Node;
+import javax.jcr.query.Query;
+
+import org.apache.jackrabbit.core.query.AbstractIndexingTest;
+
+/**
+ * <code>IndexMergerTest</code> checks the merges of the merge-test workspace,
+ * which runs one merge at a time with a limited rate.
+ */
+public class IndexMergerTest extends AbstractIndexingTest {
+
+    private static final String WORKSPACE_NAME = "merge-test";
+
+    protected String getWorkspaceName() {
+        return WORKSPACE_NAME;
+    }
+
+    public void testMerge() throws Exception {
+        SearchIndex index = getSearchIndex();
+        assertEquals(1, index.getMaxConcurrentMerges());
+        assertTrue(index.getMergeRateLimiter().isEnabled());
+        IndexMerger merger = index.getIndex().getMerger();
+        long merges = merger.getMergeCount();
+        long bytes = merger.getBytesMerged();
+
+        // a merge factor of three merges three small indexes
+        for (int i = 0; i < 6; i++) {
+            for (int j = 0; j < 10; j++) {
+                Node node = testRootNode.addNode("node" + i + "-" + j);
+                node.setProperty("p", "merged");
+            }
+            session.save();
+            flushSearchIndex();
+        }
+        merger.waitUntilIdle();
+
+        assertTrue(merger.getMergeCount() >= merges + 2);
+        assertTrue(merger.getBytesMerged() > bytes);
+        assertTrue(merger.getMergeTime() >= 0);
+
+        String stmt = testPath + "/*[@p = 'merged']";
+        Query query = qm.createQuery(stmt, Query.XPATH);
+        assertEquals(60, query.execute().getNodes().getSize());
+    }
+
+    public void testRateLimiter() throws Exception {
+        MergeRateLimiter limiter = new MergeRateLimiter(0);
+        assertFalse(limiter.isEnabled());
+        long time = System.currentTimeMillis();
+        limiter.pause(1024 * 1024 * 1024);
+        assertTrue(System.currentTimeMillis() - time < 100);
+
+        // one MB at 10 MB/s
+        limiter = new MergeRateLimiter(10);
+        assertTrue(limiter.isEnabled());
+        assertFalse(limiter.isQueryActive());
+        time = System.currentTimeMillis();
+        limiter.pause(1024 * 1024);
+        assertTrue(System.currentTimeMillis() - time >= 90);
+
+        // backs off while queries are active
+        limiter.queryStarted();
+        assertTrue(limiter.isQueryActive());
+        time = System.currentTimeMillis();
+        limiter.pause(1024 * 1024);
+        assertTrue(System.currentTimeMillis() - time
+                >= 90 * MergeRateLimiter.BACKOFF_FACTOR);
+    }
+}
@@ -17,12 +17,16 @@
 package org.apache.jackrabbit.core.query.lucene;
 
 import javax.jcr.Node;
+import javax.jcr.PropertyType;
 import javax.jcr.RepositoryException;
 import javax.jcr.Value;
+import javax.jcr.query.Query;
 import javax.jcr.query.QueryResult;
+import javax.jcr.query.Row;
 import javax.jcr.query.RowIterator;
 
 import org.apache.jackrabbit.core.query.AbstractIndexingTest;
+import org.apache.jackrabbit.core.query.lucene.join.ProjectionRow;
 
 
 /**
@@ -179,4 +183,44 @@ public class IndexingRuleTest extends AbstractIndexingTest {
         assertTrue("Title must not be present in excerpt",
                 excerpt.getString().indexOf("Apache") == -1);
     }
+
+    public void testStoredValues() throws RepositoryException {
+        Node node = testRootNode.addNode(nodeName1, NT_UNSTRUCTURED);
+        node.setProperty("rule", "store");
+        node.setProperty("title", "Apache Jackrabbit");
+        node.setProperty("count", 5);
+        node.setProperty("tags", new String[]{"jcr", "lucene"});
+        node.setProperty("text", TEXT);
+        testRootNode.getSession().save();
+
+        String stmt = "SELECT [title], [count], [tags]"
+                + " FROM [nt:unstructured] AS s WHERE ISCHILDNODE(s, ["
+                + testRootNode.getPath() + "])";
+        RowIterator rows = qm.createQuery(
+                stmt, Query.JCR_SQL2).execute().getRows();
+        assertTrue("No results returned", rows.hasNext());
+        Row row = rows.nextRow();
+        assertTrue("Values not read from the index",
+                row instanceof ProjectionRow);
+        assertEquals("Apache Jackrabbit", row.getValue("title").getString());
+        assertEquals(PropertyType.LONG, row.getValue("count").getType());
+        assertEquals(5, row.getValue("count").getLong());
+        assertEquals("jcr lucene", row.getValue("tags").getString());
+        assertEquals(node.getPath(), row.getNode().getPath());
+        assertFalse(rows.hasNext());
+
+        // text is not stored by any rule -> values are read from the node
+        stmt = "SELECT [title], [text], [missing]"
+                + " FROM [nt:unstructured] AS s WHERE ISCHILDNODE(s, ["
+                + testRootNode.getPath() + "])";
+        rows = qm.createQuery(stmt, Query.JCR_SQL2).execute().getRows();
+        assertTrue("No results returned", rows.hasNext());
+        row = rows.nextRow();
+        assertFalse("Values must not be read from the index",
+                row instanceof ProjectionRow);
+        assertEquals("Apache Jackrabbit", row.getValue("title").getString());
+        assertEquals(TEXT, row.getValue("text").getString());
+        assertEquals("", row.getValue("missing").getString());
+        assertFalse(rows.hasNext());
+    }
 }
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.jcr.Node;
+import javax.jcr.query.Query;
+
+import org.apache.jackrabbit.core.RepositoryImpl;
+import org.apache.jackrabbit.core.TestHelper;
+import org.apache.jackrabbit.core.fs.local.FileUtil;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.query.AbstractIndexingTest;
+import org.apache.jackrabbit.core.query.lucene.InitialIndexCheckpoint.Unit;
+import org.apache.jackrabbit.spi.commons.name.PathFactoryImpl;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.RAMDirectory;
+
+/**
+ * <code>InitialIndexTest</code> checks the parallel initial index build
+ * configured for the initial-index-test workspace.
+ */
+public class InitialIndexTest extends AbstractIndexingTest {
+
+    private static final String WORKSPACE_NAME = "initial-index-test";
+
+    protected String getWorkspaceName() {
+        return WORKSPACE_NAME;
+    }
+
+    public void testParallelInitialIndex() throws Exception {
+        int num = createNodes();
+        File indexDir = shutdownAndDeleteIndex();
+
+        // start workspace again, which creates the initial index
+        session = getHelper().getSuperuserSession(getWorkspaceName());
+        qm = session.getWorkspace().getQueryManager();
+
+        assertEquals(num, countNodes());
+        assertNull(InitialIndexCheckpoint.read(FSDirectory.open(indexDir)));
+    }
+
+    public void testResumeInitialIndex() throws Exception {
+        int num = createNodes();
+        File indexDir = shutdownAndDeleteIndex();
+
+        // simulate an initial index build that was interrupted before
+        // any of its units finished
+        Unit unit = new Unit();
+        unit.addRoot(RepositoryImpl.ROOT_NODE_ID,
+                PathFactoryImpl.getInstance().getRootPath());
+        indexDir.mkdirs();
+        Directory directory = FSDirectory.open(indexDir);
+        new InitialIndexCheckpoint(
+                directory, Collections.singletonList(unit)).write();
+
+        session = getHelper().getSuperuserSession(getWorkspaceName());
+        qm = session.getWorkspace().getQueryManager();
+
+        assertEquals(num, countNodes());
+        assertNull(InitialIndexCheckpoint.read(directory));
+    }
+
+    public void testCheckpoint() throws Exception {
+        Directory directory = new RAMDirectory();
+        assertNull(InitialIndexCheckpoint.read(directory));
+
+        NodeId a = NodeId.randomId();
+        NodeId b = NodeId.randomId();
+        Unit first = new Unit();
+        first.addNode(a);
+        Unit second = new Unit();
+        second.addRoot(b, PathFactoryImpl.getInstance().create("{}\t{}b"));
+        InitialIndexCheckpoint checkpoint = new InitialIndexCheckpoint(
+                directory, Arrays.asList(first, second));
+        checkpoint.write();
+        checkpoint.finished(first, "_1");
+
+        checkpoint = InitialIndexCheckpoint.read(directory);
+        assertEquals(2, checkpoint.getUnits().size());
+        first = checkpoint.getUnits().get(0);
+        second = checkpoint.getUnits().get(1);
+        assertTrue(first.isFinished());
+        assertEquals(Collections.singletonList(a), first.getNodes());
+        assertFalse(second.isFinished());
+        assertEquals(Collections.singletonList(b), second.getRoots());
+        assertEquals("{}\t{}b", second.getPaths().get(0).getString());
+        assertEquals(Collections.singleton("_1"), checkpoint.getIndexNames());
+
+        // empty units do not have an index segment
+        checkpoint.finished(second, "");
+        checkpoint = InitialIndexCheckpoint.read(directory);
+        assertTrue(checkpoint.getUnits().get(1).isFinished());
+        assertEquals(Collections.singleton("_1"), checkpoint.getIndexNames());
+
+        checkpoint.delete();
+        assertNull(InitialIndexCheckpoint.read(directory));
+        assertEquals(0, directory.listAll().length);
+    }
+
+    /**
+     * Creates three levels of nodes below the test root node.
+     *
+     * @return the number of created nodes.
+     */
+    private int createNodes() throws Exception {
+        int count = 0;
+        for (int i = 0; i < 10; i++) {
+            Node folder = testRootNode.addNode("folder" + i);
+            folder.setProperty("p", "value");
+            count++;
+            for (int j = 0; j < 10; j++) {
+                Node node = folder.addNode("node" + j);
+                node.setProperty("p", "value");
+                count++;
+                for (int k = 0; k < 5; k++) {
+                    node.addNode("leaf" + k).setProperty("p", "value");
+                    count++;
+                }
+            }
+        }
+        session.save();
+        return count;
+    }
+
+    private long countNodes() throws Exception {
+        Query q = qm.createQuery(
+                testPath + "//*[@p = 'value']", Query.XPATH);
+        return q.execute().getNodes().getSize();
+    }
+
+    /**
+     * Shuts down the workspace and deletes its search index.
+     *
+     * @return the index directory.
+     */
+    private File shutdownAndDeleteIndex() throws Exception {
+        File indexDir = new File(getSearchIndex().getPath());
+        RepositoryImpl repo = (RepositoryImpl) session.getRepository();
+        session.logout();
+        session = null;
+        superuser.logout();
+        superuser = null;
+        TestHelper.shutdownWorkspace(getWorkspaceName(), repo);
+        FileUtil.delete(indexDir);
+        return indexDir;
+    }
+
+}
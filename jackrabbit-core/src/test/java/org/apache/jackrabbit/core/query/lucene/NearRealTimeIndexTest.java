@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.jcr.Node;
+import javax.jcr.query.Query;
+
+import org.apache.jackrabbit.core.query.AbstractIndexingTest;
+import org.apache.lucene.index.IndexReader;
+
+/**
+ * <code>NearRealTimeIndexTest</code> checks that changes are searchable in
+ * the nrt-test workspace, which reopens the readers of the in-memory index
+ * from its index writer.
+ */
+public class NearRealTimeIndexTest extends AbstractIndexingTest {
+
+    private static final String WORKSPACE_NAME = "nrt-test";
+
+    protected String getWorkspaceName() {
+        return WORKSPACE_NAME;
+    }
+
+    public void testReopen() throws Exception {
+        // start with an empty in-memory index
+        flushSearchIndex();
+        VolatileIndex index = getSearchIndex().getIndex().getVolatileIndex();
+        assertTrue(index.isNearRealTime());
+
+        Node a = testRootNode.addNode("a");
+        a.setProperty("p", "x");
+        // keeps the segment of a alive after a is removed
+        testRootNode.addNode("c");
+        session.save();
+        ReadOnlyIndexReader[] r1 = index.getReadOnlyIndexReaders(false);
+        ReadOnlyIndexReader[] r2 = index.getReadOnlyIndexReaders(false);
+        int numDocs = numDocs(r1);
+        Set<Long> ticks = getCreationTicks(r1);
+        try {
+            // unchanged index returns the same readers
+            assertTrue(r1.length > 0);
+            assertTrue(Arrays.equals(r1, r2));
+        } finally {
+            release(r1);
+            release(r2);
+        }
+
+        testRootNode.addNode("b").setProperty("p", "x");
+        session.save();
+        ReadOnlyIndexReader[] r3 = index.getReadOnlyIndexReaders(false);
+        try {
+            assertEquals(numDocs + 1, numDocs(r3));
+            // segments keep their caching readers
+            assertTrue(getCreationTicks(r3).containsAll(ticks));
+            ticks = getCreationTicks(r3);
+        } finally {
+            release(r3);
+        }
+
+        a.remove();
+        session.save();
+        ReadOnlyIndexReader[] r4 = index.getReadOnlyIndexReaders(false);
+        try {
+            assertEquals(numDocs, numDocs(r4));
+            // deletions do not replace the caching readers either
+            assertTrue(getCreationTicks(r4).containsAll(ticks));
+        } finally {
+            release(r4);
+        }
+    }
+
+    public void testSubReadersReused() throws Exception {
+        testRootNode.addNode("a");
+        session.save();
+        // move a into a persistent index
+        flushSearchIndex();
+        testRootNode.addNode("b");
+        session.save();
+
+        MultiIndex index = getSearchIndex().getIndex();
+        CachingMultiIndexReader r1 = index.getIndexReader();
+        Set<IndexReader> readers;
+        try {
+            readers = new HashSet<IndexReader>(
+                    Arrays.asList(r1.getIndexReaders()));
+        } finally {
+            r1.release();
+        }
+
+        testRootNode.addNode("c");
+        session.save();
+        CachingMultiIndexReader r2 = index.getIndexReader();
+        try {
+            assertNotSame(r1, r2);
+            // only the in-memory index changed
+            List<IndexReader> subReaders = Arrays.asList(r2.getIndexReaders());
+            assertTrue(subReaders.containsAll(readers));
+            assertTrue(subReaders.size() > readers.size());
+        } finally {
+            r2.release();
+        }
+    }
+
+    public void testSearchable() throws Exception {
+        String stmt = testPath + "/*[@p = 'x']";
+        for (int i = 0; i < 20; i++) {
+            Node n = testRootNode.addNode("node" + i);
+            n.setProperty("p", "x");
+            session.save();
+            assertEquals(i + 1, count(stmt));
+        }
+
+        // update in the in-memory index
+        testRootNode.getNode("node0").setProperty("p", "y");
+        session.save();
+        assertEquals(19, count(stmt));
+
+        // delete from the in-memory index
+        for (int i = 1; i < 10; i++) {
+            testRootNode.getNode("node" + i).remove();
+        }
+        session.save();
+        assertEquals(10, count(stmt));
+
+        // and after the in-memory index is written to disk
+        flushSearchIndex();
+        assertEquals(10, count(stmt));
+        testRootNode.getNode("node10").remove();
+        session.save();
+        assertEquals(9, count(stmt));
+    }
+
+    private static int numDocs(ReadOnlyIndexReader[] readers) {
+        int numDocs = 0;
+        for (ReadOnlyIndexReader reader : readers) {
+            numDocs += reader.numDocs();
+        }
+        return numDocs;
+    }
+
+    private static Set<Long> getCreationTicks(ReadOnlyIndexReader[] readers) {
+        Set<Long> ticks = new HashSet<Long>();
+        for (ReadOnlyIndexReader reader : readers) {
+            ticks.add(reader.getCreationTick());
+        }
+        return ticks;
+    }
+
+    private static void release(ReadOnlyIndexReader[] readers)
+            throws IOException {
+        for (ReadOnlyIndexReader reader : readers) {
+            reader.release();
+        }
+    }
+
+    private long count(String stmt) throws Exception {
+        Query query = qm.createQuery(stmt, Query.XPATH);
+        return query.execute().getNodes().getSize();
+    }
+}
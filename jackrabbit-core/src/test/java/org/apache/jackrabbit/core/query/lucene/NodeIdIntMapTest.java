@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import junit.framework.TestCase;
+
+import org.apache.jackrabbit.core.id.NodeId;
+
+/**
+ * <code>NodeIdIntMapTest</code> tests {@link NodeIdIntMap}.
+ */
+public class NodeIdIntMapTest extends TestCase {
+
+    public void testPutGet() {
+        NodeIdIntMap map = new NodeIdIntMap(10);
+        NodeId[] ids = new NodeId[10000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = NodeId.randomId();
+            map.put(ids[i].getMostSignificantBits(),
+                    ids[i].getLeastSignificantBits(), i);
+        }
+        assertEquals(ids.length, map.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertTrue(map.containsKey(ids[i].getMostSignificantBits(),
+                    ids[i].getLeastSignificantBits()));
+            assertEquals(i, map.get(ids[i].getMostSignificantBits(),
+                    ids[i].getLeastSignificantBits()));
+        }
+        NodeId id = NodeId.randomId();
+        assertFalse(map.containsKey(id.getMostSignificantBits(),
+                id.getLeastSignificantBits()));
+        assertEquals(-1, map.get(id.getMostSignificantBits(),
+                id.getLeastSignificantBits()));
+
+        // overwrite
+        map.put(ids[0].getMostSignificantBits(),
+                ids[0].getLeastSignificantBits(), -5);
+        assertEquals(-5, map.get(ids[0].getMostSignificantBits(),
+                ids[0].getLeastSignificantBits()));
+        assertEquals(ids.length, map.size());
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.query.Query;
+
+import org.apache.jackrabbit.api.query.JackrabbitQuery;
+import org.apache.jackrabbit.core.SessionImpl;
+import org.apache.jackrabbit.core.query.AbstractIndexingTest;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.TermQuery;
+
+/**
+ * <code>ParallelSearchTest</code> checks that queries evaluated in parallel
+ * on the sub indexes of the parallel-search-test workspace return the same
+ * results as queries evaluated by the calling thread.
+ */
+public class ParallelSearchTest extends AbstractIndexingTest {
+
+    private static final String WORKSPACE_NAME = "parallel-search-test";
+
+    protected String getWorkspaceName() {
+        return WORKSPACE_NAME;
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        // create a sub index per batch
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 10; j++) {
+                int n = j * 4 + i;
+                Node node = testRootNode.addNode("node" + n);
+                node.setProperty("n", (n * 7) % 40);
+                node.setProperty("p", n % 3 == 0 ? "x" : "y");
+                node.setProperty("text", n % 2 == 0 ? "even number" : "odd number");
+            }
+            session.save();
+            flushSearchIndex();
+        }
+    }
+
+    public void testSubIndexes() throws Exception {
+        SearchIndex index = getSearchIndex();
+        assertNotNull(index.getSearchExecutor());
+        CachingMultiIndexReader reader = index.getIndex().getIndexReader();
+        try {
+            assertTrue(reader.getIndexReaders().length > 1);
+            JackrabbitIndexSearcher searcher =
+                    new JackrabbitIndexSearcher(
+                            (SessionImpl) session, reader, null);
+            BooleanQuery query = new BooleanQuery();
+            query.add(new TermQuery(new Term("a", "b")), Occur.MUST);
+            query.add(new JackrabbitTermQuery(new Term("c", "d")), Occur.MUST);
+            assertFalse(searcher.isParallel(query));
+            searcher.setExecutor(index.getSearchExecutor());
+            assertTrue(searcher.isParallel(query));
+            query.add(new MatchAllQuery("e", null), Occur.MUST_NOT);
+            assertFalse(searcher.isParallel(query));
+        } finally {
+            reader.release();
+        }
+    }
+
+    public void testUnsorted() throws Exception {
+        String stmt = "//*[@p = 'x']";
+        List<String> paths = getPaths(stmt, Query.XPATH, true);
+        assertEquals(14, paths.size());
+        assertEquals(getPaths(stmt, Query.XPATH, false), paths);
+
+        stmt = "//*[jcr:contains(., 'odd')]";
+        paths = getPaths(stmt, Query.XPATH, true);
+        assertEquals(20, paths.size());
+        assertEquals(getPaths(stmt, Query.XPATH, false), paths);
+    }
+
+    public void testSorted() throws Exception {
+        String stmt = "//*[@p = 'y'] order by @n descending";
+        List<String> paths = getPaths(stmt, Query.XPATH, true);
+        assertEquals(26, paths.size());
+        assertEquals(getPaths(stmt, Query.XPATH, false), paths);
+        long previous = Long.MAX_VALUE;
+        for (String path : paths) {
+            long n = session.getNode(path).getProperty("n").getLong();
+            assertTrue(n <= previous);
+            previous = n;
+        }
+
+        stmt = "//*[jcr:contains(., 'even')] order by @p, @n";
+        paths = getPaths(stmt, Query.XPATH, true);
+        assertEquals(20, paths.size());
+        assertEquals(getPaths(stmt, Query.XPATH, false), paths);
+    }
+
+    public void testSQL2() throws Exception {
+        String stmt = "SELECT * FROM [nt:unstructured] WHERE [p] = 'x'"
+                + " ORDER BY [n]";
+        List<String> paths = getPaths(stmt, Query.JCR_SQL2, true);
+        assertEquals(14, paths.size());
+        assertEquals(getPaths(stmt, Query.JCR_SQL2, false), paths);
+    }
+
+    private List<String> getPaths(String stmt, String language,
+                                  boolean parallel) throws Exception {
+        JackrabbitQuery query = (JackrabbitQuery)
+                qm.createQuery(stmt, language);
+        query.setParallelExecution(parallel);
+        List<String> paths = new ArrayList<String>();
+        for (NodeIterator it = query.execute().getNodes(); it.hasNext(); ) {
+            paths.add(it.nextNode().getPath());
+        }
+        return paths;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.query.Query;
+
+import org.apache.jackrabbit.core.query.AbstractIndexingTest;
+import org.apache.jackrabbit.stats.QueryStatCore;
+
+/**
+ * <code>QueryResultCacheTest</code> checks the query result and parse caches
+ * of the query-cache-test workspace.
+ */
+public class QueryResultCacheTest extends AbstractIndexingTest {
+
+    private static final String WORKSPACE_NAME = "query-cache-test";
+
+    private QueryStatCore queryStat;
+
+    private boolean enabled;
+
+    protected String getWorkspaceName() {
+        return WORKSPACE_NAME;
+    }
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        queryStat = getSearchIndex().getContext().getQueryStat();
+        enabled = queryStat.isEnabled();
+        queryStat.setEnabled(true);
+    }
+
+    protected void tearDown() throws Exception {
+        queryStat.setEnabled(enabled);
+        queryStat = null;
+        super.tearDown();
+    }
+
+    public void testInvalidation() throws Exception {
+        String stmt = testPath + "/*[@p = 'x']";
+        testRootNode.addNode("node0").setProperty("p", "x");
+        session.save();
+        assertEquals(1, count(stmt, -1, -1));
+
+        long hits = queryStat.getResultCacheHitCount();
+        assertEquals(1, count(stmt, -1, -1));
+        assertEquals(hits + 1, queryStat.getResultCacheHitCount());
+
+        testRootNode.addNode("node1").setProperty("p", "x");
+        session.save();
+        assertEquals(2, count(stmt, -1, -1));
+
+        testRootNode.getNode("node0").setProperty("p", "y");
+        session.save();
+        assertEquals(1, count(stmt, -1, -1));
+
+        flushSearchIndex();
+        assertEquals(1, count(stmt, -1, -1));
+    }
+
+    public void testOffsetAndLimit() throws Exception {
+        String stmt = testPath + "/* order by @p descending";
+        for (int i = 0; i < 5; i++) {
+            testRootNode.addNode("node" + i).setProperty("p", i);
+        }
+        session.save();
+        assertEquals(5, count(stmt, -1, -1));
+
+        long hits = queryStat.getResultCacheHitCount();
+        assertEquals(2, count(stmt, -1, 2));
+        assertEquals(2, count(stmt, 3, -1));
+        assertEquals(hits + 2, queryStat.getResultCacheHitCount());
+
+        Query q = qm.createQuery(stmt, Query.XPATH);
+        q.setOffset(1);
+        q.setLimit(3);
+        checkResultSequence(q.execute().getRows(), new Node[]{
+                testRootNode.getNode("node3"),
+                testRootNode.getNode("node2"),
+                testRootNode.getNode("node1")});
+    }
+
+    public void testLimitNotCached() throws Exception {
+        String stmt = testPath + "/* order by @p ascending";
+        for (int i = 0; i < 5; i++) {
+            testRootNode.addNode("node" + i).setProperty("p", i);
+        }
+        session.save();
+        assertEquals(2, count(stmt, -1, 2));
+
+        // the hits of the limited query were not read to the end
+        long hits = queryStat.getResultCacheHitCount();
+        assertEquals(5, count(stmt, -1, -1));
+        assertEquals(hits, queryStat.getResultCacheHitCount());
+        assertEquals(5, count(stmt, -1, -1));
+        assertEquals(hits + 1, queryStat.getResultCacheHitCount());
+    }
+
+    public void testBindVariables() throws Exception {
+        testRootNode.addNode("node0").setProperty("p", "a");
+        testRootNode.addNode("node1").setProperty("p", "b");
+        testRootNode.addNode("node2").setProperty("p", "b");
+        session.save();
+
+        String stmt = "SELECT * FROM [nt:base] WHERE ISCHILDNODE(["
+                + testRoot + "]) AND [p] = $v";
+        assertEquals(1, count(stmt, "a"));
+        assertEquals(2, count(stmt, "b"));
+
+        long hits = queryStat.getResultCacheHitCount();
+        assertEquals(1, count(stmt, "a"));
+        assertEquals(2, count(stmt, "b"));
+        assertEquals(hits + 2, queryStat.getResultCacheHitCount());
+
+        testRootNode.getNode("node0").setProperty("p", "b");
+        session.save();
+        assertEquals(0, count(stmt, "a"));
+        assertEquals(3, count(stmt, "b"));
+    }
+
+    public void testParseCache() throws Exception {
+        String stmt = testPath + "/*[@p = 'parse']";
+        qm.createQuery(stmt, Query.XPATH);
+        long hits = queryStat.getParseCacheHitCount();
+        qm.createQuery(stmt, Query.XPATH);
+        qm.createQuery(stmt, Query.XPATH);
+        assertEquals(hits + 2, queryStat.getParseCacheHitCount());
+
+        long misses = queryStat.getParseCacheMissCount();
+        qm.createQuery(testPath + "/*[@p = 'other']", Query.XPATH);
+        assertEquals(misses + 1, queryStat.getParseCacheMissCount());
+    }
+
+    private long count(String stmt, long offset, long limit)
+            throws Exception {
+        Query query = qm.createQuery(stmt, Query.XPATH);
+        if (offset >= 0) {
+            query.setOffset(offset);
+        }
+        if (limit >= 0) {
+            query.setLimit(limit);
+        }
+        return size(query.execute().getNodes());
+    }
+
+    private long count(String stmt, String value) throws Exception {
+        Query query = qm.createQuery(stmt, Query.JCR_SQL2);
+        query.bindValue("v", vf.createValue(value));
+        return size(query.execute().getNodes());
+    }
+
+    private static long size(NodeIterator nodes) {
+        long size = 0;
+        while (nodes.hasNext()) {
+            nodes.nextNode();
+            size++;
+        }
+        return size;
+    }
+}
@@ -53,6 +53,16 @@ public class TestAll extends TestCase {
         suite.addTestSuite(ArrayHitsTest.class);
         suite.addTestSuite(IndexFormatVersionTest.class);
         suite.addTestSuite(SynonymProviderTest.class);
+        suite.addTestSuite(InitialIndexTest.class);
+        suite.addTestSuite(TextExtractionCacheTest.class);
+        suite.addTestSuite(ValueIndexTest.class);
+        suite.addTestSuite(AncestorIndexTest.class);
+        suite.addTestSuite(ParallelSearchTest.class);
+        suite.addTestSuite(IndexMergerTest.class);
+        suite.addTestSuite(NearRealTimeIndexTest.class);
+        suite.addTestSuite(QueryResultCacheTest.class);
+        suite.addTestSuite(CachingIndexReaderTest.class);
+        suite.addTestSuite(NodeIdIntMapTest.class);
 
         return suite;
     }
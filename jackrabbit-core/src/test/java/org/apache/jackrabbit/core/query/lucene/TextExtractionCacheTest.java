@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.core.data.DataIdentifier;
+import org.apache.jackrabbit.core.data.FileDataStore;
+import org.apache.jackrabbit.core.value.InternalValue;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.EmptyParser;
+
+/**
+ * <code>TextExtractionCacheTest</code> checks the on-disk cache for text
+ * extracted from binaries in the data store.
+ */
+public class TextExtractionCacheTest extends TestCase {
+
+    private static final Executor DIRECT = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static final String TEXT = "text/plain";
+
+    private File dir;
+
+    private FileDataStore store;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        dir = new File("target", "text-extraction-cache-test");
+        FileUtils.deleteDirectory(dir);
+        store = new FileDataStore();
+        store.setPath(new File(dir, "datastore").getPath());
+        store.setMinRecordLength(0);
+        store.init(null);
+    }
+
+    protected void tearDown() throws Exception {
+        store.close();
+        FileUtils.deleteDirectory(dir);
+        super.tearDown();
+    }
+
+    public void testPutAndGet() throws Exception {
+        DataIdentifier a = addRecord("a");
+        DataIdentifier b = addRecord("b");
+        TextExtractionCache cache = openCache("1", Long.MAX_VALUE);
+        assertNull(cache.get(a, TEXT, null));
+        cache.put(a, TEXT, null, "text of a");
+        assertEquals("text of a", cache.get(a, TEXT, null));
+        assertNull(cache.get(b, TEXT, null));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertTrue(cache.getSize() > 0);
+
+        // entries survive a restart, but only for the same version
+        cache = openCache("1", Long.MAX_VALUE);
+        assertEquals("text of a", cache.get(a, TEXT, null));
+        cache = openCache("2", Long.MAX_VALUE);
+        assertNull(cache.get(a, TEXT, null));
+    }
+
+    public void testMediaTypeAndEncoding() throws Exception {
+        DataIdentifier a = addRecord("<p>a</p>");
+        TextExtractionCache cache = openCache("1", Long.MAX_VALUE);
+        cache.put(a, TEXT, null, "<p>a</p>");
+        cache.put(a, "text/html", null, "a");
+        cache.put(a, TEXT, "UTF-16", "?");
+        assertEquals("<p>a</p>", cache.get(a, TEXT, null));
+        assertEquals("a", cache.get(a, "text/html", null));
+        assertEquals("?", cache.get(a, TEXT, "UTF-16"));
+        assertNull(cache.get(a, "text/html", "UTF-16"));
+    }
+
+    public void testEviction() throws Exception {
+        // entries of the same length to get the same compressed size
+        TextExtractionCache cache = openCache("1", Long.MAX_VALUE);
+        DataIdentifier first = addRecord("first");
+        cache.put(first, TEXT, null, "one");
+        long entrySize = cache.getSize();
+
+        cache = openCache("1", entrySize * 2);
+        DataIdentifier second = addRecord("second");
+        DataIdentifier third = addRecord("third");
+        cache.put(second, TEXT, null, "two");
+        // access the first entry, the second one is now the eldest
+        assertEquals("one", cache.get(first, TEXT, null));
+        cache.put(third, TEXT, null, "six");
+        assertNull(cache.get(second, TEXT, null));
+        assertEquals("one", cache.get(first, TEXT, null));
+        assertEquals("six", cache.get(third, TEXT, null));
+        assertEquals(entrySize * 2, cache.getSize());
+    }
+
+    public void testExtractorField() throws Exception {
+        DataIdentifier id = addRecord("hello world");
+        InternalValue value = InternalValue.create(store, id);
+        TextExtractionCache cache = openCache("1", Long.MAX_VALUE);
+        Metadata metadata = new Metadata();
+        metadata.set(Metadata.CONTENT_TYPE, TEXT);
+
+        LazyTextExtractorField field = new LazyTextExtractorField(
+                new AutoDetectParser(), value, metadata, DIRECT,
+                false, 1000, true, cache);
+        assertEquals("hello world", field.stringValue().trim());
+        assertEquals(0, cache.getHitCount());
+
+        // the second field must not parse the binary again, the parser
+        // may have changed the metadata of the first one
+        metadata = new Metadata();
+        metadata.set(Metadata.CONTENT_TYPE, TEXT);
+        field = new LazyTextExtractorField(
+                EmptyParser.INSTANCE, value, metadata, DIRECT,
+                false, 1000, true, cache);
+        assertTrue(field.isExtractorFinished());
+        assertEquals("hello world", field.stringValue().trim());
+        assertEquals(1, cache.getHitCount());
+
+        // but it must for a different media type
+        metadata = new Metadata();
+        metadata.set(Metadata.CONTENT_TYPE, "application/octet-stream");
+        field = new LazyTextExtractorField(
+                EmptyParser.INSTANCE, value, metadata, DIRECT,
+                false, 1000, true, cache);
+        assertEquals("", field.stringValue().trim());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    public void testPopulate() throws Exception {
+        DataIdentifier a = addRecord("some text");
+        DataIdentifier b = addRecord("more text");
+        Map<DataIdentifier, Metadata> binaries =
+            new HashMap<DataIdentifier, Metadata>();
+        for (DataIdentifier id : new DataIdentifier[] { a, b }) {
+            Metadata metadata = new Metadata();
+            metadata.set(Metadata.CONTENT_TYPE, TEXT);
+            metadata.set(Metadata.CONTENT_ENCODING, "UTF-8");
+            binaries.put(id, metadata);
+        }
+        TextExtractionCache cache = openCache("1", Long.MAX_VALUE);
+        assertEquals(2, cache.populate(
+                store, binaries, new AutoDetectParser(), 1000));
+        assertEquals("some text", cache.get(a, TEXT, "UTF-8").trim());
+        assertEquals("more text", cache.get(b, TEXT, "UTF-8").trim());
+        assertNull(cache.get(a, TEXT, null));
+        assertEquals(0, cache.populate(
+                store, binaries, new AutoDetectParser(), 1000));
+    }
+
+    private DataIdentifier addRecord(String text) throws Exception {
+        return store.addRecord(new ByteArrayInputStream(
+                text.getBytes("UTF-8"))).getIdentifier();
+    }
+
+    private TextExtractionCache openCache(String version, long maxSize)
+            throws Exception {
+        return new TextExtractionCache(
+                new File(dir, "cache"), maxSize, version, null);
+    }
+
+}
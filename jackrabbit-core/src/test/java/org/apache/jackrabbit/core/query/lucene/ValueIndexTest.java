@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.query.lucene;
+
+import java.math.BigDecimal;
+
+import junit.framework.TestCase;
+
+import org.apache.jackrabbit.core.query.lucene.SharedFieldCache.Builder;
+import org.apache.jackrabbit.core.query.lucene.SharedFieldCache.ComparableArray;
+import org.apache.jackrabbit.core.query.lucene.SharedFieldCache.ValueIndex;
+
+/**
+ * <code>ValueIndexTest</code> checks the primitive columns of the sort value
+ * index.
+ */
+public class ValueIndexTest extends TestCase {
+
+    public void testLongs() {
+        Comparable<?>[] values = new Comparable<?>[] {
+                3L, null, -5L, Long.MAX_VALUE, 3L };
+        ValueIndex index = new ValueIndex(values, 4);
+        assertEquals(ValueIndex.LONGS, index.getKind());
+        assertValues(values, index);
+        assertCompare(values, index, 3L, 2L, Long.MIN_VALUE, "3", null);
+    }
+
+    public void testDoubles() {
+        Comparable<?>[] values = new Comparable<?>[] {
+                1.5, -0.0, null, Double.NaN, 0.0 };
+        ValueIndex index = new ValueIndex(values, 4);
+        assertEquals(ValueIndex.DOUBLES, index.getKind());
+        assertValues(values, index);
+        assertCompare(values, index, 0.0, -0.0, 1.5, Double.NaN, 2L, null);
+    }
+
+    public void testDecimals() {
+        Comparable<?>[] values = new Comparable<?>[] {
+                new BigDecimal("1.5"), new BigDecimal("-10"), null,
+                new BigDecimal("0.125") };
+        ValueIndex index = new ValueIndex(values, 3);
+        assertEquals(ValueIndex.DECIMALS, index.getKind());
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                assertNull(index.getValue(i));
+            } else {
+                assertEquals(0, ((BigDecimal) values[i]).compareTo(
+                        (BigDecimal) index.getValue(i)));
+            }
+        }
+        assertCompare(values, index, new BigDecimal("1.50"), null);
+
+        // values that do not fit into a long use the dictionary
+        values[2] = new BigDecimal("1e30");
+        index = new ValueIndex(values, 4);
+        assertEquals(ValueIndex.ORDINALS, index.getKind());
+        assertValues(values, index);
+    }
+
+    public void testStrings() {
+        Comparable<?>[] values = new Comparable<?>[] {
+                "b", "a", null, "b", "c" };
+        ValueIndex index = new ValueIndex(values, 4);
+        assertEquals(ValueIndex.ORDINALS, index.getKind());
+        assertFalse(index.sparse);
+        assertValues(values, index);
+        assertCompare(values, index, "a", "bb", 1L, null);
+    }
+
+    public void testMixed() {
+        Comparable<?>[] values = new Comparable<?>[] { "b", 1L, null, 2.0 };
+        ValueIndex index = new ValueIndex(values, 3);
+        assertEquals(ValueIndex.ORDINALS, index.getKind());
+        assertValues(values, index);
+        assertCompare(values, index, "a", 1L, 2.0, null);
+    }
+
+    public void testSparse() {
+        Comparable<?>[] values = new Comparable<?>[1000];
+        values[17] = 5L;
+        values[900] = 7L;
+        ValueIndex index = new ValueIndex(values, 2);
+        assertTrue(index.sparse);
+        assertValues(values, index);
+        assertCompare(values, index, 6L, null);
+    }
+
+    public void testMultiValued() {
+        Builder builder = new Builder(3);
+        builder.addTerm("a");
+        builder.addDoc(0, 1);
+        builder.addTerm("b");
+        builder.addDoc(0, 0);
+        builder.addDoc(1, 0);
+        ValueIndex index = builder.build(3);
+        assertEquals("[b, a]", index.getValue(0).toString());
+        assertTrue(index.getValue(1) instanceof ComparableArray);
+        assertEquals("b", index.getValue(1).toString());
+        assertNull(index.getValue(2));
+        assertTrue(index.compare(index.getValue(0), 1) > 0);
+    }
+
+    private static void assertValues(Comparable<?>[] values, ValueIndex index) {
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], index.getValue(i));
+        }
+    }
+
+    private static void assertCompare(
+            Comparable<?>[] values, ValueIndex index, Comparable<?>... probes) {
+        for (Comparable<?> probe : probes) {
+            for (int i = 0; i < values.length; i++) {
+                assertEquals(
+                        Integer.signum(Util.compare(probe, index.getValue(i))),
+                        Integer.signum(index.compare(probe, i)));
+            }
+        }
+    }
+
+}
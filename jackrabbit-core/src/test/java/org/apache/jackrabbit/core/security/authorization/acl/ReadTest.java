@@ -21,6 +21,11 @@ import org.apache.jackrabbit.api.JackrabbitSession;
 import org.apache.jackrabbit.api.security.JackrabbitAccessControlList;
 import org.apache.jackrabbit.api.security.user.Authorizable;
 import org.apache.jackrabbit.api.security.user.Group;
+import org.apache.jackrabbit.core.SessionImpl;
+import org.apache.jackrabbit.core.id.ItemId;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.security.AccessManager;
+import org.apache.jackrabbit.core.security.BulkReadAccessManager;
 import org.apache.jackrabbit.core.security.authorization.AbstractEvaluationTest;
 import org.apache.jackrabbit.core.security.authorization.AccessControlConstants;
 import org.apache.jackrabbit.test.NotExecutableException;
@@ -475,6 +480,46 @@ public class ReadTest extends AbstractEvaluationTest {
         }
     }
 
+    public void testBulkCanRead() throws Exception {
+        Node n = superuser.getNode(path);
+        Node a = n.addNode("a", testNodeType);
+        Node a1 = a.addNode("a1", testNodeType);
+        Node a2 = a.addNode("a2", testNodeType);
+        Node c1 = superuser.getNode(childNPath).addNode("c1", testNodeType);
+        Node removed = n.addNode("removed", testNodeType);
+        superuser.save();
+        ItemId removedId = NodeId.valueOf(removed.getIdentifier());
+        removed.remove();
+        superuser.save();
+
+        Privilege[] privileges = privilegesFromName(Privilege.JCR_READ);
+        withdrawPrivileges(path, privileges, getRestrictions(superuser, path));
+        givePrivileges(childNPath, privileges, getRestrictions(superuser, childNPath));
+
+        ItemId[] ids = new ItemId[] {
+                NodeId.valueOf(a1.getIdentifier()),
+                NodeId.valueOf(n.getIdentifier()),
+                NodeId.valueOf(c1.getIdentifier()),
+                NodeId.valueOf(a2.getIdentifier()),
+                NodeId.valueOf(superuser.getNode(childNPath).getIdentifier()),
+                NodeId.valueOf(a.getIdentifier()),
+                removedId
+        };
+        boolean[] expected = new boolean[] {
+                false, false, true, false, true, false, false
+        };
+
+        AccessManager accessMgr = ((SessionImpl) getTestSession()).getAccessManager();
+        boolean[] readable = ((BulkReadAccessManager) accessMgr).canRead(ids);
+        assertEquals(ids.length, readable.length);
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i].toString(), expected[i], readable[i]);
+            if (ids[i] != removedId) {
+                assertEquals(accessMgr.canRead(null, ids[i]), readable[i]);
+            }
+        }
+    }
+
     private static boolean canGetNode(Session session, String nodePath) throws RepositoryException {
         try {
             session.getNode(nodePath);
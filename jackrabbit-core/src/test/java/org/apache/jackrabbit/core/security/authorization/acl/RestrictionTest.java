@@ -31,6 +31,11 @@ import javax.jcr.security.Privilege;
 
 import org.apache.jackrabbit.api.security.JackrabbitAccessControlList;
 import org.apache.jackrabbit.commons.jackrabbit.authorization.AccessControlUtils;
+import org.apache.jackrabbit.core.SessionImpl;
+import org.apache.jackrabbit.core.id.ItemId;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.security.AccessManager;
+import org.apache.jackrabbit.core.security.BulkReadAccessManager;
 import org.apache.jackrabbit.core.security.authorization.AbstractEvaluationTest;
 import org.apache.jackrabbit.test.NotExecutableException;
 import org.apache.jackrabbit.value.StringValue;
@@ -131,4 +136,27 @@ public class RestrictionTest extends AbstractEvaluationTest {
         }
     }
 
-}
\ No newline at end of file
+
+    public void testBulkCanReadWithRestrictions() throws Exception {
+        // deny jcr:read /testroot/a  glob=*/c
+        addEntry(path_a, false, "*/c", Privilege.JCR_READ);
+
+        ItemId[] ids = new ItemId[] {
+                NodeId.valueOf(superuser.getNode(path_d).getIdentifier()),
+                NodeId.valueOf(superuser.getNode(path_c).getIdentifier()),
+                NodeId.valueOf(superuser.getNode(path_b).getIdentifier()),
+                NodeId.valueOf(superuser.getNode(path_a).getIdentifier())
+        };
+
+        Session testSession = getTestSession();
+        AccessManager accessMgr = ((SessionImpl) testSession).getAccessManager();
+        boolean[] readable = ((BulkReadAccessManager) accessMgr).canRead(ids);
+        assertEquals(ids.length, readable.length);
+        assertFalse("user should not be able to read /a/b/c", readable[1]);
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(accessMgr.canRead(null, ids[i]), readable[i]);
+        }
+        assertTrue(testSession.nodeExists(path_b));
+        assertFalse(testSession.nodeExists(path_c));
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.state;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.spi.Name;
+import org.apache.jackrabbit.spi.NameFactory;
+import org.apache.jackrabbit.spi.commons.name.NameFactoryImpl;
+
+/**
+ * <code>ChildNodeEntriesTest</code> checks that packed and paged child node
+ * entries behave like the expanded ones.
+ */
+public class ChildNodeEntriesTest extends TestCase {
+
+    private static final NameFactory FACTORY = NameFactoryImpl.getInstance();
+
+    private final Name a = FACTORY.create("", "a");
+
+    private final Name b = FACTORY.create("", "b");
+
+    private final Name c = FACTORY.create("", "c");
+
+    private ChildNodeEntries entries;
+
+    private ChildNodeEntries expected;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        entries = new ChildNodeEntries();
+        expected = new ChildNodeEntries();
+        Name[] names = { a, b, a, c, a };
+        for (Name name : names) {
+            NodeId id = NodeId.randomId();
+            entries.add(name, id);
+            expected.add(name, id);
+        }
+        entries = entries.pack();
+    }
+
+    public void testLookups() {
+        assertTrue(entries.isPacked());
+        assertEquals(expected.size(), entries.size());
+        assertEquals(expected.list(), entries.list());
+        assertEquals(expected, entries);
+        for (ChildNodeEntry entry : expected.list()) {
+            assertEquals(entry, entries.get(entry.getId()));
+            assertEquals(entry, entries.get(entry.getName(), entry.getIndex()));
+            assertTrue(entries.contains(entry.getId()));
+            assertTrue(entries.contains(entry.getName(), entry.getIndex()));
+            assertEquals(entry.getName(), entries.getName(entry.getId()));
+        }
+        assertTrue(entries.contains(c));
+        assertFalse(entries.contains(c, 2));
+        assertFalse(entries.contains(NodeId.randomId()));
+        assertNull(entries.getName(NodeId.randomId()));
+        assertEquals(expected.get(a), entries.get(a));
+        assertEquals(3, entries.get(a).size());
+        assertNull(entries.get(a, 4));
+        assertNull(entries.get(b, 2));
+        assertNull(entries.get(NodeId.randomId()));
+        assertTrue(entries.get(FACTORY.create("", "d")).isEmpty());
+    }
+
+    public void testPackLeavesOriginal() {
+        ChildNodeEntries packed = expected.pack();
+        assertNotSame(expected, packed);
+        assertTrue(packed.isPacked());
+        assertFalse(expected.isPacked());
+        assertEquals(5, expected.size());
+        assertSame(packed, packed.pack());
+    }
+
+    public void testExpandOnModification() {
+        ChildNodeEntries copy = (ChildNodeEntries) entries.clone();
+        assertTrue(copy.isPacked());
+
+        ChildNodeEntry first = expected.get(a, 1);
+        copy.remove(first.getId());
+        expected.remove(first.getId());
+        assertFalse(copy.isPacked());
+        assertEquals(expected.list(), copy.list());
+        assertEquals(a, copy.get(a, 2).getName());
+        assertNull(copy.get(a, 3));
+
+        // the packed original is not affected
+        assertTrue(entries.isPacked());
+        assertEquals(5, entries.size());
+        assertEquals(first, entries.get(first.getId()));
+    }
+
+    public void testRemoveAllAndRetainAll() {
+        ChildNodeEntries copy = (ChildNodeEntries) entries.clone();
+        assertTrue(copy.removeAll(entries).isEmpty());
+        assertEquals(5, copy.retainAll(entries).size());
+
+        NodeId id = NodeId.randomId();
+        copy.add(b, id);
+        List<ChildNodeEntry> added = copy.removeAll(entries);
+        assertEquals(1, added.size());
+        assertEquals(id, added.get(0).getId());
+        assertEquals(5, copy.retainAll(entries).size());
+        assertTrue(entries.removeAll(copy).isEmpty());
+    }
+
+    public void testRenamedEntries() {
+        ChildNodeEntries copy = (ChildNodeEntries) entries.clone();
+        assertTrue(copy.getRenamedEntries(entries).isEmpty());
+        ChildNodeEntry entry = expected.get(c, 1);
+        copy.remove(entry.getId());
+        copy.add(b, entry.getId());
+        List<ChildNodeEntry> renamed = copy.getRenamedEntries(entries);
+        assertEquals(1, renamed.size());
+        assertEquals(entry.getId(), renamed.get(0).getId());
+    }
+
+    public void testInternedNames() {
+        ChildNodeEntries other = new ChildNodeEntries();
+        other.add(FACTORY.create("", "a"), NodeId.randomId());
+        other = other.pack();
+        assertSame(entries.get(a, 1).getName(),
+                other.list().get(0).getName());
+    }
+
+    public void testPagedLookups() {
+        TestPages pages = new TestPages(expected.list(), 2);
+        ChildNodeEntries paged = new ChildNodeEntries(pages);
+        assertEquals(0, pages.loads);
+        assertEquals(5, paged.size());
+        assertFalse(paged.isEmpty());
+        assertEquals(0, pages.loads);
+
+        assertEquals(expected.list(), paged.list());
+        assertEquals(expected, paged);
+        for (ChildNodeEntry entry : expected.list()) {
+            assertEquals(entry, paged.get(entry.getId()));
+            assertEquals(entry, paged.get(entry.getName(), entry.getIndex()));
+            assertTrue(paged.contains(entry.getName(), entry.getIndex()));
+            assertEquals(entry.getName(), paged.getName(entry.getId()));
+        }
+        assertEquals(expected.get(a), paged.get(a));
+        assertNull(paged.get(a, 4));
+        assertFalse(paged.contains(NodeId.randomId()));
+        assertTrue(paged.removeAll(paged).isEmpty());
+    }
+
+    public void testPagedExpandOnModification() {
+        ChildNodeEntries paged =
+            new ChildNodeEntries(new TestPages(expected.list(), 2));
+        ChildNodeEntries copy = (ChildNodeEntries) paged.clone();
+        NodeId id = NodeId.randomId();
+        copy.add(a, id);
+        assertEquals(6, copy.size());
+        assertEquals(4, copy.get(id).getIndex());
+        assertEquals(5, paged.size());
+        assertEquals(1, copy.removeAll(paged).size());
+    }
+
+    public void testPinned() {
+        TestPages pages = new TestPages(expected.list(), 2);
+        ChildNodeEntries paged = new ChildNodeEntries(pages);
+        ChildNodeEntries copy = (ChildNodeEntries) paged.clone();
+        paged.replacedBy(new ChildNodeEntries());
+        assertEquals(3, pages.loads);
+
+        // the pages were rewritten, but the pinned entries stay readable
+        pages.entries = null;
+        assertEquals(expected.list(), copy.list());
+        assertEquals(3, pages.loads);
+    }
+
+    /**
+     * Pages of a given number of entries.
+     */
+    private static class TestPages implements ChildNodeEntryPages {
+
+        private List<ChildNodeEntry> entries;
+
+        private final int size;
+
+        private int loads;
+
+        private TestPages(List<ChildNodeEntry> entries, int size) {
+            this.entries = new ArrayList<ChildNodeEntry>(entries);
+            this.size = size;
+        }
+
+        public int getPageCount() {
+            return (entries.size() + size - 1) / size;
+        }
+
+        public int getEntryCount(int page) {
+            return Math.min(size, entries.size() - page * size);
+        }
+
+        public void loadPage(int page, List<Name> names, List<NodeId> ids)
+                throws ItemStateException {
+            if (entries == null) {
+                throw new ItemStateException("pages were rewritten");
+            }
+            loads++;
+            int end = Math.min(entries.size(), (page + 1) * size);
+            for (ChildNodeEntry entry : entries.subList(page * size, end)) {
+                names.add(entry.getName());
+                ids.add(entry.getId());
+            }
+        }
+
+    }
+}
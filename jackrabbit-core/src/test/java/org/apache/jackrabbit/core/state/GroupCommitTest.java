@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.state;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import org.apache.jackrabbit.api.stats.RepositoryStatistics.Type;
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.id.PropertyId;
+import org.apache.jackrabbit.core.persistence.PersistenceManager;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.stats.RepositoryStatisticsImpl;
+
+/**
+ * <code>GroupCommitTest</code> checks that {@link GroupCommit} merges the
+ * change logs of concurrent updates and still reports individual failures.
+ */
+public class GroupCommitTest extends TestCase {
+
+    /**
+     * Change logs passed to the persistence manager.
+     */
+    private final List<ChangeLog> stored =
+        Collections.synchronizedList(new ArrayList<ChangeLog>());
+
+    /**
+     * Released to let the first store call of the persistence manager
+     * return.
+     */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    /**
+     * Change logs containing this state fail to be stored.
+     */
+    private ItemState poison;
+
+    private final RepositoryStatisticsImpl stats =
+        new RepositoryStatisticsImpl();
+
+    private GroupCommit groupCommit;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        PersistenceManager pm = (PersistenceManager) Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] { PersistenceManager.class },
+                new InvocationHandler() {
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                            throws Throwable {
+                        if (!method.getName().equals("store")) {
+                            throw new UnsupportedOperationException();
+                        }
+                        ChangeLog changes = (ChangeLog) args[0];
+                        if (stored.isEmpty()) {
+                            release.await();
+                        }
+                        stored.add(changes);
+                        if (poison != null && changes.has(poison.getId())) {
+                            throw new ItemStateException("poisoned");
+                        }
+                        return null;
+                    }
+                });
+        groupCommit = new GroupCommit(pm, stats);
+    }
+
+    public void testMergeConcurrentUpdates() throws Exception {
+        Committer first = new Committer(createChangeLog());
+        first.start();
+        // the leader blocks in the persistence manager until released
+        waitUntilWaiting(first);
+
+        Committer second = new Committer(createChangeLog());
+        Committer third = new Committer(createChangeLog());
+        second.start();
+        third.start();
+        waitUntilWaiting(second);
+        waitUntilWaiting(third);
+
+        release.countDown();
+        first.join();
+        second.join();
+        third.join();
+
+        assertNull(first.exception);
+        assertNull(second.exception);
+        assertNull(third.exception);
+        assertEquals(2, stored.size());
+        assertSame(first.changes, stored.get(0));
+        ChangeLog merged = stored.get(1);
+        assertTrue(merged.has(getState(second.changes).getId()));
+        assertTrue(merged.has(getState(third.changes).getId()));
+
+        assertEquals(2, stats.getCounter(Type.GROUP_COMMIT_COUNTER).get());
+        assertEquals(3, stats.getCounter(Type.GROUP_COMMIT_UPDATE_COUNTER).get());
+    }
+
+    public void testFailureOfSingleUpdate() throws Exception {
+        Committer first = new Committer(createChangeLog());
+        first.start();
+        // the leader blocks in the persistence manager until released
+        waitUntilWaiting(first);
+
+        Committer good = new Committer(createChangeLog());
+        Committer bad = new Committer(createChangeLog());
+        poison = getState(bad.changes);
+        good.start();
+        bad.start();
+        waitUntilWaiting(good);
+        waitUntilWaiting(bad);
+
+        release.countDown();
+        first.join();
+        good.join();
+        bad.join();
+
+        assertNull(first.exception);
+        assertNull(good.exception);
+        assertNotNull(bad.exception);
+        // the merged change log and the two single ones
+        assertEquals(4, stored.size());
+        assertEquals(2, stats.getCounter(Type.GROUP_COMMIT_COUNTER).get());
+        assertEquals(2, stats.getCounter(Type.GROUP_COMMIT_UPDATE_COUNTER).get());
+    }
+
+    public void testConflictingUpdatesAreNotMerged() throws Exception {
+        Committer first = new Committer(createChangeLog());
+        first.start();
+        // the leader blocks in the persistence manager until released
+        waitUntilWaiting(first);
+
+        ChangeLog changes = createChangeLog();
+        ChangeLog conflicting = new ChangeLog();
+        conflicting.modified(getState(changes));
+        Committer second = new Committer(changes);
+        Committer third = new Committer(conflicting);
+        second.start();
+        third.start();
+        waitUntilWaiting(second);
+        waitUntilWaiting(third);
+
+        release.countDown();
+        first.join();
+        second.join();
+        third.join();
+
+        assertNull(second.exception);
+        assertNull(third.exception);
+        assertEquals(3, stored.size());
+        assertTrue(stored.contains(changes));
+        assertTrue(stored.contains(conflicting));
+    }
+
+    private static ChangeLog createChangeLog() {
+        ChangeLog changes = new ChangeLog();
+        changes.added(new PropertyState(
+                new PropertyId(NodeId.randomId(), NameConstants.JCR_DATA),
+                ItemState.STATUS_NEW, false));
+        return changes;
+    }
+
+    private static ItemState getState(ChangeLog changes) {
+        for (ItemState state : changes.addedStates()) {
+            return state;
+        }
+        for (ItemState state : changes.modifiedStates()) {
+            return state;
+        }
+        throw new IllegalStateException();
+    }
+
+    private static void waitUntilWaiting(Thread thread)
+            throws InterruptedException {
+        while (thread.getState() != Thread.State.WAITING) {
+            Thread.sleep(10);
+        }
+    }
+
+    private class Committer extends Thread {
+
+        private final ChangeLog changes;
+
+        private volatile Exception exception;
+
+        Committer(ChangeLog changes) {
+            this.changes = changes;
+        }
+
+        public void run() {
+            try {
+                groupCommit.store(changes);
+            } catch (Exception e) {
+                exception = e;
+            }
+        }
+    }
+}
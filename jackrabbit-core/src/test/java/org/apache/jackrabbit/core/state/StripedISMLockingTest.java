@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.state;
+
+import org.apache.jackrabbit.core.id.NodeId;
+import org.apache.jackrabbit.core.id.PropertyId;
+import org.apache.jackrabbit.core.state.ISMLocking.ReadLock;
+import org.apache.jackrabbit.core.state.ISMLocking.WriteLock;
+import org.apache.jackrabbit.spi.commons.name.NameConstants;
+import org.apache.jackrabbit.stats.RepositoryStatisticsImpl;
+
+/**
+ * <code>StripedISMLockingTest</code> executes the test cases implemented in
+ * {@link AbstractISMLockingTest} and checks the behaviour specific to lock
+ * stripes.
+ */
+public class StripedISMLockingTest extends AbstractISMLockingTest {
+
+    public ISMLocking createISMLocking() {
+        return new StripedISMLocking();
+    }
+
+    public void testPropertySharesStripeOfNode() {
+        StripedISMLocking striped = (StripedISMLocking) locking;
+        PropertyId id = new PropertyId(
+                state.getNodeId(), NameConstants.JCR_PRIMARYTYPE);
+        assertSame(striped.getStripe(state.getId()), striped.getStripe(id));
+    }
+
+    public void testDisjointWrites() throws InterruptedException {
+        ChangeLog log = new ChangeLog();
+        log.modified(createStateInOtherStripe());
+        WriteLock wLock = locking.acquireWriteLock(log);
+        for (ChangeLog changeLog : logs) {
+            verifyNotBlocked(startWriterThread(locking, changeLog));
+        }
+        verifyNotBlocked(startReaderThread(locking, state.getId()));
+        wLock.release();
+    }
+
+    public void testWritersReadingEachOther() throws InterruptedException {
+        final NodeState other = createStateInOtherStripe();
+        final ChangeLog log = new ChangeLog();
+        log.modified(other);
+        final WriteLock wLock = locking.acquireWriteLock(logs.get(2));
+        Thread t = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    WriteLock lock = locking.acquireWriteLock(log);
+                    locking.acquireReadLock(state.getId()).release();
+                    lock.release();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        t.start();
+        Thread.sleep(100);
+        try {
+            locking.acquireReadLock(other.getId()).release();
+            fail("read lock must not be granted across a foreign write lock");
+        } catch (ISMLocking.DeadlockException e) {
+            assertEquals(other.getId(), e.getItemId());
+        }
+        wLock.release();
+        verifyNotBlocked(t);
+    }
+
+    public void testStatistics() throws InterruptedException {
+        RepositoryStatisticsImpl stats = new RepositoryStatisticsImpl();
+        locking = new TimedISMLocking(locking, stats);
+        locking.acquireReadLock(state.getId()).release();
+        locking.acquireWriteLock(logs.get(0)).downgrade().release();
+        assertEquals(1, getCount(stats, "ISM_LOCKING_READ_WAIT"));
+        assertEquals(2, getCount(stats, "ISM_LOCKING_READ_HOLD"));
+        assertEquals(1, getCount(stats, "ISM_LOCKING_WRITE_WAIT"));
+        assertEquals(1, getCount(stats, "ISM_LOCKING_WRITE_HOLD"));
+    }
+
+    private static long getCount(RepositoryStatisticsImpl stats, String prefix) {
+        long count = stats.getCounter(prefix + "_OVER_1024MS", true).get();
+        for (int millis = 1; millis <= 1024; millis <<= 1) {
+            count += stats.getCounter(prefix + "_" + millis + "MS", true).get();
+        }
+        return count;
+    }
+
+    private NodeState createStateInOtherStripe() {
+        StripedISMLocking striped = (StripedISMLocking) locking;
+        for (;;) {
+            NodeState other = new NodeState(
+                    NodeId.randomId(), NameConstants.NT_BASE, null,
+                    ItemState.STATUS_EXISTING, true);
+            if (striped.getStripe(other.getId())
+                    != striped.getStripe(state.getId())) {
+                return other;
+            }
+        }
+    }
+}
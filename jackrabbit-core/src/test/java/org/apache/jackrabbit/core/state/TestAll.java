@@ -36,11 +36,14 @@ public class TestAll extends TestCase {
         TestSuite suite = new TestSuite("State tests");
 
         suite.addTestSuite(ChangeLogTest.class);
+        suite.addTestSuite(ChildNodeEntriesTest.class);
         suite.addTestSuite(DefaultISMLockingTest.class);
         suite.addTestSuite(DefaultISMLockingDeadlockTest.class);
         suite.addTestSuite(FineGrainedISMLockingTest.class);
+        suite.addTestSuite(GroupCommitTest.class);
         suite.addTestSuite(NameSetTest.class);
         suite.addTestSuite(NodeStateMergerTest.class);
+        suite.addTestSuite(StripedISMLockingTest.class);
 
         return suite;
     }
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.core.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the striped read-write lock.
+ */
+public class StripedReadWriteLockTest extends TestCase {
+
+    private final ReadWriteLock lock = new StripedReadWriteLock(4);
+
+    public void testReadersShareLock() throws InterruptedException {
+        lock.readLock().lock();
+        try {
+            assertTrue(tryInOtherThread(true));
+            assertFalse(tryInOtherThread(false));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void testWriterExcludesReaders() throws InterruptedException {
+        lock.writeLock().lock();
+        try {
+            assertFalse(tryInOtherThread(true));
+            assertFalse(tryInOtherThread(false));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        assertTrue(tryInOtherThread(true));
+        assertTrue(tryInOtherThread(false));
+    }
+
+    public void testReentrant() {
+        lock.writeLock().lock();
+        lock.readLock().lock();
+        lock.readLock().unlock();
+        assertTrue(lock.writeLock().tryLock());
+        lock.writeLock().unlock();
+        lock.writeLock().unlock();
+    }
+
+    /**
+     * Tries to acquire the read or write lock in another thread, and
+     * releases it again if acquired.
+     */
+    private boolean tryInOtherThread(final boolean read)
+            throws InterruptedException {
+        final AtomicBoolean acquired = new AtomicBoolean();
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    if (read) {
+                        if (lock.readLock().tryLock(10, TimeUnit.MILLISECONDS)) {
+                            lock.readLock().unlock();
+                            acquired.set(true);
+                        }
+                    } else if (lock.writeLock().tryLock(10, TimeUnit.MILLISECONDS)) {
+                        lock.writeLock().unlock();
+                        acquired.set(true);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        return acquired.get();
+    }
+
+}
@@ -21,15 +21,19 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.jackrabbit.util.Text;
 
 /**
  * An operation which synchronously checks the DB schema in the {@link #run()} method. The
- * {@link #addVariableReplacement(String, String)} method return the instance to enable method chaining.
+ * {@link #addVariableReplacement(String, String)} and {@link #addUpgradeTable(String)} methods
+ * return the instance to enable method chaining.
  */
 public class CheckSchemaOperation {
 
@@ -45,6 +49,8 @@ public class CheckSchemaOperation {
 
     private final Map<String, String> varReplacement = new HashMap<String, String>();
 
+    private final List<String> upgradeTables = new ArrayList<String>();
+
     /**
      * @param connectionhelper the connection helper
      * @param ddlStream the stream of the DDL to use to create the schema if necessary (closed by the
@@ -69,6 +75,19 @@ public class CheckSchemaOperation {
         return this;
     }
 
+    /**
+     * Adds a table that was added to the DDL after the schema was first created. If the table
+     * used for the schema-existence-check exists but the given table does not, then the
+     * statements of the DDL that refer to the given table are executed.
+     * 
+     * @param tableName the name of the table, including the schema object prefix
+     * @return this
+     */
+    public CheckSchemaOperation addUpgradeTable(String tableName) {
+        upgradeTables.add(tableName);
+        return this;
+    }
+
     /**
      * Checks if the required schema objects exist and creates them if they don't exist yet.
      * 
@@ -78,18 +97,19 @@ public class CheckSchemaOperation {
     public void run() throws SQLException, IOException {
         try {
             if (!conHelper.tableExists(table)) {
-                BufferedReader reader = new BufferedReader(new InputStreamReader(ddl));
-                String sql = reader.readLine();
-                while (sql != null) {
-                    // Skip comments and empty lines
-                    if (!sql.startsWith("#") && sql.length() > 0) {
-                        // replace prefix variable
-                        sql = replace(sql);
-                        // execute sql stmt
-                        conHelper.exec(sql);
+                execute(null);
+            } else {
+                StringBuilder missing = new StringBuilder();
+                for (String upgradeTable : upgradeTables) {
+                    if (!conHelper.tableExists(upgradeTable)) {
+                        if (missing.length() > 0) {
+                            missing.append('|');
+                        }
+                        missing.append(Pattern.quote(upgradeTable));
                     }
-                    // read next sql stmt
-                    sql = reader.readLine();
+                }
+                if (missing.length() > 0) {
+                    execute(Pattern.compile("\\b(" + missing + ")\\b"));
                 }
             }
         } finally {
@@ -97,6 +117,32 @@ public class CheckSchemaOperation {
         }
     }
 
+    /**
+     * Executes the statements of the DDL.
+     * 
+     * @param filter if not <code>null</code>, only the statements that contain a match of this
+     *            pattern are executed
+     * @throws SQLException if an error occurs
+     * @throws IOException if an error occurs
+     */
+    private void execute(Pattern filter) throws SQLException, IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(ddl));
+        String sql = reader.readLine();
+        while (sql != null) {
+            // Skip comments and empty lines
+            if (!sql.startsWith("#") && sql.length() > 0) {
+                // replace prefix variable
+                sql = replace(sql);
+                // execute sql stmt
+                if (filter == null || filter.matcher(sql).find()) {
+                    conHelper.exec(sql);
+                }
+            }
+            // read next sql stmt
+            sql = reader.readLine();
+        }
+    }
+
     /**
      * Applies the variable replacement to the given string.
      * 
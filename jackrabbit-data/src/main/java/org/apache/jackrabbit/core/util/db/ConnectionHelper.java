@@ -22,8 +22,10 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.sql.DataSource;
@@ -48,6 +50,7 @@ import org.slf4j.LoggerFactory;
  * <ul>
  * <li>{@link #exec(String, Object...)}</li>
  * <li>{@link #update(String, Object[])}</li>
+ * <li>{@link #updateBatch(String, List)}</li>
  * <li>{@link #exec(String, Object[], boolean, int)}</li>
  * </ul>
  *
@@ -347,6 +350,44 @@ public class ConnectionHelper {
         }
     }
 
+    /**
+     * Executes an update, insert or delete statement once for each of the given parameter sets as a
+     * single JDBC batch and returns the update counts. Drivers may report
+     * {@link Statement#SUCCESS_NO_INFO} instead of the actual count.
+     *
+     * @param sql an SQL statement string
+     * @param paramSets the parameters for each execution of the statement
+     * @return the update counts, one per parameter set
+     * @throws SQLException on error
+     */
+    public final int[] updateBatch(final String sql, final List<Object[]> paramSets) throws SQLException {
+        List<Object> params = new ArrayList<Object>();
+        for (Object[] p : paramSets) {
+            Collections.addAll(params, p);
+        }
+        return new RetryManager<int[]>(params.toArray()) {
+
+            @Override
+            protected int[] call() throws SQLException {
+                return reallyUpdateBatch(sql, paramSets);
+            }
+
+        }.doTry();
+    }
+
+    int[] reallyUpdateBatch(String sql, List<Object[]> paramSets) throws SQLException {
+        Connection con = null;
+        PreparedStatement stmt = null;
+        boolean inBatchMode = inBatchMode();
+        try {
+            con = getConnection(inBatchMode);
+            stmt = con.prepareStatement(sql);
+            return executeBatch(stmt, paramSets);
+        } finally {
+            closeResources(con, stmt, null, inBatchMode);
+        }
+    }
+
     /**
      * Executes a SQL query and returns the {@link ResultSet}. The
      * returned {@link ResultSet} should be closed by clients.
@@ -503,6 +544,32 @@ public class ConnectionHelper {
      * @throws SQLException on error
      */
     protected PreparedStatement execute(PreparedStatement stmt, Object[] params) throws SQLException {
+        setParameters(stmt, params);
+        stmt.execute();
+        return stmt;
+    }
+
+    /**
+     * This method is used by {@link #updateBatch(String, List)} to execute a statement once for each of
+     * the given parameter sets. This default implementation adds each parameter set to the batch of the
+     * statement like {@link #execute(PreparedStatement, Object[])} does and executes the batch. Subclasses
+     * that override {@link #execute(PreparedStatement, Object[])} most likely need to override this method,
+     * too.
+     *
+     * @param stmt the {@link PreparedStatement} to execute
+     * @param paramSets the parameters for each execution of the statement
+     * @return the update counts
+     * @throws SQLException on error
+     */
+    protected int[] executeBatch(PreparedStatement stmt, List<Object[]> paramSets) throws SQLException {
+        for (Object[] params : paramSets) {
+            setParameters(stmt, params);
+            stmt.addBatch();
+        }
+        return stmt.executeBatch();
+    }
+
+    private void setParameters(PreparedStatement stmt, Object[] params) throws SQLException {
         for (int i = 0; params != null && i < params.length; i++) {
             Object p = params[i];
             if (p instanceof StreamWrapper) {
@@ -512,8 +579,6 @@ public class ConnectionHelper {
                 stmt.setObject(i + 1, p);
             }
         }
-        stmt.execute();
-        return stmt;
     }
 
     /**
@@ -94,32 +94,63 @@ public final class Oracle10R1ConnectionHelper extends OracleConnectionHelper {
     protected PreparedStatement execute(PreparedStatement stmt, Object[] params) throws SQLException {
         List<Blob> tmpBlobs = new ArrayList<Blob>();
         try {
-            for (int i = 0; params != null && i < params.length; i++) {
-                Object p = params[i];
-                if (p instanceof StreamWrapper) {
-                    StreamWrapper wrapper = (StreamWrapper) p;
-                    Blob tmp = createTemporaryBlob(stmt.getConnection(), wrapper.getStream());
-                    tmpBlobs.add(tmp);
-                    stmt.setBlob(i + 1, tmp);
-                } else if (p instanceof InputStream) {
-                    Blob tmp = createTemporaryBlob(stmt.getConnection(), (InputStream) p);
-                    tmpBlobs.add(tmp);
-                    stmt.setBlob(i + 1, tmp);
-                } else {
-                    stmt.setObject(i + 1, p);
-                }
-            }
+            setParameters(stmt, params, tmpBlobs);
             stmt.execute();
             return stmt;
         } catch (Exception e) {
             throw new SQLException(e.getMessage());
         } finally {
-            for (Blob blob : tmpBlobs) {
-                try {
-                    freeTemporaryBlob(blob);
-                } catch (Exception e) {
-                    log.warn("Could not close temporary blob", e);
-                }
+            freeTemporaryBlobs(tmpBlobs);
+        }
+    }
+
+    /**
+     * Wraps any input-stream parameters in temporary blobs and frees these again after the whole batch
+     * has been executed.
+     * 
+     * {@inheritDoc}
+     */
+    @Override
+    protected int[] executeBatch(PreparedStatement stmt, List<Object[]> paramSets) throws SQLException {
+        List<Blob> tmpBlobs = new ArrayList<Blob>();
+        try {
+            for (Object[] params : paramSets) {
+                setParameters(stmt, params, tmpBlobs);
+                stmt.addBatch();
+            }
+            return stmt.executeBatch();
+        } catch (Exception e) {
+            throw new SQLException(e.getMessage());
+        } finally {
+            freeTemporaryBlobs(tmpBlobs);
+        }
+    }
+
+    private void setParameters(PreparedStatement stmt, Object[] params, List<Blob> tmpBlobs)
+            throws Exception {
+        for (int i = 0; params != null && i < params.length; i++) {
+            Object p = params[i];
+            if (p instanceof StreamWrapper) {
+                StreamWrapper wrapper = (StreamWrapper) p;
+                Blob tmp = createTemporaryBlob(stmt.getConnection(), wrapper.getStream());
+                tmpBlobs.add(tmp);
+                stmt.setBlob(i + 1, tmp);
+            } else if (p instanceof InputStream) {
+                Blob tmp = createTemporaryBlob(stmt.getConnection(), (InputStream) p);
+                tmpBlobs.add(tmp);
+                stmt.setBlob(i + 1, tmp);
+            } else {
+                stmt.setObject(i + 1, p);
+            }
+        }
+    }
+
+    private void freeTemporaryBlobs(List<Blob> tmpBlobs) {
+        for (Blob blob : tmpBlobs) {
+            try {
+                freeTemporaryBlob(blob);
+            } catch (Exception e) {
+                log.warn("Could not close temporary blob", e);
             }
         }
     }
@@ -37,4 +37,20 @@ public interface QueryStatCore extends QueryStat {
      */
     void logQuery(final String language, final String statement, long durationMs);
 
+    /**
+     * Logs a lookup in a query result cache.
+     *
+     * @param hit
+     *            <code>true</code> if the result was found in the cache
+     */
+    void logResultCacheAccess(boolean hit);
+
+    /**
+     * Logs a lookup in a query parse cache.
+     *
+     * @param hit
+     *            <code>true</code> if the parse tree was found in the cache
+     */
+    void logParseCacheAccess(boolean hit);
+
 }
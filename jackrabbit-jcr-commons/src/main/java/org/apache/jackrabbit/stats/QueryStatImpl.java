@@ -21,6 +21,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.jackrabbit.api.stats.QueryStatDto;
 
@@ -89,6 +90,14 @@ public class QueryStatImpl implements QueryStatCore {
         }
     }
 
+    private final AtomicLong resultCacheHits = new AtomicLong();
+
+    private final AtomicLong resultCacheMisses = new AtomicLong();
+
+    private final AtomicLong parseCacheHits = new AtomicLong();
+
+    private final AtomicLong parseCacheMisses = new AtomicLong();
+
     private boolean enabled = false;
 
     public QueryStatImpl() {
@@ -133,6 +142,44 @@ public class QueryStatImpl implements QueryStatCore {
         }
     }
 
+    public void logResultCacheAccess(boolean hit) {
+        if (!enabled) {
+            return;
+        }
+        if (hit) {
+            resultCacheHits.incrementAndGet();
+        } else {
+            resultCacheMisses.incrementAndGet();
+        }
+    }
+
+    public void logParseCacheAccess(boolean hit) {
+        if (!enabled) {
+            return;
+        }
+        if (hit) {
+            parseCacheHits.incrementAndGet();
+        } else {
+            parseCacheMisses.incrementAndGet();
+        }
+    }
+
+    public long getResultCacheHitCount() {
+        return resultCacheHits.get();
+    }
+
+    public long getResultCacheMissCount() {
+        return resultCacheMisses.get();
+    }
+
+    public long getParseCacheHitCount() {
+        return parseCacheHits.get();
+    }
+
+    public long getParseCacheMissCount() {
+        return parseCacheMisses.get();
+    }
+
     public void clearSlowQueriesQueue() {
         slowQueries.clear();
     }
@@ -182,5 +229,9 @@ public class QueryStatImpl implements QueryStatCore {
     public void reset() {
         clearSlowQueriesQueue();
         clearPopularQueriesQueue();
+        resultCacheHits.set(0);
+        resultCacheMisses.set(0);
+        parseCacheHits.set(0);
+        parseCacheMisses.set(0);
     }
 }
@@ -49,8 +49,18 @@ public class RepositoryStatisticsImpl implements
                 Type.BUNDLE_CACHE_MISS_DURATION, Type.BUNDLE_CACHE_MISS_AVERAGE);
         createAvg(Type.BUNDLE_WRITE_COUNTER, Type.BUNDLE_WRITE_DURATION,
                 Type.BUNDLE_WRITE_AVERAGE);
+        createAvg(Type.BUNDLE_WS_COMMIT_COUNTER,
+                Type.BUNDLE_WS_STATEMENT_COUNTER,
+                Type.BUNDLE_WS_STATEMENT_AVERAGE);
+        createAvg(Type.GROUP_COMMIT_COUNTER,
+                Type.GROUP_COMMIT_UPDATE_COUNTER,
+                Type.GROUP_COMMIT_SIZE_AVERAGE);
+        createAvg(Type.GROUP_COMMIT_UPDATE_COUNTER,
+                Type.GROUP_COMMIT_DURATION, Type.GROUP_COMMIT_AVERAGE);
         createAvg(Type.QUERY_COUNT, Type.QUERY_DURATION,
                 Type.QUERY_AVERAGE);
+        createAvg(Type.INDEX_MERGE_COUNTER, Type.INDEX_MERGE_DURATION,
+                Type.INDEX_MERGE_AVERAGE);
         createAvg(Type.OBSERVATION_EVENT_COUNTER, Type.OBSERVATION_EVENT_DURATION,
                 Type.OBSERVATION_EVENT_AVERAGE);
     }
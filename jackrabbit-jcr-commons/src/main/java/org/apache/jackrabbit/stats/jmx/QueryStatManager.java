@@ -81,6 +81,22 @@ public class QueryStatManager implements QueryStatManagerMBean {
         queryStat.clearPopularQueriesQueue();
     }
 
+    public long getResultCacheHitCount() {
+        return queryStat.getResultCacheHitCount();
+    }
+
+    public long getResultCacheMissCount() {
+        return queryStat.getResultCacheMissCount();
+    }
+
+    public long getParseCacheHitCount() {
+        return queryStat.getParseCacheHitCount();
+    }
+
+    public long getParseCacheMissCount() {
+        return queryStat.getParseCacheMissCount();
+    }
+
     public TabularData getSlowQueries() {
         return asTabularData(queryStat.getSlowQueries());
     }